@@ -12,11 +12,9 @@
  */
 package com.ibm.dsmask.algo;
 
-import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import org.apache.commons.lang3.StringUtils;
 
 /**
  * Compute a specified type of "hash" (message digest) on input.
@@ -63,11 +61,11 @@ public class BasicDigest {
     public byte[] calcBinary(Object[] values, int iteration) {
         if (values==null || values.length==0)
             return null;
+        final HashSupport hs = HashSupport.current();
         md.reset();
         boolean sign = false;
         if (iteration > 0) {
-            md.update(Integer.toHexString(iteration)
-                    .getBytes(StandardCharsets.UTF_8));
+            hs.updateHex(md, iteration);
             sign = true;
         }
         for ( Object v : values ) {
@@ -75,7 +73,7 @@ public class BasicDigest {
                 md.update((byte) 1);
             else
                 sign = true;
-            update(v);
+            hs.update(md, v);
         }
         if (userKeyBytes!=null && userKeyBytes.length > 0)
             md.update(userKeyBytes);
@@ -88,12 +86,7 @@ public class BasicDigest {
      * @return String containing two hex characters per input byte
      */
     public static String toHex(byte[] input) {
-        if (input==null)
-            return null;
-        if (input.length==0)
-            return "";
-        String hashHex = new BigInteger(1, input).toString(16);
-        return StringUtils.leftPad(hashHex, input.length * 2, '0');
+        return HashSupport.toHex(input);
     }
 
     /**
@@ -106,13 +99,4 @@ public class BasicDigest {
         return toHex( calcBinary(values, iteration) );
     }
 
-    private void update(Object value) {
-        if (value!=null) {
-            if (value instanceof byte[])
-                md.update((byte[]) value);
-            else
-                md.update(value.toString().getBytes(StandardCharsets.UTF_8));
-        }
-    }
-
 }
@@ -13,6 +13,7 @@
 package com.ibm.dsmask.algo;
 
 import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
 
 /**
  * Compute a single numerical hash based on CRC-32 algorithm.
@@ -48,11 +49,28 @@ public class BasicHasher {
      * @return Hash value (based on CRC-32)
      */
     public final long calcHash(Object[] vec, int iteration) {
-        final PureJavaCrc32 crc = new PureJavaCrc32();
+        return calcHash(HashSupport.current(), vec, iteration);
+    }
+
+    /**
+     * Compute the hash values for a batch of input vectors.
+     * @param vecs Input data vectors
+     * @param count Number of vectors to be processed
+     * @param iteration Current iteration number
+     * @param output Output hash values, at least count positions
+     */
+    public final void calcHash(Object[][] vecs, int count, int iteration,
+            long[] output) {
+        final HashSupport hs = HashSupport.current();
+        for (int i=0; i<count; ++i)
+            output[i] = calcHash(hs, vecs[i], iteration);
+    }
+
+    private long calcHash(HashSupport hs, Object[] vec, int iteration) {
+        final CRC32 crc = hs.newCrc();
         boolean sign = false;
         if (iteration>0) {
-            crc.update(Integer.toHexString(iteration)
-                    .getBytes(StandardCharsets.UTF_8));
+            hs.updateHex(crc, iteration);
             sign = true;
         }
         if (indexes==null) {
@@ -61,7 +79,7 @@ public class BasicHasher {
                     crc.update(1);
                 else
                     sign = true;
-                update(crc, o);
+                hs.update(crc, o);
             }
         } else {
             for (int i : indexes) {
@@ -70,7 +88,7 @@ public class BasicHasher {
                 else
                     sign = true;
                 if (i>0 && i<=vec.length) { // just skip illegal indexes
-                    update(crc, vec[i-1]);
+                    hs.update(crc, vec[i-1]);
                 }
             }
         }
@@ -80,13 +98,4 @@ public class BasicHasher {
         return (v>=0) ? v : (-1L * v);
     }
 
-    private static void update(PureJavaCrc32 crc, Object o) {
-        if (o!=null) {
-            if ( o instanceof byte[] )
-                crc.update((byte[]) o);
-            else
-                crc.update(o.toString().getBytes(StandardCharsets.UTF_8));
-        }
-    }
-
 }
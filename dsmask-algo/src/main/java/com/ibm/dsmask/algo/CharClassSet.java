@@ -31,6 +31,9 @@ public class CharClassSet {
 
     private final String name;
     private final List<Entry> entries;
+    // compiled code point -> entry index lookup table
+    private final Entry[] entryArray;
+    private final CharMap classMap;
 
     public static final Entry EMPTY_ENTRY = new Entry("", new Range[]{});
 
@@ -55,6 +58,14 @@ public class CharClassSet {
     public CharClassSet(String name, List<Entry> entries) {
         this.name = name;
         this.entries = Collections.unmodifiableList(entries);
+        this.entryArray = entries.toArray(new Entry[entries.size()]);
+        // the first matching class wins, same as in the range scan
+        final CharMap.Builder builder = new CharMap.Builder(-1);
+        for (int index = 0; index < entryArray.length; ++index) {
+            for (Range r : entryArray[index].ranges)
+                builder.putRange(r.charBegin, r.charEnd, index);
+        }
+        this.classMap = builder.build();
     }
 
     public String getName() {
@@ -68,6 +79,17 @@ public class CharClassSet {
      * @return Entry for a particular character class, or EMPTY_ENTRY
      */
     public Entry findClass(int codePoint) {
+        final int index = classMap.get(codePoint);
+        return (index < 0) ? EMPTY_ENTRY : entryArray[index];
+    }
+
+    /**
+     * Determine a class by the codepoint, scanning the ranges.
+     * Returns EMPTY_ENTRY if the codepoint does not fall into any other class.
+     * @param codePoint Current code point
+     * @return Entry for a particular character class, or EMPTY_ENTRY
+     */
+    public Entry findClassByRange(int codePoint) {
         for (Entry e : entries) {
             for (Range r : e.ranges) {
                 if (codePoint >= r.charBegin && codePoint <= r.charEnd)
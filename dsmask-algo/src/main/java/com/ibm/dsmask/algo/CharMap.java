@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.algo;
+
+import java.util.Arrays;
+
+/**
+ * Compiled mapping of code points to integer values.
+ * Basic multilingual plane is stored as a flat array, which is only
+ * as long as the highest mapped BMP code point.
+ * Supplementary planes are stored as a sparse two-level table
+ * of 256-entry pages.
+ * Unmapped code points return the default value.
+ * @author zinal
+ */
+public final class CharMap {
+
+    private static final int BMP_SIZE = 0x10000;
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int PAGE_COUNT =
+            (Character.MAX_CODE_POINT + 1 - BMP_SIZE) >> PAGE_BITS;
+
+    private final int defaultValue;
+    // values for BMP code points 0 .. bmp.length-1
+    private final int[] bmp;
+    // pages for supplementary code points, null if none mapped
+    private final int[][] pages;
+
+    private CharMap(int defaultValue, int[] bmp, int[][] pages) {
+        this.defaultValue = defaultValue;
+        this.bmp = bmp;
+        this.pages = pages;
+    }
+
+    public int getDefaultValue() {
+        return defaultValue;
+    }
+
+    /**
+     * Retrieve the value for the specified code point.
+     * @param codePoint Code point
+     * @return Mapped value, or the default value
+     */
+    public int get(int codePoint) {
+        if (codePoint >= 0 && codePoint < bmp.length)
+            return bmp[codePoint];
+        if (pages == null || codePoint < BMP_SIZE
+                || codePoint > Character.MAX_CODE_POINT)
+            return defaultValue;
+        final int[] page = pages[(codePoint - BMP_SIZE) >> PAGE_BITS];
+        if (page == null)
+            return defaultValue;
+        return page[codePoint & PAGE_MASK];
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 19 * hash + defaultValue;
+        hash = 19 * hash + Arrays.hashCode(bmp);
+        hash = 19 * hash + Arrays.deepHashCode(pages);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        final CharMap other = (CharMap) obj;
+        return defaultValue == other.defaultValue
+                && Arrays.equals(bmp, other.bmp)
+                && Arrays.deepEquals(pages, other.pages);
+    }
+
+    /**
+     * Builder for the compiled mapping.
+     * Earlier mappings take precedence over the later ones.
+     */
+    public static final class Builder {
+
+        private final int defaultValue;
+        private int[] bmp = new int[0];
+        private int[][] pages = null;
+
+        public Builder(int defaultValue) {
+            this.defaultValue = defaultValue;
+        }
+
+        /**
+         * Map the code point to the value, unless already mapped.
+         * @param codePoint Code point
+         * @param value Value, which should differ from the default one
+         * @return this
+         */
+        public Builder put(int codePoint, int value) {
+            if (codePoint < 0 || codePoint > Character.MAX_CODE_POINT)
+                throw new IllegalArgumentException("Illegal code point "
+                        + codePoint);
+            if (codePoint < BMP_SIZE) {
+                if (codePoint >= bmp.length) {
+                    int len = Math.min(BMP_SIZE,
+                            Math.max(codePoint + 1, 2 * bmp.length));
+                    int oldLen = bmp.length;
+                    bmp = Arrays.copyOf(bmp, len);
+                    Arrays.fill(bmp, oldLen, len, defaultValue);
+                }
+                if (bmp[codePoint] == defaultValue)
+                    bmp[codePoint] = value;
+            } else {
+                if (pages == null)
+                    pages = new int[PAGE_COUNT][];
+                final int pageIndex = (codePoint - BMP_SIZE) >> PAGE_BITS;
+                int[] page = pages[pageIndex];
+                if (page == null) {
+                    page = new int[PAGE_SIZE];
+                    Arrays.fill(page, defaultValue);
+                    pages[pageIndex] = page;
+                }
+                if (page[codePoint & PAGE_MASK] == defaultValue)
+                    page[codePoint & PAGE_MASK] = value;
+            }
+            return this;
+        }
+
+        /**
+         * Map the range of code points to the same value,
+         * for the code points not already mapped.
+         * @param begin First code point
+         * @param end Last code point
+         * @param value Value
+         * @return this
+         */
+        public Builder putRange(int begin, int end, int value) {
+            for (int cp = begin; cp <= end; ++cp)
+                put(cp, value);
+            return this;
+        }
+
+        public CharMap build() {
+            int len = bmp.length;
+            while (len > 0 && bmp[len - 1] == defaultValue)
+                --len;
+            return new CharMap(defaultValue, Arrays.copyOf(bmp, len),
+                    (pages == null) ? null : pages.clone());
+        }
+    }
+
+}
@@ -16,7 +16,6 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -34,7 +33,7 @@ public class CharzTable {
 
     private final String name;
     private final List<Range> ranges;
-    private final Map<Integer, Integer> direct;
+    private final CharMap direct;
 
     public CharzTable(String name, List<Range> ranges) {
         this.name = name;
@@ -73,19 +72,18 @@ public class CharzTable {
      * @return Translated character
      */
     public int translate(int input) {
-        return direct.getOrDefault(input, input);
+        final int output = direct.get(input);
+        return (output < 0) ? input : output;
     }
 
-    private static Map<Integer, Integer> buildDirect(List<Range> ranges) {
-        Map<Integer, Integer> d = new HashMap<>();
+    private static CharMap buildDirect(List<Range> ranges) {
+        // the first matching range wins, same as in the range scan
+        final CharMap.Builder d = new CharMap.Builder(-1);
         for (Range r : ranges) {
-            for (int ix = 0; ix < r.size; ++ix) {
-                int srcCP = r.src + ix;
-                if (! d.containsKey(srcCP))
-                    d.put(srcCP, r.dst + ix);
-            }
+            for (int ix = 0; ix < r.size; ++ix)
+                d.put(r.src + ix, r.dst + ix);
         }
-        return d;
+        return d.build();
     }
 
     /**
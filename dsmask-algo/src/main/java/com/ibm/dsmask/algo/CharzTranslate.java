@@ -75,9 +75,13 @@ public class CharzTranslate {
         if (cs==null)
             return output;
         final StringBuilder sb = (output == null) ? new StringBuilder() : output;
-        cs.codePoints().forEach(src -> {
+        final int length = cs.length();
+        int pos = 0;
+        while (pos < length) {
+            final int src = Character.codePointAt(cs, pos);
+            pos += Character.charCount(src);
             DsMaskUtil.appendCodepoint(sb, table.translate(src));
-        });
+        }
         return sb;
     }
 
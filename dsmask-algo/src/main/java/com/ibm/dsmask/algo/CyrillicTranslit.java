@@ -12,7 +12,8 @@
  */
 package com.ibm.dsmask.algo;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Transliteration of Cyrillic characters to Latin characters
@@ -21,92 +22,107 @@ import java.util.HashMap;
  */
 public class CyrillicTranslit {
 
-    private static final HashMap<Character, String> HM =
-            new HashMap<Character, String>();
+    // compiled character -> index in VALUES
+    private static final CharMap INDEX;
+    private static final String[] VALUES;
 
     static {
-        HM.put('а', "a");
-        HM.put('А', "A");
-        HM.put('б', "b");
-        HM.put('Б', "B");
-        HM.put('в', "v");
-        HM.put('В', "V");
-        HM.put('г', "g");
-        HM.put('Г', "G");
-        HM.put('д', "d");
-        HM.put('Д', "D");
-        HM.put('е', "e");
-        HM.put('Е', "E");
-        HM.put('ё', "iyo");
-        HM.put('Ё', "Iyo");
-        HM.put('ж', "zh");
-        HM.put('Ж', "Zh");
-        HM.put('з', "z");
-        HM.put('З', "Z");
-        HM.put('и', "i");
-        HM.put('И', "I");
-        HM.put('й', "y");
-        HM.put('Й', "Y");
-        HM.put('к', "k");
-        HM.put('К', "K");
-        HM.put('л', "l");
-        HM.put('Л', "L");
-        HM.put('м', "m");
-        HM.put('М', "M");
-        HM.put('н', "n");
-        HM.put('Н', "N");
-        HM.put('о', "o");
-        HM.put('О', "O");
-        HM.put('п', "p");
-        HM.put('П', "P");
-        HM.put('р', "r");
-        HM.put('Р', "R");
-        HM.put('с', "s");
-        HM.put('С', "S");
-        HM.put('т', "t");
-        HM.put('Т', "T");
-        HM.put('у', "u");
-        HM.put('У', "U");
-        HM.put('ф', "f");
-        HM.put('Ф', "F");
-        HM.put('х', "h");
-        HM.put('Х', "h");
-        HM.put('ц', "ts");
-        HM.put('Ц', "Ts");
-        HM.put('ч', "ch");
-        HM.put('Ч', "Ch");
-        HM.put('ш', "sh");
-        HM.put('Ш', "Sh");
-        HM.put('щ', "stch");
-        HM.put('Щ', "Stch");
-        HM.put('ъ', "'");
-        HM.put('Ъ', "'");
-        HM.put('ы', "yi");
-        HM.put('Ы', "Yi");
-        HM.put('ь', "'");
-        HM.put('Ь', "'");
-        HM.put('э', "e");
-        HM.put('Э', "E");
-        HM.put('ю', "ju");
-        HM.put('Ю', "Ju");
-        HM.put('я', "ja");
-        HM.put('Я', "Ja");
+        final CharMap.Builder builder = new CharMap.Builder(-1);
+        final List<String> values = new ArrayList<>();
+        final Mapper tab = (c, v) -> {
+            builder.put(c, values.size());
+            values.add(v);
+        };
+        tab.put('а', "a");
+        tab.put('А', "A");
+        tab.put('б', "b");
+        tab.put('Б', "B");
+        tab.put('в', "v");
+        tab.put('В', "V");
+        tab.put('г', "g");
+        tab.put('Г', "G");
+        tab.put('д', "d");
+        tab.put('Д', "D");
+        tab.put('е', "e");
+        tab.put('Е', "E");
+        tab.put('ё', "iyo");
+        tab.put('Ё', "Iyo");
+        tab.put('ж', "zh");
+        tab.put('Ж', "Zh");
+        tab.put('з', "z");
+        tab.put('З', "Z");
+        tab.put('и', "i");
+        tab.put('И', "I");
+        tab.put('й', "y");
+        tab.put('Й', "Y");
+        tab.put('к', "k");
+        tab.put('К', "K");
+        tab.put('л', "l");
+        tab.put('Л', "L");
+        tab.put('м', "m");
+        tab.put('М', "M");
+        tab.put('н', "n");
+        tab.put('Н', "N");
+        tab.put('о', "o");
+        tab.put('О', "O");
+        tab.put('п', "p");
+        tab.put('П', "P");
+        tab.put('р', "r");
+        tab.put('Р', "R");
+        tab.put('с', "s");
+        tab.put('С', "S");
+        tab.put('т', "t");
+        tab.put('Т', "T");
+        tab.put('у', "u");
+        tab.put('У', "U");
+        tab.put('ф', "f");
+        tab.put('Ф', "F");
+        tab.put('х', "h");
+        tab.put('Х', "h");
+        tab.put('ц', "ts");
+        tab.put('Ц', "Ts");
+        tab.put('ч', "ch");
+        tab.put('Ч', "Ch");
+        tab.put('ш', "sh");
+        tab.put('Ш', "Sh");
+        tab.put('щ', "stch");
+        tab.put('Щ', "Stch");
+        tab.put('ъ', "'");
+        tab.put('Ъ', "'");
+        tab.put('ы', "yi");
+        tab.put('Ы', "Yi");
+        tab.put('ь', "'");
+        tab.put('Ь', "'");
+        tab.put('э', "e");
+        tab.put('Э', "E");
+        tab.put('ю', "ju");
+        tab.put('Ю', "Ju");
+        tab.put('я', "ja");
+        tab.put('Я', "Ja");
+        INDEX = builder.build();
+        VALUES = values.toArray(new String[values.size()]);
     }
 
     public static String map(String arg) {
         if (arg == null) {
             return null;
         }
-        final StringBuilder sb = new StringBuilder();
-        for (char c : arg.toCharArray()) {
-            String v = HM.get(c);
-            if (v == null) {
+        final StringBuilder sb = new StringBuilder(arg.length() + 8);
+        for (int i = 0; i < arg.length(); ++i) {
+            final char c = arg.charAt(i);
+            final int index = INDEX.get(c);
+            if (index < 0) {
                 sb.append(c);
             } else {
-                sb.append(v);
+                sb.append(VALUES[index]);
             }
         }
         return sb.toString();
     }
 
+    @FunctionalInterface
+    private static interface Mapper {
+        void put(char c, String v);
+    }
+
 }
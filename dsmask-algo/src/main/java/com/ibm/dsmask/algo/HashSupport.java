@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.algo;
+
+import java.security.MessageDigest;
+import java.util.zip.CRC32;
+
+/**
+ * Per-thread hashing resources: the reusable UTF-8 buffer and
+ * the CRC-32 calculator backed by the JDK intrinsic
+ * (same polynomial as PureJavaCrc32, so the values are the same).
+ * On input, arrays of bytes are treated as-is, while all other
+ * data types are converted to character strings in UTF-8 encoding.
+ * @author zinal
+ */
+public final class HashSupport {
+
+    static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<HashSupport> CURRENT =
+            ThreadLocal.withInitial(HashSupport::new);
+
+    private final Utf8Buffer buffer = new Utf8Buffer(256);
+    private final CRC32 crc = new CRC32();
+
+    private HashSupport() {
+    }
+
+    /**
+     * @return Hashing resources for the current thread
+     */
+    public static HashSupport current() {
+        return CURRENT.get();
+    }
+
+    public Utf8Buffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return CRC-32 calculator, reset to the initial state
+     */
+    public CRC32 newCrc() {
+        crc.reset();
+        return crc;
+    }
+
+    public void update(CRC32 crc, Object value) {
+        if (value!=null) {
+            if (value instanceof byte[]) {
+                crc.update((byte[]) value);
+            } else {
+                buffer.encode(value.toString());
+                crc.update(buffer.getData(), 0, buffer.getLength());
+            }
+        }
+    }
+
+    public void update(MessageDigest md, Object value) {
+        if (value!=null) {
+            if (value instanceof byte[]) {
+                md.update((byte[]) value);
+            } else {
+                buffer.encode(value.toString());
+                md.update(buffer.getData(), 0, buffer.getLength());
+            }
+        }
+    }
+
+    /**
+     * Feed the hexadecimal representation of the value,
+     * same as Integer.toHexString(value).getBytes().
+     */
+    public void updateHex(CRC32 crc, int value) {
+        crc.update(buffer.getData(), 0, buffer.encodeHex(value));
+    }
+
+    public void updateHex(MessageDigest md, int value) {
+        md.update(buffer.getData(), 0, buffer.encodeHex(value));
+    }
+
+    /**
+     * Compute CRC-32 of the value in UTF-8 encoding.
+     * @param value Input value
+     * @return CRC-32 value
+     */
+    public static long crc32(String value) {
+        final HashSupport hs = current();
+        final CRC32 crc = hs.newCrc();
+        hs.update(crc, value);
+        return crc.getValue();
+    }
+
+    /**
+     * Convert array of bytes to its hexadecimal representation.
+     * @param input Array of bytes
+     * @return String containing two hex characters per input byte
+     */
+    public static String toHex(byte[] input) {
+        if (input==null)
+            return null;
+        final char[] output = new char[input.length * 2];
+        int pos = 0;
+        for (byte b : input) {
+            output[pos++] = HEX_DIGITS[(b >> 4) & 0xF];
+            output[pos++] = HEX_DIGITS[b & 0xF];
+        }
+        return new String(output);
+    }
+
+}
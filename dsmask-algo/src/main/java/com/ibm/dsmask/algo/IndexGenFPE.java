@@ -18,6 +18,8 @@ import javax.crypto.Mac;
 
 /**
  * Replacement index generator for an input value.
+ * No longer used by MaskFPE, which reads the MAC bits directly,
+ * but kept as the reference for its compatibility mode.
  * @author mzinal
  */
 public final class IndexGenFPE {
@@ -19,6 +19,18 @@ import com.ibm.dsmask.util.DsMaskUtil;
 
 /**
  * Naive Java-only FPE algorithm implementation.
+ *
+ * The replacement indexes are taken from the HMAC-SHA512 bits,
+ * read directly from the reusable MAC buffer, without per-value
+ * object allocations except the resulting string.
+ * In the compatibility mode (the default) the indexes are produced
+ * exactly as in the older versions, by cycling over the MAC bits
+ * and applying the modulo operation.
+ * Otherwise the indexes are produced with the rejection sampling
+ * (no modulo bias), and the MAC is extended in the counter mode
+ * when more bits are needed.
+ *
+ * The instances are not thread-safe.
  * @author mzinal
  */
 public class MaskFPE {
@@ -26,11 +38,16 @@ public class MaskFPE {
     public static final String HMAC_NAME = "HmacSHA512";
     public static final String DEFAULT_KEY = "ваттерпежек0змА";
 
+    private static final byte[] HEX_DIGITS =
+            "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
     // + skip chars before and after
     private final int skipBefore;
     private final int skipAfter;
     // + allow returning the unmodified value
     private final boolean allowSameVal;
+    // + produce the same outputs as the older versions
+    private final boolean compat;
     // + character classes
     private final CharClassSet charClassSet;
     // + key
@@ -38,6 +55,19 @@ public class MaskFPE {
     // + MAC object
     private final Mac mac;
 
+    // reusable buffers
+    private final Utf8Buffer valueBytes = new Utf8Buffer();
+    private final byte[] macValue;
+    private final byte[] extra = new byte[16];
+    private final StringBuilder output = new StringBuilder();
+
+    // bit reader state for the current value
+    private int iteration = 0;
+    private int substep = 0;
+    private int block = -1;
+    private int bitsPosition = 0;
+    private int bitsLimit = 0;
+
     public MaskFPE() {
         this(CharClassSet.DEFAULT_RUSSIAN);
     }
@@ -57,13 +87,25 @@ public class MaskFPE {
 
     public MaskFPE(CharClassSet cset, String userKey,
             int skipBefore, int skipAfter, boolean allowSameVal) {
+        this(cset, userKey, skipBefore, skipAfter, allowSameVal, true);
+    }
+
+    public MaskFPE(CharClassSet cset, String userKey,
+            int skipBefore, int skipAfter, boolean allowSameVal,
+            boolean compat) {
         this(cset,
                 (userKey==null) ? (byte[])null : userKey.getBytes(StandardCharsets.UTF_8),
-                skipBefore, skipAfter, allowSameVal);
+                skipBefore, skipAfter, allowSameVal, compat);
     }
 
     public MaskFPE(CharClassSet cset, byte[] userKey,
             int skipBefore, int skipAfter, boolean allowSameVal) {
+        this(cset, userKey, skipBefore, skipAfter, allowSameVal, true);
+    }
+
+    public MaskFPE(CharClassSet cset, byte[] userKey,
+            int skipBefore, int skipAfter, boolean allowSameVal,
+            boolean compat) {
         this.charClassSet = cset;
         if (userKey==null || userKey.length==0)
             userKey = DEFAULT_KEY.getBytes(StandardCharsets.UTF_8);
@@ -75,6 +117,7 @@ public class MaskFPE {
         } catch(Exception ex) {
             throw new RuntimeException("Cannot initialize MAC " + HMAC_NAME, ex);
         }
+        this.macValue = new byte[mac.getMacLength()];
         if (skipBefore < 0)
             skipBefore = 0;
         if (skipAfter < 0)
@@ -82,6 +125,7 @@ public class MaskFPE {
         this.skipBefore = skipBefore;
         this.skipAfter = skipAfter;
         this.allowSameVal = allowSameVal;
+        this.compat = compat;
     }
 
     public int getSkipBefore() {
@@ -100,6 +144,10 @@ public class MaskFPE {
         return userKey;
     }
 
+    public boolean isCompat() {
+        return compat;
+    }
+
     public String calculate(Object in) {
         return calculate(in, 0);
     }
@@ -117,10 +165,19 @@ public class MaskFPE {
                     + "needs to have at least "
                     + String.valueOf(skipBefore + skipAfter) + " characters");
         }
+        final int cpCount = value.codePointCount(0, value.length());
+        if (cpCount <= skipBefore + skipAfter) {
+            // Nothing to mask, value is too short
+            if (allowSameVal)
+                return value;
+            throw new RuntimeException("Hanged FPE on input value [" + value + "]");
+        }
+        valueBytes.encode(value);
+        this.iteration = iteration;
         // Protect against equal input and output
         int substep = 0;
         while (true) {
-            String retval = algo(value, iteration, substep);
+            String retval = algo(value, cpCount, substep);
             if (! retval.equalsIgnoreCase(value))
                 return retval;
             if (allowSameVal)
@@ -131,39 +188,139 @@ public class MaskFPE {
         }
     }
 
-    private String algo(String value, int iteration, int substep) {
-        int[] codePoints = value.codePoints().toArray();
-        if (codePoints.length <= skipBefore + skipAfter)
-            return value; // Nothing to mask, value is too short
+    private String algo(String value, int cpCount, int substep) {
+        // the MAC is computed on the first request for bits
+        this.substep = substep;
+        this.block = -1;
+        this.bitsPosition = 0;
+        this.bitsLimit = 0;
+        final int lastIndex = cpCount - skipAfter;
+        output.setLength(0);
+        int pos = 0, cpIndex = 0;
+        while (pos < value.length()) {
+            int curCP = value.codePointAt(pos);
+            pos += Character.charCount(curCP);
+            if (cpIndex >= skipBefore && cpIndex < lastIndex) {
+                // generate the hash-based replacement
+                CharClassSet.Entry charClass = charClassSet.findClass(curCP);
+                if (!charClass.isEmpty()) {
+                    int index = nextIndex(charClass.getLength());
+                    curCP = charClass.getCodePoint(index);
+                }
+            }
+            DsMaskUtil.appendCodepoint(output, curCP);
+            ++cpIndex;
+        }
+        return output.toString();
+    }
 
-        int lastIndex = codePoints.length - skipAfter;
+    /**
+     * Retrieve a MAC-based index in an array of specified size
+     * @param size Size of an array
+     * @return Index value from 0 to size-1
+     */
+    private int nextIndex(int size) {
+        if (size < 2)
+            return 0;
+        if (compat) {
+            // the extra bit, and the modulo bias, as in the older versions
+            int bitCount = 32 - Integer.numberOfLeadingZeros(size);
+            return nextBits(bitCount) % size;
+        }
+        final int bitCount = 32 - Integer.numberOfLeadingZeros(size - 1);
+        while (true) {
+            int index = nextBits(bitCount);
+            if (index < size)
+                return index;
+        }
+    }
 
-        final String indexData = (substep==0) ? value :
-                ( value + "." + Integer.toHexString(substep) );
-        final IndexGenFPE ig = new IndexGenFPE(indexData, mac, iteration);
-        final StringBuilder retval = new StringBuilder();
+    /**
+     * Read the specified number of bits, least significant first.
+     * @param bitCount Number of bits, up to 31
+     * @return The integer value of bits read
+     */
+    private int nextBits(int bitCount) {
+        int index = 0;
+        for (int pos = 0; pos < bitCount; ++pos) {
+            if (bitsPosition >= bitsLimit)
+                nextBlock();
+            if (bitsLimit > 0) {
+                if ( (macValue[bitsPosition >>> 3] & (1 << (bitsPosition & 7))) != 0 )
+                    index |= (1 << pos);
+                ++bitsPosition;
+            }
+        }
+        return index;
+    }
 
-        // prepend with the skipped characters
-        for ( int ix = 0; ix < skipBefore; ++ix ) {
-            DsMaskUtil.appendCodepoint(retval, codePoints[ix]);
+    /**
+     * Compute the next block of MAC bits.
+     * In the compatibility mode, the same MAC value is cycled over,
+     * up to its highest non-zero bit.
+     */
+    private void nextBlock() {
+        bitsPosition = 0;
+        if (compat && block >= 0)
+            return;
+        ++block;
+        try {
+            if (compat) {
+                if (iteration > 0) {
+                    mac.update(extra, 0, putHex(extra, 0, iteration));
+                    mac.update((byte)1);
+                }
+                mac.update(valueBytes.getData(), 0, valueBytes.getLength());
+                if (substep > 0) {
+                    extra[0] = '.';
+                    mac.update(extra, 0, 1 + putHex(extra, 1, substep));
+                }
+            } else {
+                putInt(extra, 0, iteration);
+                putInt(extra, 4, substep);
+                putInt(extra, 8, block);
+                mac.update(extra, 0, 12);
+                mac.update(valueBytes.getData(), 0, valueBytes.getLength());
+            }
+            mac.doFinal(macValue, 0);
+        } catch (Exception ex) {
+            // MAC object cleanup for the worst case
+            mac.reset();
+            throw new RuntimeException("Failed to compute MAC", ex);
         }
-        // generate the hash-based replacement
-        for ( int ix = skipBefore; ix < lastIndex; ++ix ) {
-            int curCP = codePoints[ix];
-            int toAppend = curCP;
-            CharClassSet.Entry charClass = charClassSet.findClass(curCP);
-            if (!charClass.isEmpty()) {
-                int index = ig.getNextIndex(charClass.getLength());
-                toAppend = charClass.getCodePoint(index);
+        if (compat) {
+            // position of the highest non-zero bit plus one
+            bitsLimit = 0;
+            for (int i = macValue.length - 1; i >= 0; --i) {
+                if (macValue[i] != 0) {
+                    bitsLimit = i * 8 + 32
+                            - Integer.numberOfLeadingZeros(macValue[i] & 0xFF);
+                    break;
+                }
             }
-            DsMaskUtil.appendCodepoint(retval, toAppend);
+        } else {
+            bitsLimit = macValue.length * 8;
         }
-        // append with the skipped characters
-        for ( int ix = lastIndex; ix < codePoints.length; ++ix ) {
-            DsMaskUtil.appendCodepoint(retval, codePoints[ix]);
+    }
+
+    /**
+     * Unsigned hex representation, same as Integer.toHexString().
+     */
+    private static int putHex(byte[] buf, int offset, int value) {
+        final int digits = Math.max(1,
+                (32 - Integer.numberOfLeadingZeros(value) + 3) / 4);
+        for (int i = digits - 1; i >= 0; --i) {
+            buf[offset + i] = HEX_DIGITS[value & 0xF];
+            value >>>= 4;
         }
-        return retval.toString();
+        return digits;
     }
 
+    private static void putInt(byte[] buf, int offset, int value) {
+        buf[offset] = (byte) (value >>> 24);
+        buf[offset + 1] = (byte) (value >>> 16);
+        buf[offset + 2] = (byte) (value >>> 8);
+        buf[offset + 3] = (byte) value;
+    }
 
 }
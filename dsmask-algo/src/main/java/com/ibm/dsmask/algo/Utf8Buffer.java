@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.algo;
+
+/**
+ * Reusable buffer for UTF-8 encoding of character sequences.
+ * Produces the same bytes as String.getBytes(StandardCharsets.UTF_8),
+ * including the replacement of unpaired surrogates with '?'.
+ * @author zinal
+ */
+public final class Utf8Buffer {
+
+    private byte[] data;
+    private int length = 0;
+
+    public Utf8Buffer() {
+        this(64);
+    }
+
+    public Utf8Buffer(int capacity) {
+        this.data = new byte[(capacity < 16) ? 16 : capacity];
+    }
+
+    /**
+     * @return Buffer contents, valid up to getLength()
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Encode the character sequence, replacing the buffer contents.
+     * @param cs Input characters
+     * @return Number of bytes
+     */
+    public int encode(CharSequence cs) {
+        length = 0;
+        return append(cs);
+    }
+
+    /**
+     * Encode the character sequence, appending to the buffer contents.
+     * @param cs Input characters
+     * @return Total number of bytes
+     */
+    public int append(CharSequence cs) {
+        final int count = cs.length();
+        final int maxLength = length + count * 3;
+        if (data.length < maxLength) {
+            final byte[] temp = new byte[Math.max(maxLength, 2 * data.length)];
+            System.arraycopy(data, 0, temp, 0, length);
+            data = temp;
+        }
+        final byte[] b = data;
+        int len = length;
+        for (int i = 0; i < count; ++i) {
+            final char c = cs.charAt(i);
+            if (c < 0x80) {
+                b[len++] = (byte) c;
+            } else if (c < 0x800) {
+                b[len++] = (byte) (0xC0 | (c >> 6));
+                b[len++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < count
+                    && Character.isLowSurrogate(cs.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, cs.charAt(++i));
+                b[len++] = (byte) (0xF0 | (cp >> 18));
+                b[len++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[len++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[len++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate
+                b[len++] = '?';
+            } else {
+                b[len++] = (byte) (0xE0 | (c >> 12));
+                b[len++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[len++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        length = len;
+        return len;
+    }
+
+    /**
+     * Encode the unsigned hexadecimal representation of the value,
+     * same as Integer.toHexString(), replacing the buffer contents.
+     * @param value Input value
+     * @return Number of bytes
+     */
+    public int encodeHex(int value) {
+        final int digits = Math.max(1,
+                (32 - Integer.numberOfLeadingZeros(value) + 3) / 4);
+        for (int i = digits - 1; i >= 0; --i) {
+            data[i] = (byte) HashSupport.HEX_DIGITS[value & 0xF];
+            value >>>= 4;
+        }
+        length = digits;
+        return digits;
+    }
+
+}
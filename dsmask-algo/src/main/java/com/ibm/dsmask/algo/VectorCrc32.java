@@ -13,6 +13,7 @@
 package com.ibm.dsmask.algo;
 
 import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
 
 /**
  *
@@ -40,8 +41,9 @@ public class VectorCrc32 {
         String value = o.toString();
         if (value.length()==0)
             return -2L;
-        final PureJavaCrc32 crc = new PureJavaCrc32();
-        crc.update(value.getBytes(StandardCharsets.UTF_8));
+        final HashSupport hs = HashSupport.current();
+        final CRC32 crc = hs.newCrc();
+        hs.update(crc, value);
         crc.update(2);
         if (userKeyBytes != null && userKeyBytes.length > 0)
             crc.update(userKeyBytes);
@@ -53,13 +55,11 @@ public class VectorCrc32 {
             return -1L;
         if (allNulls(values))
             return -1L; // This includes empty input
-        final PureJavaCrc32 crc = new PureJavaCrc32();
+        final HashSupport hs = HashSupport.current();
+        final CRC32 crc = hs.newCrc();
         for (Object value : values) {
-            if (value != null) {
-                String strValue = value.toString();
-                if (strValue.length() > 0)
-                    crc.update(strValue.getBytes(StandardCharsets.UTF_8));
-            }
+            if (value != null)
+                hs.update(crc, value.toString());
             crc.update(2);
         }
         if (userKeyBytes != null && userKeyBytes.length > 0)
@@ -12,15 +12,30 @@
  */
 package com.ibm.dsmask.uniq;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import com.ibm.dsmask.util.SimpleDiegester;
 
 /**
+ * Uniq-check service client.
  *
+ * When the server supports tagged requests, each batch gets its own tag,
+ * several batches can be in flight at the same time, and the responses
+ * are dispatched by the background reader thread.
+ * When the server supports protocol v2, the batches are encoded with
+ * UniqCodec, and may be compressed.
+ * With older servers, the synchronous request-response exchange is used.
  * @author zinal
  */
 public class UniqClient implements UniqProvider {
@@ -28,17 +43,38 @@ public class UniqClient implements UniqProvider {
     private final Socket socket;
     private final DataInputStream dais;
     private final DataOutputStream daos;
+    // true, if the server supports tagged requests
+    private final boolean tagged;
+    // true, if the server supports compact binary format
+    private final boolean v2;
+    // true, if v2 frames should be compressed
+    private final boolean compression;
+
+    private final AtomicInteger lastTag = new AtomicInteger(0);
+    private final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+    private final Thread reader;
+    private volatile boolean closing = false;
+    private volatile RuntimeException failure = null;
 
     public UniqClient(InetAddress address, int portNumber, String secret) {
+        this(address, portNumber, secret, false);
+    }
+
+    public UniqClient(InetAddress address, int portNumber, String secret,
+            boolean compression) {
         Socket theSocket = null;
         try {
             theSocket = new Socket(address, portNumber);
             theSocket.setKeepAlive(true);
             theSocket.setTcpNoDelay(true);
-            this.dais = new DataInputStream(theSocket.getInputStream());
+            this.dais = new DataInputStream(
+                    new BufferedInputStream(theSocket.getInputStream()));
             this.daos = new DataOutputStream(
                     new BufferedOutputStream(theSocket.getOutputStream()));
-            diegest(this.dais, this.daos, secret);
+            final Set<String> features = diegest(this.dais, this.daos, secret);
+            this.tagged = features.contains(UniqProtocol.FEATURE_TAGGED);
+            this.v2 = tagged && features.contains(UniqProtocol.FEATURE_V2);
+            this.compression = v2 && compression;
             this.socket = theSocket;
         } catch(Exception ex) {
             try {
@@ -47,51 +83,181 @@ public class UniqClient implements UniqProvider {
             } catch(Exception any) {}
             throw new RuntimeException(ex);
         }
+        if (tagged) {
+            this.reader = new Thread(this::readResponses);
+            this.reader.setDaemon(true);
+            this.reader.setName("uniq-client-reader#" + socket.getLocalPort());
+            this.reader.start();
+        } else {
+            this.reader = null;
+        }
+    }
+
+    /**
+     * @return true, if several batches can be in flight, false otherwise
+     */
+    public boolean isTagged() {
+        return tagged;
+    }
+
+    /**
+     * @return 2 for the compact binary format, 1 otherwise
+     */
+    public int getProtocolVersion() {
+        return v2 ? 2 : 1;
+    }
+
+    /**
+     * @return true, if the frames are compressed
+     */
+    public boolean isCompression() {
+        return compression;
     }
 
     @Override
     public UniqResponse[] store(String repository, UniqRequest[] rr) {
         if (rr==null || rr.length==0)
             return new UniqResponse[0];
-        try {
-            daos.write(123);
-            daos.writeUTF(repository);
-            daos.writeInt(rr.length);
-            for (UniqRequest r : rr) {
-                daos.writeInt(r.getIteration());
-                daos.writeUTF(r.getSource());
-                daos.writeUTF(r.getTarget());
-                if (r.getConflict()==null)
-                    daos.writeUTF("");
-                else
-                    daos.writeUTF(r.getConflict());
+        if (tagged) {
+            try {
+                return storeAsync(repository, rr).join();
+            } catch(CompletionException ce) {
+                if (ce.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) ce.getCause();
+                throw ce;
+            }
+        }
+        synchronized(daos) {
+            try {
+                daos.write(UniqProtocol.OP_STORE);
+                writeRequests(repository, rr);
+                daos.flush();
+                return readResponses(rr.length);
+            } catch(Exception ex) {
+                throw new RuntimeException("UniqClient.store() failed", ex);
             }
-            daos.flush();
-            int count = dais.readInt();
-            if (count != rr.length) {
-                throw new IllegalStateException("Protocol violation: "
-                        + "expected size of " + rr.length + ", got "
-                        + count);
+        }
+    }
+
+    @Override
+    public CompletableFuture<UniqResponse[]> storeAsync(String repository,
+            UniqRequest[] rr) {
+        if (!tagged || rr==null || rr.length==0)
+            return UniqProvider.super.storeAsync(repository, rr);
+        final CompletableFuture<UniqResponse[]> retval = new CompletableFuture<>();
+        final RuntimeException current = failure;
+        if (current != null) {
+            retval.completeExceptionally(current);
+            return retval;
+        }
+        // encode outside of the lock
+        final byte[] payload = v2 ? UniqCodec.encodeRequests(repository, rr) : null;
+        final int tag = lastTag.incrementAndGet();
+        pending.put(tag, new Pending(retval, rr.length));
+        if (failure != null && pending.remove(tag) != null) {
+            // the reader has failed after the check above
+            retval.completeExceptionally(failure);
+            return retval;
+        }
+        synchronized(daos) {
+            try {
+                if (v2) {
+                    daos.write(UniqProtocol.OP_STORE_V2);
+                    daos.writeInt(tag);
+                    UniqCodec.writeFrame(daos, payload, compression,
+                            compression ? UniqCodec.FLAG_DEFLATE_REPLY : 0);
+                } else {
+                    daos.write(UniqProtocol.OP_STORE_TAGGED);
+                    daos.writeInt(tag);
+                    writeRequests(repository, rr);
+                }
+                daos.flush();
+            } catch(Exception ex) {
+                pending.remove(tag);
+                retval.completeExceptionally(
+                        new RuntimeException("UniqClient.storeAsync() failed", ex));
             }
-            UniqResponse[] response = new UniqResponse[rr.length];
-            for (int i=0; i<rr.length; ++i) {
-                response[i] = new UniqResponse(
-                        dais.readBoolean(),
-                        dais.readInt());
+        }
+        return retval;
+    }
+
+    private void writeRequests(String repository, UniqRequest[] rr)
+            throws Exception {
+        daos.writeUTF(repository);
+        daos.writeInt(rr.length);
+        for (UniqRequest r : rr) {
+            daos.writeInt(r.getIteration());
+            daos.writeUTF(r.getSource());
+            daos.writeUTF(r.getTarget());
+            if (r.getConflict()==null)
+                daos.writeUTF("");
+            else
+                daos.writeUTF(r.getConflict());
+        }
+    }
+
+    private UniqResponse[] readResponses(int expected) throws Exception {
+        int count = dais.readInt();
+        if (count != expected) {
+            throw new IllegalStateException("Protocol violation: "
+                    + "expected size of " + expected + ", got "
+                    + count);
+        }
+        UniqResponse[] response = new UniqResponse[count];
+        for (int i=0; i<count; ++i) {
+            response[i] = new UniqResponse(
+                    dais.readBoolean(),
+                    dais.readInt());
+        }
+        return response;
+    }
+
+    /**
+     * Background reader loop for tagged responses.
+     */
+    private void readResponses() {
+        try {
+            while (true) {
+                final int tag = dais.readInt();
+                final Pending p = pending.remove(tag);
+                if (p==null) {
+                    throw new IllegalStateException("Protocol violation: "
+                            + "unexpected response tag " + tag);
+                }
+                if (v2) {
+                    final byte[] data = UniqCodec.readFrame(dais).payload;
+                    p.future.complete(UniqCodec.decodeResponses(data, p.count));
+                } else {
+                    p.future.complete(readResponses(p.count));
+                }
             }
-            return response;
         } catch(Exception ex) {
-            throw new RuntimeException("UniqClient.store() failed", ex);
+            final RuntimeException rx = closing ?
+                    new IllegalStateException("UniqClient closed") :
+                    new RuntimeException("UniqClient connection failed", ex);
+            failure = rx;
+            for (Integer tag : new ArrayList<>(pending.keySet())) {
+                final Pending p = pending.remove(tag);
+                if (p!=null)
+                    p.future.completeExceptionally(rx);
+            }
+            if (!closing) {
+                try { socket.close(); } catch(Exception any) {}
+            }
         }
     }
 
     @Override
     public void close() {
+        closing = true;
         try { socket.close(); } catch(Exception ex) {}
+        if (reader!=null) {
+            try { reader.join(); } catch(InterruptedException ix) {}
+        }
     }
 
-    private static void diegest(DataInputStream dais, DataOutputStream daos,
-            String secret) throws Exception {
+    private static Set<String> diegest(DataInputStream dais,
+            DataOutputStream daos, String secret) throws Exception {
         String serverRequest = dais.readUTF();
         String clientResponse = new SimpleDiegester(secret)
                 .makeResponse(serverRequest);
@@ -101,6 +267,17 @@ public class UniqClient implements UniqProvider {
         if (status!=1) {
             throw new Exception("Diegest failed, server denied access");
         }
+        return UniqProtocol.parseFeatures(serverRequest);
+    }
+
+    private static final class Pending {
+        final CompletableFuture<UniqResponse[]> future;
+        final int count;
+
+        Pending(CompletableFuture<UniqResponse[]> future, int count) {
+            this.future = future;
+            this.count = count;
+        }
     }
 
 }
@@ -24,6 +24,7 @@ public class UniqClientFactory implements UniqProviderFactory {
     private final InetAddress address;
     private final int port;
     private final String secret;
+    private boolean compression = false;
 
     public UniqClientFactory(InetAddress address, int port, String secret) {
         this.address = address;
@@ -41,9 +42,17 @@ public class UniqClientFactory implements UniqProviderFactory {
         this.secret = secret;
     }
 
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
     @Override
     public UniqProvider createProvider() {
-        return new UniqClient(address, port, secret);
+        return new UniqClient(address, port, secret, compression);
     }
 
 }
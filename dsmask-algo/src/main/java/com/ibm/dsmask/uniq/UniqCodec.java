@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.uniq;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encoder and decoder for the compact binary protocol v2.
+ *
+ * Frame: flags octet, then payload length as varint, then the payload.
+ * Deflated frames also carry the original payload length before the
+ * compressed length.
+ *
+ * Request payload: repository, count, then for each request the
+ * iteration number (varint) and the source, target and conflict values
+ * as length-prefixed UTF-8 strings.
+ *
+ * Response payload: count, mode octet, then the bitmap of
+ * correctly linked values (only if some are not linked),
+ * and the list of index-iteration pairs (only if some iterations
+ * are returned). The common "all linked" answer is 2-3 bytes.
+ * @author zinal
+ */
+public final class UniqCodec {
+
+    /** Frame payload is deflated. */
+    public static final int FLAG_DEFLATE = 1;
+    /** Request flag: the response should be deflated. */
+    public static final int FLAG_DEFLATE_REPLY = 2;
+    /** Payloads shorter than this are never compressed. */
+    public static final int COMPRESS_THRESHOLD = 512;
+    /** Max payload length accepted. */
+    public static final int MAX_FRAME = 256 * 1024 * 1024;
+
+    // response mode bits
+    private static final int MODE_BITMAP = 1;
+    private static final int MODE_ITERATIONS = 2;
+
+    private UniqCodec() {}
+
+    /**
+     * Decoded store request.
+     */
+    public static final class Batch {
+        public final String repository;
+        public final UniqRequest[] requests;
+
+        public Batch(String repository, UniqRequest[] requests) {
+            this.repository = repository;
+            this.requests = requests;
+        }
+    }
+
+    /**
+     * Frame flags and payload.
+     */
+    public static final class Frame {
+        public final int flags;
+        public final byte[] payload;
+
+        public Frame(int flags, byte[] payload) {
+            this.flags = flags;
+            this.payload = payload;
+        }
+
+        public boolean isDeflateReply() {
+            return (flags & FLAG_DEFLATE_REPLY) != 0;
+        }
+    }
+
+    public static byte[] encodeRequests(String repository, UniqRequest[] rr) {
+        final Writer w = new Writer(32 + 48 * rr.length);
+        w.writeString(repository);
+        w.writeVarint(rr.length);
+        for (UniqRequest r : rr) {
+            w.writeVarint(r.getIteration());
+            w.writeString(r.getSource());
+            w.writeString(r.getTarget());
+            w.writeString(r.getConflict());
+        }
+        return w.toByteArray();
+    }
+
+    public static Batch decodeRequests(byte[] data, int maxCount) {
+        final Reader r = new Reader(data);
+        final String repository = r.readString();
+        final int count = r.readVarint();
+        if (count < 0 || count > maxCount) {
+            throw new IllegalStateException("Protocol violation: "
+                    + "req_count=" + count);
+        }
+        final UniqRequest[] reqs = new UniqRequest[count];
+        for (int i=0; i<count; ++i) {
+            final UniqRequest req = new UniqRequest();
+            req.setIteration(r.readVarint());
+            req.setSource(r.readString());
+            req.setTarget(r.readString());
+            final String conflict = r.readString();
+            req.setConflict(conflict.length()==0 ? null : conflict);
+            reqs[i] = req;
+        }
+        r.checkEnd();
+        return new Batch(repository, reqs);
+    }
+
+    public static byte[] encodeResponses(UniqResponse[] resp) {
+        int mode = 0;
+        int iterCount = 0;
+        for (UniqResponse r : resp) {
+            if (!r.isLinkedCorrectly())
+                mode |= MODE_BITMAP;
+            if (r.getIteration() != -1)
+                ++iterCount;
+        }
+        if (iterCount > 0)
+            mode |= MODE_ITERATIONS;
+        final Writer w = new Writer(8 + ((mode & MODE_BITMAP) != 0 ?
+                resp.length / 8 + 1 : 0) + 6 * iterCount);
+        w.writeVarint(resp.length);
+        w.writeByte(mode);
+        if ((mode & MODE_BITMAP) != 0) {
+            for (int i=0; i<resp.length; i+=8) {
+                int bits = 0;
+                for (int j=0; j<8 && (i+j)<resp.length; ++j) {
+                    if (resp[i+j].isLinkedCorrectly())
+                        bits |= (1 << j);
+                }
+                w.writeByte(bits);
+            }
+        }
+        if ((mode & MODE_ITERATIONS) != 0) {
+            w.writeVarint(iterCount);
+            int last = 0;
+            for (int i=0; i<resp.length; ++i) {
+                final int iteration = resp[i].getIteration();
+                if (iteration != -1) {
+                    w.writeVarint(i - last);
+                    // shifted, so that -1 is not special-cased
+                    w.writeVarint(iteration + 1);
+                    last = i;
+                }
+            }
+        }
+        return w.toByteArray();
+    }
+
+    public static UniqResponse[] decodeResponses(byte[] data, int expected) {
+        final Reader r = new Reader(data);
+        final int count = r.readVarint();
+        if (count != expected) {
+            throw new IllegalStateException("Protocol violation: "
+                    + "expected size of " + expected + ", got "
+                    + count);
+        }
+        final int mode = r.readByte();
+        final UniqResponse[] resp = new UniqResponse[count];
+        if ((mode & MODE_BITMAP) != 0) {
+            for (int i=0; i<count; i+=8) {
+                final int bits = r.readByte();
+                for (int j=0; j<8 && (i+j)<count; ++j)
+                    resp[i+j] = new UniqResponse((bits & (1 << j)) != 0);
+            }
+        } else {
+            for (int i=0; i<count; ++i)
+                resp[i] = new UniqResponse(true);
+        }
+        if ((mode & MODE_ITERATIONS) != 0) {
+            final int iterCount = r.readVarint();
+            int pos = 0;
+            for (int i=0; i<iterCount; ++i) {
+                pos += r.readVarint();
+                if (pos < 0 || pos >= count)
+                    throw new IllegalStateException("Protocol violation: "
+                            + "response index " + pos);
+                resp[pos].setIteration(r.readVarint() - 1);
+            }
+        }
+        r.checkEnd();
+        return resp;
+    }
+
+    /**
+     * Write the frame, compressing the payload if requested and useful.
+     * @param out Output stream
+     * @param payload Payload bytes
+     * @param compress true, if the payload should be deflated
+     * @param flags Extra flags to be passed
+     * @throws IOException on write error
+     */
+    public static void writeFrame(DataOutput out, byte[] payload,
+            boolean compress, int flags) throws IOException {
+        flags &= ~FLAG_DEFLATE;
+        if (compress && payload.length >= COMPRESS_THRESHOLD) {
+            final byte[] packed = deflate(payload);
+            if (packed != null) {
+                out.writeByte(flags | FLAG_DEFLATE);
+                writeVarint(out, payload.length);
+                writeVarint(out, packed.length);
+                out.write(packed);
+                return;
+            }
+        }
+        out.writeByte(flags);
+        writeVarint(out, payload.length);
+        out.write(payload);
+    }
+
+    /**
+     * Read the frame and decompress its payload.
+     * @param in Input stream
+     * @return Frame flags and payload bytes
+     * @throws IOException on read error
+     */
+    public static Frame readFrame(DataInput in) throws IOException {
+        final int flags = in.readUnsignedByte();
+        final int original = ((flags & FLAG_DEFLATE) != 0) ?
+                checkLength(readVarint(in)) : -1;
+        final byte[] data = new byte[checkLength(readVarint(in))];
+        in.readFully(data);
+        if (original < 0)
+            return new Frame(flags, data);
+        return new Frame(flags, inflate(data, original));
+    }
+
+    /**
+     * Compute the length of the frame starting at the specified position.
+     * @param data Buffer contents
+     * @param pos Frame start (the flags octet)
+     * @param limit End of data in the buffer
+     * @return Position after the frame, or -1 if more data is needed
+     */
+    public static int scanFrame(byte[] data, int pos, int limit) {
+        if (pos >= limit)
+            return -1;
+        final boolean deflated = (data[pos] & FLAG_DEFLATE) != 0;
+        ++pos;
+        int length = 0;
+        for (int step = deflated ? 2 : 1; step > 0; --step) {
+            length = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (pos >= limit)
+                    return -1;
+                if (shift > 28)
+                    throw new IllegalStateException("Protocol violation: "
+                            + "bad varint");
+                final int b = data[pos++];
+                length |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    break;
+            }
+            checkLength(length);
+        }
+        pos += length;
+        return (pos > limit) ? -1 : pos;
+    }
+
+    public static void writeVarint(DataOutput out, int value)
+            throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public static int readVarint(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalStateException("Protocol violation: bad varint");
+    }
+
+    private static int checkLength(int length) {
+        if (length < 0 || length > MAX_FRAME)
+            throw new IllegalStateException("Protocol violation: "
+                    + "frame length " + length);
+        return length;
+    }
+
+    private static byte[] deflate(byte[] data) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            // no point in the output larger than the input
+            final byte[] out = new byte[data.length];
+            int length = 0;
+            while (!deflater.finished() && length < out.length)
+                length += deflater.deflate(out, length, out.length - length);
+            if (!deflater.finished())
+                return null;
+            return Arrays.copyOf(out, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int original) {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            final byte[] out = new byte[original];
+            int length = 0;
+            while (length < original && !inflater.finished()) {
+                final int step = inflater.inflate(out, length, original - length);
+                if (step == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                length += step;
+            }
+            if (length != original || !inflater.finished())
+                throw new IllegalStateException("Protocol violation: "
+                        + "bad compressed frame");
+            return out;
+        } catch(DataFormatException dfe) {
+            throw new IllegalStateException("Protocol violation: "
+                    + "bad compressed frame", dfe);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Growable output buffer.
+     */
+    private static final class Writer {
+        private byte[] data;
+        private int length = 0;
+
+        Writer(int capacity) {
+            this.data = new byte[Math.max(16, capacity)];
+        }
+
+        void ensure(int extra) {
+            if (length + extra > data.length)
+                data = Arrays.copyOf(data, Math.max(2 * data.length, length + extra));
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            data[length++] = (byte) b;
+        }
+
+        void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            if (value==null || value.length()==0) {
+                writeVarint(0);
+                return;
+            }
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, data, length, bytes.length);
+            length += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, length);
+        }
+    }
+
+    /**
+     * Input buffer cursor.
+     */
+    private static final class Reader {
+        private final byte[] data;
+        private int pos = 0;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int readByte() {
+            if (pos >= data.length)
+                throw new IllegalStateException("Protocol violation: "
+                        + "unexpected end of frame");
+            return data[pos++] & 0xFF;
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                final int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IllegalStateException("Protocol violation: bad varint");
+        }
+
+        String readString() {
+            final int length = readVarint();
+            if (length < 0 || length > data.length - pos)
+                throw new IllegalStateException("Protocol violation: "
+                        + "unexpected end of frame");
+            final String value = new String(data, pos, length,
+                    StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        void checkEnd() {
+            if (pos != data.length)
+                throw new IllegalStateException("Protocol violation: "
+                        + "extra data in frame");
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.uniq;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Constants and helpers for the uniq-check network protocol.
+ *
+ * The server advertises the supported protocol features by appending
+ * them to the random handshake request. Older clients just compute
+ * the MAC over the whole request text, so they keep working,
+ * while newer clients use the advertised features.
+ * @author zinal
+ */
+public final class UniqProtocol {
+
+    /** Synchronous store request, answered immediately. */
+    public static final int OP_STORE = 123;
+    /** Tagged store request, answers may come out of order. */
+    public static final int OP_STORE_TAGGED = 124;
+    /** Tagged store request in the compact binary format (v2). */
+    public static final int OP_STORE_V2 = 125;
+
+    /** Start of the features list in the handshake request. */
+    public static final String FEATURES_MARKER = "#dsmask-uniq:";
+    /** Support for tagged (asynchronous) store requests. */
+    public static final String FEATURE_TAGGED = "tagged";
+    /** Support for the compact binary format, see UniqCodec. */
+    public static final String FEATURE_V2 = "v2";
+
+    private UniqProtocol() {}
+
+    /**
+     * Append the features list to the handshake request.
+     * @param request Random handshake request
+     * @param features Features supported by the server
+     * @return Handshake request with features
+     */
+    public static String appendFeatures(String request, String... features) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(request).append(FEATURES_MARKER);
+        boolean comma = false;
+        for (String f : features) {
+            if (comma)
+                sb.append(",");
+            sb.append(f);
+            comma = true;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Extract the features list from the handshake request.
+     * @param request Handshake request received from the server
+     * @return Set of features, empty for older servers
+     */
+    public static Set<String> parseFeatures(String request) {
+        if (request==null)
+            return Collections.emptySet();
+        final int pos = request.indexOf(FEATURES_MARKER);
+        if (pos < 0)
+            return Collections.emptySet();
+        final String text = request.substring(pos + FEATURES_MARKER.length());
+        if (text.length()==0)
+            return Collections.emptySet();
+        return new HashSet<>(Arrays.asList(text.split("[,]")));
+    }
+
+}
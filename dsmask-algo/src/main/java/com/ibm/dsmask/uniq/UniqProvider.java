@@ -12,6 +12,8 @@
  */
 package com.ibm.dsmask.uniq;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Operations provided by the dsmask-uniq service implementation.
  * @author zinal
@@ -27,6 +29,25 @@ public interface UniqProvider extends AutoCloseable {
      */
     UniqResponse[] store(String repository, UniqRequest[] rr);
 
+    /**
+     * Submit a batch of requests without waiting for the responses.
+     * Several batches may be in flight at the same time.
+     * The default implementation just performs the synchronous call.
+     * @param repository Repository name
+     * @param rr Requests
+     * @return Future for the responses
+     */
+    default CompletableFuture<UniqResponse[]> storeAsync(String repository,
+            UniqRequest[] rr) {
+        final CompletableFuture<UniqResponse[]> retval = new CompletableFuture<>();
+        try {
+            retval.complete(store(repository, rr));
+        } catch(RuntimeException ex) {
+            retval.completeExceptionally(ex);
+        }
+        return retval;
+    }
+
     /**
      * Close should not throw.
      */
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Read-only memory-mapped dictionary, produced by CompiledDictWriter.
+ * Rows are located by their integer id through the offset index,
+ * and the values are decoded from the UTF-8 heap.
+ *
+ * File layout (big-endian):
+ *   magic (8 bytes), version (int), database file size (long),
+ *   database file modification time (long, -1 until bound),
+ *   row count (int), column count (int),
+ *   id column name and value column names (as DataOutput.writeUTF),
+ *   row offsets relative to the heap start (int per id, -1 for missing ids),
+ *   heap with the row values (unsigned short length + UTF-8 bytes,
+ *   0xFFFF meaning null).
+ *
+ * The file is bound to the state of the H2 database file it has been
+ * exported from, after the database is closed, and is only used
+ * while the database file stays the same.
+ *
+ * The mapping is shared between the copies, while each copy has
+ * its own read buffer, so a single copy should only be used
+ * by a single thread.
+ * @author zinal
+ */
+public final class CompiledDict {
+
+    public static final String EXTENSION = ".hdict";
+    public static final byte[] MAGIC =
+            "DSMHDICT".getBytes(StandardCharsets.US_ASCII);
+    public static final int VERSION = 1;
+    public static final int NULL_LENGTH = 0xFFFF;
+
+    // offset of the database file size and modification time
+    private static final int BIND_OFFSET = MAGIC.length + 4;
+
+    private final File file;
+    private final long dbSize;
+    private final long dbModified;
+    private final String idColumn;
+    private final String[] columns;
+    private final int rowCount;
+    private final int indexBase;
+    private final int heapBase;
+    private final ByteBuffer data;
+    // decoding buffer
+    private byte[] work = new byte[256];
+
+    private CompiledDict(File file, long dbSize, long dbModified,
+            String idColumn, String[] columns,
+            int rowCount, int indexBase, int heapBase, ByteBuffer data) {
+        this.file = file;
+        this.dbSize = dbSize;
+        this.dbModified = dbModified;
+        this.idColumn = idColumn;
+        this.columns = columns;
+        this.rowCount = rowCount;
+        this.indexBase = indexBase;
+        this.heapBase = heapBase;
+        this.data = data;
+    }
+
+    /**
+     * Map the dictionary file into memory.
+     * @param file Dictionary file
+     * @return Dictionary object
+     * @throws IOException
+     */
+    public static CompiledDict open(File file) throws IOException {
+        final long dbSize;
+        final long dbModified;
+        final String idColumn;
+        final String[] columns;
+        final int rowCount;
+        final int indexBase;
+        try (FileInputStream fis = new FileInputStream(file)) {
+            final CountingStream cs = new CountingStream(fis);
+            final DataInputStream dis = new DataInputStream(cs);
+            final byte[] magic = new byte[MAGIC.length];
+            dis.readFully(magic);
+            if (! Arrays.equals(magic, MAGIC))
+                throw new IOException("Not a compiled dictionary: " + file);
+            final int version = dis.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported dictionary version "
+                        + version + " in " + file);
+            dbSize = dis.readLong();
+            dbModified = dis.readLong();
+            rowCount = dis.readInt();
+            final int columnCount = dis.readInt();
+            if (rowCount < 0 || columnCount < 0)
+                throw new IOException("Corrupted dictionary header in " + file);
+            idColumn = dis.readUTF();
+            columns = new String[columnCount];
+            for (int i=0; i<columnCount; ++i)
+                columns[i] = dis.readUTF();
+            indexBase = (int) cs.position;
+        }
+        final long heapBase = indexBase + 4L * rowCount;
+        final ByteBuffer data;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final long size = raf.length();
+            if (size < heapBase || size > Integer.MAX_VALUE)
+                throw new IOException("Illegal dictionary file size "
+                        + size + " for " + file);
+            data = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        return new CompiledDict(file, dbSize, dbModified, idColumn, columns,
+                rowCount, indexBase, (int) heapBase, data);
+    }
+
+    /**
+     * Bind the dictionary file to the current state of the database file.
+     * @param file Dictionary file
+     * @param dbFile H2 database file, which has to be closed
+     * @throws IOException
+     */
+    public static void bind(File file, File dbFile) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            final byte[] magic = new byte[MAGIC.length];
+            raf.readFully(magic);
+            if (! Arrays.equals(magic, MAGIC))
+                throw new IOException("Not a compiled dictionary: " + file);
+            final int version = raf.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported dictionary version "
+                        + version + " in " + file);
+            raf.seek(BIND_OFFSET);
+            raf.writeLong(dbFile.length());
+            raf.writeLong(dbFile.lastModified());
+        }
+    }
+
+    /**
+     * Check that the dictionary has been exported from the database file.
+     * @param dbFile H2 database file
+     * @return true, if the file matches the dictionary, false otherwise
+     */
+    public boolean matches(File dbFile) {
+        return dbModified > 0L
+                && dbFile.length() == dbSize
+                && dbFile.lastModified() == dbModified;
+    }
+
+    /**
+     * @return Dictionary copy sharing the mapping, for use by another thread
+     */
+    public CompiledDict copy() {
+        return new CompiledDict(file, dbSize, dbModified, idColumn, columns,
+                rowCount, indexBase, heapBase, data.duplicate());
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getIdColumn() {
+        return idColumn;
+    }
+
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    /**
+     * @return Max id plus one
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @param name Column name
+     * @return Column position, or -1 if there is no such column
+     */
+    public int findColumn(String name) {
+        for (int i=0; i<columns.length; ++i) {
+            if (columns[i].equalsIgnoreCase(name))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Read the row values.
+     * @param id Row id
+     * @param positions Column positions to be read
+     * @param output Output values, in the order of positions
+     * @return true, if the row was found, false otherwise
+     */
+    public boolean read(long id, int[] positions, Object[] output) {
+        if (id < 0 || id >= rowCount)
+            return false;
+        final int offset = data.getInt(indexBase + 4 * (int) id);
+        if (offset < 0)
+            return false;
+        int pos = heapBase + offset;
+        for (int col = 0; col < columns.length; ++col) {
+            final int length = data.getShort(pos) & 0xFFFF;
+            pos += 2;
+            for (int i=0; i<positions.length; ++i) {
+                if (positions[i]==col)
+                    output[i] = decode(pos, length);
+            }
+            if (length != NULL_LENGTH)
+                pos += length;
+        }
+        return true;
+    }
+
+    private String decode(int pos, int length) {
+        if (length == NULL_LENGTH)
+            return null;
+        if (work.length < length)
+            work = new byte[length];
+        data.position(pos);
+        data.get(work, 0, length);
+        return new String(work, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Input stream counting the bytes read.
+     */
+    private static final class CountingStream extends BufferedInputStream {
+
+        long position = 0L;
+
+        CountingStream(FileInputStream fis) {
+            super(fis);
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            final int v = super.read();
+            if (v >= 0)
+                ++position;
+            return v;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len)
+                throws IOException {
+            final int v = super.read(b, off, len);
+            if (v > 0)
+                position += v;
+            return v;
+        }
+
+    }
+
+}
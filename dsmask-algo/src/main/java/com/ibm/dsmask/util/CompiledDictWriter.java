@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writer for the compiled dictionary files, see CompiledDict for the format.
+ * Rows have to be added in the ascending order of their ids.
+ * The heap is collected in a temporary file, and the final file
+ * is written on close. The file has to be bound to the database file
+ * with CompiledDict.bind() after the database is closed.
+ * @author zinal
+ */
+public class CompiledDictWriter implements AutoCloseable {
+
+    private final File file;
+    private final File heapFile;
+    private final String idColumn;
+    private final String[] columns;
+    private DataOutputStream heap;
+    private int heapSize = 0;
+    // row offsets, -1 for missing ids
+    private int[] index = new int[1024];
+    private int rowCount = 0;
+    private boolean failed = false;
+
+    public CompiledDictWriter(File file, String idColumn, List<String> columns)
+            throws IOException {
+        this.file = file;
+        this.idColumn = idColumn;
+        this.columns = columns.toArray(new String[columns.size()]);
+        this.heapFile = new File(file.getPath() + ".tmp");
+        this.heap = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(heapFile)));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Add the row.
+     * @param id Row id, greater than the id of the previous row
+     * @param values Row values, one per column
+     * @throws IOException
+     */
+    public void add(long id, Object[] values) throws IOException {
+        if (id < rowCount || id >= Integer.MAX_VALUE / 4)
+            throw new IllegalArgumentException("Illegal dictionary id " + id
+                    + ", must be ascending and non-negative");
+        if (values.length != columns.length)
+            throw new IllegalArgumentException("Expected " + columns.length
+                    + " values, got " + values.length);
+        final int pos = (int) id;
+        if (pos >= index.length)
+            index = Arrays.copyOf(index, Math.max(pos + 1, index.length * 2));
+        Arrays.fill(index, rowCount, pos, -1);
+        index[pos] = heapSize;
+        rowCount = pos + 1;
+        try {
+            for (Object v : values) {
+                if (v==null) {
+                    heap.writeShort(CompiledDict.NULL_LENGTH);
+                    heapSize += 2;
+                } else {
+                    final byte[] b = v.toString().getBytes(StandardCharsets.UTF_8);
+                    if (b.length >= CompiledDict.NULL_LENGTH)
+                        throw new IllegalArgumentException("Dictionary value "
+                                + "too long at id " + id);
+                    heap.writeShort(b.length);
+                    heap.write(b);
+                    heapSize += 2 + b.length;
+                }
+                if (heapSize < 0)
+                    throw new IOException("Dictionary file exceeds 2 GB: " + file);
+            }
+        } catch(IOException | RuntimeException ex) {
+            failed = true;
+            throw ex;
+        }
+    }
+
+    /**
+     * Write the final dictionary file, and remove the temporary one.
+     * Nothing is written if the adding of rows has failed.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (heap==null)
+            return;
+        try {
+            heap.close();
+            heap = null;
+            if (! failed)
+                writeFinal();
+        } finally {
+            heapFile.delete();
+        }
+    }
+
+    private void writeFinal() throws IOException {
+        try (DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            dos.write(CompiledDict.MAGIC);
+            dos.writeInt(CompiledDict.VERSION);
+            // not bound to the database file yet
+            dos.writeLong(-1L);
+            dos.writeLong(-1L);
+            dos.writeInt(rowCount);
+            dos.writeInt(columns.length);
+            dos.writeUTF(idColumn);
+            for (String c : columns)
+                dos.writeUTF(c);
+            for (int i=0; i<rowCount; ++i)
+                dos.writeInt(index[i]);
+            try (InputStream is = new FileInputStream(heapFile)) {
+                final byte[] buf = new byte[65536];
+                int n;
+                while ((n = is.read(buf)) > 0)
+                    dos.write(buf, 0, n);
+            }
+        }
+        if (file.length() > Integer.MAX_VALUE) {
+            file.delete();
+            throw new IOException("Dictionary file exceeds 2 GB: " + file);
+        }
+    }
+
+    /**
+     * Export the dictionary table into the compiled file.
+     * All character columns except the id column are included.
+     * @param con Database connection
+     * @param tableName Dictionary table name
+     * @param idColumn Integer id column name
+     * @param file Output file
+     * @return Number of rows exported
+     * @throws Exception
+     */
+    public static int export(Connection con, String tableName,
+            String idColumn, File file) throws Exception {
+        final List<String> columns = new ArrayList<>();
+        try (PreparedStatement ps = con.prepareStatement(
+                "SELECT * FROM " + tableName + " WHERE 1=0")) {
+            try (ResultSet rs = ps.executeQuery()) {
+                final ResultSetMetaData md = rs.getMetaData();
+                for (int i=1; i<=md.getColumnCount(); ++i) {
+                    final String name = md.getColumnName(i);
+                    if (name.equalsIgnoreCase(idColumn))
+                        continue;
+                    switch (md.getColumnType(i)) {
+                        case Types.CHAR: case Types.VARCHAR:
+                        case Types.NCHAR: case Types.NVARCHAR:
+                        case Types.LONGVARCHAR: case Types.LONGNVARCHAR:
+                            columns.add(name.toLowerCase());
+                            break;
+                    }
+                }
+            }
+        }
+        final StringBuilder sql = new StringBuilder();
+        sql.append("SELECT ").append(idColumn);
+        for (String c : columns)
+            sql.append(", ").append(c);
+        sql.append(" FROM ").append(tableName)
+                .append(" ORDER BY ").append(idColumn);
+        int count = 0;
+        try (CompiledDictWriter writer = new CompiledDictWriter(file,
+                idColumn.toLowerCase(), columns)) {
+            try (PreparedStatement ps = con.prepareStatement(sql.toString())) {
+                try (ResultSet rs = ps.executeQuery()) {
+                    final Object[] values = new Object[columns.size()];
+                    while (rs.next()) {
+                        for (int i=0; i<values.length; ++i)
+                            values[i] = rs.getString(i+2);
+                        writer.add(rs.getLong(1), values);
+                        ++count;
+                    }
+                }
+            } catch(Exception ex) {
+                writer.failed = true;
+                throw ex;
+            }
+        }
+        return count;
+    }
+
+}
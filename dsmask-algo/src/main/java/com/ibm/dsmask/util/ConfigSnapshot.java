@@ -0,0 +1,405 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of the configuration database tables,
+ * allowing to load the masking context with a single file read.
+ *
+ * The snapshot is written next to the H2 database, and remembers
+ * the size and modification time of the database file it was taken from.
+ * A snapshot not matching the database file should be ignored.
+ *
+ * File layout (big-endian):
+ *   magic (8 bytes), version (int), database file size (long),
+ *   database file modification time (long), table count (int),
+ *   then for each table: name (as DataOutput.writeUTF), column count (int),
+ *   column names, row count (int), and the tagged values row by row.
+ * @author zinal
+ */
+public final class ConfigSnapshot {
+
+    public static final String EXTENSION = ".csnap";
+    public static final byte[] MAGIC =
+            "DSMCSNAP".getBytes(StandardCharsets.US_ASCII);
+    public static final int VERSION = 2;
+
+    /**
+     * Tables needed to load the masking context.
+     */
+    public static final String[] CONFIG_TABLES = {
+        "msk_key", "msk_func", "msk_rule", "msk_step", "msk_step_arg",
+        "msk_profile", "msk_op", "msk_op_arg", "msk_op_out"
+    };
+
+    // value tags
+    private static final byte T_NULL = 0;
+    private static final byte T_INT = 1;
+    private static final byte T_LONG = 2;
+    private static final byte T_STRING = 3;
+    private static final byte T_BOOLEAN = 4;
+    private static final byte T_ARRAY = 5;
+    private static final byte T_BYTES = 6;
+
+    private final Map<String, Table> tables = new HashMap<>();
+    private long dbSize = -1L;
+    private long dbModified = -1L;
+
+    private ConfigSnapshot() {
+    }
+
+    /**
+     * @param dbPath H2 database pathname, without the extension
+     * @return Snapshot file for the database
+     */
+    public static File snapshotFile(String dbPath) {
+        return new File(DsMaskUtil.resolvePath(dbPath) + EXTENSION);
+    }
+
+    /**
+     * @param dbPath H2 database pathname, without the extension
+     * @return H2 database file
+     */
+    public static File databaseFile(String dbPath) {
+        return new File(DsMaskUtil.resolvePath(dbPath) + ".mv.db");
+    }
+
+    /**
+     * Grab the configuration tables from the database.
+     * @param con Database connection
+     * @return Snapshot object, not yet bound to the database file
+     * @throws Exception
+     */
+    public static ConfigSnapshot load(Connection con) throws Exception {
+        final ConfigSnapshot cs = new ConfigSnapshot();
+        for (String tableName : CONFIG_TABLES) {
+            try (PreparedStatement ps = con.prepareStatement(
+                    "SELECT * FROM " + tableName)) {
+                try (ResultSet rs = ps.executeQuery()) {
+                    final ResultSetMetaData md = rs.getMetaData();
+                    final String[] columns = new String[md.getColumnCount()];
+                    for (int i=0; i<columns.length; ++i)
+                        columns[i] = md.getColumnName(i+1).toLowerCase();
+                    final Table t = new Table(tableName, columns);
+                    while (rs.next()) {
+                        final Object[] row = new Object[columns.length];
+                        for (int i=0; i<columns.length; ++i)
+                            row[i] = convert(rs.getObject(i+1));
+                        t.rows.add(row);
+                    }
+                    cs.tables.put(tableName, t);
+                }
+            }
+        }
+        return cs;
+    }
+
+    /**
+     * Convert the value read from the database to one of the types
+     * supported by the snapshot: Integer, Long, String, Boolean,
+     * byte[] or Object[].
+     * @param v Value from the result set
+     * @return Converted value
+     * @throws Exception
+     */
+    public static Object convert(Object v) throws Exception {
+        if (v instanceof Clob) {
+            final Clob c = (Clob) v;
+            return c.getSubString(1, (int) c.length());
+        }
+        if (v instanceof Blob) {
+            final Blob b = (Blob) v;
+            return b.getBytes(1, (int) b.length());
+        }
+        if (v instanceof Array)
+            v = ((Array) v).getArray();
+        if (v instanceof Object[]) {
+            final Object[] src = (Object[]) v;
+            final Object[] dst = new Object[src.length];
+            for (int i=0; i<src.length; ++i)
+                dst[i] = convert(src[i]);
+            return dst;
+        }
+        if (v instanceof Short || v instanceof Byte)
+            return ((Number) v).intValue();
+        if (v==null || v instanceof Integer || v instanceof Long
+                || v instanceof String || v instanceof Boolean
+                || v instanceof byte[])
+            return v;
+        return v.toString();
+    }
+
+    /**
+     * Write the snapshot file, bound to the current state of the database file.
+     * @param file Snapshot file
+     * @param dbFile H2 database file, which has to be closed
+     * @throws IOException
+     */
+    public void write(File file, File dbFile) throws IOException {
+        dbSize = dbFile.length();
+        dbModified = dbFile.lastModified();
+        try (DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            dos.write(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeLong(dbSize);
+            dos.writeLong(dbModified);
+            dos.writeInt(tables.size());
+            for (Table t : tables.values()) {
+                dos.writeUTF(t.name);
+                dos.writeInt(t.columns.length);
+                for (String c : t.columns)
+                    dos.writeUTF(c);
+                dos.writeInt(t.rows.size());
+                for (Object[] row : t.rows) {
+                    for (Object v : row)
+                        writeValue(dos, v);
+                }
+            }
+        }
+    }
+
+    private static void writeValue(DataOutputStream dos, Object v)
+            throws IOException {
+        if (v==null) {
+            dos.writeByte(T_NULL);
+        } else if (v instanceof Integer) {
+            dos.writeByte(T_INT);
+            dos.writeInt((Integer) v);
+        } else if (v instanceof Long) {
+            dos.writeByte(T_LONG);
+            dos.writeLong((Long) v);
+        } else if (v instanceof Boolean) {
+            dos.writeByte(T_BOOLEAN);
+            dos.writeBoolean((Boolean) v);
+        } else if (v instanceof byte[]) {
+            final byte[] b = (byte[]) v;
+            dos.writeByte(T_BYTES);
+            dos.writeInt(b.length);
+            dos.write(b);
+        } else if (v instanceof Object[]) {
+            final Object[] a = (Object[]) v;
+            dos.writeByte(T_ARRAY);
+            dos.writeInt(a.length);
+            for (Object x : a)
+                writeValue(dos, x);
+        } else {
+            // strings may exceed the writeUTF limit
+            final byte[] b = v.toString().getBytes(StandardCharsets.UTF_8);
+            dos.writeByte(T_STRING);
+            dos.writeInt(b.length);
+            dos.write(b);
+        }
+    }
+
+    /**
+     * Read the snapshot file.
+     * @param file Snapshot file
+     * @return Snapshot object
+     * @throws IOException
+     */
+    public static ConfigSnapshot read(File file) throws IOException {
+        // the whole file is read at once
+        final byte[] data = Files.readAllBytes(file.toPath());
+        try (DataInputStream dis = new DataInputStream(
+                new ByteArrayInputStream(data))) {
+            final byte[] magic = new byte[MAGIC.length];
+            dis.readFully(magic);
+            if (! Arrays.equals(magic, MAGIC))
+                throw new IOException("Not a configuration snapshot: " + file);
+            final int version = dis.readInt();
+            // version 1 is the same format without the byte arrays
+            if (version < 1 || version > VERSION)
+                throw new IOException("Unsupported snapshot version "
+                        + version + " in " + file);
+            final ConfigSnapshot cs = new ConfigSnapshot();
+            cs.dbSize = dis.readLong();
+            cs.dbModified = dis.readLong();
+            final int tableCount = dis.readInt();
+            for (int ti=0; ti<tableCount; ++ti) {
+                final String name = dis.readUTF();
+                final String[] columns = new String[dis.readInt()];
+                for (int i=0; i<columns.length; ++i)
+                    columns[i] = dis.readUTF();
+                final Table t = new Table(name, columns);
+                final int rowCount = dis.readInt();
+                for (int r=0; r<rowCount; ++r) {
+                    final Object[] row = new Object[columns.length];
+                    for (int i=0; i<columns.length; ++i)
+                        row[i] = readValue(dis);
+                    t.rows.add(row);
+                }
+                cs.tables.put(name, t);
+            }
+            return cs;
+        }
+    }
+
+    private static Object readValue(DataInputStream dis) throws IOException {
+        final byte tag = dis.readByte();
+        switch (tag) {
+            case T_NULL:
+                return null;
+            case T_INT:
+                return dis.readInt();
+            case T_LONG:
+                return dis.readLong();
+            case T_BOOLEAN:
+                return dis.readBoolean();
+            case T_STRING: {
+                final byte[] b = new byte[dis.readInt()];
+                dis.readFully(b);
+                return new String(b, StandardCharsets.UTF_8);
+            }
+            case T_BYTES: {
+                final byte[] b = new byte[dis.readInt()];
+                dis.readFully(b);
+                return b;
+            }
+            case T_ARRAY: {
+                final Object[] a = new Object[dis.readInt()];
+                for (int i=0; i<a.length; ++i)
+                    a[i] = readValue(dis);
+                return a;
+            }
+            default:
+                throw new IOException("Corrupted snapshot, illegal tag " + tag);
+        }
+    }
+
+    /**
+     * Check that the snapshot has been taken from the database file.
+     * @param dbFile H2 database file
+     * @return true, if the file matches the snapshot, false otherwise
+     * @throws IOException
+     */
+    public boolean matches(File dbFile) throws IOException {
+        // the file is not read, as H2 rewrites it on any change
+        return dbModified > 0L
+                && dbFile.length() == dbSize
+                && dbFile.lastModified() == dbModified;
+    }
+
+    /**
+     * @param name Table name
+     * @return Table data, or null if the snapshot has no such table
+     */
+    public Table getTable(String name) {
+        return tables.get(name.toLowerCase());
+    }
+
+    /**
+     * Rows of a single table.
+     */
+    public static final class Table {
+
+        private final String name;
+        private final String[] columns;
+        private final List<Object[]> rows = new ArrayList<>();
+        // column position -> value -> rows having that value
+        private final Map<Integer, Map<Object, List<Object[]>>> indexes =
+                new HashMap<>();
+
+        private Table(String name, String[] columns) {
+            this.name = name;
+            this.columns = columns;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String[] getColumns() {
+            return columns.clone();
+        }
+
+        public List<Object[]> getRows() {
+            return Collections.unmodifiableList(rows);
+        }
+
+        /**
+         * @param column Column name
+         * @return Column position, or -1 if there is no such column
+         */
+        public int findColumn(String column) {
+            for (int i=0; i<columns.length; ++i) {
+                if (columns[i].equalsIgnoreCase(column))
+                    return i;
+            }
+            return -1;
+        }
+
+        /**
+         * Build the index on the column, unless already built.
+         * @param column Column position
+         */
+        public void index(int column) {
+            if (indexes.containsKey(column))
+                return;
+            final Map<Object, List<Object[]>> index = new HashMap<>();
+            for (Object[] row : rows) {
+                List<Object[]> bucket = index.get(indexKey(row[column]));
+                if (bucket==null) {
+                    bucket = new ArrayList<>(2);
+                    index.put(indexKey(row[column]), bucket);
+                }
+                bucket.add(row);
+            }
+            indexes.put(column, index);
+        }
+
+        /**
+         * Find the rows having the specified column value,
+         * building the index on the column on the first call.
+         * Numbers of different types are compared by their long values.
+         * @param column Column position
+         * @param value Value to look for
+         * @return Matching rows in the table order, possibly empty
+         */
+        public List<Object[]> lookup(int column, Object value) {
+            index(column);
+            final List<Object[]> retval = indexes.get(column).get(indexKey(value));
+            return (retval==null) ? Collections.emptyList()
+                    : Collections.unmodifiableList(retval);
+        }
+
+        private static Object indexKey(Object v) {
+            return (v instanceof Number) ? (Object) ((Number) v).longValue() : v;
+        }
+
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Compiled classes of a script, stored in the configuration database
+ * next to the script source.
+ *
+ * The compiled code is only usable with the same compiler version,
+ * and for the same source text, which is checked by its CRC32.
+ *
+ * Layout (big-endian): magic (4 bytes), version (byte),
+ *   compiler version (as DataOutput.writeUTF), static flag (boolean),
+ *   source checksum (long), main class name, class count (int),
+ *   then for each class its name, length (int) and bytes.
+ * @author zinal
+ */
+public final class ScriptClasses {
+
+    public static final byte[] MAGIC =
+            "DSMC".getBytes(StandardCharsets.US_ASCII);
+    public static final byte VERSION = 1;
+
+    private final String compilerVersion;
+    private final boolean staticCompiled;
+    private final long sourceChecksum;
+    private final String mainClass;
+    private final Map<String, byte[]> classes;
+
+    public ScriptClasses(String compilerVersion, boolean staticCompiled,
+            String source, String mainClass, Map<String, byte[]> classes) {
+        this(compilerVersion, staticCompiled, checksum(source),
+                mainClass, classes);
+    }
+
+    private ScriptClasses(String compilerVersion, boolean staticCompiled,
+            long sourceChecksum, String mainClass, Map<String, byte[]> classes) {
+        this.compilerVersion = compilerVersion;
+        this.staticCompiled = staticCompiled;
+        this.sourceChecksum = sourceChecksum;
+        this.mainClass = mainClass;
+        this.classes = new LinkedHashMap<>(classes);
+        if (!this.classes.containsKey(mainClass))
+            throw new IllegalArgumentException("Main class " + mainClass
+                    + " is missing in the compiled classes");
+    }
+
+    /**
+     * Checksum of the script source, ignoring the leading
+     * and trailing whitespace.
+     * @param source Script source
+     * @return CRC32 value
+     */
+    public static long checksum(String source) {
+        final CRC32 crc = new CRC32();
+        if (source!=null)
+            crc.update(source.trim().getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    public String getCompilerVersion() {
+        return compilerVersion;
+    }
+
+    public boolean isStaticCompiled() {
+        return staticCompiled;
+    }
+
+    public String getMainClass() {
+        return mainClass;
+    }
+
+    public Map<String, byte[]> getClasses() {
+        return Collections.unmodifiableMap(classes);
+    }
+
+    /**
+     * Check that the compiled code can be used.
+     * @param source Script source
+     * @param compilerVersion Compiler version used at runtime
+     * @return true, if the code matches the source and the compiler version
+     */
+    public boolean matches(String source, String compilerVersion) {
+        return this.compilerVersion.equals(compilerVersion)
+                && sourceChecksum == checksum(source);
+    }
+
+    /**
+     * @return Encoded classes
+     */
+    public byte[] encode() {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            dos.write(MAGIC);
+            dos.writeByte(VERSION);
+            dos.writeUTF(compilerVersion);
+            dos.writeBoolean(staticCompiled);
+            dos.writeLong(sourceChecksum);
+            dos.writeUTF(mainClass);
+            dos.writeInt(classes.size());
+            for (Map.Entry<String, byte[]> me : classes.entrySet()) {
+                dos.writeUTF(me.getKey());
+                dos.writeInt(me.getValue().length);
+                dos.write(me.getValue());
+            }
+        } catch(IOException ex) {
+            throw new RuntimeException("Cannot encode compiled classes", ex);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * @param data Encoded classes
+     * @return Decoded classes, or null if the data is in an unknown format
+     */
+    public static ScriptClasses decode(byte[] data) {
+        if (data==null || data.length < MAGIC.length + 1)
+            return null;
+        try (DataInputStream dis = new DataInputStream(
+                new ByteArrayInputStream(data))) {
+            final byte[] magic = new byte[MAGIC.length];
+            dis.readFully(magic);
+            if (! Arrays.equals(magic, MAGIC))
+                return null;
+            if (dis.readByte() != VERSION)
+                return null;
+            final String compilerVersion = dis.readUTF();
+            final boolean staticCompiled = dis.readBoolean();
+            final long sourceChecksum = dis.readLong();
+            final String mainClass = dis.readUTF();
+            final int count = dis.readInt();
+            final Map<String, byte[]> classes = new LinkedHashMap<>();
+            for (int i=0; i<count; ++i) {
+                final String name = dis.readUTF();
+                final byte[] b = new byte[dis.readInt()];
+                dis.readFully(b);
+                classes.put(name, b);
+            }
+            return new ScriptClasses(compilerVersion, staticCompiled,
+                    sourceChecksum, mainClass, classes);
+        } catch(IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.algo;
+
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author zinal
+ */
+public class CharMapTest {
+
+    @Test
+    public void checkLookup() {
+        final CharMap cm = new CharMap.Builder(-1)
+                .put('a', 1)
+                .putRange('0', '9', 2)
+                .put('5', 3) // already mapped, ignored
+                .put(0x1F600, 4)
+                .putRange(0x10FFF0, 0x10FFFF, 5)
+                .build();
+        Assert.assertEquals(1, cm.get('a'));
+        Assert.assertEquals(2, cm.get('5'));
+        Assert.assertEquals(-1, cm.get('b'));
+        Assert.assertEquals(-1, cm.get(0xFFFF));
+        Assert.assertEquals(4, cm.get(0x1F600));
+        Assert.assertEquals(-1, cm.get(0x1F601));
+        Assert.assertEquals(5, cm.get(Character.MAX_CODE_POINT));
+        Assert.assertEquals(-1, cm.get(-1));
+        Assert.assertEquals(-1, cm.get(Character.MAX_CODE_POINT + 1));
+        Assert.assertEquals(cm, new CharMap.Builder(-1)
+                .put(0x10FFF0, 5).putRange(0x10FFF1, 0x10FFFF, 5)
+                .put(0x1F600, 4).putRange('0', '9', 2).put('a', 1).build());
+    }
+
+    @Test
+    public void checkClassSet() {
+        final CharClassSet ccs = new CharClassSet("test", Arrays.asList(
+                new CharClassSet.Entry("digits", new CharClassSet.Range('0', '9')),
+                new CharClassSet.Entry("overlap", new CharClassSet.Range('5', 'B')),
+                new CharClassSet.Entry("emoji", new CharClassSet.Range(0x1F600, 0x1F64F))
+        ));
+        for (int cp = 0; cp <= Character.MAX_CODE_POINT; ++cp) {
+            Assert.assertSame(ccs.findClassByRange(cp), ccs.findClass(cp));
+            Assert.assertSame(CharClassSet.DEFAULT_RUSSIAN.findClassByRange(cp),
+                    CharClassSet.DEFAULT_RUSSIAN.findClass(cp));
+        }
+    }
+
+    @Test
+    public void checkTranslit() {
+        Assert.assertEquals("Stchuka i Iyozh, 2021",
+                CyrillicTranslit.map("Щука и Ёж, 2021"));
+        Assert.assertNull(CyrillicTranslit.map(null));
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.algo;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author zinal
+ */
+public class HashSupportTest {
+
+    private static String randomString(Random random) {
+        final char[] chars = new char[random.nextInt(40)];
+        for (int i=0; i<chars.length; ++i) {
+            switch (random.nextInt(4)) {
+                case 0: chars[i] = (char) random.nextInt(0x80); break;
+                case 1: chars[i] = (char) (0x400 + random.nextInt(0x60)); break;
+                case 2: chars[i] = (char) (0xD800 + random.nextInt(0x800)); break;
+                default: chars[i] = (char) random.nextInt(0x10000);
+            }
+        }
+        return new String(chars);
+    }
+
+    @Test
+    public void checkUtf8() {
+        final Random random = new Random(13L);
+        final Utf8Buffer buf = new Utf8Buffer(16);
+        for (int i=0; i<10000; ++i) {
+            final String value = randomString(random);
+            final byte[] expected = value.getBytes(StandardCharsets.UTF_8);
+            final int len = buf.encode(value);
+            Assert.assertArrayEquals(value, expected,
+                    Arrays.copyOf(buf.getData(), len));
+        }
+        for (int v : new int[] {0, 1, 15, 16, 255, 4096, Integer.MAX_VALUE, -1}) {
+            final int len = buf.encodeHex(v);
+            Assert.assertEquals(Integer.toHexString(v),
+                    new String(buf.getData(), 0, len, StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void checkCrc() {
+        final Random random = new Random(17L);
+        for (int i=0; i<1000; ++i) {
+            final String value = randomString(random);
+            final PureJavaCrc32 crc = new PureJavaCrc32();
+            crc.update(value.getBytes(StandardCharsets.UTF_8));
+            Assert.assertEquals(crc.getValue(), HashSupport.crc32(value));
+        }
+    }
+
+    @Test
+    public void checkHex() {
+        final Random random = new Random(19L);
+        for (int i=0; i<1000; ++i) {
+            final byte[] data = new byte[random.nextInt(70)];
+            random.nextBytes(data);
+            final String expected = (data.length==0) ? "" :
+                    String.format("%0" + (2*data.length) + "x",
+                            new BigInteger(1, data));
+            Assert.assertEquals(expected, HashSupport.toHex(data));
+        }
+    }
+
+    @Test
+    public void checkBatch() {
+        final Random random = new Random(23L);
+        final BasicHasher hasher = new BasicHasher("key");
+        final Object[][] vecs = new Object[100][];
+        for (int i=0; i<vecs.length; ++i) {
+            vecs[i] = new Object[] { randomString(random), i,
+                "x".getBytes(StandardCharsets.UTF_8), null };
+        }
+        final long[] output = new long[vecs.length];
+        hasher.calcHash(vecs, vecs.length, 2, output);
+        for (int i=0; i<vecs.length; ++i)
+            Assert.assertEquals(hasher.calcHash(vecs[i], 2), output[i]);
+    }
+
+}
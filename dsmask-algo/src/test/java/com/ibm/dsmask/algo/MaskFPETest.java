@@ -12,8 +12,13 @@
  */
 package com.ibm.dsmask.algo;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import org.junit.Test;
 import static org.junit.Assert.*;
+import com.ibm.dsmask.util.DsMaskUtil;
 
 /**
  *
@@ -88,6 +93,93 @@ public class MaskFPETest extends TestResources {
         assertEquals("1234563903434188", out);
     }
 
+    @Test
+    public void testCompat() throws Exception {
+        final String key = "qazwsx0";
+        final MaskFPE algo = new MaskFPE(CharClassSet.DEFAULT_RUSSIAN,
+                key, 1, 1, false, true);
+        final Mac mac = Mac.getInstance(MaskFPE.HMAC_NAME);
+        mac.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8),
+                MaskFPE.HMAC_NAME));
+        final Random random = new Random(20211018L);
+        final String alphabet = "0123456789abcXYZабвЖЗИ -.";
+        for (int i=0; i<2000; ++i) {
+            final StringBuilder sb = new StringBuilder();
+            final int len = 3 + random.nextInt(100);
+            for (int j=0; j<len; ++j)
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            final String value = sb.toString();
+            final int iteration = random.nextInt(3);
+            final String expected = legacy(value, mac, iteration, 1, 1);
+            if (expected == null) {
+                try {
+                    algo.calculate(value, iteration);
+                    fail(value);
+                } catch(RuntimeException ex) {}
+            } else {
+                assertEquals(value, expected, algo.calculate(value, iteration));
+            }
+        }
+    }
+
+    @Test
+    public void testRejection() {
+        final MaskFPE algo = new MaskFPE(CharClassSet.DEFAULT_RUSSIAN,
+                "qazwsx0", 0, 0, false, false);
+        assertFalse(algo.isCompat());
+        final String in = "Пагосян Гагик Спартакович 3704 451985";
+        final String out = algo.calculate(in);
+        assertEquals(out, algo.calculate(in));
+        assertNotEquals(out, algo.calculate(in, 1));
+        assertNotEquals(out, new MaskFPE(CharClassSet.DEFAULT_RUSSIAN,
+                "qazwsx0").calculate(in));
+        assertEquals(in.length(), out.length());
+        for (int i=0; i<in.length(); ++i) {
+            assertEquals(Character.isDigit(in.charAt(i)),
+                    Character.isDigit(out.charAt(i)));
+            assertEquals(Character.isUpperCase(in.charAt(i)),
+                    Character.isUpperCase(out.charAt(i)));
+        }
+        // long values need several MAC blocks
+        final StringBuilder sb = new StringBuilder();
+        for (int i=0; i<500; ++i)
+            sb.append((char)('0' + (i % 10)));
+        final String longOut = algo.calculate(sb.toString());
+        assertEquals(500, longOut.length());
+        assertEquals(longOut, algo.calculate(sb.toString()));
+    }
+
+    /**
+     * The original FPE implementation, for the compatibility check.
+     * @return Masked value, or null if the value cannot be masked
+     */
+    private static String legacy(String value, Mac mac, int iteration,
+            int skipBefore, int skipAfter) {
+        int substep = 0;
+        while (true) {
+            int[] codePoints = value.codePoints().toArray();
+            int lastIndex = codePoints.length - skipAfter;
+            final String indexData = (substep==0) ? value :
+                    ( value + "." + Integer.toHexString(substep) );
+            final IndexGenFPE ig = new IndexGenFPE(indexData, mac, iteration);
+            final StringBuilder retval = new StringBuilder();
+            for ( int ix = 0; ix < codePoints.length; ++ix ) {
+                int toAppend = codePoints[ix];
+                CharClassSet.Entry charClass = CharClassSet.DEFAULT_RUSSIAN
+                        .findClass(toAppend);
+                if (ix >= skipBefore && ix < lastIndex && !charClass.isEmpty()) {
+                    int index = ig.getNextIndex(charClass.getLength());
+                    toAppend = charClass.getCodePoint(index);
+                }
+                DsMaskUtil.appendCodepoint(retval, toAppend);
+            }
+            if (! retval.toString().equalsIgnoreCase(value))
+                return retval.toString();
+            if ( ++substep > 1000 )
+                return null;
+        }
+    }
+
     private MaskFPE getAlgorithm1() {
         if (algorithm1==null) {
             algorithm1 = new MaskFPE();
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.uniq;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author zinal
+ */
+public class UniqCodecTest {
+
+    @Test
+    public void testRequests() throws Exception {
+        final StringBuilder longValue = new StringBuilder();
+        while (longValue.length() < 70000)
+            longValue.append("Длинное значение ");
+        final UniqRequest[] rr = new UniqRequest[3];
+        for (int i=0; i<rr.length; ++i)
+            rr[i] = new UniqRequest(i);
+        rr[0].setSource(new Object[] { "Иванов", 1 });
+        rr[0].setTarget(new Object[] { "Петров", 1 });
+        rr[1].setSource(longValue.toString());
+        rr[1].setTarget("x");
+        rr[1].setConflict("y");
+        rr[2].setSource("");
+        rr[2].setTarget("z");
+        for (boolean compress : new boolean[] { false, true }) {
+            final byte[] data = roundTrip(UniqCodec.encodeRequests("repo", rr),
+                    compress);
+            final UniqCodec.Batch batch = UniqCodec.decodeRequests(data, 10);
+            Assert.assertEquals("repo", batch.repository);
+            Assert.assertEquals(rr.length, batch.requests.length);
+            for (int i=0; i<rr.length; ++i) {
+                final UniqRequest r = batch.requests[i];
+                Assert.assertEquals(rr[i].getIteration(), r.getIteration());
+                Assert.assertEquals(rr[i].getSource(), r.getSource());
+                Assert.assertEquals(rr[i].getTarget(), r.getTarget());
+                Assert.assertEquals(rr[i].getConflict(), r.getConflict());
+            }
+        }
+    }
+
+    @Test
+    public void testResponses() throws Exception {
+        final UniqResponse[] allGood = new UniqResponse[1000];
+        for (int i=0; i<allGood.length; ++i)
+            allGood[i] = new UniqResponse(true);
+        final byte[] small = UniqCodec.encodeResponses(allGood);
+        Assert.assertEquals(3, small.length);
+        checkResponses(allGood, UniqCodec.decodeResponses(small, 1000));
+
+        final UniqResponse[] mixed = new UniqResponse[13];
+        for (int i=0; i<mixed.length; ++i)
+            mixed[i] = new UniqResponse(i % 3 != 0, (i % 5 == 0) ? i : -1);
+        final byte[] data = roundTrip(UniqCodec.encodeResponses(mixed), true);
+        checkResponses(mixed, UniqCodec.decodeResponses(data, mixed.length));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBadCount() throws Exception {
+        UniqCodec.decodeResponses(UniqCodec.encodeResponses(
+                new UniqResponse[] { new UniqResponse(true) }), 2);
+    }
+
+    private static void checkResponses(UniqResponse[] expected,
+            UniqResponse[] actual) {
+        Assert.assertEquals(expected.length, actual.length);
+        for (int i=0; i<expected.length; ++i) {
+            Assert.assertEquals(expected[i].isLinkedCorrectly(),
+                    actual[i].isLinkedCorrectly());
+            Assert.assertEquals(expected[i].getIteration(),
+                    actual[i].getIteration());
+        }
+    }
+
+    private static byte[] roundTrip(byte[] payload, boolean compress)
+            throws Exception {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        UniqCodec.writeFrame(new DataOutputStream(baos), payload, compress,
+                UniqCodec.FLAG_DEFLATE_REPLY);
+        final byte[] frame = baos.toByteArray();
+        Assert.assertEquals(frame.length, UniqCodec.scanFrame(frame, 0, frame.length));
+        Assert.assertEquals(-1, UniqCodec.scanFrame(frame, 0, frame.length - 1));
+        final UniqCodec.Frame f = UniqCodec.readFrame(
+                new DataInputStream(new ByteArrayInputStream(frame)));
+        Assert.assertTrue(f.isDeflateReply());
+        return f.payload;
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.util;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author zinal
+ */
+public class CompiledDictTest {
+
+    @Test
+    public void testReadWrite() throws Exception {
+        final File temp = File.createTempFile("dsmask-algo-dict", CompiledDict.EXTENSION);
+        try {
+            try (CompiledDictWriter writer = new CompiledDictWriter(temp, "id",
+                    Arrays.asList("nfull", "sex"))) {
+                writer.add(0, new Object[] {"Иванов Иван Иванович", "M"});
+                writer.add(1, new Object[] {"", null});
+                // ids 2 and 3 are missing
+                writer.add(4, new Object[] {"Ägypten 日本 😀", "F"});
+            }
+            final CompiledDict dict = CompiledDict.open(temp);
+            Assert.assertEquals(5, dict.getRowCount());
+            Assert.assertEquals("id", dict.getIdColumn());
+            Assert.assertEquals(1, dict.findColumn("SEX"));
+            Assert.assertEquals(-1, dict.findColumn("nlast"));
+            final int[] positions = new int[] {1, 0};
+            final Object[] out = new Object[2];
+            Assert.assertTrue(dict.read(0, positions, out));
+            Assert.assertArrayEquals(new Object[] {"M", "Иванов Иван Иванович"}, out);
+            Assert.assertTrue(dict.read(1, positions, out));
+            Assert.assertArrayEquals(new Object[] {null, ""}, out);
+            Assert.assertFalse(dict.read(2, positions, out));
+            Assert.assertFalse(dict.read(3, positions, out));
+            Assert.assertFalse(dict.read(5, positions, out));
+            Assert.assertFalse(dict.read(-1, positions, out));
+            final CompiledDict copy = dict.copy();
+            Assert.assertTrue(copy.read(4, new int[] {0}, out));
+            Assert.assertEquals("Ägypten 日本 😀", out[0]);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    @Test
+    public void testBind() throws Exception {
+        final File temp = File.createTempFile("dsmask-algo-dict", CompiledDict.EXTENSION);
+        final File db = File.createTempFile("dsmask-algo-dict", ".mv.db");
+        try {
+            try (CompiledDictWriter writer = new CompiledDictWriter(temp, "id",
+                    Arrays.asList("val"))) {
+                writer.add(0, new Object[] {"A"});
+            }
+            // the unbound file matches nothing
+            Assert.assertFalse(CompiledDict.open(temp).matches(db));
+            CompiledDict.bind(temp, db);
+            final CompiledDict dict = CompiledDict.open(temp);
+            Assert.assertTrue(dict.matches(db));
+            final Object[] out = new Object[1];
+            Assert.assertTrue(dict.read(0, new int[] {0}, out));
+            Assert.assertEquals("A", out[0]);
+            // the database file has been changed
+            Assert.assertTrue(db.setLastModified(db.lastModified() + 2000L));
+            Assert.assertFalse(dict.matches(db));
+        } finally {
+            temp.delete();
+            db.delete();
+        }
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        final File temp = File.createTempFile("dsmask-algo-dict", CompiledDict.EXTENSION);
+        try (Connection con = DriverManager.getConnection(
+                "jdbc:h2:mem:compiled-dict-test")) {
+            try (Statement stmt = con.createStatement()) {
+                stmt.execute("CREATE TABLE dict_test(id INTEGER NOT NULL PRIMARY KEY, "
+                        + "val VARCHAR(40), num INTEGER, sex CHAR(1))");
+            }
+            try (PreparedStatement ps = con.prepareStatement(
+                    "INSERT INTO dict_test(id, val, num, sex) VALUES(?,?,?,?)")) {
+                for (int i=999; i>=0; --i) {
+                    if (i % 7 == 3)
+                        continue;
+                    ps.setInt(1, i);
+                    ps.setString(2, "Значение " + i);
+                    ps.setInt(3, i);
+                    ps.setString(4, (i % 2 == 0) ? "M" : "F");
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            final int count = CompiledDictWriter.export(con, "dict_test", "id", temp);
+            Assert.assertEquals(1000 - 143, count);
+            final CompiledDict dict = CompiledDict.open(temp);
+            Assert.assertEquals(1000, dict.getRowCount());
+            // only the character columns are exported
+            Assert.assertArrayEquals(new String[] {"val", "sex"}, dict.getColumns());
+            final int[] positions = new int[] {dict.findColumn("val"),
+                dict.findColumn("sex")};
+            final Object[] out = new Object[2];
+            for (int i=0; i<1000; ++i) {
+                if (i % 7 == 3) {
+                    Assert.assertFalse(dict.read(i, positions, out));
+                } else {
+                    Assert.assertTrue(dict.read(i, positions, out));
+                    Assert.assertEquals("Значение " + i, out[0]);
+                    Assert.assertEquals((i % 2 == 0) ? "M" : "F", out[1]);
+                }
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import com.ibm.dsmask.algo.*;
+import com.ibm.dsmask.mock.MaskingMockData;
+
+/**
+ * Benchmarks for the algorithms of dsmask-algo,
+ * one value per operation, cycling over the mock table values.
+ * @author zinal
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AlgoBench {
+
+    public static final String USER_KEY = "zztop-key";
+
+    // full names, passport and card numbers
+    private String[] names;
+    private String[] numbers;
+    private String[] georgian;
+    // multi-column vectors: name, passport number, date of birth
+    private Object[][] vectors;
+    private int position = 0;
+
+    private MaskFPE fpeCompat;
+    private MaskFPE fpeRejection;
+    private BasicHasher hasher;
+    private BasicDigest digest;
+    private VectorCrc32 crc32;
+    private CharClassSet charClasses;
+    private CharzTranslate translate;
+
+    @Setup
+    public void setup() throws Exception {
+        final MaskingMockData data = new MaskingMockData(MaskingMockData.TAB2);
+        final List<Object> nameValues = BenchResources.columnValues(data, "nm_full");
+        final List<Object> passValues = BenchResources.columnValues(data, "doc_pass_num");
+        final List<Object> cardValues = BenchResources.columnValues(data, "card_num");
+        final List<Object> dateValues = BenchResources.columnValues(data, "date_birth");
+        names = toStrings(nameValues);
+        final List<Object> numberValues = new ArrayList<>(passValues);
+        numberValues.addAll(cardValues);
+        numbers = toStrings(numberValues);
+        georgian = new String[names.length];
+        for (int i=0; i<names.length; ++i)
+            georgian[i] = BenchResources.toGeorgian(names[i]);
+        vectors = new Object[names.length][];
+        for (int i=0; i<names.length; ++i) {
+            vectors[i] = new Object[] {
+                names[i],
+                passValues.get(i % passValues.size()),
+                dateValues.get(i % dateValues.size())
+            };
+        }
+        fpeCompat = new MaskFPE(CharClassSet.DEFAULT_RUSSIAN, USER_KEY,
+                0, 0, false, true);
+        fpeRejection = new MaskFPE(CharClassSet.DEFAULT_RUSSIAN, USER_KEY,
+                0, 0, false, false);
+        hasher = new BasicHasher(USER_KEY);
+        digest = new BasicDigest(null, USER_KEY);
+        crc32 = new VectorCrc32(USER_KEY, 1000000L);
+        charClasses = CharClassSet.load(BenchResources.getDictPath(), "russian-simple");
+        translate = new CharzTranslate(CharzTable.load(
+                BenchResources.getDictPath(), "build-test-ge-u2x"));
+    }
+
+    private static String[] toStrings(List<Object> values) {
+        final String[] retval = new String[values.size()];
+        for (int i=0; i<retval.length; ++i)
+            retval[i] = values.get(i).toString();
+        return retval;
+    }
+
+    private int next(int length) {
+        if (++position >= length)
+            position = 0;
+        return position;
+    }
+
+    @Benchmark
+    public String fpeCompatName() {
+        return fpeCompat.calculate(names[next(names.length)]);
+    }
+
+    @Benchmark
+    public String fpeCompatNumber() {
+        return fpeCompat.calculate(numbers[next(numbers.length)]);
+    }
+
+    @Benchmark
+    public String fpeRejectionName() {
+        return fpeRejection.calculate(names[next(names.length)]);
+    }
+
+    @Benchmark
+    public String fpeRejectionNumber() {
+        return fpeRejection.calculate(numbers[next(numbers.length)]);
+    }
+
+    @Benchmark
+    public long basicHasher() {
+        return hasher.calcHash(vectors[next(vectors.length)], 0);
+    }
+
+    @Benchmark
+    public byte[] basicDigest() {
+        return digest.calcBinary(vectors[next(vectors.length)], 0);
+    }
+
+    @Benchmark
+    public long vectorCrc32() {
+        return crc32.calculate(vectors[next(vectors.length)]);
+    }
+
+    @Benchmark
+    public void charClassLookup(Blackhole bh) {
+        final String value = names[next(names.length)];
+        for (int i=0; i<value.length(); ++i)
+            bh.consume(charClasses.findClass(value.charAt(i)));
+    }
+
+    @Benchmark
+    public String charzTranslate() {
+        return translate.translate(georgian[next(georgian.length)]);
+    }
+
+    @Benchmark
+    public String cyrillicTranslit() {
+        return CyrillicTranslit.map(names[next(names.length)]);
+    }
+
+}
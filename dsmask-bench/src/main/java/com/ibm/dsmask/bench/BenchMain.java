@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmark launcher, accepting the standard JMH command line options.
+ * Unless specified otherwise, the results are written in JSON format
+ * to dsmask-bench-VERSION.json, to be compared between the releases.
+ * @author zinal
+ */
+public class BenchMain {
+
+    public static void main(String[] args) throws Exception {
+        final CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams()
+                || cmd.shouldListProfilers() || cmd.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        final ChainedOptionsBuilder ob = new OptionsBuilder().parent(cmd);
+        if (! cmd.getResultFormat().hasValue())
+            ob.resultFormat(ResultFormatType.JSON);
+        if (! cmd.getResult().hasValue())
+            ob.result("dsmask-bench-" + getVersion() + ".json");
+        new Runner(ob.build()).run();
+    }
+
+    private static String getVersion() {
+        final String version = BenchMain.class.getPackage()
+                .getImplementationVersion();
+        return (version==null) ? "dev" : version;
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.ibm.dsmask.beans.MskContext;
+import com.ibm.dsmask.impl.*;
+import com.ibm.dsmask.mock.MaskingMockColumn;
+import com.ibm.dsmask.mock.MaskingMockData;
+import com.ibm.dsmask.uniq.UniqStore;
+
+/**
+ * Shared resources for the benchmarks: the masking context loaded
+ * from the test suite configuration database, and the mock data.
+ * The paths are relative to the module directory, and can be overridden
+ * with the "dsmask.bench.rules" and "dsmask.bench.dict" system properties.
+ * @author zinal
+ */
+public class BenchResources {
+
+    public static final String PROP_RULES = "dsmask.bench.rules";
+    public static final String PROP_DICT = "dsmask.bench.dict";
+
+    public static final String CONFIG_NAME = "dsmask-testsuite";
+
+    public static final String GE_ALPHABET = "აბგდევზთიკლმნოპჟრსტუფქღყშჩცძწჭხჯჰ";
+
+    public static String getRulesPath() {
+        return new File(System.getProperty(PROP_RULES,
+                ".." + File.separator + "testsuite" + File.separator + "rules"))
+                .getAbsolutePath();
+    }
+
+    public static String getDictPath() {
+        return new File(System.getProperty(PROP_DICT,
+                ".." + File.separator + "dict-data" + File.separator + "ru"))
+                .getAbsolutePath();
+    }
+
+    /**
+     * Load the masking context for the mock table from the test suite rules.
+     * @param tableName Mock table name
+     * @return Masking context
+     * @throws Exception
+     */
+    public static MskContext loadContext(String tableName) throws Exception {
+        final MskContext ctx;
+        try (ContextLoader loader = new ContextLoader(
+                getRulesPath(), CONFIG_NAME)) {
+            ctx = loader.load("source", tableName, null);
+        }
+        ctx.setDictPath(getDictPath());
+        return ctx;
+    }
+
+    /**
+     * @return Services with the in-memory uniq-check store
+     */
+    public static XServices makeServices() {
+        final XServices services = new XServices();
+        services.setUniqProviderFactory(
+                () -> new UniqStore((File) null, 1, 10000, 60));
+        return services;
+    }
+
+    /**
+     * Build field indexes for the masking operations over the link.
+     * @param ctx Masking context
+     * @param link Input and output link
+     * @return Masker configured for the context and the link
+     * @throws Exception
+     */
+    public static XMasker makeMasker(MskContext ctx, MockLink link,
+            int batchSize) throws Exception {
+        final XMasker masker = new XMasker(link, link, batchSize);
+        masker.setContext(ctx);
+        if (! masker.buildIndexMap())
+            throw new IllegalStateException("Missing columns: "
+                    + masker.getMissingColumns());
+        masker.validateFields();
+        return masker;
+    }
+
+    /**
+     * @param link Input and output link
+     * @return Index map connecting the output columns to the input ones
+     */
+    public static Map<Integer, XColumnInfo> makeIndexMap(MockLink link) {
+        final Map<Integer, XColumnInfo> retval = new HashMap<>();
+        for (XColumnInfo ci : link.getInputColumns())
+            retval.put(ci.getIndex(), ci);
+        return retval;
+    }
+
+    /**
+     * Grab the values of a single column of the mock table.
+     * @param data Mock data
+     * @param columnName Column name
+     * @return Column values, in the row order
+     */
+    public static List<Object> columnValues(MaskingMockData data,
+            String columnName) {
+        int position = -1;
+        for (MaskingMockColumn mmc : data.getColumns()) {
+            if (mmc.getName().equalsIgnoreCase(columnName)) {
+                position = mmc.getNumber() - 1;
+                break;
+            }
+        }
+        if (position < 0)
+            throw new IllegalArgumentException("Unknown column: " + columnName);
+        final List<Object> retval = new ArrayList<>();
+        for (Object[] row : data.getData()) {
+            if (row[position]!=null)
+                retval.add(row[position]);
+        }
+        return retval;
+    }
+
+    /**
+     * Replace the letters with the Georgian ones, to get the input
+     * for the test character translation table.
+     * @param value Source value
+     * @return Value with the Georgian letters
+     */
+    public static String toGeorgian(String value) {
+        final StringBuilder sb = new StringBuilder(value.length());
+        for (int i=0; i<value.length(); ++i) {
+            final char c = value.charAt(i);
+            if (Character.isLetter(c))
+                sb.append(GE_ALPHABET.charAt(
+                        Character.toLowerCase(c) % GE_ALPHABET.length()));
+            else
+                sb.append(c);
+        }
+        return sb.toString();
+    }
+
+}
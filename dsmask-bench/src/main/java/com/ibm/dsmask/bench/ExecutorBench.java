@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import com.ibm.dsmask.beans.*;
+import com.ibm.dsmask.impl.*;
+import com.ibm.dsmask.mock.MaskingMockData;
+
+/**
+ * Benchmarks for the masking function executors, one batch per operation.
+ * The functions are taken from the test suite rules, and their inputs are
+ * captured by running the rules over the first mock table using them.
+ * Function types not used by the test suite rules are defined here,
+ * with the inputs taken directly from the mock table.
+ * @author zinal
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutorBench {
+
+    public static final String NUMBER_HASH = "bench-number-hash";
+    public static final String DIGEST_HASH = "bench-digest-hash";
+    public static final String CHAR_SUBST = "bench-char-subst";
+    public static final String SPLIT = "bench-split";
+
+    // mock tables to look for the functions, in the search order
+    private static final String[] TABLES = {
+        MaskingMockData.TAB2, MaskingMockData.TAB1, MaskingMockData.TAB3
+    };
+
+    @Param({"card-fpe", "card-code-fpe", "card-normalize", "card-luhn",
+        "date-simple", "inn-fpe", "passp-norm", "passp-fpe", "snils-fpe",
+        "name-norm", "name-male-hash", "gender", "name-concat", "name-get-3",
+        NUMBER_HASH, DIGEST_HASH, CHAR_SUBST, SPLIT})
+    public String function;
+
+    @Param({"100"})
+    public int batchSize;
+
+    private XKeeper keeper;
+    private XExecutor executor;
+    private XWorkspace workspace;
+    // captured input vectors, and the reused output vectors
+    private XVector[] inputs;
+    private XVector[] outputs;
+    private int position = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        MskContext ctx = null;
+        MskFunc func = null;
+        final List<XVector> captured;
+        if (function.startsWith("bench-")) {
+            final MaskingMockData data = new MaskingMockData(MaskingMockData.TAB2);
+            ctx = BenchResources.loadContext(data.getTableName());
+            func = makeFunction(ctx, function);
+            captured = makeInputs(data, function);
+        } else {
+            for (String table : TABLES) {
+                ctx = BenchResources.loadContext(table);
+                func = findFunction(ctx, function);
+                if (func!=null)
+                    break;
+            }
+            if (func==null)
+                throw new IllegalArgumentException("Function " + function
+                        + " is not used for the mock tables");
+            captured = captureInputs(ctx, new MockLink(new MaskingMockData(
+                    ctx.getTable().getTableName())), function);
+        }
+        if (captured.isEmpty())
+            throw new IllegalStateException("No input rows for " + function);
+        inputs = captured.toArray(new XVector[captured.size()]);
+        outputs = new XVector[batchSize];
+        keeper = new XKeeper(ctx, BenchResources.makeServices());
+        executor = keeper.makeExecutor(func);
+        final XRowState[] rows = new XRowState[batchSize];
+        for (int i=0; i<batchSize; ++i)
+            rows[i] = new XRowState(ctx.getTable(), null);
+        workspace = new XWorkspace(keeper, rows);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (keeper!=null) {
+            keeper.close();
+            keeper.getServices().close();
+        }
+    }
+
+    @Benchmark
+    public void execBatch(Blackhole bh) {
+        final XWorkspace ws = workspace;
+        ws.nextBatch(batchSize);
+        ws.nextStep(null, 0);
+        for (int i=0; i<batchSize; ++i) {
+            ws.inputs[i] = inputs[position];
+            ws.outputs[i] = outputs[i];
+            if (++position >= inputs.length)
+                position = 0;
+        }
+        executor.exec(ws);
+        for (int i=0; i<batchSize; ++i) {
+            outputs[i] = ws.outputs[i];
+            bh.consume(outputs[i]);
+        }
+    }
+
+    private static MskFunc findFunction(MskContext ctx, String name) {
+        for (MskFunc func : ctx.getFunctions().values()) {
+            if (name.equalsIgnoreCase(func.getName()))
+                return func;
+        }
+        return null;
+    }
+
+    private static MskFunc makeFunction(MskContext ctx, String name) {
+        final int id = 1000000 + ctx.getFunctions().size();
+        final MskFunc func;
+        switch (name) {
+            case NUMBER_HASH:
+                func = new MskFunc(id, name, FunctionType.NumberHash,
+                        "KEY default\nFROM 0\nTO 1000000\n");
+                break;
+            case DIGEST_HASH:
+                func = new MskFunc(id, name, FunctionType.DigestHash,
+                        "KEY default\nTYPE SHA-256\n");
+                break;
+            case CHAR_SUBST:
+                func = new MskFunc(id, name, FunctionType.CharSubst,
+                        "TABLE build-test-ge-u2x\n");
+                break;
+            case SPLIT:
+                func = new MskFunc(id, name, FunctionType.Split, "");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown function " + name);
+        }
+        ctx.addFunction(func);
+        return func;
+    }
+
+    private static List<XVector> makeInputs(MaskingMockData data, String name) {
+        final List<XVector> retval = new ArrayList<>();
+        for (Object value : BenchResources.columnValues(data, "nm_full")) {
+            final XVector vec = new XVector(1);
+            vec.values[0] = CHAR_SUBST.equals(name) ?
+                    BenchResources.toGeorgian(value.toString()) : value;
+            retval.add(vec);
+        }
+        return retval;
+    }
+
+    /**
+     * Run the masking rules over the mock table, and grab the inputs
+     * of the steps calling the specified function.
+     */
+    private static List<XVector> captureInputs(MskContext ctx, MockLink link,
+            String name) throws Exception {
+        BenchResources.makeMasker(ctx, link, 100);
+        final List<XVector> retval = new ArrayList<>();
+        try (Capture capture = new Capture(ctx, name, retval)) {
+            final XBulkState bulkState = new XBulkState(capture, 100);
+            bulkState.setIndexMap(BenchResources.makeIndexMap(link));
+            while (bulkState.readRows(link, link)) {
+                bulkState.maskRows();
+                bulkState.writeRows(link);
+                bulkState.clear();
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Keeper which grabs the step inputs right after the predicate,
+     * which is computed before running the function.
+     */
+    private static final class Capture extends XKeeper {
+
+        private final String name;
+        private final List<XVector> output;
+
+        Capture(MskContext ctx, String name, List<XVector> output) {
+            super(ctx, BenchResources.makeServices());
+            this.name = name;
+            this.output = output;
+        }
+
+        @Override
+        public XExecutor makePredicate(MskStep step) {
+            final XExecutor predicate = super.makePredicate(step);
+            if (step==null || !name.equalsIgnoreCase(step.getFunction().getName()))
+                return predicate;
+            return (XWorkspace ws) -> {
+                if (predicate!=null)
+                    predicate.exec(ws);
+                for (int i=0; i<ws.totalRows; ++i) {
+                    if (ws.needProcessRow(i))
+                        output.add(new XVector(ws.inputs[i]));
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            getServices().close();
+        }
+
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import com.ibm.dsmask.beans.MskContext;
+import com.ibm.dsmask.impl.*;
+import com.ibm.dsmask.mock.MaskingMockData;
+
+/**
+ * Benchmark for masking the whole mock table with the test suite rules,
+ * one table pass per operation.
+ * The "table" parameter selects the mock table, which defines the rules used.
+ * The "rule" parameter limits the operations to a single masking rule,
+ * "*" means all rules configured for the table.
+ * @author zinal
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MaskerBench {
+
+    @Param({MaskingMockData.TAB2, MaskingMockData.TAB1})
+    public String table;
+
+    @Param({"*"})
+    public String rule;
+
+    @Param({"100"})
+    public int batchSize;
+
+    private MockLink link;
+    private XKeeper keeper;
+    private XBulkState bulkState;
+
+    @Setup
+    public void setup() throws Exception {
+        final MskContext ctx = BenchResources.loadContext(table);
+        if (! "*".equals(rule)) {
+            ctx.getTable().getOperations().removeIf(
+                    op -> !rule.equalsIgnoreCase(op.getRule().getName()));
+            if (ctx.getTable().getOperations().isEmpty())
+                throw new IllegalArgumentException("Rule " + rule
+                        + " is not used for " + table);
+        }
+        link = new MockLink(new MaskingMockData(table));
+        BenchResources.makeMasker(ctx, link, batchSize);
+        keeper = new XKeeper(ctx, BenchResources.makeServices());
+        bulkState = new XBulkState(keeper, batchSize);
+        bulkState.setIndexMap(BenchResources.makeIndexMap(link));
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (keeper!=null) {
+            keeper.close();
+            keeper.getServices().close();
+        }
+    }
+
+    @Benchmark
+    public int maskTable() {
+        link.reset();
+        while (bulkState.readRows(link, link)) {
+            bulkState.maskRows();
+            bulkState.writeRows(link);
+            bulkState.clear();
+        }
+        return link.getOutputCount();
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.ibm.dsmask.impl.*;
+import com.ibm.dsmask.mock.MaskingMockColumn;
+import com.ibm.dsmask.mock.MaskingMockData;
+
+/**
+ * In-memory input and output links over the mock data.
+ * The output rows are discarded, the input can be re-read after reset.
+ * @author zinal
+ */
+public class MockLink implements XLinkInput, XLinkOutput {
+
+    private final MaskingMockData mockData;
+    private final List<XColumnInfo> columns = new ArrayList<>();
+    private int position = 0;
+    private int outputCount = 0;
+
+    public MockLink(MaskingMockData mockData) {
+        this.mockData = mockData;
+        for (MaskingMockColumn mmc : mockData.getColumns()) {
+            columns.add(new XColumnInfo(mmc.getNumber(), mmc.getName()));
+        }
+    }
+
+    public MaskingMockData getMockData() {
+        return mockData;
+    }
+
+    public int getOutputCount() {
+        return outputCount;
+    }
+
+    public void reset() {
+        position = 0;
+        outputCount = 0;
+    }
+
+    @Override
+    public List<XColumnInfo> getInputColumns() {
+        return columns;
+    }
+
+    @Override
+    public XRowInput readRecord() {
+        if (position >= mockData.getData().size())
+            return null;
+        final Object[] data = mockData.getData().get(position++);
+        return (int index) -> data[index-1];
+    }
+
+    @Override
+    public List<XColumnInfo> getOutputColumns() {
+        return columns;
+    }
+
+    @Override
+    public XRowOutput getOutputRecord() {
+        return new Row(columns.size());
+    }
+
+    @Override
+    public void writeRecord(XRowOutput record) {
+        ++outputCount;
+    }
+
+    @Override
+    public boolean hasRejectLink() {
+        return false;
+    }
+
+    @Override
+    public XRowReject getRejectRecord(XRowInput inputRecord) {
+        return null;
+    }
+
+    @Override
+    public void writeRecord(XRowReject rejectRecord) {
+        ++outputCount;
+    }
+
+    private static final class Row implements XRowOutput {
+
+        private final Object[] values;
+
+        private Row(int size) {
+            this.values = new Object[size];
+        }
+
+        @Override
+        public void setValue(int index, Object value) {
+            values[index-1] = value;
+        }
+
+        @Override
+        public void setValueAsString(int index, String value) {
+            values[index-1] = value;
+        }
+
+    }
+
+}
@@ -15,6 +15,8 @@ package com.ibm.dsmask.jconf;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -22,6 +24,8 @@ import java.util.Properties;
 import java.util.TreeMap;
 import com.ibm.dsmask.jconf.impl.*;
 import com.ibm.dsmask.jconf.beans.*;
+import com.ibm.dsmask.util.ConfigSnapshot;
+import com.ibm.dsmask.util.DsMaskUtil;
 import com.ibm.dsmask.util.PasswordVault;
 import com.ibm.dsmask.util.DsMaskVersion;
 
@@ -46,6 +50,7 @@ public class BuildConf implements Runnable {
     public static final String CONF_OUT_DIR = "out.dir";
     public static final String CONF_OUT_CONF = "out.config";
     public static final String CONF_OUT_DUMP = "out.dump";
+    public static final String CONF_OUT_SNAPSHOT = "out.snapshot";
     // property constant values
     public static final String VAL_TT_FILE = "file";
     public static final String VAL_TT_IGC = "igc";
@@ -148,9 +153,30 @@ public class BuildConf implements Runnable {
             }
         }
         LOG.info("DsMask configurator complete, database closed.");
+        if (DsMaskUtil.toBoolean(props.getProperty(CONF_OUT_SNAPSHOT))) {
+            writeSnapshot(dbPath);
+        }
         dumpConfig();
     }
 
+    /**
+     * Write the binary snapshot of the configuration database,
+     * which allows the masking jobs to skip the database queries.
+     * @param dbPath Configuration database pathname
+     * @throws Exception
+     */
+    public static void writeSnapshot(String dbPath) throws Exception {
+        final ConfigSnapshot snapshot;
+        try (Connection con = DriverManager.getConnection(
+                DsMaskUtil.makeConnectionUrl(dbPath)
+                        + ";IFEXISTS=TRUE;ACCESS_MODE_DATA=R")) {
+            snapshot = ConfigSnapshot.load(con);
+        }
+        final File file = ConfigSnapshot.snapshotFile(dbPath);
+        snapshot.write(file, ConfigSnapshot.databaseFile(dbPath));
+        LOG.info("Configuration snapshot written to {}", file);
+    }
+
     private void readTablesAndClasses() throws Exception {
         // Determine the data source (files and/or IGC)
         boolean useFiles = false;
@@ -16,6 +16,7 @@ import java.io.FileInputStream;
 import java.util.Properties;
 import com.ibm.dsmask.jconf.beans.Utils;
 import com.ibm.dsmask.jconf.fio.FioGenerator;
+import com.ibm.dsmask.util.ConfigSnapshot;
 import com.ibm.dsmask.util.DsMaskVersion;
 
 /**
@@ -36,6 +37,7 @@ public class BuildDict {
     public static final String PROP_DBUSER = "DbUser";
     public static final String PROP_DBPASS = "DbPassword";
     public static final String PROP_TOTNAMES = "TotalNames";
+    public static final String PROP_COMPILED = "CompiledDict";
 
     private final Properties props;
 
@@ -69,6 +71,10 @@ public class BuildDict {
     }
 
     private void run() throws Exception {
+        final String dbName = props.getProperty(PROP_DBNAME);
+        String compiled = props.getProperty(PROP_COMPILED);
+        if (compiled!=null)
+            compiled = compiled.trim();
         try (FioGenerator fgen = new FioGenerator()) {
             fgen.loadNames(
                     props.getProperty(PROP_NAMES_M),
@@ -78,7 +84,6 @@ public class BuildDict {
             );
             LOG.info("Source data load completed.");
             fgen.setSortSalt(props.getProperty(PROP_SALT));
-            final String dbName = props.getProperty(PROP_DBNAME);
             if (dbName!=null) {
                 fgen.create(dbName);
             } else {
@@ -93,6 +98,21 @@ public class BuildDict {
             }
             LOG.info("Target database open.");
             fgen.generate(Integer.valueOf(props.getProperty(PROP_TOTNAMES)));
+            if (compiled!=null && compiled.length() > 0) {
+                LOG.info("Writing compiled dictionaries...");
+                fgen.compile(compiled);
+            }
+        }
+        if (compiled!=null && compiled.length() > 0) {
+            if (dbName!=null) {
+                // the database file is final after being closed
+                FioGenerator.bindCompiled(compiled,
+                        ConfigSnapshot.databaseFile(dbName));
+            } else {
+                LOG.warn("Compiled dictionaries are not bound to {}, "
+                        + "and will only be used without the database file.",
+                        props.getProperty(PROP_DBURL));
+            }
         }
     }
 
@@ -26,6 +26,8 @@ public class MaskingFunction {
     private FunctionType type;
     private String text;
     private String textInput;
+    // compiled script classes, or null
+    private byte[] code;
 
     public MaskingFunction() {
         this.name = Utils.NONE;
@@ -82,6 +84,14 @@ public class MaskingFunction {
         this.textInput = textInput;
     }
 
+    public byte[] getCode() {
+        return code;
+    }
+
+    public void setCode(byte[] code) {
+        this.code = code;
+    }
+
     public boolean isValid() {
         return name.length() > 0 && type!=null;
     }
@@ -20,6 +20,8 @@ public class MaskingPredicate {
 
     private String predicateText;
     private String predicateInput;
+    // compiled script classes, or null
+    private byte[] code;
 
     public MaskingPredicate() {
     }
@@ -40,4 +42,12 @@ public class MaskingPredicate {
         this.predicateInput = predicateInput;
     }
 
+    public byte[] getCode() {
+        return code;
+    }
+
+    public void setCode(byte[] code) {
+        this.code = code;
+    }
+
 } // class Predicate
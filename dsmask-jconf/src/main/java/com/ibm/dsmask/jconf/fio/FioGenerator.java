@@ -12,6 +12,7 @@
  */
 package com.ibm.dsmask.jconf.fio;
 
+import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -19,6 +20,8 @@ import java.util.ArrayList;
 import java.util.List;
 import com.ibm.dsmask.jconf.beans.Utils;
 import com.ibm.dsmask.jconf.impl.DbUtils;
+import com.ibm.dsmask.util.CompiledDict;
+import com.ibm.dsmask.util.CompiledDictWriter;
 
 /**
  *
@@ -64,6 +67,12 @@ public class FioGenerator extends DbUtils implements AutoCloseable {
             + "sex CHAR(1) NOT NULL)"
     };
 
+    // tables exported to the compiled dictionary files
+    private static final String[] DICT_TABLES = {
+        "dict_fio", "dict_fio_male", "dict_fio_female",
+        "dict_name_first", "dict_name_middle", "dict_name_last"
+    };
+
     private Connection connection;
     private PreparedStatement psAddMale;
     private PreparedStatement psAddFemale;
@@ -198,6 +207,41 @@ public class FioGenerator extends DbUtils implements AutoCloseable {
         }
     }
 
+    /**
+     * Write the compiled dictionary files for the generated tables,
+     * named as "PREFIX.TABLENAME.hdict".
+     * The prefix should normally be the database path name,
+     * so that the files are placed along with the database.
+     * @param prefix Path prefix for the compiled files
+     * @throws Exception
+     */
+    public void compile(String prefix) throws Exception {
+        for (String table : DICT_TABLES) {
+            final File file = new File(prefix + "." + table
+                    + CompiledDict.EXTENSION);
+            final int count = CompiledDictWriter.export(connection,
+                    table, "id", file);
+            LOG.info("Compiled dictionary {} written, {} rows.", file, count);
+        }
+    }
+
+    /**
+     * Bind the compiled dictionary files written by compile()
+     * to the database file, so that the stale files can be detected.
+     * @param prefix Path prefix for the compiled files
+     * @param dbFile H2 database file, which has to be closed
+     * @throws Exception
+     */
+    public static void bindCompiled(String prefix, File dbFile)
+            throws Exception {
+        for (String table : DICT_TABLES) {
+            final File file = new File(prefix + "." + table
+                    + CompiledDict.EXTENSION);
+            CompiledDict.bind(file, dbFile);
+        }
+        LOG.info("Compiled dictionaries bound to {}", dbFile);
+    }
+
     /**
      * Commit if number of inserted rows exceed threshold.
      * @param steps Number of inserted rows, or -1 on final call
@@ -35,7 +35,8 @@ public class DbManager extends DbUtils implements AutoCloseable {
             + "id INTEGER NOT NULL PRIMARY KEY, "
             + "name VARCHAR(100) NOT NULL UNIQUE, "
             + "tcode VARCHAR(30) NOT NULL, "
-            + "func_text CLOB NULL)"
+            + "func_text CLOB NULL, "
+            + "func_code BLOB NULL)"
         ,"CREATE TABLE msk_rule("
             + "id INTEGER NOT NULL PRIMARY KEY, "
             + "name VARCHAR(100) NOT NULL UNIQUE)"
@@ -50,6 +51,7 @@ public class DbManager extends DbUtils implements AutoCloseable {
             + "func_id INTEGER NOT NULL, "
             + "pred_text CLOB NULL, "
             + "pred_lua BOOLEAN NULL, "
+            + "pred_code BLOB NULL, "
             + "uniq_ref VARCHAR(100) NULL, "
             + "uniq_input INTEGER ARRAY NULL, "
             + "uniq_output INTEGER ARRAY NULL, "
@@ -289,15 +291,17 @@ public class DbManager extends DbUtils implements AutoCloseable {
             // Save the step under new ID
             ps = connection.prepareStatement("INSERT INTO msk_step"
                     + "(id, rule_id, name, pred_text, pred_lua, func_id,"
-                    + " uniq_ref, uniq_input, uniq_output) "
-                    + "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?)");
+                    + " uniq_ref, uniq_input, uniq_output, pred_code) "
+                    + "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
             ps.setInt(1, stepId);
             ps.setInt(2, stepCtx.ruleId);
             ps.setString(3, step.getName());
             if (step.getPredicate()!=null) {
                 ps.setString(4, step.getPredicate().getText());
+                ps.setBytes(10, step.getPredicate().getCode());
             } else {
                 ps.setString(4, null);
+                ps.setBytes(10, null);
             }
             ps.setBoolean(5, false); // unused PRED_LUA field
             ps.setInt(6, funcId);
@@ -361,11 +365,12 @@ public class DbManager extends DbUtils implements AutoCloseable {
             rs.close();  ps.close();
             // Store rule row
             ps = connection.prepareStatement("INSERT INTO msk_func(id, name,"
-                    + "tcode, func_text) VALUES(?,?,?,?)");
+                    + "tcode, func_text, func_code) VALUES(?,?,?,?,?)");
             ps.setInt(1, funcId);
             ps.setString(2, mf.getName());
             ps.setString(3, mf.getType().name());
             ps.setString(4, mf.getText());
+            ps.setBytes(5, mf.getCode());
             ps.executeUpdate();
             ps.close();
         } finally {
@@ -18,6 +18,9 @@ import com.ibm.dsmask.jconf.portage.*;
 
 /**
  * Validate syntax of scripts and perform basic execution tests.
+ * Scripts passing the tests are compiled, and the compiled classes
+ * are stored in the function and predicate beans, to be saved
+ * in the configuration database.
  * @author zinal
  */
 public class ScriptChecker {
@@ -43,7 +46,9 @@ public class ScriptChecker {
         for (MaskingFunction mf : ruleReg.getFunctions().values()) {
             switch (mf.getType()) {
                 case GroovyScript:
-                    if (!getGroovyTester().test(mf))
+                    if (getGroovyTester().test(mf))
+                        mf.setCode(compile(mf.getText()));
+                    else
                         ++functionsFailed;
                     ++functionsTested;
                     break;
@@ -57,7 +62,10 @@ public class ScriptChecker {
                 for (MaskingStep ms : mr.getPipeline()) {
                     if (ms.getPredicate()==null)
                         continue;
-                    if (!getGroovyTester().test(ms.getPredicate()))
+                    if (getGroovyTester().test(ms.getPredicate()))
+                        ms.getPredicate().setCode(
+                                compile(ms.getPredicate().getText()));
+                    else
                         ++predicatesFailed;
                     ++predicatesTested;
                 }
@@ -71,4 +79,20 @@ public class ScriptChecker {
             throw new Exception("Incorrect script functions found");
     }
 
+    /**
+     * Compile the script to be stored in the configuration database.
+     * @param text Script text
+     * @return Compiled classes, or null if the script has to be
+     *   compiled at runtime
+     */
+    private byte[] compile(String text) {
+        try {
+            return getGroovyTester().compileClasses(text).encode();
+        } catch(Exception ex) {
+            LOG.warn("Cannot pre-compile Groovy script, it will be "
+                    + "compiled at runtime\n{}\n", text, ex);
+            return null;
+        }
+    }
+
 }
@@ -12,10 +12,23 @@
  */
 package com.ibm.dsmask.jconf.portage;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import com.ibm.dsmask.util.DsMaskUtil;
+import com.ibm.dsmask.util.ScriptClasses;
+import groovy.lang.GroovyClassLoader;
 import groovy.lang.GroovyCodeSource;
 import groovy.lang.GroovyShell;
+import groovy.lang.GroovySystem;
 import groovy.lang.Script;
+import groovy.transform.CompileStatic;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.tools.GroovyClass;
 
 /**
  *
@@ -29,15 +42,57 @@ public class GroovyTester extends ScriptTesterBase {
     private GroovyShell groovyShell = null;
     private final String EOL = System.lineSeparator();
 
-    public final Script compileInput(String text) {
+    private String wrapInput(String text) {
         if (text.trim().startsWith("return")) {
             text = "def invoke(Object... input) {" + EOL + text + EOL + "}";
         }
-        GroovyCodeSource gcs = new GroovyCodeSource(text, "script.groovy",
-                GroovyShell.DEFAULT_CODE_BASE);
+        return text;
+    }
+
+    public final Script compileInput(String text) {
+        GroovyCodeSource gcs = new GroovyCodeSource(wrapInput(text),
+                "script.groovy", GroovyShell.DEFAULT_CODE_BASE);
         return getShell().parse(gcs);
     }
 
+    /**
+     * Compile the script to the classes, the same way as the masking
+     * engine does it: statically if possible, dynamically otherwise.
+     * @param text Script text
+     * @return Compiled classes
+     */
+    public final ScriptClasses compileClasses(String text) {
+        try {
+            return compileClasses(text, true);
+        } catch(CompilationFailedException ex) {
+            return compileClasses(text, false);
+        }
+    }
+
+    private ScriptClasses compileClasses(String text, boolean useStatic) {
+        final CompilerConfiguration cc = new CompilerConfiguration();
+        if (useStatic) {
+            cc.addCompilationCustomizers(
+                    new ASTTransformationCustomizer(CompileStatic.class));
+        }
+        final CompilationUnit cu = new CompilationUnit(cc, null,
+                new GroovyClassLoader(getClass().getClassLoader(), cc));
+        cu.addSource("script.groovy", wrapInput(text));
+        cu.compile(Phases.CLASS_GENERATION);
+        String mainClass = null;
+        for (ClassNode cn : cu.getAST().getClasses()) {
+            if (cn.isScript())
+                mainClass = cn.getName();
+        }
+        if (mainClass==null)
+            throw new IllegalArgumentException("Not a script:\n" + text);
+        final Map<String, byte[]> classes = new LinkedHashMap<>();
+        for (GroovyClass gc : cu.getClasses())
+            classes.put(gc.getName(), gc.getBytes());
+        return new ScriptClasses(GroovySystem.getVersion(), useStatic,
+                text, mainClass, classes);
+    }
+
     public final GroovyShell getShell() {
         if (groovyShell==null) {
             groovyShell = new GroovyShell();
@@ -12,9 +12,12 @@
  */
 package com.ibm.dsmask.jconf.impl;
 
+import java.util.Map;
 import org.junit.Test;
 import org.junit.After;
 import org.junit.Before;
+import static org.junit.Assert.*;
+import com.ibm.dsmask.util.ScriptClasses;
 import com.ibm.dsmask.jconf.mock.*;
 import com.ibm.dsmask.jconf.portage.*;
 
@@ -50,6 +53,36 @@ public class ScriptCheckerTest {
                 "return 'y'", true);
     }
 
+    @Test
+    public void groovyCompileTest() throws Exception {
+        final GroovyTester groovyTester = new GroovyTester();
+        final String text = "def invoke(String aaa) { "
+                + "return [1, 2].collect { aaa * it }.join(','); }";
+        final ScriptClasses sc = ScriptClasses.decode(
+                groovyTester.compileClasses(text).encode());
+        assertNotNull(sc);
+        assertTrue(sc.isStaticCompiled());
+        assertTrue(sc.matches(text, groovy.lang.GroovySystem.getVersion()));
+        // the closure is compiled to a separate class
+        assertTrue(sc.getClasses().size() > 1);
+        final Object script = new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name)
+                    throws ClassNotFoundException {
+                final Map<String, byte[]> classes = sc.getClasses();
+                if (!classes.containsKey(name))
+                    throw new ClassNotFoundException(name);
+                final byte[] b = classes.get(name);
+                return defineClass(name, b, 0, b.length);
+            }
+        }.loadClass(sc.getMainClass()).newInstance();
+        assertEquals("a,aa", ((groovy.lang.Script) script)
+                .invokeMethod("invoke", new Object[] {"a"}));
+        // binding variables need the dynamic compilation
+        assertFalse(groovyTester.compileClasses("return dsmask.toString()")
+                .isStaticCompiled());
+    }
+
     @Test
     public void scriptCheckerTest() throws Exception {
         new ScriptChecker(maskingRuleRegistry) . check();
@@ -40,6 +40,12 @@ public class DsApply extends Processor {
     public static final String PROP_FIELD_TABLE = "FieldTable";
     public static final String PROP_FIELD_BEFORE = "FieldBefore";
     public static final String PROP_FIELD_AFTER = "FieldAfter";
+    public static final String PROP_BATCH_SIZE = "BatchSize";
+    public static final String PROP_COMMIT_INTERVAL = "CommitInterval";
+    public static final String PROP_REORDER_TABLES = "ReorderTables";
+
+    public static final int DEF_BATCH_SIZE = 100;
+    public static final int DEF_COMMIT_INTERVAL = 1000;
 
     public static final int MAX_RETRIES = 5;
 
@@ -50,6 +56,9 @@ public class DsApply extends Processor {
     private String fieldTableName;
     private String fieldBeforeName;
     private String fieldAfterName;
+    private int batchSize = DEF_BATCH_SIZE;
+    private int commitInterval = DEF_COMMIT_INTERVAL;
+    private boolean reorderTables = false;
 
     private final List<String> configErrors = new ArrayList<>();
 
@@ -94,6 +103,24 @@ public class DsApply extends Processor {
                 "AFTER pack field name",
                 "Name of the input field with packed AFTER values.",
                 PropertyDefinition.Scope.STAGE));
+        propList.add(new PropertyDefinition(PROP_BATCH_SIZE,
+                String.valueOf(DEF_BATCH_SIZE),
+                "Batch size",
+                "Max number of changes sent to the destination database "
+                        + "in a single batch (1 to disable batching).",
+                PropertyDefinition.Scope.STAGE));
+        propList.add(new PropertyDefinition(PROP_COMMIT_INTERVAL,
+                String.valueOf(DEF_COMMIT_INTERVAL),
+                "Commit interval",
+                "Number of changes applied between the commits.",
+                PropertyDefinition.Scope.STAGE));
+        propList.add(new PropertyDefinition(PROP_REORDER_TABLES, "false",
+                "Reorder tables",
+                "Allow the batches of different tables to be executed "
+                        + "out of the input order. Must not be enabled "
+                        + "for the destination tables linked "
+                        + "with foreign keys.",
+                PropertyDefinition.Scope.STAGE));
         return propList;
     }
 
@@ -157,6 +184,16 @@ public class DsApply extends Processor {
             addConfError(PROP_FIELD_AFTER, "Not specified");
         }
 
+        batchSize = parseNumber(props, PROP_BATCH_SIZE, DEF_BATCH_SIZE);
+        if (batchSize < 1 || batchSize > 100000)
+            addConfError(PROP_BATCH_SIZE, "Should be between 1 and 100000");
+        commitInterval = parseNumber(props, PROP_COMMIT_INTERVAL,
+                DEF_COMMIT_INTERVAL);
+        if (commitInterval < 1)
+            addConfError(PROP_COMMIT_INTERVAL, "Should be positive");
+        reorderTables = Boolean.parseBoolean(
+                props.getProperty(PROP_REORDER_TABLES, "false").trim());
+
         if (runtime) {
             inputLink = config.getInputLink(0);
             // Ensure we have the input columns we need
@@ -185,8 +222,9 @@ public class DsApply extends Processor {
                 // Build the map of actions
                 for (DstTableConf dtc : tables) {
                     if (dtc.isValid()) {
-                        actions.put(dtc.getCommonName().toLowerCase(),
-                                new DstTableAction(dtc));
+                        final DstTableAction dta = new DstTableAction(dtc);
+                        dta.setBatchSize(batchSize);
+                        actions.put(dtc.getCommonName().toLowerCase(), dta);
                     } else {
                         configErrors.addAll(dtc.getErrors());
                     }
@@ -208,6 +246,18 @@ public class DsApply extends Processor {
         configErrors.add(propName + ": " + text);
     }
 
+    private int parseNumber(Properties props, String propName, int defval) {
+        final String tmp = props.getProperty(propName);
+        if (tmp==null || tmp.trim().length()==0)
+            return defval;
+        try {
+            return Integer.parseInt(tmp.trim());
+        } catch(NumberFormatException nfe) {
+            addConfError(propName, "Illegal number format: " + tmp);
+            return defval;
+        }
+    }
+
     @Override
     public void initialize() throws Exception {
         connection = DriverManager.getConnection(jdbcURL, jdbcUser, jdbcPassword);
@@ -231,6 +281,7 @@ public class DsApply extends Processor {
     public void process() throws Exception {
         final DstRowValue value = new DstRowValue();
         int commitCounter = 0;
+        DstTableAction current = null;
         while (true) {
             InputRecord ir = inputLink.readRecord();
             if (ir==null)
@@ -266,21 +317,33 @@ public class DsApply extends Processor {
             // Unpack the before and after values
             value.parse(tableName, before, after);
             // Handle the change
-            int rowCount = action.apply(value, connection);
-            if (rowCount != 1) {
-                logger.logMessage("bad-update-count", 50,
-                        "Number of updates for a single record was "
-                                + String.valueOf(rowCount)
-                                + " for table [" + tableName + "]");
+            if (batchSize > 1) {
+                if (current!=action && current!=null && !reorderTables) {
+                    // keep the order of changes between the tables
+                    reportBadCount(current, current.flush());
+                }
+                current = action;
+                reportBadCount(action, action.add(value, connection));
+            } else {
+                int rowCount = action.apply(value, connection);
+                if (rowCount != 1) {
+                    logger.logMessage("bad-update-count", 50,
+                            "Number of updates for a single record was "
+                                    + String.valueOf(rowCount)
+                                    + " for table [" + tableName + "]");
+                }
             }
-            if (++commitCounter > 1000) {
+            if (++commitCounter >= commitInterval) {
+                flushAll();
                 connection.commit();
                 commitCounter = 0;
             }
         } // while (true)
         // Commit all changes
-        if (commitCounter > 0)
+        if (commitCounter > 0) {
+            flushAll();
             connection.commit();
+        }
         { // Print statistics
             final StringBuilder sb = new StringBuilder();
             for (DstTableAction action : actions.values()) {
@@ -295,4 +358,20 @@ public class DsApply extends Processor {
         }
     }
 
+    private void flushAll() throws Exception {
+        for (DstTableAction action : actions.values()) {
+            if (action.getPendingCount() > 0)
+                reportBadCount(action, action.flush());
+        }
+    }
+
+    private void reportBadCount(DstTableAction action, int badCount) {
+        if (badCount > 0) {
+            logger.logMessage("bad-update-count", 50,
+                    "Number of updates for a single record was not 1 for "
+                            + String.valueOf(badCount) + " records in table ["
+                            + action.getConfig().getCommonName() + "]");
+        }
+    }
+
 }
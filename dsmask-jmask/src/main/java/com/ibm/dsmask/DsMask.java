@@ -35,10 +35,21 @@ public class DsMask extends Processor {
     public static final String PROP_CONFIG = "ConfigName";
     public static final String PROP_PROF = "ProfileName";
     public static final String PROP_BATCH = "BatchSize";
+    public static final String PROP_BATCH_ADAPTIVE = "AdaptiveBatch";
+    public static final String PROP_BATCH_MIN = "BatchSizeMin";
+    public static final String PROP_BATCH_MAX = "BatchSizeMax";
+    // number of masking threads; with more than one thread the winner
+    //   of a uniq conflict between the batches depends on the timing
+    public static final String PROP_THREADS = "ThreadCount";
+    public static final String PROP_PIPELINE = "PipelineBuffers";
     public static final String PROP_SCOPE_LIST = "ScopeList";
+    public static final String PROP_DEDUP_RULES = "DedupRules";
+    public static final String PROP_METRICS_PATH = "MetricsPath";
     public static final String PROP_UNIQ_HOST = "UniqHost";
     public static final String PROP_UNIQ_PORT = "UniqPort";
     public static final String PROP_UNIQ_SECRET = "UniqSecret";
+    public static final String PROP_UNIQ_COMPRESS = "UniqCompression";
+    public static final String PROP_UNIQ_CACHE = "UniqCacheSize";
 
     private InputLink inputLink;
     private OutputLink outputLink;
@@ -47,6 +58,12 @@ public class DsMask extends Processor {
     private XMasker masker;
 
     private int batchSize = 100;
+    private boolean adaptiveBatch = false;
+    private int batchSizeMin = 10;
+    private int batchSizeMax = 10000;
+    private int threadCount = 1;
+    private int pipelineBuffers = 0;
+    private String metricsPath = null;
     private String dictPath = null;
     private String configPath = null;
     private String configName = null;
@@ -54,9 +71,12 @@ public class DsMask extends Processor {
     private String tableName = null;
     private String profileName = null;
     private List<String> scopeList = null;
+    private List<String> dedupRules = null;
     private String uniqHost = null;
     private int uniqPort = -1;
     private String uniqSecret = null;
+    private boolean uniqCompression = false;
+    private int uniqCacheSize = XServices.DEFAULT_UNIQ_CACHE;
 
     private final List<String> configErrors = new ArrayList<>();
 
@@ -93,11 +113,49 @@ public class DsMask extends Processor {
                 "Batch size",
                 "Number of rows to be processed in a batch.",
                 PropertyDefinition.Scope.STAGE));
+        propList.add(new PropertyDefinition(PROP_BATCH_ADAPTIVE, "false",
+                "Adaptive batch size",
+                "Adjust the batch size at runtime, starting from "
+                        + "the configured batch size. "
+                        + "Used only with a single masking thread "
+                        + "and without the pipeline.",
+                PropertyDefinition.Scope.STAGE));
+        propList.add(new PropertyDefinition(PROP_BATCH_MIN, "10",
+                "Minimal batch size",
+                "Lower bound for the adaptive batch size.",
+                PropertyDefinition.Scope.STAGE));
+        propList.add(new PropertyDefinition(PROP_BATCH_MAX, "10000",
+                "Maximal batch size",
+                "Upper bound for the adaptive batch size.",
+                PropertyDefinition.Scope.STAGE));
+        propList.add(new PropertyDefinition(PROP_THREADS, "1",
+                "Masking threads",
+                "Number of threads masking the batches concurrently "
+                        + "within a single partition.",
+                PropertyDefinition.Scope.STAGE));
+        propList.add(new PropertyDefinition(PROP_PIPELINE, "0",
+                "Pipeline buffers",
+                "Number of batches rotating between the separate read, "
+                        + "mask and write threads (0 to disable). "
+                        + "Used only with a single masking thread.",
+                PropertyDefinition.Scope.STAGE));
         propList.add(new PropertyDefinition(PROP_SCOPE_LIST, "",
                 "List of column name prefixes as a scope for masking",
                 "Specifies a comma-separated list of column name prefixes, "
                         + "typical value is 'BEFORE_,AFTER_'",
                 PropertyDefinition.Scope.STAGE));
+        propList.add(new PropertyDefinition(PROP_DEDUP_RULES, "",
+                "List of rules to collapse duplicate inputs",
+                "Specifies a comma-separated list of masking rules "
+                        + "to be computed once per distinct input "
+                        + "within a batch, '*' for all rules",
+                PropertyDefinition.Scope.STAGE));
+        propList.add(new PropertyDefinition(PROP_METRICS_PATH, "",
+                "Metrics directory",
+                "Directory to write the masking metrics summary "
+                        + "in JSON format when the run completes, "
+                        + "one file per partition (empty to disable).",
+                PropertyDefinition.Scope.STAGE));
         propList.add(new PropertyDefinition(PROP_UNIQ_HOST, "",
                 "UNIQ-CHECK service hostname",
                 "Specifies the hostname where UNIQ-CHECK service runs.",
@@ -110,6 +168,17 @@ public class DsMask extends Processor {
                 "UNIQ-CHECK service secret",
                 "Specifies the access secret for UNIQ-CHECK service.",
                 PropertyDefinition.Scope.STAGE));
+        propList.add(new PropertyDefinition(PROP_UNIQ_COMPRESS, "false",
+                "UNIQ-CHECK traffic compression",
+                "Enables the compression of UNIQ-CHECK requests and responses, "
+                        + "if supported by the service.",
+                PropertyDefinition.Scope.STAGE));
+        propList.add(new PropertyDefinition(PROP_UNIQ_CACHE,
+                String.valueOf(XServices.DEFAULT_UNIQ_CACHE),
+                "UNIQ-CHECK cache size",
+                "Number of confirmed UNIQ-CHECK links cached by each "
+                        + "masking thread (0 to disable).",
+                PropertyDefinition.Scope.STAGE));
         return propList;
     }
 
@@ -148,6 +217,12 @@ public class DsMask extends Processor {
             }
             DsLink dsLink = new DsLink(inputLink, outputLink, rejectLink);
             masker = new XMasker(dsLink, dsLink, batchSize);
+            masker.setThreadCount(threadCount);
+            masker.setPipelineBuffers(pipelineBuffers);
+            if (adaptiveBatch)
+                masker.setAdaptiveBatch(batchSizeMin, batchSizeMax);
+            masker.setDedupRules(dedupRules);
+            masker.setMetricsPath(metricsPath);
             if (! masker.buildIndexMap()) {
                 for (String cname : masker.getMissingColumns())
                     configErrors.add(cname + ": missing input column");
@@ -173,6 +248,60 @@ public class DsMask extends Processor {
         }
         if (batchSize < 1 || batchSize > 100000)
             batchSize = 100;
+        adaptiveBatch = Boolean.parseBoolean(
+                props.getProperty(PROP_BATCH_ADAPTIVE, "false").trim());
+        try {
+            String tmp = props.getProperty(PROP_BATCH_MIN);
+            if (tmp==null || tmp.length()==0) {
+                batchSizeMin = 10;
+            } else {
+                batchSizeMin = Integer.valueOf(tmp);
+            }
+        } catch(Exception ex) {
+            addConfError(PROP_BATCH_MIN, ex);
+        }
+        if (batchSizeMin < 1 || batchSizeMin > 100000)
+            batchSizeMin = 10;
+        try {
+            String tmp = props.getProperty(PROP_BATCH_MAX);
+            if (tmp==null || tmp.length()==0) {
+                batchSizeMax = 10000;
+            } else {
+                batchSizeMax = Integer.valueOf(tmp);
+            }
+        } catch(Exception ex) {
+            addConfError(PROP_BATCH_MAX, ex);
+        }
+        if (batchSizeMax < 1 || batchSizeMax > 100000)
+            batchSizeMax = 10000;
+        if (adaptiveBatch && batchSizeMin > batchSizeMax)
+            addConfError(PROP_BATCH_MIN, "Exceeds " + PROP_BATCH_MAX);
+        try {
+            String tmp = props.getProperty(PROP_THREADS);
+            if (tmp==null || tmp.length()==0) {
+                threadCount = 1;
+            } else {
+                threadCount = Integer.valueOf(tmp);
+            }
+        } catch(Exception ex) {
+            addConfError(PROP_THREADS, ex);
+        }
+        if (threadCount < 1 || threadCount > 64)
+            threadCount = 1;
+        try {
+            String tmp = props.getProperty(PROP_PIPELINE);
+            if (tmp==null || tmp.length()==0) {
+                pipelineBuffers = 0;
+            } else {
+                pipelineBuffers = Integer.valueOf(tmp);
+            }
+        } catch(Exception ex) {
+            addConfError(PROP_PIPELINE, ex);
+        }
+        if (pipelineBuffers < 0 || pipelineBuffers > 16) {
+            addConfError(PROP_PIPELINE, "Out of range 0..16");
+            pipelineBuffers = 0;
+        }
         configPath = props.getProperty(PROP_PATH_CONF);
         if (configPath==null || configPath.length()==0) {
             configPath = System.getenv(GlobalNames.ENV_CONFIG);
@@ -223,6 +352,16 @@ public class DsMask extends Processor {
             scopeList = new ArrayList<>();
             scopeList.addAll(Arrays.asList(scopeListVal.split("[,]")));
         }
+        String dedupRulesVal = props.getProperty(PROP_DEDUP_RULES);
+        if (dedupRulesVal!=null && dedupRulesVal.trim().length()!=0) {
+            dedupRules = new ArrayList<>();
+            dedupRules.addAll(Arrays.asList(dedupRulesVal.split("[,]")));
+        }
+        metricsPath = props.getProperty(PROP_METRICS_PATH);
+        if (metricsPath!=null && metricsPath.trim().length()>0
+                && new File(metricsPath.trim()).isDirectory()==false) {
+            addConfError(PROP_METRICS_PATH, "Not a directory");
+        }
         String uniqHostVal = props.getProperty(PROP_UNIQ_HOST);
         if (uniqHostVal!=null && uniqHostVal.trim().length()>0) {
             uniqHost = uniqHostVal;
@@ -237,6 +376,20 @@ public class DsMask extends Processor {
                 addConfError(PROP_UNIQ_PORT, ex);
             }
             uniqSecret = props.getProperty(PROP_UNIQ_SECRET);
+            uniqCompression = Boolean.parseBoolean(
+                    props.getProperty(PROP_UNIQ_COMPRESS, "false").trim());
+            try {
+                String tmp = props.getProperty(PROP_UNIQ_CACHE);
+                if (tmp==null || tmp.length()==0) {
+                    uniqCacheSize = XServices.DEFAULT_UNIQ_CACHE;
+                } else {
+                    uniqCacheSize = Integer.valueOf(tmp);
+                }
+            } catch(Exception ex) {
+                addConfError(PROP_UNIQ_CACHE, ex);
+            }
+            if (uniqCacheSize < 0 || uniqCacheSize > 10000000)
+                uniqCacheSize = XServices.DEFAULT_UNIQ_CACHE;
         }
     }
 
@@ -270,8 +423,10 @@ public class DsMask extends Processor {
 
     @Override
     public void initialize() throws Exception {
+        boolean snapshot = false;
         try (ContextLoader ctxLoader
                 = new ContextLoader(configPath, configName)) {
+            snapshot = ctxLoader.isSnapshot();
             maskingContext = ctxLoader.load(databaseName, tableName, scopeList);
         } catch(Exception ex) {
             throw new Exception("Failed to load configuration database ["
@@ -279,7 +434,8 @@ public class DsMask extends Processor {
         }
         if (maskingContext!=null) {
             SafeLogger.information("Masking context loaded for "
-                    + databaseName + "." + tableName);
+                    + databaseName + "." + tableName
+                    + (snapshot ? " from the configuration snapshot" : ""));
             maskingContext.setDictPath(dictPath);
             masker.setContext(maskingContext);
             masker.validateFields();
@@ -376,7 +532,10 @@ public class DsMask extends Processor {
     private XServices configureServices() {
         XServices xs = new XServices();
         if (uniqHost != null) {
-            xs.setUniqProviderFactory(new UniqClientFactory(uniqHost, uniqPort, uniqSecret));
+            UniqClientFactory ucf = new UniqClientFactory(uniqHost, uniqPort, uniqSecret);
+            ucf.setCompression(uniqCompression);
+            xs.setUniqProviderFactory(ucf);
+            xs.setUniqCacheSize(uniqCacheSize);
         }
         return xs;
     }
@@ -33,9 +33,12 @@ public class DsMerge extends Processor {
     public static final String PROP_TABLE_NAME = "TableName";
     public static final String PROP_TABLE_NAME_FIELD = "TableNameField";
     public static final String PROP_OP_SEQ_FIELD = "OpSeqField";
+    public static final String PROP_LEGACY_PACK = "LegacyPack";
 
     private String tableName;
     private String tableNameField;
+    // true to use Java serialization for the packed values
+    private boolean legacyPack = false;
     // group prefix -> target field name
     private final Map<String, String> propFieldsMap = new HashMap<>();
     // target field name -> target group definition
@@ -76,6 +79,12 @@ public class DsMerge extends Processor {
                 "Destination and possible source field names "
                         + "for operational sequence number",
                 PropertyDefinition.Scope.STAGE));
+        propList.add(new PropertyDefinition(PROP_LEGACY_PACK, "false",
+                "Legacy packed format",
+                "Pack the values with Java serialization, "
+                        + "for the DsApply versions not supporting "
+                        + "the compact format",
+                PropertyDefinition.Scope.STAGE));
         return propList;
     }
 
@@ -132,6 +141,8 @@ public class DsMerge extends Processor {
                     addConfError(PROP_FIELDS_MAP, "Illegal (empty) entries");
             }
         }
+        legacyPack = Boolean.parseBoolean(
+                props.getProperty(PROP_LEGACY_PACK, "false").trim());
         // Parse the list of OP_SEQ field name strings
         String opSeqLine = props.getProperty(PROP_OP_SEQ_FIELD);
         if (opSeqLine==null || opSeqLine.length()==0)
@@ -273,7 +284,8 @@ public class DsMerge extends Processor {
                 if (data==null || data.isEmpty()) {
                     value = null;
                 } else {
-                    value = DstMergeAlgo.pack(data);
+                    value = legacyPack ? DstMergeAlgo.packLegacy(data)
+                            : DstMergeAlgo.pack(data);
                 }
                 or.setValue(mg.getTargetColumnIndex(), value);
             }
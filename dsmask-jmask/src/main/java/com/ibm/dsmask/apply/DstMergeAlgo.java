@@ -43,11 +43,23 @@ public class DstMergeAlgo {
     }
 
     /**
-     * Pack a map of field values into a byte array
+     * Pack a map of field values into a byte array,
+     * using the compact format of DstRowCodec
      * @param data Map, typically produced by the collect() method
      * @return Input map in the packed format
      */
     public static byte[] pack(Map<String, Object> data) {
+        return DstRowCodec.encode(data);
+    }
+
+    /**
+     * Pack a map of field values into a byte array, using Java serialization.
+     * Needed for the older DsApply versions, which cannot read
+     * the compact format.
+     * @param data Map, typically produced by the collect() method
+     * @return Input map in the legacy packed format
+     */
+    public static byte[] packLegacy(Map<String, Object> data) {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         try {
             try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
@@ -61,12 +73,19 @@ public class DstMergeAlgo {
 
     /**
      * Unpack a map of field values from the byte array
-     * @param input Packed format produced by pack() method
+     * @param input Packed format produced by pack() or packLegacy() method
      * @return Field names mapped to their values
      */
     public static Map<String, Object> unpack(byte[] input) {
         if (input==null)
             return null;
+        if (DstRowCodec.isCompact(input)) {
+            try {
+                return DstRowCodec.decode(input);
+            } catch(Exception ex) {
+                throw new RuntimeException("DstMergeAlgo.unpack() failed", ex);
+            }
+        }
         try {
             final ObjectInputStream ois = new ObjectInputStream(
                     new ByteArrayInputStream(input));
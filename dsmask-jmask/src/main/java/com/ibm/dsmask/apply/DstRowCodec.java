@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.apply;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact binary format for the packed column values
+ * passed from DsMerge to DsApply.
+ *
+ * Layout: version byte, column count, column names,
+ * then the values in the order of the column names, each value
+ * being a type tag followed by the type-specific encoding.
+ * Counts, lengths and integral values are written as varints
+ * (zigzag for signed values).
+ *
+ * The first byte of the legacy Java serialization format is 0xAC,
+ * which allows to distinguish between the two formats.
+ * @author zinal
+ */
+public final class DstRowCodec {
+
+    public static final byte VERSION = 1;
+
+    // value tags
+    private static final byte T_NULL = 0;
+    private static final byte T_STRING = 1;
+    private static final byte T_INT = 2;
+    private static final byte T_LONG = 3;
+    private static final byte T_SHORT = 4;
+    private static final byte T_BYTE = 5;
+    private static final byte T_FALSE = 6;
+    private static final byte T_TRUE = 7;
+    private static final byte T_DOUBLE = 8;
+    private static final byte T_FLOAT = 9;
+    private static final byte T_DECIMAL = 10;
+    private static final byte T_BIGINT = 11;
+    private static final byte T_DATE = 12;
+    private static final byte T_TIME = 13;
+    private static final byte T_TIMESTAMP = 14;
+    private static final byte T_BYTES = 15;
+    // any other serializable value
+    private static final byte T_OBJECT = 16;
+
+    private DstRowCodec() {
+    }
+
+    /**
+     * @param data Packed data
+     * @return true, if the data is in the compact format
+     */
+    public static boolean isCompact(byte[] data) {
+        return data!=null && data.length > 0 && data[0]==VERSION;
+    }
+
+    /**
+     * Encode the column values.
+     * @param data Column names mapped to their values
+     * @return Encoded values
+     */
+    public static byte[] encode(Map<String, Object> data) {
+        final Output out = new Output(16 + 24 * data.size());
+        out.put(VERSION);
+        out.putVarint(data.size());
+        final Object[] values = new Object[data.size()];
+        int pos = 0;
+        for (Map.Entry<String, Object> me : data.entrySet()) {
+            out.putBytes(me.getKey().toLowerCase()
+                    .getBytes(StandardCharsets.UTF_8));
+            values[pos++] = me.getValue();
+        }
+        for (Object v : values)
+            putValue(out, v);
+        return out.toArray();
+    }
+
+    /**
+     * Decode the column values.
+     * @param data Encoded values
+     * @return Column names mapped to their values
+     */
+    public static Map<String, Object> decode(byte[] data) {
+        final Input in = new Input(data);
+        final byte version = in.get();
+        if (version != VERSION)
+            throw new IllegalArgumentException("Unsupported packed format "
+                    + "version " + version);
+        final int count = in.getVarint();
+        final String[] names = new String[count];
+        for (int i=0; i<count; ++i)
+            names[i] = in.getString();
+        final Map<String, Object> retval = new HashMap<>(2 * count);
+        for (int i=0; i<count; ++i)
+            retval.put(names[i], getValue(in));
+        if (in.pos != data.length)
+            throw new IllegalArgumentException("Extra bytes in packed data");
+        return retval;
+    }
+
+    private static void putValue(Output out, Object v) {
+        if (v==null) {
+            out.put(T_NULL);
+        } else if (v instanceof String) {
+            out.put(T_STRING);
+            out.putBytes(((String) v).getBytes(StandardCharsets.UTF_8));
+        } else if (v instanceof Integer) {
+            out.put(T_INT);
+            out.putSigned((Integer) v);
+        } else if (v instanceof Long) {
+            out.put(T_LONG);
+            out.putSigned((Long) v);
+        } else if (v instanceof BigDecimal) {
+            final BigDecimal bd = (BigDecimal) v;
+            out.put(T_DECIMAL);
+            out.putSigned(bd.scale());
+            out.putBytes(bd.unscaledValue().toByteArray());
+        } else if (v instanceof java.sql.Timestamp) {
+            final java.sql.Timestamp ts = (java.sql.Timestamp) v;
+            out.put(T_TIMESTAMP);
+            out.putSigned(ts.getTime());
+            out.putVarint(ts.getNanos());
+        } else if (v instanceof java.sql.Date) {
+            out.put(T_DATE);
+            out.putSigned(((java.sql.Date) v).getTime());
+        } else if (v instanceof java.sql.Time) {
+            out.put(T_TIME);
+            out.putSigned(((java.sql.Time) v).getTime());
+        } else if (v instanceof byte[]) {
+            out.put(T_BYTES);
+            out.putBytes((byte[]) v);
+        } else if (v instanceof Short) {
+            out.put(T_SHORT);
+            out.putSigned((Short) v);
+        } else if (v instanceof Byte) {
+            out.put(T_BYTE);
+            out.put((Byte) v);
+        } else if (v instanceof Boolean) {
+            out.put(((Boolean) v) ? T_TRUE : T_FALSE);
+        } else if (v instanceof Double) {
+            out.put(T_DOUBLE);
+            out.putFixed(Double.doubleToRawLongBits((Double) v), 8);
+        } else if (v instanceof Float) {
+            out.put(T_FLOAT);
+            out.putFixed(Float.floatToRawIntBits((Float) v), 4);
+        } else if (v instanceof BigInteger) {
+            out.put(T_BIGINT);
+            out.putBytes(((BigInteger) v).toByteArray());
+        } else {
+            out.put(T_OBJECT);
+            out.putBytes(serialize(v));
+        }
+    }
+
+    private static Object getValue(Input in) {
+        final byte tag = in.get();
+        switch (tag) {
+            case T_NULL:
+                return null;
+            case T_STRING:
+                return in.getString();
+            case T_INT:
+                return (int) in.getSigned();
+            case T_LONG:
+                return in.getSigned();
+            case T_DECIMAL: {
+                final int scale = (int) in.getSigned();
+                return new BigDecimal(new BigInteger(in.getBytes()), scale);
+            }
+            case T_TIMESTAMP: {
+                final java.sql.Timestamp ts = new java.sql.Timestamp(in.getSigned());
+                ts.setNanos(in.getVarint());
+                return ts;
+            }
+            case T_DATE:
+                return new java.sql.Date(in.getSigned());
+            case T_TIME:
+                return new java.sql.Time(in.getSigned());
+            case T_BYTES:
+                return in.getBytes();
+            case T_SHORT:
+                return (short) in.getSigned();
+            case T_BYTE:
+                return in.get();
+            case T_FALSE:
+                return Boolean.FALSE;
+            case T_TRUE:
+                return Boolean.TRUE;
+            case T_DOUBLE:
+                return Double.longBitsToDouble(in.getFixed(8));
+            case T_FLOAT:
+                return Float.intBitsToFloat((int) in.getFixed(4));
+            case T_BIGINT:
+                return new BigInteger(in.getBytes());
+            case T_OBJECT:
+                return deserialize(in.getBytes());
+            default:
+                throw new IllegalArgumentException("Illegal value tag " + tag
+                        + " in packed data");
+        }
+    }
+
+    private static byte[] serialize(Object v) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(v);
+        } catch(Exception ex) {
+            throw new RuntimeException("Cannot pack value of type "
+                    + v.getClass().getName(), ex);
+        }
+        return baos.toByteArray();
+    }
+
+    private static Object deserialize(byte[] data) {
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new ByteArrayInputStream(data))) {
+            return ois.readObject();
+        } catch(Exception ex) {
+            throw new RuntimeException("Cannot unpack value", ex);
+        }
+    }
+
+    /**
+     * Growable output buffer.
+     */
+    private static final class Output {
+
+        byte[] buf;
+        int pos = 0;
+
+        Output(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        void ensure(int extra) {
+            if (pos + extra > buf.length)
+                buf = Arrays.copyOf(buf, Math.max(pos + extra, 2 * buf.length));
+        }
+
+        void put(byte b) {
+            ensure(1);
+            buf[pos++] = b;
+        }
+
+        void putVarint(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0L) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        void putSigned(long v) {
+            putVarint((v << 1) ^ (v >> 63));
+        }
+
+        void putFixed(long v, int size) {
+            ensure(size);
+            for (int i = size - 1; i >= 0; --i)
+                buf[pos++] = (byte) (v >>> (8 * i));
+        }
+
+        void putBytes(byte[] b) {
+            putVarint(b.length);
+            ensure(b.length);
+            System.arraycopy(b, 0, buf, pos, b.length);
+            pos += b.length;
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+
+    }
+
+    /**
+     * Input buffer with bounds checking.
+     */
+    private static final class Input {
+
+        final byte[] buf;
+        int pos = 0;
+
+        Input(byte[] buf) {
+            this.buf = buf;
+        }
+
+        byte get() {
+            if (pos >= buf.length)
+                throw new IllegalArgumentException("Truncated packed data");
+            return buf[pos++];
+        }
+
+        long getVarintLong() {
+            long v = 0L;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final byte b = get();
+                v |= ((long) (b & 0x7F)) << shift;
+                if ((b & 0x80) == 0)
+                    return v;
+            }
+            throw new IllegalArgumentException("Malformed varint in packed data");
+        }
+
+        int getVarint() {
+            final long v = getVarintLong();
+            if (v < 0L || v > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Illegal length in packed data");
+            return (int) v;
+        }
+
+        long getSigned() {
+            final long v = getVarintLong();
+            return (v >>> 1) ^ -(v & 1L);
+        }
+
+        long getFixed(int size) {
+            long v = 0L;
+            for (int i=0; i<size; ++i)
+                v = (v << 8) | (get() & 0xFF);
+            return v;
+        }
+
+        byte[] getBytes() {
+            final int len = getVarint();
+            if (len > buf.length - pos)
+                throw new IllegalArgumentException("Truncated packed data");
+            final byte[] b = Arrays.copyOfRange(buf, pos, pos + len);
+            pos += len;
+            return b;
+        }
+
+        String getString() {
+            final int len = getVarint();
+            if (len > buf.length - pos)
+                throw new IllegalArgumentException("Truncated packed data");
+            final String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            return s;
+        }
+
+    }
+
+}
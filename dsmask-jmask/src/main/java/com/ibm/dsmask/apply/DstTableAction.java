@@ -14,14 +14,31 @@ package com.ibm.dsmask.apply;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import com.ibm.dsmask.util.ByteArrayWrapper;
 
 /**
  * Implementation of actions to apply changes to the destination table
  * for the DsApply operator.
+ *
+ * In the batch mode the changes are collected into the JDBC batches,
+ * one per operation type. Before adding a change for a key which
+ * is already pending in the batch of another operation type, all pending
+ * batches are executed, so that the changes of a single key
+ * are applied in their original order.
  * @author mzinal
  */
 public class DstTableAction implements AutoCloseable {
 
+    // operation types, also the indexes of pending batches
+    public static final int OP_INSERT = 0;
+    public static final int OP_UPDATE = 1;
+    public static final int OP_DELETE = 2;
+
     private final DstTableConf config;
 
     private int insertCount = 0;
@@ -32,8 +49,19 @@ public class DstTableAction implements AutoCloseable {
     private transient PreparedStatement sqlDelete = null;
     private transient PreparedStatement sqlUpdate = null;
 
+    // max number of rows in a pending batch
+    private int batchSize = 1;
+    // number of rows in the pending batches, per operation type
+    private final int[] pendingCount = new int[3];
+    // keys touched by the pending batches, per operation type
+    private final List<Set<List<Object>>> pendingKeys = new ArrayList<>();
+    // order of pending batches, by their first change
+    private final List<Integer> pendingOrder = new ArrayList<>();
+
     public DstTableAction(DstTableConf config) {
         this.config = config;
+        for (int i=0; i<pendingCount.length; ++i)
+            pendingKeys.add(new HashSet<>());
     }
 
     public DstTableConf getConfig() {
@@ -52,8 +80,32 @@ public class DstTableAction implements AutoCloseable {
         return deleteCount;
     }
 
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize Max number of rows in a batch, 1 to disable batching
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = (batchSize < 1) ? 1 : batchSize;
+    }
+
+    /**
+     * @return Number of changes collected, but not yet executed
+     */
+    public int getPendingCount() {
+        return pendingCount[OP_INSERT] + pendingCount[OP_UPDATE]
+                + pendingCount[OP_DELETE];
+    }
+
     @Override
     public void close() {
+        for (int op=0; op<pendingCount.length; ++op) {
+            pendingCount[op] = 0;
+            pendingKeys.get(op).clear();
+        }
+        pendingOrder.clear();
         close(sqlInsert);  sqlInsert = null;
         close(sqlDelete);  sqlDelete = null;
         close(sqlUpdate);  sqlUpdate = null;
@@ -72,23 +124,145 @@ public class DstTableAction implements AutoCloseable {
      * @throws Exception In case of any error
      */
     public int apply(DstRowValue value, Connection con) throws Exception {
+        checkTable(value);
+        updateStatements(con);
+        switch (operationOf(value)) {
+            case OP_DELETE:
+                return applyDelete(value);
+            case OP_INSERT:
+                return applyInsert(value);
+            default:
+                return applyUpdate(value);
+        }
+    }
+
+    /**
+     * Add the changes to the pending batch of the destination table.
+     * The batch is executed when full, or when the change refers
+     * to the key which is already pending in another batch.
+     * @param value Changes data
+     * @param con Target database connection
+     * @return Number of executed changes with the update count other than 1
+     * @throws Exception In case of any error
+     */
+    public int add(DstRowValue value, Connection con) throws Exception {
+        checkTable(value);
+        updateStatements(con);
+        final int op = operationOf(value);
+        final List<Object> beforeKey = (op==OP_INSERT) ? null
+                : makeKey(value, false);
+        final List<Object> afterKey = (op==OP_DELETE) ? null
+                : makeKey(value, true);
+        int retval = 0;
+        for (int other=0; other<pendingCount.length; ++other) {
+            if (other==op || pendingCount[other]==0)
+                continue;
+            final Set<List<Object>> keys = pendingKeys.get(other);
+            if ((beforeKey!=null && keys.contains(beforeKey))
+                    || (afterKey!=null && keys.contains(afterKey))) {
+                retval += flush();
+                break;
+            }
+        }
+        switch (op) {
+            case OP_DELETE:
+                bindDelete(value);
+                sqlDelete.addBatch();
+                break;
+            case OP_INSERT:
+                bindInsert(value);
+                sqlInsert.addBatch();
+                break;
+            default:
+                bindUpdate(value);
+                sqlUpdate.addBatch();
+        }
+        if (pendingCount[op]==0)
+            pendingOrder.add(op);
+        ++pendingCount[op];
+        if (beforeKey!=null)
+            pendingKeys.get(op).add(beforeKey);
+        if (afterKey!=null)
+            pendingKeys.get(op).add(afterKey);
+        if (pendingCount[op] >= batchSize)
+            retval += flush(op);
+        return retval;
+    }
+
+    /**
+     * Execute all pending batches, in the order of their first changes.
+     * @return Number of executed changes with the update count other than 1
+     * @throws Exception In case of any error
+     */
+    public int flush() throws Exception {
+        int retval = 0;
+        while (! pendingOrder.isEmpty())
+            retval += flush(pendingOrder.get(0));
+        return retval;
+    }
+
+    private int flush(int op) throws Exception {
+        if (pendingCount[op]==0)
+            return 0;
+        final PreparedStatement ps;
+        switch (op) {
+            case OP_DELETE: ps = sqlDelete; break;
+            case OP_INSERT: ps = sqlInsert; break;
+            default: ps = sqlUpdate;
+        }
+        pendingCount[op] = 0;
+        pendingKeys.get(op).clear();
+        pendingOrder.remove(Integer.valueOf(op));
+        int total = 0, bad = 0;
+        for (int count : ps.executeBatch()) {
+            if (count == Statement.SUCCESS_NO_INFO) {
+                ++total; // the driver does not report the actual count
+            } else {
+                total += count;
+                if (count != 1)
+                    ++bad;
+            }
+        }
+        switch (op) {
+            case OP_DELETE: deleteCount += total; break;
+            case OP_INSERT: insertCount += total; break;
+            default: updateCount += total;
+        }
+        return bad;
+    }
+
+    private void checkTable(DstRowValue value) {
         if (!value.getTableName().equalsIgnoreCase(config.getCommonName())) {
             throw new IllegalArgumentException("DstTableAction.apply() expects ["
                     + config.getCommonName() + "] table and got row for ["
                     + value.getTableName() + "]");
         }
-        updateStatements(con);
+    }
+
+    private static int operationOf(DstRowValue value) {
         if (value.getAfter().isEmpty()) {
             // no after value - should have a before one, this is DELETE
-            return applyDelete(value);
+            return OP_DELETE;
         }
         if (value.getBefore().isEmpty()) {
             // has after, but no before - INSERT
-            return applyInsert(value);
+            return OP_INSERT;
         } else {
             // has both before and after - UPDATE
-            return applyUpdate(value);
+            return OP_UPDATE;
+        }
+    }
+
+    private List<Object> makeKey(DstRowValue value, boolean after) {
+        final List<Object> key = new ArrayList<>(config.getKeyFields().size());
+        for (String field : config.getKeyFields()) {
+            Object v = after ? value.getAfterVal(field)
+                    : value.getBeforeVal(field);
+            if (v instanceof byte[])
+                v = new ByteArrayWrapper((byte[]) v);
+            key.add(v);
         }
+        return key;
     }
 
     public boolean hadChanges() {
@@ -132,13 +306,17 @@ public class DstTableAction implements AutoCloseable {
         return con.prepareStatement(sql.toString());
     }
 
-    private int applyInsert(DstRowValue value) throws Exception {
-        if (value.getAfter().isEmpty())
-            return 0; // nothing to do
+    private void bindInsert(DstRowValue value) throws Exception {
         int index = 0;
         for (String field : config.getAllFields()) {
             sqlInsert.setObject(++index, value.getAfterVal(field));
         }
+    }
+
+    private int applyInsert(DstRowValue value) throws Exception {
+        if (value.getAfter().isEmpty())
+            return 0; // nothing to do
+        bindInsert(value);
         int retval = sqlInsert.executeUpdate();
         insertCount += retval;
         return retval;
@@ -156,13 +334,17 @@ public class DstTableAction implements AutoCloseable {
         return con.prepareStatement(sql.toString());
     }
 
-    private int applyDelete(DstRowValue value) throws Exception {
-        if (value.getBefore().isEmpty())
-            return 0; // nothing to do
+    private void bindDelete(DstRowValue value) throws Exception {
         int index = 0;
         for (String fn : config.getKeyFields()) {
             sqlDelete.setObject(++index, value.getBeforeVal(fn));
         }
+    }
+
+    private int applyDelete(DstRowValue value) throws Exception {
+        if (value.getBefore().isEmpty())
+            return 0; // nothing to do
+        bindDelete(value);
         int retval = sqlDelete.executeUpdate();
         deleteCount += retval;
         return retval;
@@ -186,9 +368,7 @@ public class DstTableAction implements AutoCloseable {
         return con.prepareStatement(sql.toString());
     }
 
-    private int applyUpdate(DstRowValue value) throws Exception {
-        if (value.getBefore().isEmpty() || value.getAfter().isEmpty())
-            return 0; // nothing to do
+    private void bindUpdate(DstRowValue value) throws Exception {
         int index = 0;
         for (String field : config.getAllFields()) {
             sqlUpdate.setObject(++index, value.getAfterVal(field));
@@ -196,6 +376,12 @@ public class DstTableAction implements AutoCloseable {
         for (String field : config.getKeyFields()) {
             sqlUpdate.setObject(++index, value.getBeforeVal(field));
         }
+    }
+
+    private int applyUpdate(DstRowValue value) throws Exception {
+        if (value.getBefore().isEmpty() || value.getAfter().isEmpty())
+            return 0; // nothing to do
+        bindUpdate(value);
         int retval = sqlUpdate.executeUpdate();
         updateCount += retval;
         return retval;
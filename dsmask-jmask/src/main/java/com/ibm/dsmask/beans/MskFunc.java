@@ -23,6 +23,8 @@ public class MskFunc {
     private FunctionType functionType;
     private String text;
     private boolean iterable;
+    // compiled script classes, or null
+    private byte[] code;
 
     public MskFunc() {
     }
@@ -80,4 +82,12 @@ public class MskFunc {
         this.iterable = iterable;
     }
 
+    public byte[] getCode() {
+        return code;
+    }
+
+    public void setCode(byte[] code) {
+        this.code = code;
+    }
+
 }
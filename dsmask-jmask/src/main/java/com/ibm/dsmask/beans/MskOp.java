@@ -33,6 +33,8 @@ public class MskOp {
     private int[] outputIndexes = null;
     // handled field name prefix
     private String scopePrefix;
+    // collapse the duplicate input vectors within a batch
+    private boolean dedup = false;
 
     /**
      * Normal constructor for an empty (non-loaded) masking operation
@@ -62,6 +64,7 @@ public class MskOp {
             }
         }
         this.scopePrefix = scopePrefix;
+        this.dedup = src.dedup;
     }
 
     public int getId() {
@@ -129,4 +132,16 @@ public class MskOp {
         this.scopePrefix = scopePrefix;
     }
 
+    /**
+     * @return true, if each distinct input vector within a batch
+     *         is masked once, and the result is copied to the duplicates
+     */
+    public boolean isDedup() {
+        return dedup;
+    }
+
+    public void setDedup(boolean dedup) {
+        this.dedup = dedup;
+    }
+
 }
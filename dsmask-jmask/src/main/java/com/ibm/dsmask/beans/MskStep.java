@@ -26,6 +26,8 @@ public class MskStep {
     private int id = -1;
     private String name = null;
     private String predicateText = null;
+    // compiled predicate classes, or null
+    private byte[] predicateCode = null;
     private MskFunc function = null;
     private MskUniq uniqCheck = null;
     private final List<MskRef> refs = new ArrayList<>();
@@ -67,6 +69,14 @@ public class MskStep {
         this.predicateText = predicateText;
     }
 
+    public byte[] getPredicateCode() {
+        return predicateCode;
+    }
+
+    public void setPredicateCode(byte[] predicateCode) {
+        this.predicateCode = predicateCode;
+    }
+
     public boolean hasPredicate() {
         if (predicateText==null)
             return false;
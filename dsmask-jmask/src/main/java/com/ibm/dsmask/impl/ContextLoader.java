@@ -25,15 +25,30 @@ import java.util.List;
 
 import com.ibm.dsmask.GlobalNames;
 import com.ibm.dsmask.beans.*;
+import com.ibm.dsmask.util.ConfigSnapshot;
 
 /**
  * Algorithm of loading masking context from the configuration database.
+ * When the binary snapshot of the database is available (and matches
+ * the database file), the context is loaded from the snapshot,
+ * without opening the database.
  * @author zinal
  */
 public class ContextLoader implements AutoCloseable {
 
+    // snapshot tables and the columns used to look up their rows
+    private static final String[][] SNAPSHOT_INDEXES = {
+        {"msk_profile", "table_name"}, {"msk_op", "profile_id"},
+        {"msk_op_arg", "op_id"}, {"msk_op_out", "op_id"},
+        {"msk_rule", "id"}, {"msk_step", "rule_id"},
+        {"msk_step_arg", "step_id"}, {"msk_func", "id"}
+    };
+
     private final Connection connection;
+    private final ConfigSnapshot snapshot;
     private final Map<String, PreparedStatement> statements = new HashMap<>();
+    // optional columns, mapped to their presence flags
+    private final Map<String, Boolean> columns = new HashMap<>();
 
     public ContextLoader() throws Exception {
         this(GlobalNames.DEF_CONFIG);
@@ -49,6 +64,11 @@ public class ContextLoader implements AutoCloseable {
         configName = Utils.lower(configName);
         final String dbPath = new File(new File(configPath), configName)
                 .getAbsolutePath();
+        this.snapshot = readSnapshot(dbPath);
+        if (snapshot!=null) {
+            this.connection = null;
+            return;
+        }
         final Connection temp = DriverManager.getConnection
             ("jdbc:h2:" + dbPath.replaceAll("\\\\", "/")
             + ";ACCESS_MODE_DATA=R");
@@ -62,29 +82,56 @@ public class ContextLoader implements AutoCloseable {
         this.connection = temp;
     }
 
+    /**
+     * Read the snapshot, if one exists and matches the database file.
+     * @param dbPath Configuration database pathname
+     * @return Snapshot, or null if the database has to be used
+     */
+    private static ConfigSnapshot readSnapshot(String dbPath) {
+        final File file = ConfigSnapshot.snapshotFile(dbPath);
+        if (! file.isFile())
+            return null;
+        try {
+            final ConfigSnapshot cs = ConfigSnapshot.read(file);
+            final File dbFile = ConfigSnapshot.databaseFile(dbPath);
+            if (dbFile.exists() && !cs.matches(dbFile))
+                return null; // stale snapshot
+            for (String[] ix : SNAPSHOT_INDEXES) {
+                final ConfigSnapshot.Table t = cs.getTable(ix[0]);
+                final int pos = (t==null) ? -1 : t.findColumn(ix[1]);
+                if (pos >= 0)
+                    t.index(pos);
+            }
+            return cs;
+        } catch(Exception ex) {
+            // unreadable snapshot, fallback to the database
+            return null;
+        }
+    }
+
+    /**
+     * @return true, if the context is loaded from the snapshot
+     */
+    public boolean isSnapshot() {
+        return snapshot!=null;
+    }
+
     public MskContext load(String databaseName, String tableName,
                 Collection<String> scopePrefixes)
             throws Exception {
         final MskContext context = new MskContext();
         context.getTable().setDatabaseName(databaseName);
         context.getTable().setTableName(tableName);
-        select("SELECT id FROM msk_profile WHERE table_name=? "
-                + ((databaseName==null) ? "" : "AND db_name=?"),
-                new Handler() {
-            @Override
-            public void assign(PreparedStatement ps) throws Exception {
-                ps.setString(1, Utils.lower(tableName));
-                if (databaseName!=null)
-                    ps.setString(2, Utils.lower(databaseName));
-            }
-            @Override
-            public void handle(ResultSet rs) throws Exception {
-                if (!rs.next())
-                    context.getTable().setId(-1);
-                else
-                    context.getTable().setId(rs.getInt(1));
-            }
-                });
+        final List<Object[]> profiles = (databaseName==null) ?
+                select("msk_profile", "id", null,
+                        "table_name", Utils.lower(tableName)) :
+                select("msk_profile", "id", null,
+                        "table_name", Utils.lower(tableName),
+                        "db_name", Utils.lower(databaseName));
+        if (profiles.isEmpty())
+            context.getTable().setId(-1);
+        else
+            context.getTable().setId(toInt(profiles.get(0)[0]));
         if (context.getTable().getId() < 1)
             return null; // no data for the specified table
         loadKeys(context);
@@ -114,84 +161,46 @@ public class ContextLoader implements AutoCloseable {
         for (PreparedStatement ps : statements.values())
             Utils.close(ps);
         statements.clear();
-        Utils.close(connection);
+        if (connection!=null)
+            Utils.close(connection);
     }
 
     private void loadKeys(MskContext context) throws Exception {
-        select("SELECT n, v FROM msk_key",
-                new Handler() {
-            @Override
-            public void assign(PreparedStatement ps) throws Exception {
-                /*noop*/
-            }
-            @Override
-            public void handle(ResultSet rs) throws Exception {
-                while (rs.next()) {
-                    final MskKey key = new MskKey();
-                    key.setName(rs.getString(1));
-                    key.setValue(rs.getString(2));
-                    context.addKey(key);
-                }
-            }
-        });
+        for (Object[] row : select("msk_key", "n, v", null)) {
+            final MskKey key = new MskKey();
+            key.setName((String) row[0]);
+            key.setValue((String) row[1]);
+            context.addKey(key);
+        }
     }
 
     private List<MskOp> loadOperations(MskContext context) throws Exception {
         final List<MskOp> retval = new ArrayList<>();
-        select("SELECT id, rule_id FROM msk_op WHERE profile_id=?",
-                new Handler() {
-            @Override
-            public void assign(PreparedStatement ps) throws Exception {
-                ps.setInt(1, context.getTable().getId());
-            }
-            @Override
-            public void handle(ResultSet rs) throws Exception {
-                while (rs.next()) {
-                    final MskOp op = new MskOp();
-                    op.setId(rs.getInt(1));
-                    op.setRule(loadRule(context, rs.getInt(2)));
-                    op.setTable(context.getTable());
-                    loadOperationInputs(op);
-                    loadOperationOutputs(op);
-                    retval.add(op);
-                }
-            }
-        });
+        for (Object[] row : select("msk_op", "id, rule_id", null,
+                "profile_id", context.getTable().getId())) {
+            final MskOp op = new MskOp();
+            op.setId(toInt(row[0]));
+            op.setRule(loadRule(context, toInt(row[1])));
+            op.setTable(context.getTable());
+            loadOperationInputs(op);
+            loadOperationOutputs(op);
+            retval.add(op);
+        }
         return retval;
     }
 
     private void loadOperationInputs(MskOp op) throws Exception {
-        select("SELECT field_name FROM msk_op_arg "
-                + "WHERE op_id=? ORDER BY op_pos",
-                new Handler() {
-            @Override
-            public void assign(PreparedStatement ps) throws Exception {
-                ps.setInt(1, op.getId());
-            }
-            @Override
-            public void handle(ResultSet rs) throws Exception {
-                while (rs.next()) {
-                    op.getInputFields().add(rs.getString(1));
-                }
-            }
-        });
+        for (Object[] row : select("msk_op_arg", "field_name", "op_pos",
+                "op_id", op.getId())) {
+            op.getInputFields().add((String) row[0]);
+        }
     }
 
     private void loadOperationOutputs(MskOp op) throws Exception {
-        select("SELECT field_name FROM msk_op_out "
-                + "WHERE op_id=? ORDER BY op_pos",
-                new Handler() {
-            @Override
-            public void assign(PreparedStatement ps) throws Exception {
-                ps.setInt(1, op.getId());
-            }
-            @Override
-            public void handle(ResultSet rs) throws Exception {
-                while (rs.next()) {
-                    op.getOutputFields().add(rs.getString(1));
-                }
-            }
-        });
+        for (Object[] row : select("msk_op_out", "field_name", "op_pos",
+                "op_id", op.getId())) {
+            op.getOutputFields().add((String) row[0]);
+        }
     }
 
     private MskRule loadRule(MskContext context, int ruleId) throws Exception {
@@ -200,20 +209,11 @@ public class ContextLoader implements AutoCloseable {
             return cachedRule;
         final MskRule rule = new MskRule();
         rule.setId(ruleId);
-        select("SELECT name FROM msk_rule WHERE id=?",
-                new Handler() {
-            @Override
-            public void assign(PreparedStatement ps) throws Exception {
-                ps.setInt(1, ruleId);
-            }
-            @Override
-            public void handle(ResultSet rs) throws Exception {
-                if (rs.next())
-                    rule.setName(rs.getString(1));
-                else
-                    throw new IllegalStateException("db: no rule #"+ruleId);
-            }
-        });
+        final List<Object[]> rows = select("msk_rule", "name", null,
+                "id", ruleId);
+        if (rows.isEmpty())
+            throw new IllegalStateException("db: no rule #"+ruleId);
+        rule.setName((String) rows.get(0)[0]);
         if (rule.getName()==null)
             return null;
         loadSteps(context, rule);
@@ -223,51 +223,42 @@ public class ContextLoader implements AutoCloseable {
 
     private void loadSteps(final MskContext context, final MskRule rule)
             throws Exception {
-        select("SELECT id, name, func_id, pred_text, pred_lua, "
-                + "uniq_ref, uniq_input, uniq_output FROM msk_step "
-                + "WHERE rule_id=? ORDER BY id",
-                new Handler() {
-            @Override
-            public void assign(PreparedStatement ps) throws Exception {
-                ps.setInt(1, rule.getId());
+        int position = 0;
+        final boolean withCode = hasColumn("msk_step", "pred_code");
+        for (Object[] row : select("msk_step", "id, name, func_id, pred_text, "
+                + "pred_lua, uniq_ref, uniq_input, uniq_output"
+                + (withCode ? ", pred_code" : ""), "id",
+                "rule_id", rule.getId())) {
+            final MskStep step = new MskStep(rule, ++position);
+            step.setId(toInt(row[0]));
+            step.setName((String) row[1]);
+            step.setFunction(loadFunction(context, toInt(row[2])));
+            String predText = (String) row[3];
+            if (predText!=null) {
+                // empty text becomes null to allow simpler checks
+                // for predicate existence
+                predText = predText.trim();
+                if (predText.length()==0)
+                    predText = null;
             }
-            @Override
-            public void handle(ResultSet rs) throws Exception {
-                int position = 0;
-                while (rs.next()) {
-                    final MskStep step = new MskStep(rule, ++position);
-                    step.setId(rs.getInt(1));
-                    step.setName(rs.getString(2));
-                    step.setFunction(loadFunction(context, rs.getInt(3)));
-                    String predText = rs.getString(4);
-                    if (predText!=null) {
-                        // empty text becomes null to allow simpler checks
-                        // for predicate existence
-                        predText = predText.trim();
-                        if (predText.length()==0)
-                            predText = null;
-                    }
-                    step.setPredicateText(predText);
-                    // rs.getBoolean(5) - unused PRED_LUA field
-                    String uniqRef = rs.getString(6);
-                    if (uniqRef != null && uniqRef.length() > 0) {
-                        final MskUniq uniq = new MskUniq();
-                        uniq.setProvider(uniqRef);
-                        uniq.setInputPositions(convertPositions( rs.getArray(7) ));
-                        uniq.setOutputPositions(convertPositions( rs.getArray(8) ));
-                        step.setUniqCheck(uniq);
-                    }
-                    loadRefs(rule, step);
-                    rule.getSteps().add(step);
-                }
+            step.setPredicateText(predText);
+            if (withCode && predText!=null)
+                step.setPredicateCode((byte[]) row[8]);
+            // row[4] - unused PRED_LUA field
+            String uniqRef = (String) row[5];
+            if (uniqRef != null && uniqRef.length() > 0) {
+                final MskUniq uniq = new MskUniq();
+                uniq.setProvider(uniqRef);
+                uniq.setInputPositions(convertPositions( (Object[]) row[6] ));
+                uniq.setOutputPositions(convertPositions( (Object[]) row[7] ));
+                step.setUniqCheck(uniq);
             }
-        });
+            loadRefs(rule, step);
+            rule.getSteps().add(step);
+        }
     }
 
-    private static int[] convertPositions(java.sql.Array array) throws Exception {
-        if (array==null)
-            return null;
-        Object[] indexes = (Object[]) array.getArray();
+    private static int[] convertPositions(Object[] indexes) throws Exception {
         if (indexes==null || indexes.length==0)
             return null;
         final int[] retval = new int[indexes.length];
@@ -283,26 +274,16 @@ public class ContextLoader implements AutoCloseable {
     }
 
     private void loadRefs(MskRule rule, MskStep step) throws Exception {
-        select("SELECT ref_id, ref_pos FROM msk_step_arg "
-                + "WHERE step_id=? ORDER BY step_pos",
-                new Handler() {
-            @Override
-            public void assign(PreparedStatement ps) throws Exception {
-                ps.setInt(1, step.getId());
-            }
-            @Override
-            public void handle(ResultSet rs) throws Exception {
-                while (rs.next()) {
-                    final MskRef ref = new MskRef();
-                    int parentIndex = findParent(rule, rs.getInt(1));
-                    ref.setParentIndex(parentIndex);
-                    if (parentIndex >= 0)
-                        ref.setParent(rule.getSteps().get(parentIndex));
-                    ref.setPosition(rs.getInt(2));
-                    step.getRefs().add(ref);
-                }
-            }
-        });
+        for (Object[] row : select("msk_step_arg", "ref_id, ref_pos", "step_pos",
+                "step_id", step.getId())) {
+            final MskRef ref = new MskRef();
+            int parentIndex = findParent(rule, toInt(row[0]));
+            ref.setParentIndex(parentIndex);
+            if (parentIndex >= 0)
+                ref.setParent(rule.getSteps().get(parentIndex));
+            ref.setPosition(toInt(row[1]));
+            step.getRefs().add(ref);
+        }
     }
 
     private static int findParent(MskRule rule, int stepId) {
@@ -325,21 +306,16 @@ public class ContextLoader implements AutoCloseable {
             return cachedFunc;
         final MskFunc func = new MskFunc();
         func.setId(funcId);
-        select("SELECT name, tcode, func_text FROM msk_func WHERE id=?",
-                new Handler() {
-            @Override
-            public void assign(PreparedStatement ps) throws Exception {
-                ps.setInt(1, funcId);
-            }
-            @Override
-            public void handle(ResultSet rs) throws Exception {
-                if (!rs.next())
-                    throw new IllegalArgumentException("Unknown masking function #" + funcId);
-                func.setName(rs.getString(1));
-                func.setFunctionType(FunctionType.fromCode(rs.getString(2)));
-                func.setText(rs.getString(3));
-            }
-        });
+        final boolean withCode = hasColumn("msk_func", "func_code");
+        final List<Object[]> rows = select("msk_func", "name, tcode, func_text"
+                + (withCode ? ", func_code" : ""), null, "id", funcId);
+        if (rows.isEmpty())
+            throw new IllegalArgumentException("Unknown masking function #" + funcId);
+        func.setName((String) rows.get(0)[0]);
+        func.setFunctionType(FunctionType.fromCode((String) rows.get(0)[1]));
+        func.setText((String) rows.get(0)[2]);
+        if (withCode)
+            func.setCode((byte[]) rows.get(0)[3]);
         context.addFunction(func);
         switch (func.getFunctionType()) {
             case FPE:
@@ -353,24 +329,148 @@ public class ContextLoader implements AutoCloseable {
         return func;
     }
 
-    private void select(String text, Handler handler) throws Exception {
+    /**
+     * Check for the column which may be missing in the configuration
+     * databases created by the older versions.
+     * @param table Table name
+     * @param column Column name
+     * @return true, if the column exists, false otherwise
+     * @throws Exception
+     */
+    private boolean hasColumn(String table, String column) throws Exception {
+        final String key = table + "." + column;
+        Boolean retval = columns.get(key);
+        if (retval==null) {
+            if (snapshot!=null) {
+                final ConfigSnapshot.Table t = snapshot.getTable(table);
+                retval = (t!=null && t.findColumn(column) >= 0);
+            } else {
+                try (ResultSet rs = connection.getMetaData().getColumns(
+                        null, null, table.toUpperCase(), column.toUpperCase())) {
+                    retval = rs.next();
+                }
+            }
+            columns.put(key, retval);
+        }
+        return retval;
+    }
+
+    private static int toInt(Object v) {
+        return ((Number) v).intValue();
+    }
+
+    /**
+     * Select the rows from the configuration table,
+     * either from the database or from the snapshot.
+     * @param table Table name
+     * @param columns Comma-separated list of columns to be retrieved
+     * @param order Column to sort the rows by, or null
+     * @param filter Pairs of column names and values to filter the rows by
+     * @return List of rows
+     * @throws Exception
+     */
+    private List<Object[]> select(String table, String columns, String order,
+            Object... filter) throws Exception {
+        if (snapshot!=null)
+            return selectSnapshot(table, columns, order, filter);
+        final StringBuilder sb = new StringBuilder();
+        sb.append("SELECT ").append(columns).append(" FROM ").append(table);
+        for (int i=0; i<filter.length; i+=2) {
+            sb.append((i==0) ? " WHERE " : " AND ");
+            sb.append(filter[i]).append("=?");
+        }
+        if (order!=null)
+            sb.append(" ORDER BY ").append(order);
+        final String text = sb.toString();
         PreparedStatement ps = statements.get(text);
         if (ps==null) {
             ps = connection.prepareStatement(text);
             statements.put(text, ps);
         }
-        handler.assign(ps);
+        for (int i=1; i<filter.length; i+=2)
+            ps.setObject(1 + i/2, filter[i]);
+        final List<Object[]> retval = new ArrayList<>();
         final ResultSet rs = ps.executeQuery();
         try {
-            handler.handle(rs);
+            final int count = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                final Object[] row = new Object[count];
+                for (int i=0; i<count; ++i)
+                    row[i] = ConfigSnapshot.convert(rs.getObject(i+1));
+                retval.add(row);
+            }
         } finally {
             Utils.close(rs);
         }
+        return retval;
+    }
+
+    private List<Object[]> selectSnapshot(String tableName, String columns,
+            String order, Object... filter) throws Exception {
+        final ConfigSnapshot.Table table = snapshot.getTable(tableName);
+        if (table==null)
+            throw new Exception("Table " + tableName + " is missing in the snapshot");
+        final int[] positions = findColumns(table, columns.split("[,][ ]*"));
+        final int[] filterPositions = new int[filter.length / 2];
+        for (int i=0; i<filterPositions.length; ++i)
+            filterPositions[i] = findColumns(table, (String) filter[2*i])[0];
+        final int orderPosition = (order==null) ? -1
+                : findColumns(table, order)[0];
+        // the first filter column is looked up through the index
+        final List<Object[]> candidates = (filterPositions.length==0) ?
+                table.getRows() : table.lookup(filterPositions[0], filter[1]);
+        final List<Object[]> matched = new ArrayList<>();
+        for (Object[] row : candidates) {
+            boolean match = true;
+            for (int i=1; i<filterPositions.length; ++i) {
+                if (! sameValue(row[filterPositions[i]], filter[2*i + 1])) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match)
+                matched.add(row);
+        }
+        if (orderPosition >= 0) {
+            matched.sort((a, b) -> compareValues(a[orderPosition],
+                    b[orderPosition]));
+        }
+        final List<Object[]> retval = new ArrayList<>(matched.size());
+        for (Object[] row : matched) {
+            final Object[] out = new Object[positions.length];
+            for (int i=0; i<positions.length; ++i)
+                out[i] = row[positions[i]];
+            retval.add(out);
+        }
+        return retval;
+    }
+
+    private static int[] findColumns(ConfigSnapshot.Table table,
+            String... columns) throws Exception {
+        final int[] retval = new int[columns.length];
+        for (int i=0; i<columns.length; ++i) {
+            retval[i] = table.findColumn(columns[i].trim());
+            if (retval[i] < 0)
+                throw new Exception("Column " + columns[i] + " is missing "
+                        + "in the snapshot table " + table.getName());
+        }
+        return retval;
+    }
+
+    private static boolean sameValue(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number)
+            return ((Number) a).longValue() == ((Number) b).longValue();
+        return (a==null) ? (b==null) : a.equals(b);
     }
 
-    private static interface Handler {
-        void assign(PreparedStatement ps) throws Exception;
-        void handle(ResultSet rs) throws Exception;
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Object a, Object b) {
+        if (a==null || b==null)
+            return (a==null) ? ((b==null) ? 0 : -1) : 1;
+        if (a instanceof Number && b instanceof Number)
+            return Long.compare(((Number) a).longValue(),
+                    ((Number) b).longValue());
+        return ((Comparable<Object>) a).compareTo(b);
     }
 
 }
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.impl;
+
+import groovy.lang.Script;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Calls the entry points of a compiled Groovy script.
+ *
+ * When the script has a single public "invoke" method, it is called
+ * through a cached method handle, as long as the input values
+ * match the parameter types. Otherwise the call goes through
+ * the Groovy dynamic dispatch, as before.
+ *
+ * The script may also define the batch entry point,
+ * Object[] invokeBatch(Object[][] input), which takes the input values
+ * of all rows being processed and returns one result per row.
+ * @author zinal
+ */
+public class GroovyInvoker {
+
+    public static final String BATCH_NAME = "invokeBatch";
+
+    private static final MethodType GENERIC =
+            MethodType.methodType(Object.class, Object[].class);
+
+    private final Script script;
+    private final boolean staticCompiled;
+    // invoke() handle taking the whole array of input values, or null
+    private final MethodHandle invokeHandle;
+    // parameter types of invoke(), null for the array parameter
+    private final Class<?>[] paramTypes;
+    // invokeBatch() handle, or null
+    private final MethodHandle batchHandle;
+
+    public GroovyInvoker(Script script, boolean staticCompiled) {
+        this.script = script;
+        this.staticCompiled = staticCompiled;
+        final Method invoke = findSingle(script, GroovyRunner.INVOKE_NAME);
+        MethodHandle ih = null;
+        Class<?>[] pt = null;
+        if (invoke!=null) {
+            try {
+                final MethodHandle mh = MethodHandles.publicLookup()
+                        .unreflect(invoke).bindTo(script);
+                final Class<?>[] types = invoke.getParameterTypes();
+                if (types.length==1 && types[0]==Object[].class) {
+                    ih = mh.asType(GENERIC);
+                } else {
+                    ih = mh.asSpreader(Object[].class, types.length)
+                            .asType(GENERIC);
+                    pt = new Class<?>[types.length];
+                    for (int i=0; i<types.length; ++i)
+                        pt[i] = MethodType.methodType(types[i]).wrap().returnType();
+                    for (int i=0; i<types.length; ++i) {
+                        // primitives do not accept nulls
+                        if (types[i].isPrimitive())
+                            pt[i] = null;
+                    }
+                }
+            } catch(Exception ex) {
+                ih = null;
+                pt = null;
+            }
+        }
+        this.invokeHandle = ih;
+        this.paramTypes = pt;
+        MethodHandle bh = null;
+        final Method batch = findSingle(script, BATCH_NAME);
+        if (batch!=null && batch.getParameterCount()==1
+                && batch.getParameterTypes()[0]==Object[][].class
+                && batch.getReturnType()==Object[].class) {
+            try {
+                bh = MethodHandles.publicLookup().unreflect(batch).bindTo(script)
+                        .asType(MethodType.methodType(Object[].class, Object[][].class));
+            } catch(Exception ex) {
+                bh = null;
+            }
+        }
+        this.batchHandle = bh;
+    }
+
+    private static Method findSingle(Script script, String name) {
+        Method retval = null;
+        for (Method m : script.getClass().getMethods()) {
+            if (!name.equals(m.getName()) || Modifier.isStatic(m.getModifiers()))
+                continue;
+            if (retval!=null)
+                return null; // overloaded, leave it to Groovy
+            retval = m;
+        }
+        return retval;
+    }
+
+    public Script getScript() {
+        return script;
+    }
+
+    /**
+     * @return true, if the script was compiled with static type checking
+     */
+    public boolean isStaticCompiled() {
+        return staticCompiled;
+    }
+
+    /**
+     * @return true, if the script defines the batch entry point
+     */
+    public boolean hasBatch() {
+        return batchHandle!=null;
+    }
+
+    /**
+     * Call the invoke() method of the script.
+     * @param values Input values
+     * @return Script result
+     */
+    public Object invoke(Object[] values) {
+        if (invokeHandle!=null && isApplicable(values)) {
+            try {
+                return (Object) invokeHandle.invokeExact(values);
+            } catch(RuntimeException | Error ex) {
+                throw ex;
+            } catch(Throwable ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        return script.invokeMethod(GroovyRunner.INVOKE_NAME, values);
+    }
+
+    /**
+     * Call the invokeBatch() method of the script.
+     * @param values Input values, one array per row
+     * @return Script results, one per row
+     */
+    public Object[] invokeBatch(Object[][] values) {
+        if (batchHandle==null)
+            throw new IllegalStateException("Script has no " + BATCH_NAME + "()");
+        final Object[] retval;
+        try {
+            retval = (Object[]) batchHandle.invokeExact(values);
+        } catch(RuntimeException | Error ex) {
+            throw ex;
+        } catch(Throwable ex) {
+            throw new RuntimeException(ex);
+        }
+        if (retval==null || retval.length != values.length)
+            throw new IllegalStateException(BATCH_NAME + "() returned "
+                    + ((retval==null) ? "null" : String.valueOf(retval.length))
+                    + " results for " + values.length + " rows");
+        return retval;
+    }
+
+    private boolean isApplicable(Object[] values) {
+        if (paramTypes==null)
+            return true; // array parameter
+        if (values.length != paramTypes.length)
+            return false;
+        for (int i=0; i<values.length; ++i) {
+            final Object v = values[i];
+            if (v==null) {
+                if (paramTypes[i]==null)
+                    return false;
+            } else if (paramTypes[i]==null || !paramTypes[i].isInstance(v)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -14,33 +14,117 @@ package com.ibm.dsmask.impl;
 
 import groovy.lang.GroovyCodeSource;
 import groovy.lang.GroovyShell;
+import groovy.lang.GroovySystem;
 import groovy.lang.Script;
+import groovy.transform.CompileStatic;
 import java.io.File;
+import java.util.Map;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import com.ibm.dsmask.util.ScriptClasses;
 
 /**
+ * Compiles the Groovy scripts used as masking functions and predicates.
  *
+ * Scripts are first compiled with static type checking, which gives
+ * direct method calls instead of the dynamic dispatch. Scripts which
+ * do not pass the type checks (e.g. using untyped or binding variables)
+ * are compiled dynamically, as before. Static compilation can be
+ * disabled with the system property dsmask.groovy.static=false.
+ *
+ * Classes compiled at configuration build time are defined directly,
+ * without running the compiler, when they match the script text
+ * and the Groovy version.
  * @author zinal
  */
 public class GroovyRunner extends AbstractRunner {
 
     public static final String INVOKE_NAME = "invoke";
-    
+    public static final String PROP_STATIC = "dsmask.groovy.static";
+
     private final GroovyShell groovyShell;
+    // shell for static compilation, sharing the binding, or null
+    private final GroovyShell staticShell;
     private final String EOL;
 
     public GroovyRunner() {
+        this(Boolean.parseBoolean(System.getProperty(PROP_STATIC, "true")));
+    }
+
+    public GroovyRunner(boolean useStatic) {
         this.groovyShell = new GroovyShell();
         this.groovyShell.setVariable("dsmask", this);
+        if (useStatic) {
+            final CompilerConfiguration cc = new CompilerConfiguration();
+            cc.addCompilationCustomizers(
+                    new ASTTransformationCustomizer(CompileStatic.class));
+            this.staticShell = new GroovyShell(groovyShell.getContext(), cc);
+        } else {
+            this.staticShell = null;
+        }
         this.EOL = System.lineSeparator();
     }
 
-    public Script compileInput(String text) {
+    private GroovyCodeSource makeSource(String text) {
         if (text.trim().startsWith("return")) {
             text = "def " + INVOKE_NAME + "(Object... input) {" + EOL + text + EOL + "}";
         }
-        GroovyCodeSource gcs = new GroovyCodeSource(text, "script.groovy",
+        return new GroovyCodeSource(text, "script.groovy",
                 GroovyShell.DEFAULT_CODE_BASE);
-        return groovyShell.parse(gcs);
+    }
+
+    public Script compileInput(String text) {
+        return groovyShell.parse(makeSource(text));
+    }
+
+    /**
+     * Compile the script, statically if possible,
+     * and prepare the invocation of its entry points.
+     * @param text Script text
+     * @return Invoker for the compiled script
+     */
+    public GroovyInvoker makeInvoker(String text) {
+        if (staticShell!=null) {
+            try {
+                return new GroovyInvoker(staticShell.parse(makeSource(text)), true);
+            } catch(CompilationFailedException ex) {
+                // fall back to dynamic compilation
+            }
+        }
+        return new GroovyInvoker(compileInput(text), false);
+    }
+
+    /**
+     * Define the pre-compiled script classes, or compile the script
+     * if the compiled classes are missing or cannot be used.
+     * @param text Script text
+     * @param code Compiled classes, as stored in the configuration database
+     * @return Invoker for the script
+     */
+    public GroovyInvoker makeInvoker(String text, byte[] code) {
+        final ScriptClasses sc = (code==null) ? null : ScriptClasses.decode(code);
+        if (sc!=null) {
+            final Script script = defineScript(text, sc);
+            if (script!=null)
+                return new GroovyInvoker(script, sc.isStaticCompiled());
+        }
+        return makeInvoker(text);
+    }
+
+    private Script defineScript(String text, ScriptClasses sc) {
+        if (!sc.matches(text, GroovySystem.getVersion()))
+            return null;
+        if (sc.isStaticCompiled() && staticShell==null)
+            return null; // static compilation is disabled
+        try {
+            final Class<?> clazz = new CodeLoader(groovyShell.getClassLoader(),
+                    sc.getClasses()).loadClass(sc.getMainClass());
+            return InvokerHelper.createScript(clazz, groovyShell.getContext());
+        } catch(ClassNotFoundException | LinkageError ex) {
+            return null;
+        }
     }
 
     public Script compileFile(String fname) {
@@ -52,4 +136,44 @@ public class GroovyRunner extends AbstractRunner {
         }
     }
 
+    /**
+     * Class loader for the pre-compiled classes of a single script.
+     * The stored classes are loaded before asking the parent, as all
+     * the scripts use the same class names, and the parent may already
+     * contain the classes of the scripts compiled at runtime.
+     */
+    private static final class CodeLoader extends ClassLoader {
+
+        private final Map<String, byte[]> classes;
+
+        CodeLoader(ClassLoader parent, Map<String, byte[]> classes) {
+            super(parent);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve)
+                throws ClassNotFoundException {
+            if (!classes.containsKey(name))
+                return super.loadClass(name, resolve);
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c==null)
+                    c = findClass(name);
+                if (resolve)
+                    resolveClass(c);
+                return c;
+            }
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            final byte[] b = classes.get(name);
+            if (b==null)
+                throw new ClassNotFoundException(name);
+            return defineClass(name, b, 0, b.length);
+        }
+
+    }
+
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Adaptive batch size controller.
+ *
+ * The time spent per row is measured over a window of full batches.
+ * The batch size keeps moving in the same direction while the time
+ * per row improves, and turns back when it gets worse. Batches spending
+ * much of their time in remote calls (uniq-checks) are grown, as the
+ * round trips are paid per batch. When the heap usage gets too high,
+ * the batch size is halved immediately.
+ * @author zinal
+ */
+public class XBatchControl {
+
+    // number of full batches to measure before the next adjustment
+    public static final int WINDOW = 4;
+    // heap usage to shrink the batch at
+    public static final double HEAP_HIGH = 0.75;
+    // heap usage to stop growing the batch at
+    public static final double HEAP_WARN = 0.5;
+    // share of remote call time to prefer larger batches at
+    public static final double REMOTE_HIGH = 0.3;
+    // minimal change of time per row considered as a change
+    public static final double TOLERANCE = 0.02;
+
+    private final int minSize;
+    private final int maxSize;
+    private int size;
+    // +1 to grow the batch, -1 to shrink it
+    private int direction = 1;
+    private DoubleSupplier heapProbe = XBatchControl::heapUsage;
+
+    // current measurement window
+    private int windowBatches = 0;
+    private long windowRows = 0L;
+    private long windowNanos = 0L;
+    private long windowRemote = 0L;
+    // time per row in the previous window, nanoseconds
+    private double lastCost = -1.0;
+
+    // totals for the statistics
+    private long totalBatches = 0L;
+    private long totalRows = 0L;
+    private long readNanos = 0L;
+    private long maskNanos = 0L;
+    private long remoteNanos = 0L;
+    private long writeNanos = 0L;
+    private int adjustments = 0;
+    private int smallest;
+    private int largest;
+
+    public XBatchControl(int initialSize, int minSize, int maxSize) {
+        if (minSize < 1 || maxSize < minSize)
+            throw new IllegalArgumentException("Illegal batch size bounds "
+                    + minSize + ".." + maxSize);
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.size = Math.max(minSize, Math.min(maxSize, initialSize));
+        this.smallest = size;
+        this.largest = size;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return Number of rows to be read into the next batch
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public int getAdjustments() {
+        return adjustments;
+    }
+
+    /**
+     * Replace the heap usage measurement, mostly for testing.
+     * @param heapProbe Supplier of the heap usage, from 0 to 1
+     */
+    public void setHeapProbe(DoubleSupplier heapProbe) {
+        this.heapProbe = heapProbe;
+    }
+
+    /**
+     * Register the timings of the completed batch,
+     * and adjust the size of the next batch.
+     * @param rows Number of rows in the batch
+     * @param read Time spent reading the rows, nanoseconds
+     * @param mask Time spent masking the rows, including the remote calls
+     * @param remote Time spent in the remote calls
+     * @param write Time spent writing the rows
+     */
+    public void record(int rows, long read, long mask, long remote, long write) {
+        ++totalBatches;
+        totalRows += rows;
+        readNanos += read;
+        maskNanos += mask;
+        remoteNanos += remote;
+        writeNanos += write;
+        if (rows < size)
+            return; // the last batch, or the size has just been changed
+        if (heapProbe.getAsDouble() > HEAP_HIGH) {
+            direction = -1;
+            resize(size / 2);
+            return;
+        }
+        ++windowBatches;
+        windowRows += rows;
+        windowNanos += read + mask + write;
+        windowRemote += remote;
+        if (windowBatches < WINDOW)
+            return;
+        final double cost = ((double) windowNanos) / ((double) windowRows);
+        final double remoteShare = (windowNanos > 0L) ?
+                ((double) windowRemote) / ((double) windowNanos) : 0.0;
+        if (lastCost > 0.0 && cost > lastCost * (1.0 + TOLERANCE)) {
+            // got worse, turn back
+            direction = -direction;
+        } else if (remoteShare > REMOTE_HIGH) {
+            // round trips dominate
+            direction = 1;
+        } else if (lastCost > 0.0 && cost > lastCost * (1.0 - TOLERANCE)) {
+            // no visible change, keep the size
+            lastCost = cost;
+            resetWindow();
+            return;
+        }
+        lastCost = cost;
+        if (direction > 0 && heapProbe.getAsDouble() > HEAP_WARN) {
+            resetWindow();
+            return;
+        }
+        resize((direction > 0) ? size + Math.max(1, size / 2)
+                : size - Math.max(1, size / 3));
+    }
+
+    private void resize(int next) {
+        next = Math.max(minSize, Math.min(maxSize, next));
+        resetWindow();
+        if (next == size) {
+            // reached the bound, look at the other side next time
+            direction = -direction;
+            return;
+        }
+        size = next;
+        ++adjustments;
+        smallest = Math.min(smallest, size);
+        largest = Math.max(largest, size);
+    }
+
+    private void resetWindow() {
+        windowBatches = 0;
+        windowRows = 0L;
+        windowNanos = 0L;
+        windowRemote = 0L;
+    }
+
+    /**
+     * Heap usage after the last garbage collection, when available.
+     * @return Heap usage, from 0 to 1
+     */
+    public static double heapUsage() {
+        final long max = Runtime.getRuntime().maxMemory();
+        if (max <= 0L || max == Long.MAX_VALUE)
+            return 0.0;
+        long used = 0L;
+        boolean known = false;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP)
+                continue;
+            final MemoryUsage mu = pool.isCollectionUsageThresholdSupported()
+                    ? pool.getCollectionUsage() : null;
+            if (mu != null) {
+                used += mu.getUsed();
+                known = true;
+            }
+        }
+        if (!known) {
+            final Runtime rt = Runtime.getRuntime();
+            used = rt.totalMemory() - rt.freeMemory();
+        }
+        return ((double) used) / ((double) max);
+    }
+
+    public void dumpStats(StringBuilder sb) {
+        sb.append("Adaptive batch: size ").append(size)
+                .append(" (").append(minSize).append("..").append(maxSize)
+                .append("), used ").append(smallest).append("..").append(largest)
+                .append(", adjustments ").append(adjustments)
+                .append(", batches ").append(totalBatches)
+                .append(", rows ").append(totalRows)
+                .append("\n");
+        sb.append("Batch timings, ms: read ").append(readNanos / 1000000L)
+                .append(", mask ").append(maskNanos / 1000000L)
+                .append(" (remote ").append(remoteNanos / 1000000L)
+                .append("), write ").append(writeNanos / 1000000L)
+                .append("\n");
+    }
+
+}
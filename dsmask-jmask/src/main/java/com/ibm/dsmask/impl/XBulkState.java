@@ -15,6 +15,7 @@ package com.ibm.dsmask.impl;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import com.ibm.dsmask.beans.*;
 import com.ibm.dsmask.SafeLogger;
 
@@ -27,21 +28,31 @@ public class XBulkState {
     // per-row data and current number of rows
     private final XRowState[] rows;
     private int totalRows = 0;
+    // number of rows to be read into the batch, up to rows.length
+    private int batchLimit;
     // rows of context data for each operation
     private final List<XOperRows> operRows = new ArrayList<>();
     // calculation workspace
     private final XWorkspace workspace;
     // map output index to corresponding input column
     private Map<Integer, XColumnInfo> indexMap;
-    // flag to control whether rejection has been logged
-    private boolean rejectionLogged = false;
+    // flag to control whether rejection has been logged,
+    //   may be shared between several bulk states
+    private AtomicBoolean rejectionLogged = new AtomicBoolean(false);
 
     public XBulkState(XKeeper ctx, int maxRows) {
+        // allocate the column data for each operation
+        final XOperColumns[] data =
+                new XOperColumns[ctx.getTable().getOperations().size()];
+        int dataPos = 0;
+        for (MskOp op : ctx.getTable().getOperations())
+            data[dataPos++] = new XOperColumns(op, maxRows);
         // allocate main row table
         this.rows = new XRowState[maxRows];
+        this.batchLimit = maxRows;
         // fill main and per-operation row tables
         for (int pos = 0; pos < maxRows; ++pos) {
-            this.rows[pos] = new XRowState(ctx.getTable(), this);
+            this.rows[pos] = new XRowState(ctx.getTable(), this, data, pos);
         }
         // allocate and fill per-operation row tables
         int opPos = 0;
@@ -62,14 +73,69 @@ public class XBulkState {
         this.indexMap = indexMap;
     }
 
+    /**
+     * Share the "rejection logged" flag between several bulk states,
+     * so that the rejection warning is logged once per run.
+     * @param flag The shared flag
+     */
+    public void setRejectionFlag(AtomicBoolean flag) {
+        if (flag==null)
+            throw new IllegalArgumentException();
+        this.rejectionLogged = flag;
+    }
+
+    /**
+     * @return Maximum number of rows in the bulk state
+     */
+    public int getCapacity() {
+        return rows.length;
+    }
+
+    public int getBatchLimit() {
+        return batchLimit;
+    }
+
+    /**
+     * Limit the number of rows to be read into the next batch.
+     * @param limit Number of rows, from 1 to the capacity
+     */
+    public void setBatchLimit(int limit) {
+        if (limit < 1 || limit > rows.length)
+            throw new IllegalArgumentException("Illegal batch limit " + limit
+                    + ", capacity " + rows.length);
+        this.batchLimit = limit;
+    }
+
+    /**
+     * @return Current number of rows in the bulk state
+     */
+    public int getTotalRows() {
+        return totalRows;
+    }
+
+    /**
+     * @return Total time spent in the remote calls, nanoseconds
+     */
+    public long getRemoteNanos() {
+        return workspace.getRemoteNanos();
+    }
+
+    /**
+     * @return true, if there are no rows in the bulk state, false otherwise
+     */
+    public boolean isEmpty() {
+        return (totalRows == 0);
+    }
+
     /**
      * Clear the bulk state, removing all the data values.
      */
     public void clear() {
-        totalRows = 0;
-        for (XRowState row : rows) {
-            row.clear();
+        // rows past totalRows have been cleared already
+        for (int i=0; i<totalRows; ++i) {
+            rows[i].clear();
         }
+        totalRows = 0;
     }
 
     /**
@@ -95,56 +161,123 @@ public class XBulkState {
      *          false otherwise.
      */
     public boolean readRows(XLinkInput inputLink, XLinkOutput outputLink) {
-        if (totalRows >= rows.length)
+        if (totalRows >= batchLimit)
             return true; // need to process before reading
-        while (totalRows < rows.length) {
-            XRowInput input = inputLink.readRecord();
-            if (input==null)
-                return (totalRows > 0);
-            // Manually copy input to output, as a workaround with
-            //   DECIMAL and outputLink.getOutputRecord(input) error.
-            // (the above is a former story with direct DataStage APIs).
-            XRowOutput output = outputLink.getOutputRecord();
-            copyValues(input, output, indexMap);
-            // Assign input values for operations
-            rows[totalRows].readRow(input, output);
-            ++totalRows;
+        final int start = totalRows;
+        final boolean timed = (workspace.metrics != null);
+        long blocked = 0L;
+        try {
+            while (totalRows < batchLimit) {
+                final long tv = timed ? System.nanoTime() : 0L;
+                XRowInput input = inputLink.readRecord();
+                if (timed)
+                    blocked += System.nanoTime() - tv;
+                if (input==null)
+                    return (totalRows > 0);
+                // Manually copy input to output, as a workaround with
+                //   DECIMAL and outputLink.getOutputRecord(input) error.
+                // (the above is a former story with direct DataStage APIs).
+                XRowOutput output = outputLink.getOutputRecord();
+                copyValues(input, output, indexMap);
+                // Assign input values for operations
+                rows[totalRows].readRow(input, output);
+                ++totalRows;
+            }
+        } finally {
+            if (timed)
+                workspace.metrics.addRead(totalRows - start, blocked);
         }
         return true;
     }
 
+    /**
+     * Read a batch of rows from the input link, without touching
+     * the output link. The output records have to be prepared
+     * later by calling prepareOutputs().
+     * @param inputLink Input link
+     * @return true, if there are rows to be masked and written,
+     *          false otherwise.
+     */
+    public boolean readInputs(XLinkInput inputLink) {
+        if (totalRows >= batchLimit)
+            return true; // need to process before reading
+        final int start = totalRows;
+        final boolean timed = (workspace.metrics != null);
+        long blocked = 0L;
+        try {
+            while (totalRows < batchLimit) {
+                final long tv = timed ? System.nanoTime() : 0L;
+                XRowInput input = inputLink.readRecord();
+                if (timed)
+                    blocked += System.nanoTime() - tv;
+                if (input==null)
+                    return (totalRows > 0);
+                rows[totalRows].readRow(input, null);
+                ++totalRows;
+            }
+        } finally {
+            if (timed)
+                workspace.metrics.addRead(totalRows - start, blocked);
+        }
+        return true;
+    }
+
+    /**
+     * Generate the output records for the rows grabbed by readInputs().
+     * @param outputLink Output link
+     */
+    public void prepareOutputs(XLinkOutput outputLink) {
+        for (int i=0; i<totalRows; ++i) {
+            XRowOutput output = outputLink.getOutputRecord();
+            copyValues(rows[i].getInputRecord(), output, indexMap);
+            rows[i].setOutputRecord(output);
+        }
+    }
+
     /**
      * Fill in and write the (masked) output records.
      * @param outputLink Output link
      */
     public void writeRows(XLinkOutput outputLink) {
+        final boolean timed = (workspace.metrics != null);
+        long blocked = 0L;
+        int rejects = 0;
         for (int i=0; i<totalRows; ++i) {
             XRowOutput record = rows[i].writeRow();
             if (rows[i].isReject()) {
                 final String rejectText = rows[i].formatRejectData();
-                if (rejectionLogged==false) {
+                if (rejectionLogged.compareAndSet(false, true)) {
                     SafeLogger.warning("Record(s) rejected, "
                             + "check input data and masking rules."
                             + Utils.EOL + rejectText);
-                    rejectionLogged = true;
                 }
+                ++rejects;
                 if (outputLink.hasRejectLink()) {
                     XRowReject rejectRecord = outputLink
                             .getRejectRecord(rows[i].getInputRecord());
                     rejectRecord.setErrorCode(1);
                     rejectRecord.setErrorText(rejectText);
+                    final long tv = timed ? System.nanoTime() : 0L;
                     outputLink.writeRecord(rejectRecord);
+                    if (timed)
+                        blocked += System.nanoTime() - tv;
                 }
             } else {
+                final long tv = timed ? System.nanoTime() : 0L;
                 outputLink.writeRecord(record);
+                if (timed)
+                    blocked += System.nanoTime() - tv;
             }
         }
+        if (timed)
+            workspace.metrics.addWrite(totalRows - rejects, rejects, blocked);
     }
 
     /**
      * Perform masking operations over input values and prepare the output.
      */
     public void maskRows() {
+        final long tvStart = System.nanoTime();
         workspace.nextBatch(totalRows);
         for (XOperRows oper : operRows) {
             try {
@@ -160,6 +293,8 @@ public class XBulkState {
                 throw new RuntimeException(sb.toString(), ex);
             }
         }
+        if (workspace.metrics != null)
+            workspace.metrics.addMask(System.nanoTime() - tvStart);
     }
 
 }
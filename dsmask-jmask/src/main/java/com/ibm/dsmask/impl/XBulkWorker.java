@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.impl;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import com.ibm.dsmask.beans.*;
+
+/**
+ * Masking worker for the multi-threaded mode of XMasker.
+ * Each worker owns its services, keeper and bulk state, so that
+ * executors, prepared statements and uniq-check connections
+ * are never shared between the threads.
+ * Reading and writing is performed by the caller thread,
+ * while masking runs in the thread pool.
+ * @author zinal
+ */
+public class XBulkWorker implements AutoCloseable {
+
+    private final XServices services;
+    private final XKeeper keeper;
+    private final XBulkState bulkState;
+    // pending masking task, if any
+    private Future<?> pending = null;
+
+    public XBulkWorker(MskContext context, XServices services,
+            int batchSize, Map<Integer, XColumnInfo> indexMap) {
+        this.services = services;
+        this.keeper = new XKeeper(context, services);
+        this.bulkState = new XBulkState(keeper, batchSize);
+        this.bulkState.setIndexMap(indexMap);
+    }
+
+    public XKeeper getKeeper() {
+        return keeper;
+    }
+
+    public XBulkState getBulkState() {
+        return bulkState;
+    }
+
+    /**
+     * @return true, if the worker has a batch being masked or
+     *         waiting to be written, false otherwise
+     */
+    public boolean isBusy() {
+        return (pending != null);
+    }
+
+    /**
+     * Read the next batch of rows and submit it for masking.
+     * @param input Input link
+     * @param output Output link
+     * @param pool Thread pool to run the masking task
+     * @return true, if the batch has been submitted,
+     *         false if there is no more input
+     */
+    public boolean start(XLinkInput input, XLinkOutput output,
+            ExecutorService pool) {
+        if (pending != null)
+            throw new IllegalStateException("Worker is busy");
+        if (! bulkState.readRows(input, output))
+            return false;
+        pending = pool.submit(bulkState::maskRows);
+        return true;
+    }
+
+    /**
+     * Wait for the current batch to be masked, and write it to the output.
+     * Does nothing if the worker has no pending batch.
+     * @param output Output link
+     */
+    public void finish(XLinkOutput output) {
+        if (pending == null)
+            return;
+        final Future<?> current = pending;
+        pending = null;
+        try {
+            current.get();
+        } catch(InterruptedException ix) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Masking interrupted", ix);
+        } catch(ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+        bulkState.writeRows(output);
+        bulkState.clear();
+    }
+
+    /**
+     * Cancel the pending masking task, if any.
+     */
+    public void cancel() {
+        if (pending != null) {
+            pending.cancel(true);
+            pending = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        cancel();
+        keeper.close();
+        services.close();
+    }
+
+}
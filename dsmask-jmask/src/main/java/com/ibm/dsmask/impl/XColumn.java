@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.impl;
+
+import java.util.Arrays;
+
+/**
+ * Values of a single column for a batch of rows.
+ *
+ * String and Long values are kept in the typed arrays, with the null
+ * bitmap for the longs. Any other value type switches the column
+ * to the generic storage, which is kept for the subsequent batches.
+ * @author zinal
+ */
+public class XColumn {
+
+    private static final byte M_EMPTY = 0;
+    private static final byte M_STRING = 1;
+    private static final byte M_LONG = 2;
+    private static final byte M_OBJECT = 3;
+
+    private final int size;
+    private byte mode = M_EMPTY;
+    private String[] strings = null;
+    private long[] longs = null;
+    // null bitmap for the long values, bit set for null
+    private long[] nulls = null;
+    private Object[] objects = null;
+
+    public XColumn(int size) {
+        this.size = size;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return true, if the column uses the typed storage
+     */
+    public boolean isTyped() {
+        return mode == M_STRING || mode == M_LONG;
+    }
+
+    public Object get(int row) {
+        switch (mode) {
+            case M_STRING:
+                return strings[row];
+            case M_LONG:
+                return isNull(row) ? null : Long.valueOf(longs[row]);
+            case M_OBJECT:
+                return objects[row];
+            default:
+                return null;
+        }
+    }
+
+    public void set(int row, Object v) {
+        switch (mode) {
+            case M_EMPTY:
+                if (v==null)
+                    return;
+                if (v instanceof String) {
+                    strings = new String[size];
+                    mode = M_STRING;
+                } else if (v.getClass() == Long.class) {
+                    longs = new long[size];
+                    nulls = new long[(size + 63) / 64];
+                    Arrays.fill(nulls, -1L);
+                    mode = M_LONG;
+                } else {
+                    objects = new Object[size];
+                    mode = M_OBJECT;
+                }
+                set(row, v);
+                return;
+            case M_STRING:
+                if (v==null || v instanceof String) {
+                    strings[row] = (String) v;
+                    return;
+                }
+                break;
+            case M_LONG:
+                if (v==null) {
+                    nulls[row >>> 6] |= (1L << row);
+                    return;
+                }
+                if (v.getClass() == Long.class) {
+                    longs[row] = (Long) v;
+                    nulls[row >>> 6] &= ~(1L << row);
+                    return;
+                }
+                break;
+            default:
+                objects[row] = v;
+                return;
+        }
+        // the value does not fit the typed storage
+        final Object[] temp = new Object[size];
+        for (int i=0; i<size; ++i)
+            temp[i] = get(i);
+        strings = null;
+        longs = null;
+        nulls = null;
+        objects = temp;
+        mode = M_OBJECT;
+        objects[row] = v;
+    }
+
+    private boolean isNull(int row) {
+        return (nulls[row >>> 6] & (1L << row)) != 0L;
+    }
+
+    /**
+     * Set all values to null, keeping the storage type.
+     */
+    public void clear() {
+        switch (mode) {
+            case M_STRING:
+                Arrays.fill(strings, null);
+                break;
+            case M_LONG:
+                Arrays.fill(nulls, -1L);
+                break;
+            case M_OBJECT:
+                Arrays.fill(objects, null);
+                break;
+            default:
+                break;
+        }
+    }
+
+}
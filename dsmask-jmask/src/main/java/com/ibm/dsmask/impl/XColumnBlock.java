@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.impl;
+
+import java.util.Arrays;
+
+/**
+ * Data vectors of a single step for a batch of rows, stored by columns.
+ * Each row has its own vector width, or no vector at all.
+ * @author zinal
+ */
+public class XColumnBlock {
+
+    private final int size;
+    private XColumn[] columns = new XColumn[0];
+    // vector width for each row, -1 for no vector
+    private final int[] widths;
+
+    /**
+     * Block with no vectors.
+     * @param size Number of rows
+     */
+    public XColumnBlock(int size) {
+        this.size = size;
+        this.widths = new int[size];
+        Arrays.fill(widths, -1);
+    }
+
+    /**
+     * Block with the vectors of the fixed width.
+     * @param size Number of rows
+     * @param width Vector width
+     */
+    public XColumnBlock(int size, int width) {
+        this.size = size;
+        this.widths = new int[size];
+        Arrays.fill(widths, width);
+        ensureWidth(width);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public XColumn getColumn(int index) {
+        return columns[index];
+    }
+
+    private void ensureWidth(int width) {
+        if (width <= columns.length)
+            return;
+        final XColumn[] temp = Arrays.copyOf(columns, width);
+        for (int i=columns.length; i<width; ++i)
+            temp[i] = new XColumn(size);
+        columns = temp;
+    }
+
+    /**
+     * @param row Row position
+     * @return Vector width, or -1 if there is no vector
+     */
+    public int getWidth(int row) {
+        return widths[row];
+    }
+
+    /**
+     * @param row Row position
+     * @param index Value index, starting from 0
+     * @return Value, or null if the index is out of range
+     */
+    public Object get(int row, int index) {
+        if (index<0 || index>=widths[row])
+            return null;
+        return columns[index].get(row);
+    }
+
+    /**
+     * Set the value within the current vector width.
+     * @param row Row position
+     * @param index Value index, starting from 0
+     * @param v Value
+     */
+    public void set(int row, int index, Object v) {
+        if (index<0 || index>=widths[row])
+            throw new IllegalArgumentException("Illegal value index " + index
+                    + " for row " + row + ", width " + widths[row]);
+        columns[index].set(row, v);
+    }
+
+    /**
+     * Store the vector for the row.
+     * @param row Row position
+     * @param v Vector, or null to remove the vector
+     */
+    public void setRow(int row, XVector v) {
+        final int width = (v==null) ? -1 : v.values.length;
+        ensureWidth(width);
+        for (int i=0; i<width; ++i)
+            columns[i].set(row, v.values[i]);
+        for (int i=Math.max(width, 0); i<widths[row]; ++i)
+            columns[i].set(row, null);
+        widths[row] = width;
+    }
+
+    /**
+     * Retrieve the vector for the row.
+     * @param row Row position
+     * @param target Vector to be re-used, if it has the proper width
+     * @return Filled vector, or null if there is no vector
+     */
+    public XVector getRow(int row, XVector target) {
+        final int width = widths[row];
+        if (width < 0)
+            return null;
+        final XVector v = XVector.make(target, width);
+        for (int i=0; i<width; ++i)
+            v.values[i] = columns[i].get(row);
+        return v;
+    }
+
+    /**
+     * Set the values of the row to nulls, keeping the vector width.
+     * @param row Row position
+     */
+    public void clearRow(int row) {
+        for (int i=0; i<widths[row]; ++i)
+            columns[i].set(row, null);
+    }
+
+    /**
+     * Copy the vector between the rows.
+     * @param from Source row
+     * @param to Target row
+     */
+    public void copyRow(int from, int to) {
+        final int width = widths[from];
+        for (int i=0; i<width; ++i)
+            columns[i].set(to, columns[i].get(from));
+        for (int i=Math.max(width, 0); i<widths[to]; ++i)
+            columns[i].set(to, null);
+        widths[to] = width;
+    }
+
+}
@@ -25,6 +25,8 @@ import java.util.regex.Pattern;
 import com.ibm.dsmask.algo.*;
 import com.ibm.dsmask.beans.*;
 import com.ibm.dsmask.ops.*;
+import com.ibm.dsmask.util.CompiledDict;
+import com.ibm.dsmask.util.ConfigSnapshot;
 
 /**
  * Masking context keeper, containing the main resources used
@@ -45,6 +47,7 @@ public class XKeeper implements AutoCloseable {
 
     private final Map<String, CharClassSet> charClassSets = new HashMap<>();
     private final Map<String, CharzTable> charTables = new HashMap<>();
+    private final Map<String, CompiledDict> compiledDicts = new HashMap<>();
     private final Map<Integer, XExecutor> executors = new HashMap<>();
     private final Map<Integer, XExecutor> predicates = new HashMap<>();
 
@@ -114,6 +117,39 @@ public class XKeeper implements AutoCloseable {
         }
     }
 
+    /**
+     * Open the compiled dictionary file for the dictionary table.
+     * The file is named as "DBNAME.TABLENAME.hdict" and is located
+     * in the dictionary directory, along with the dictionary database.
+     * The file is ignored if the database file exists and has been
+     * changed after the file was compiled.
+     * @param name Dictionary database name
+     * @param tableName Dictionary table name
+     * @return Memory-mapped dictionary, or null if there is no such file
+     */
+    public CompiledDict openCompiledDict(String name, String tableName) {
+        final String fileName = name + "." + Utils.lower(tableName)
+                + CompiledDict.EXTENSION;
+        if (compiledDicts.containsKey(fileName))
+            return compiledDicts.get(fileName);
+        final File file = new File(new File(context.getDictPath()), fileName);
+        CompiledDict dict = null;
+        if (file.isFile()) {
+            try {
+                dict = CompiledDict.open(file);
+            } catch(Exception ex) {
+                throw new RuntimeException("Cannot open compiled dictionary "
+                        + file, ex);
+            }
+            final File dbFile = ConfigSnapshot.databaseFile(
+                    new File(new File(context.getDictPath()), name).getPath());
+            if (dbFile.exists() && !dict.matches(dbFile))
+                dict = null; // stale file, fallback to the database
+        }
+        compiledDicts.put(fileName, dict);
+        return dict;
+    }
+
     public void registerStatement(PreparedStatement ps) {
         statements.add(ps);
     }
@@ -174,34 +210,34 @@ public class XKeeper implements AutoCloseable {
                 retval = new AlDefaultBatch(new AlProject(func));
                 break;
             case Concat:
-                retval = new AlDefaultBatch(new AlConcat(func));
+                retval = makeBatch(func, new AlConcat(func));
                 break;
             case Split:
-                retval = new AlDefaultBatch(new AlSplit(func));
+                retval = makeBatch(func, new AlSplit(func));
                 break;
             case DateOp:
-                retval = new AlDefaultBatch(new AlDateOp(this, func));
+                retval = makeBatch(func, new AlDateOp(this, func));
                 break;
             case StringOp:
                 retval = new AlDefaultBatch(new AlStringOp(func));
                 break;
             case NumberHash:
-                retval = new AlDefaultBatch(new AlNumberHash(this, func));
+                retval = makeBatch(func, new AlNumberHash(this, func));
                 break;
             case DigestHash:
-                retval = new AlDefaultBatch(new AlDigestHash(this, func));
+                retval = makeBatch(func, new AlDigestHash(this, func));
                 break;
             case HashLookup:
-                retval = new AlDefaultBatch(new AlHashLookup(this, func));
+                retval = makeBatch(func, new AlHashLookup(this, func));
                 break;
             case KeyLookup:
-                retval = new AlDefaultBatch(new AlKeyLookup(this, func));
+                retval = makeBatch(func, new AlKeyLookup(this, func));
                 break;
             case FPE:
-                retval = new AlDefaultBatch(new AlFPE(this, func));
+                retval = makeBatch(func, new AlFPE(this, func));
                 break;
             case CharSubst:
-                retval = new AlDefaultBatch(new AlCharSubst(this, func));
+                retval = makeBatch(func, new AlCharSubst(this, func));
                 break;
             case GroovyScript:
                 retval = new AlDefaultBatch(
@@ -219,6 +255,32 @@ public class XKeeper implements AutoCloseable {
         return retval;
     }
 
+    /**
+     * Wrap the algorithm into the batch executor.
+     * The memoization cache is added when the function configuration
+     * contains the "memo" entry with the positive cache size.
+     * Should only be enabled for deterministic functions.
+     * The batch algorithms keep their batch entry point under the cache.
+     * @param func Masking function
+     * @param simple Algorithm implementation
+     * @return Batch executor
+     */
+    private XExecutor makeBatch(MskFunc func, AlSimpleVector simple) {
+        final String config = func.getText();
+        final int memoSize = (config==null) ? 0 :
+                Utils.getConfigInt(Utils.parseConfig(config), "memo", 0);
+        if (memoSize > 0) {
+            simple = (simple instanceof AlBatchVector) ?
+                    new AlMemoBatch((AlBatchVector) simple, func.getName(), memoSize) :
+                    new AlMemoVector(simple, func.getName(), memoSize);
+        }
+        return new AlDefaultBatch(simple);
+    }
+
+    private XExecutor makeBatch(MskFunc func, AlSimpleValue simple) {
+        return makeBatch(func, new AlDefaultVector(simple));
+    }
+
     @Override
     public void close() {
         for (PreparedStatement ps : statements)
@@ -238,6 +300,9 @@ public class XKeeper implements AutoCloseable {
             if (executor instanceof StatsDumper)
                 ((StatsDumper)executor).dumpStats(sb);
         }
+        final XUniqCache uniqCache = services.peekUniqCache();
+        if (uniqCache != null)
+            uniqCache.dumpStats(sb);
     }
 
 }
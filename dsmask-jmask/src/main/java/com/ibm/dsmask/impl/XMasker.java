@@ -12,12 +12,23 @@
  */
 package com.ibm.dsmask.impl;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 import com.ibm.dsmask.beans.*;
+import com.ibm.dsmask.SafeLogger;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Top-level masking process implementation.
@@ -34,6 +45,19 @@ public class XMasker implements Runnable {
     private XLinkOutput output;
     // batch size
     private int batchSize = 100;
+    // number of masking threads (1 means no extra threads),
+    //   uniq conflicts across the batches are won in any order
+    private int threadCount = 1;
+    // number of bulk states for the pipelined mode (0 means no pipeline)
+    private int pipelineBuffers = 0;
+    // names of the rules to collapse the duplicate inputs, "*" for all
+    private final Set<String> dedupRules = new HashSet<>();
+    // batch size bounds for the adaptive mode (0 means fixed batch size)
+    private int batchSizeMin = 0;
+    private int batchSizeMax = 0;
+
+    // directory for the metrics summary files, null for none
+    private String metricsPath = null;
 
     // masking configuration
     private MskContext context = null;
@@ -88,6 +112,84 @@ public class XMasker implements Runnable {
             this.batchSize = batchSize;
     }
 
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1)
+            this.threadCount = 1;
+        else
+            this.threadCount = threadCount;
+    }
+
+    public int getPipelineBuffers() {
+        return pipelineBuffers;
+    }
+
+    /**
+     * Enable the pipelined mode, where reading, masking and writing
+     * are performed by separate threads. Not used together with
+     * multi-threaded masking (thread count above 1).
+     * @param pipelineBuffers Number of rotating bulk states,
+     *    0 or 1 to disable the pipelined mode
+     */
+    public void setPipelineBuffers(int pipelineBuffers) {
+        if (pipelineBuffers < 2)
+            this.pipelineBuffers = 0;
+        else
+            this.pipelineBuffers = pipelineBuffers;
+    }
+
+    public boolean isAdaptiveBatch() {
+        return batchSizeMax > 0;
+    }
+
+    public int getBatchSizeMin() {
+        return batchSizeMin;
+    }
+
+    public int getBatchSizeMax() {
+        return batchSizeMax;
+    }
+
+    /**
+     * Enable the adaptive batch size, where the batch size is adjusted
+     * between the bounds specified, starting from the configured batch size.
+     * Only used in the sequential mode (single thread, no pipeline).
+     * @param minSize Minimal batch size
+     * @param maxSize Maximal batch size, 0 to disable the adaptive mode
+     */
+    public void setAdaptiveBatch(int minSize, int maxSize) {
+        if (maxSize < 1) {
+            this.batchSizeMin = 0;
+            this.batchSizeMax = 0;
+        } else {
+            this.batchSizeMin = Math.max(1, Math.min(minSize, maxSize));
+            this.batchSizeMax = maxSize;
+        }
+    }
+
+    public Set<String> getDedupRules() {
+        return dedupRules;
+    }
+
+    /**
+     * Enable the collapsing of duplicate input vectors within a batch
+     * for the specified masking rules. Should only be used for
+     * the rules producing the same output for the same input.
+     * @param rules Rule names, "*" to enable for all rules
+     */
+    public void setDedupRules(Collection<String> rules) {
+        dedupRules.clear();
+        if (rules != null) {
+            for (String rule : rules) {
+                if (Utils.lower(rule).length() > 0)
+                    dedupRules.add(Utils.lower(rule));
+            }
+        }
+    }
+
     public MskContext getContext() {
         return context;
     }
@@ -114,6 +216,28 @@ public class XMasker implements Runnable {
         return perfStats;
     }
 
+    public String getMetricsPath() {
+        return metricsPath;
+    }
+
+    /**
+     * Enable writing the metrics summary file when the run completes.
+     * @param metricsPath Directory for the summary files, null to disable
+     */
+    public void setMetricsPath(String metricsPath) {
+        if (metricsPath==null || metricsPath.trim().length()==0)
+            this.metricsPath = null;
+        else
+            this.metricsPath = metricsPath.trim();
+    }
+
+    /**
+     * @return Latency metrics of the current or last run, or null
+     */
+    public XMetrics getMetrics() {
+        return (services==null) ? null : services.getMetrics();
+    }
+
     @Override
     public void run() {
         if (indexMap.isEmpty() || input==null || output==null)
@@ -132,25 +256,166 @@ public class XMasker implements Runnable {
             // We have a masking context and need to apply masking operations.
             if (services==null)
                 services = new XServices();
-            try (XKeeper keeper = new XKeeper(context, services)) {
-                final XBulkState bulkState = new XBulkState(keeper, batchSize);
-                bulkState.setIndexMap(indexMap);
-                while (bulkState.readRows(input, output)) {
-                    bulkState.maskRows();
-                    bulkState.writeRows(output);
-                    bulkState.clear();
-                }
-                dumpStatistics(keeper);
+            final XMetrics metrics =
+                    new XMetrics(context.getTable().getTableInfo());
+            services.setMetrics(metrics);
+            metrics.register();
+            try {
+                if (threadCount > 1)
+                    runParallel();
+                else if (pipelineBuffers > 1)
+                    runPipelined();
+                else
+                    runSequential();
             } finally {
+                metrics.finish();
+                metrics.unregister();
+                writeMetrics(metrics);
                 services.close();
             }
         }
     }
 
-    private void dumpStatistics(XKeeper keeper) {
+    /**
+     * Read, mask and write the batches one after another
+     * in the current thread.
+     */
+    private void runSequential() {
+        if (batchSizeMax > 0) {
+            runAdaptive();
+            return;
+        }
+        try (XKeeper keeper = new XKeeper(context, services)) {
+            final XBulkState bulkState = new XBulkState(keeper, batchSize);
+            bulkState.setIndexMap(indexMap);
+            while (bulkState.readRows(input, output)) {
+                bulkState.maskRows();
+                bulkState.writeRows(output);
+                bulkState.clear();
+            }
+            dumpStatistics(Collections.singletonList(keeper));
+        }
+    }
+
+    /**
+     * Sequential mode with the batch size adjusted after each batch,
+     * based on the time spent in reading, masking and writing the rows.
+     */
+    private void runAdaptive() {
+        final XBatchControl control =
+                new XBatchControl(batchSize, batchSizeMin, batchSizeMax);
+        try (XKeeper keeper = new XKeeper(context, services)) {
+            final XBulkState bulkState =
+                    new XBulkState(keeper, control.getMaxSize());
+            bulkState.setIndexMap(indexMap);
+            while (true) {
+                bulkState.setBatchLimit(control.getSize());
+                final long tvRead = System.nanoTime();
+                if (! bulkState.readRows(input, output))
+                    break;
+                final long tvMask = System.nanoTime();
+                final long remote = bulkState.getRemoteNanos();
+                bulkState.maskRows();
+                final long tvWrite = System.nanoTime();
+                bulkState.writeRows(output);
+                final long tvDone = System.nanoTime();
+                control.record(bulkState.getTotalRows(),
+                        tvMask - tvRead, tvWrite - tvMask,
+                        bulkState.getRemoteNanos() - remote,
+                        tvDone - tvWrite);
+                bulkState.clear();
+            }
+            dumpStatistics(Collections.singletonList(keeper));
+            if (perfStats==null)
+                perfStats = new StringBuilder();
+            control.dumpStats(perfStats);
+        }
+    }
+
+    /**
+     * Read, mask and write the batches in separate threads,
+     * rotating several bulk states between the stages.
+     */
+    private void runPipelined() {
+        try (XKeeper keeper = new XKeeper(context, services)) {
+            new XPipeline(keeper, input, output, indexMap,
+                    batchSize, pipelineBuffers).run();
+            dumpStatistics(Collections.singletonList(keeper));
+        }
+    }
+
+    /**
+     * Mask the batches concurrently in the thread pool.
+     * Each worker has its own bulk state, keeper and services.
+     * Input and output links are only used by the current thread,
+     * and the workers are visited in a round-robin order,
+     * which keeps the output order the same as the input order.
+     * The uniq-check requests of different workers are not ordered,
+     * so the winner of a uniq conflict between the rows of different
+     * batches depends on the timing of the workers.
+     */
+    private void runParallel() {
+        final List<XBulkWorker> workers = new ArrayList<>();
+        final AtomicBoolean rejectionFlag = new AtomicBoolean(false);
+        final ExecutorService pool = Executors
+                .newFixedThreadPool(threadCount, new WorkerFactory());
+        try {
+            for (int i=0; i<threadCount; ++i) {
+                // the workers close their services, the shared ones
+                //   are closed in run()
+                final XBulkWorker worker = new XBulkWorker(context,
+                        services.newInstance(), batchSize, indexMap);
+                worker.getBulkState().setRejectionFlag(rejectionFlag);
+                workers.add(worker);
+            }
+            int position = 0;
+            while (true) {
+                final XBulkWorker worker = workers.get(position);
+                // the worker's previous batch is the oldest one in progress
+                worker.finish(output);
+                if (! worker.start(input, output, pool))
+                    break; // no more input
+                position = (position + 1) % threadCount;
+            }
+            // write the remaining batches, oldest first
+            for (int i=1; i<threadCount; ++i) {
+                workers.get((position + i) % threadCount).finish(output);
+            }
+            final List<XKeeper> keepers = new ArrayList<>();
+            for (XBulkWorker worker : workers)
+                keepers.add(worker.getKeeper());
+            dumpStatistics(keepers);
+        } finally {
+            for (XBulkWorker worker : workers)
+                worker.cancel();
+            pool.shutdownNow();
+            try {
+                pool.awaitTermination(1L, TimeUnit.MINUTES);
+            } catch(InterruptedException ix) {
+                Thread.currentThread().interrupt();
+            }
+            for (XBulkWorker worker : workers)
+                worker.close();
+        }
+    }
+
+    private void writeMetrics(XMetrics metrics) {
+        if (metricsPath==null)
+            return;
+        try {
+            final File f = metrics.writeSummary(new File(metricsPath));
+            SafeLogger.information("Masking metrics written to " + f);
+        } catch(Exception ex) {
+            SafeLogger.warning("Cannot write the masking metrics to "
+                    + metricsPath, ex);
+        }
+    }
+
+    private void dumpStatistics(List<XKeeper> keepers) {
         perfStats = null;
         final StringBuilder sb = new StringBuilder();
-        keeper.dumpStats(sb);
+        for (XKeeper keeper : keepers)
+            keeper.dumpStats(sb);
         if (sb.length() > 0) {
             perfStats = sb;
         }
@@ -218,6 +483,9 @@ public class XMasker implements Runnable {
             // save indexes for use during masking
             op.setInputIndexes(inputIndexes);
             op.setOutputIndexes(outputIndexes);
+            // enable the dedup mode, if configured
+            op.setDedup(dedupRules.contains("*")
+                    || dedupRules.contains(Utils.lower(op.getRule().getName())));
         }
     }
 
@@ -244,4 +512,21 @@ public class XMasker implements Runnable {
         return null;
     }
 
+    /**
+     * Daemon threads for the masking workers.
+     */
+    private static final class WorkerFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread t = new Thread(r);
+            t.setDaemon(true);
+            t.setName("dsmask-masker#" + counter.incrementAndGet());
+            return t;
+        }
+
+    }
+
 }
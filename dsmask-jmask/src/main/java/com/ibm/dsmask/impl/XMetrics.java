@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import com.ibm.dsmask.SafeLogger;
+import com.ibm.dsmask.beans.*;
+
+/**
+ * Latency metrics of the masking run: link read and write times,
+ * and the time spent in each step of each masking operation.
+ * Shared between the masking threads of a single run.
+ * Exposed through JMX while running, and written as a JSON
+ * summary file when the run completes.
+ * @author zinal
+ */
+public class XMetrics implements XMetricsMBean {
+
+    public static final String DOMAIN = "com.ibm.dsmask";
+
+    private static final AtomicInteger SEQUENCE = new AtomicInteger(0);
+
+    private final String name;
+    private final long startTime = System.currentTimeMillis();
+    private volatile long finishTime = 0L;
+    private ObjectName objectName = null;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder readRows = new LongAdder();
+    private final LongAdder writeRows = new LongAdder();
+    private final LongAdder rejectRows = new LongAdder();
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAdder maskNanos = new LongAdder();
+    // rows skipped by the operations, as duplicates of other rows
+    private final LongAdder collapsedRows = new LongAdder();
+    // step metrics, ordered by operation and step position
+    private final Map<Long, Step> steps = new ConcurrentSkipListMap<>();
+
+    public XMetrics(String name) {
+        this.name = (name==null || name.length()==0) ? "dsmask" : name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        final long finish = finishTime;
+        return ((finish==0L) ? System.currentTimeMillis() : finish) - startTime;
+    }
+
+    /**
+     * Mark the masking run as completed.
+     */
+    public void finish() {
+        if (finishTime==0L)
+            finishTime = System.currentTimeMillis();
+    }
+
+    public void addRead(int rows, long nanos) {
+        readRows.add(rows);
+        readNanos.add(nanos);
+    }
+
+    public void addWrite(int rows, int rejects, long nanos) {
+        writeRows.add(rows);
+        rejectRows.add(rejects);
+        writeNanos.add(nanos);
+    }
+
+    public void addMask(long nanos) {
+        batches.increment();
+        maskNanos.add(nanos);
+    }
+
+    public void addCollapsed(int rows) {
+        collapsedRows.add(rows);
+    }
+
+    /**
+     * Find or register the metrics for the masking step.
+     * @param op Masking operation
+     * @param position Step position within the operation
+     * @return Step metrics
+     */
+    public Step getStep(MskOp op, int position) {
+        final Long key = (((long) op.getId()) << 32) | position;
+        Step s = steps.get(key);
+        if (s==null) {
+            final Step temp = new Step(op, position);
+            s = steps.putIfAbsent(key, temp);
+            if (s==null)
+                s = temp;
+        }
+        return s;
+    }
+
+    public List<Step> getSteps() {
+        return new ArrayList<>(steps.values());
+    }
+
+    @Override
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    @Override
+    public long getReadRows() {
+        return readRows.sum();
+    }
+
+    @Override
+    public long getWrittenRows() {
+        return writeRows.sum();
+    }
+
+    @Override
+    public long getRejectedRows() {
+        return rejectRows.sum();
+    }
+
+    @Override
+    public long getCollapsedRows() {
+        return collapsedRows.sum();
+    }
+
+    @Override
+    public long getReadBlockedMillis() {
+        return readNanos.sum() / 1000000L;
+    }
+
+    @Override
+    public long getWriteBlockedMillis() {
+        return writeNanos.sum() / 1000000L;
+    }
+
+    @Override
+    public long getMaskMillis() {
+        return maskNanos.sum() / 1000000L;
+    }
+
+    @Override
+    public String[] getStepStats() {
+        final List<String> retval = new ArrayList<>();
+        for (Step s : steps.values())
+            retval.add(s.toString());
+        return retval.toArray(new String[retval.size()]);
+    }
+
+    /**
+     * Register the MBean in the platform MBean server.
+     * Failures are logged and otherwise ignored.
+     */
+    public void register() {
+        if (objectName!=null)
+            return;
+        try {
+            final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName on = new ObjectName(DOMAIN + ":type=Metrics,name="
+                    + ObjectName.quote(name + "#" + SEQUENCE.incrementAndGet()));
+            mbs.registerMBean(this, on);
+            objectName = on;
+        } catch(Exception ex) {
+            SafeLogger.warning("Cannot register the metrics MBean", ex);
+        }
+    }
+
+    public void unregister() {
+        if (objectName==null)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch(Exception ex) {
+            SafeLogger.warning("Cannot unregister the metrics MBean", ex);
+        }
+        objectName = null;
+    }
+
+    /**
+     * Write the summary file into the specified directory.
+     * The file name is built from the metrics name, start time
+     * and the process name, to be unique between the partitions.
+     * @param directory Target directory
+     * @return The file written
+     * @throws Exception On I/O error
+     */
+    public File writeSummary(File directory) throws Exception {
+        final String process = ManagementFactory.getRuntimeMXBean().getName();
+        final String fname = (name + "-"
+                + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(startTime))
+                + "-" + process + "-" + SEQUENCE.incrementAndGet())
+                .replaceAll("[^A-Za-z0-9_.-]", "_") + ".json";
+        final File f = new File(directory, fname);
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(f),
+                StandardCharsets.UTF_8)) {
+            w.write(toJson());
+        }
+        return f;
+    }
+
+    /**
+     * @return Metrics summary in JSON format
+     */
+    public String toJson() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"name\": ").append(quote(name)).append(",\n");
+        sb.append("  \"started\": ").append(quote(new SimpleDateFormat(
+                "yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(new Date(startTime))))
+                .append(",\n");
+        sb.append("  \"elapsedMs\": ").append(getElapsedMillis()).append(",\n");
+        sb.append("  \"batches\": ").append(getBatchCount()).append(",\n");
+        sb.append("  \"readRows\": ").append(getReadRows()).append(",\n");
+        sb.append("  \"writtenRows\": ").append(getWrittenRows()).append(",\n");
+        sb.append("  \"rejectedRows\": ").append(getRejectedRows()).append(",\n");
+        sb.append("  \"collapsedRows\": ").append(getCollapsedRows()).append(",\n");
+        sb.append("  \"readUs\": ").append(readNanos.sum() / 1000L).append(",\n");
+        sb.append("  \"maskUs\": ").append(maskNanos.sum() / 1000L).append(",\n");
+        sb.append("  \"writeUs\": ").append(writeNanos.sum() / 1000L).append(",\n");
+        sb.append("  \"steps\": [");
+        boolean comma = false;
+        for (Step s : steps.values()) {
+            if (comma)
+                sb.append(",");
+            comma = true;
+            sb.append("\n    ");
+            s.toJson(sb);
+        }
+        sb.append("\n  ]\n}\n");
+        return sb.toString();
+    }
+
+    static String quote(String v) {
+        if (v==null)
+            return "null";
+        final StringBuilder sb = new StringBuilder(v.length() + 2);
+        sb.append('"');
+        for (int i=0; i<v.length(); ++i) {
+            final char c = v.charAt(i);
+            if (c=='"' || c=='\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Metrics of a single step of the masking operation.
+     */
+    public static class Step {
+
+        private final int operationId;
+        private final String rule;
+        private final int position;
+        private final String function;
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        // row computations with the iteration number (uniq-check)
+        private final LongAdder iterations = new LongAdder();
+        // uniq-check service calls
+        private final LongAdder uniqRounds = new LongAdder();
+        private final LongAdder predicateNanos = new LongAdder();
+        private final LongAdder execNanos = new LongAdder();
+        private final LongAdder uniqNanos = new LongAdder();
+
+        public Step(MskOp op, int position) {
+            this.operationId = op.getId();
+            this.rule = op.getRule().getName();
+            this.position = position;
+            final MskStep step = op.getStep(position);
+            this.function = (step==null) ? null : step.getFunctionName();
+        }
+
+        /**
+         * Register the step execution over a batch of rows.
+         * @param rowCount Number of rows in the batch
+         * @param errorCount Number of rows which got errors in the step
+         * @param iterationCount Row computations with the iteration number
+         * @param rounds Uniq-check service calls
+         * @param predicate Time spent computing the predicate, nanoseconds
+         * @param exec Time spent in the executor, excluding the uniq-check calls
+         * @param uniq Time spent in the uniq-check calls
+         */
+        public void record(int rowCount, int errorCount, long iterationCount,
+                long rounds, long predicate, long exec, long uniq) {
+            calls.increment();
+            rows.add(rowCount);
+            if (errorCount > 0)
+                errors.add(errorCount);
+            if (iterationCount > 0L)
+                iterations.add(iterationCount);
+            if (rounds > 0L)
+                uniqRounds.add(rounds);
+            predicateNanos.add(predicate);
+            execNanos.add(exec);
+            uniqNanos.add(uniq);
+        }
+
+        public int getOperationId() {
+            return operationId;
+        }
+
+        public String getRule() {
+            return rule;
+        }
+
+        public int getPosition() {
+            return position;
+        }
+
+        public String getFunction() {
+            return function;
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getIterations() {
+            return iterations.sum();
+        }
+
+        void toJson(StringBuilder sb) {
+            sb.append("{\"operation\": ").append(operationId)
+                    .append(", \"rule\": ").append(quote(rule))
+                    .append(", \"step\": ").append(position)
+                    .append(", \"function\": ").append(quote(function))
+                    .append(", \"calls\": ").append(calls.sum())
+                    .append(", \"rows\": ").append(rows.sum())
+                    .append(", \"errors\": ").append(errors.sum())
+                    .append(", \"iterations\": ").append(iterations.sum())
+                    .append(", \"uniqRounds\": ").append(uniqRounds.sum())
+                    .append(", \"predicateUs\": ").append(predicateNanos.sum() / 1000L)
+                    .append(", \"executorUs\": ").append(execNanos.sum() / 1000L)
+                    .append(", \"uniqUs\": ").append(uniqNanos.sum() / 1000L)
+                    .append("}");
+        }
+
+        @Override
+        public String toString() {
+            return "op#" + operationId + " [" + rule + "] step " + position
+                    + " [" + function + "]: rows " + rows.sum()
+                    + ", errors " + errors.sum()
+                    + ", iterations " + iterations.sum()
+                    + ", uniq rounds " + uniqRounds.sum()
+                    + ", ms: predicate " + predicateNanos.sum() / 1000000L
+                    + ", executor " + execNanos.sum() / 1000000L
+                    + ", uniq " + uniqNanos.sum() / 1000000L;
+        }
+
+    }
+
+}
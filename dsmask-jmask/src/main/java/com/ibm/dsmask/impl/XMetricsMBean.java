@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.impl;
+
+/**
+ * JMX view of the masking metrics.
+ * @author zinal
+ */
+public interface XMetricsMBean {
+
+    String getName();
+
+    long getElapsedMillis();
+
+    long getBatchCount();
+
+    long getReadRows();
+
+    long getWrittenRows();
+
+    long getRejectedRows();
+
+    /**
+     * @return Number of rows masked as duplicates, summed over the operations
+     */
+    long getCollapsedRows();
+
+    long getReadBlockedMillis();
+
+    long getWriteBlockedMillis();
+
+    long getMaskMillis();
+
+    /**
+     * @return One line of text per masking step
+     */
+    String[] getStepStats();
+
+}
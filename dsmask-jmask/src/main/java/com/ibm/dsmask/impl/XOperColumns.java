@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.impl;
+
+import com.ibm.dsmask.beans.*;
+
+/**
+ * Data of a single masking operation for a batch of rows:
+ * the input values, and the output values for each step.
+ * Shared by the operation states of all rows in the batch.
+ * @author zinal
+ */
+public class XOperColumns {
+
+    private final MskOp operation;
+    private final XColumnBlock base;
+    private final XColumnBlock[] outputs;
+
+    public XOperColumns(MskOp op, int size) {
+        this.operation = op;
+        this.base = new XColumnBlock(size, op.getInputFields().size());
+        this.outputs = new XColumnBlock[op.getRule().getSteps().size()];
+        for (int i=0; i<outputs.length; ++i)
+            this.outputs[i] = new XColumnBlock(size);
+    }
+
+    public MskOp getOperation() {
+        return operation;
+    }
+
+    public XColumnBlock getBase() {
+        return base;
+    }
+
+    public int getStepCount() {
+        return outputs.length;
+    }
+
+    /**
+     * @param position Step position, or -1 for the input values
+     * @return Block of the step output values
+     */
+    public XColumnBlock getOutput(int position) {
+        if (position<0)
+            return base;
+        if (position<outputs.length)
+            return outputs[position];
+        throw new IllegalArgumentException("Illegal output step position "
+                + position + " for operation #" + operation.getId());
+    }
+
+    /**
+     * Remove the data values of the row from the previous run.
+     * @param row Row position
+     */
+    public void clearRow(int row) {
+        base.clearRow(row);
+        for (XColumnBlock b : outputs)
+            b.clearRow(row);
+    }
+
+}
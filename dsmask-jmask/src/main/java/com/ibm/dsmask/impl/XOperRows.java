@@ -12,6 +12,10 @@
  */
 package com.ibm.dsmask.impl;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import com.ibm.dsmask.ops.AlDefaultBatch;
 import com.ibm.dsmask.beans.*;
 
@@ -27,6 +31,17 @@ public class XOperRows {
     // Operation state, for each row
     private final XOperState[] states;
 
+    // Dedup mode: representative row for each row of the batch
+    private int[] owners = null;
+    // Dedup mode: states of the representative rows
+    private XOperState[] distinct = null;
+    // Dedup mode: original per-row errors
+    private XRowErrors[] rowErrors = null;
+    // Dedup mode: input vector -> representative row
+    private final Map<List<Object>, Integer> lookup = new HashMap<>();
+    // Step metrics, for each step, when collected
+    private XMetrics.Step[] stepMetrics = null;
+
     public XOperRows(MskOp op, XRowState[] rows, int hint) {
         this.operation = op;
         this.states = new XOperState[rows.length];
@@ -43,24 +58,106 @@ public class XOperRows {
      * Perform masking operation over a batch of rows.
      * The algorithm runs steps sequentially, passing a pack of rows
      * to each step invocation.
+     * In the dedup mode, the steps run once per distinct input vector,
+     * and the results are copied to the duplicate rows.
      * @param ws Computational workspace
      */
     public void maskRows(XWorkspace ws) {
+        if (operation.isDedup() && ws.totalRows > 1
+                && !operation.getRule().getSteps().isEmpty()) {
+            maskRowsDedup(ws);
+        } else {
+            maskRows(ws, states);
+        }
+    }
+
+    private void maskRowsDedup(XWorkspace ws) {
+        final int total = ws.totalRows;
+        final int count = collapse(ws);
+        if (count == total) {
+            // no duplicates, and the workspace is unchanged
+            maskRows(ws, states);
+            return;
+        }
+        if (ws.metrics != null)
+            ws.metrics.addCollapsed(total - count);
+        ws.totalRows = count;
+        try {
+            maskRows(ws, distinct);
+        } finally {
+            ws.totalRows = total;
+            System.arraycopy(rowErrors, 0, ws.errors, 0, total);
+        }
+        // copy the results to the duplicate rows
+        final int last = operation.getRule().getSteps().size() - 1;
+        for (int i=0; i<total; ++i) {
+            final int owner = owners[i];
+            if (owner == i)
+                continue;
+            states[i].copyOutput(last, states[owner]);
+            rowErrors[i].addAll(rowErrors[owner]);
+        }
+    }
+
+    /**
+     * Find the representative row for each row of the batch.
+     * Rows which already have errors are never collapsed.
+     * Errors of the representative rows are moved to the
+     * positions of the compacted batch.
+     * @param ws Computational workspace
+     * @return Number of distinct rows
+     */
+    private int collapse(XWorkspace ws) {
+        if (owners == null) {
+            owners = new int[states.length];
+            distinct = new XOperState[states.length];
+            rowErrors = new XRowErrors[states.length];
+        }
+        int count = 0;
+        for (int i=0; i<ws.totalRows; ++i) {
+            rowErrors[i] = ws.errors[i];
+            Integer owner = null;
+            if (! rowErrors[i].hasError()) {
+                owner = lookup.putIfAbsent(
+                        Arrays.asList(states[i].getOutput(-1, null).values), i);
+            }
+            if (owner == null) {
+                owners[i] = i;
+                distinct[count] = states[i];
+                ws.errors[count] = rowErrors[i];
+                ++count;
+            } else {
+                owners[i] = owner;
+            }
+        }
+        lookup.clear();
+        return count;
+    }
+
+    private void maskRows(XWorkspace ws, XOperState[] rows) {
         int stepPosition = 0;
         for (MskStep step : operation.getRule().getSteps()) {
             // Advance workspace to the next step
             ws.nextStep(step, stepPosition);
-            // Prepare input and output vectors.
-            //   Output vectors are re-used to decrease re-allocation
+            // Prepare input and output vectors from the column data.
+            //   Vectors are re-used to decrease re-allocation
             for (int i=0; i<ws.totalRows; ++i) {
-                ws.inputs[i] = states[i].buildInput(stepPosition);
-                ws.outputs[i] = states[i].getOutput(stepPosition);
+                ws.inputs[i] = rows[i].buildInput(stepPosition,
+                        ws.inputBuffers[i]);
+                ws.inputBuffers[i] = ws.inputs[i];
+                ws.outputs[i] = rows[i].getOutput(stepPosition,
+                        ws.outputBuffers[i]);
             }
+            final XMetrics.Step sm = getStepMetrics(ws, stepPosition);
+            final int errorsBefore = (sm==null) ? 0 : ws.countErrors();
+            final long remoteBefore = ws.getRemoteNanos();
+            final long tvStart = (sm==null) ? 0L : System.nanoTime();
             final XExecutor predicate = ws.keeper.makePredicate(step);
             if (predicate != null) {
                 // we need to compute the value of per-row predicates
                 predicate.exec(ws);
             }
+            final long tvExec = (sm==null) ? 0L : System.nanoTime();
             // Grab the algorithm executor
             final XExecutor executor =
                     ws.keeper.makeExecutor(step.getFunction());
@@ -73,15 +170,39 @@ public class XOperRows {
                 // Just execute the algorithm
                 executor.exec(ws);
             }
-            // Write to output vectors
+            if (sm != null) {
+                final long remote = ws.getRemoteNanos() - remoteBefore;
+                sm.record(ws.totalRows, ws.countErrors() - errorsBefore,
+                        ws.getStepIterations(), ws.getStepRounds(),
+                        tvExec - tvStart,
+                        System.nanoTime() - tvExec - remote, remote);
+            }
+            // Write the output vectors to the column data
             for (int i=0; i<ws.totalRows; ++i) {
-                states[i].setOutput(stepPosition, ws.outputs[i]);
+                final XVector output = ws.outputs[i];
+                rows[i].setOutput(stepPosition, output);
+                // the input vector may be returned as the output
+                if (output != null && output != ws.inputs[i])
+                    ws.outputBuffers[i] = output;
             }
             // Switch to next step position
             ++ stepPosition;
         }
     }
 
+    private XMetrics.Step getStepMetrics(XWorkspace ws, int position) {
+        if (ws.metrics == null)
+            return null;
+        if (stepMetrics == null)
+            stepMetrics = new XMetrics.Step[operation.getRule().getSteps().size()];
+        XMetrics.Step sm = stepMetrics[position];
+        if (sm == null) {
+            sm = ws.metrics.getStep(operation, position);
+            stepMetrics[position] = sm;
+        }
+        return sm;
+    }
+
     private void maskRowsUniq(XWorkspace ws, XExecutor executor, MskStep step) {
         if (executor==null)
             throw new IllegalArgumentException();
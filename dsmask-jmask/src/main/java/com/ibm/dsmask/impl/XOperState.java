@@ -17,43 +17,50 @@ import com.ibm.dsmask.beans.*;
 
 /**
  * Computational state for a single masking operation over a single row of data.
- * It consists of data vectors for all steps that are already processed.
+ * It consists of data vectors for all steps that are already processed,
+ * which are kept in the column blocks shared by all rows of the batch.
  * @author zinal
  */
 public class XOperState {
 
     private final MskOp operation;
     private final XRowState rowState;
-    private final XVector base;
-    private final XVector[] inputs;
-    private final XVector[] outputs;
+    private final XOperColumns data;
+    private final int row;
 
     public XOperState(MskOp op, XRowState rowState) {
+        this(op, rowState, new XOperColumns(op, 1), 0);
+    }
+
+    public XOperState(MskOp op, XRowState rowState, XOperColumns data, int row) {
+        if (data.getOperation() != op)
+            throw new IllegalArgumentException();
         this.operation = op;
         this.rowState = rowState;
-        final int numSteps = op.getRule().getSteps().size();
-        this.base = new XVector(op.getInputFields().size());
-        this.inputs = new XVector[numSteps];
-        this.outputs = new XVector[numSteps];
+        this.data = data;
+        this.row = row;
     }
 
     public final MskOp getOperation() {
         return operation;
     }
 
+    public final XOperColumns getData() {
+        return data;
+    }
+
+    /**
+     * @return Row position in the column blocks
+     */
+    public final int getRow() {
+        return row;
+    }
+
     /**
      * Remove the data values from previous run.
      */
     public void clear() {
-        base.clear();
-        for (XVector v : inputs) {
-            if (v!=null)
-                v.clear();
-        }
-        for (XVector v : outputs) {
-            if (v!=null)
-                v.clear();
-        }
+        data.clearRow(row);
     }
 
     /**
@@ -61,10 +68,11 @@ public class XOperState {
      * @param record Input record
      */
     public void readRow(XRowInput record) {
+        final XColumnBlock base = data.getBase();
         int pos = 0;
         for (int index : operation.getInputIndexes()) {
             // MAYBE: handle data type conversion
-            base.values[pos] = record.getValue(index);
+            base.set(row, pos, record.getValue(index));
             ++pos;
         }
     }
@@ -74,14 +82,14 @@ public class XOperState {
      * @param record Output record
      */
     public void writeRow(XRowOutput record) {
-        final XVector vec = outputs[outputs.length - 1];
-        if (vec==null) {
+        final XColumnBlock block = data.getOutput(data.getStepCount() - 1);
+        if (block.getWidth(row) < 0) {
             throw new IllegalStateException("No row to be written, "
                     + "illegal sequence of calls");
         }
         int pos = 0;
         for (int index : operation.getOutputIndexes()) {
-            Object value = vec.values[pos];
+            Object value = block.get(row, pos);
             // Validate the output value.
             if (rowState.checkValue(index, operation, value)) {
                 // If the value is allowed, we set it to the output.
@@ -109,10 +117,11 @@ public class XOperState {
      * Get the input vector for step at the specified position.
      * All previous steps should have been executed.
      * @param position Step position
-     * @return Refreshed input vector
+     * @param target Vector to be re-used, if it has the proper size
+     * @return Filled input vector
      */
-    public XVector buildInput(int position) {
-        if (position<0 || position>=inputs.length) {
+    public XVector buildInput(int position, XVector target) {
+        if (position<0 || position>=data.getStepCount()) {
             throw new IllegalArgumentException("Illegal input step position "
                 + position + " for operation #" + operation.getId());
         }
@@ -120,26 +129,25 @@ public class XOperState {
         final XVector vec;
         if (step.getRefs().isEmpty()) {
             // no input defition for the step, take the previous values
-            XVector prev = null;
+            XColumnBlock prev = null;
             int cur = 1;
             while (prev == null) {
-                prev = getOutput(position - cur);
+                prev = data.getOutput(position - cur);
+                if (prev.getWidth(row) < 0)
+                    prev = null;
                 ++cur;
             }
             // Copy the previous values as-is
-            vec = XVector.make(inputs[position], prev.values.length);
-            System.arraycopy(prev.values, 0, vec.values, 0, prev.values.length);
+            vec = prev.getRow(row, target);
         } else {
             // step has its own input definition
-            vec = XVector.make(inputs[position], step.getRefs().size());
+            vec = XVector.make(target, step.getRefs().size());
             int index = 0;
             for (MskRef ref : step.getRefs()) {
                 vec.values[index] = getValue(ref);
                 ++index;
             }
         }
-        // Store filled vector for re-use
-        inputs[position] = vec;
         return vec;
     }
 
@@ -149,24 +157,18 @@ public class XOperState {
      * @return Value, or null if one is not available
      */
     public Object getValue(MskRef ref) {
-        final XVector output = getOutput(ref.getParentIndex());
-        if (output == null)
-            return null;
-        return output.getValue(ref.getPosition());
+        return data.getOutput(ref.getParentIndex())
+                .get(row, ref.getPosition() - 1);
     }
 
     /**
      * Get current output vector at the specified position.
      * @param position Step position
-     * @return Output vector (may be null, if not previously set)
+     * @param target Vector to be re-used, if it has the proper size
+     * @return Output vector (null, if not previously set)
      */
-    public XVector getOutput(int position) {
-        if (position<0)
-            return base;
-        if (position<outputs.length)
-            return outputs[position];
-        throw new IllegalArgumentException("Illegal output step position "
-                + position + " for operation #" + operation.getId());
+    public XVector getOutput(int position, XVector target) {
+        return data.getOutput(position).getRow(row, target);
     }
 
     /**
@@ -175,11 +177,22 @@ public class XOperState {
      * @param vec Output vector
      */
     public void setOutput(int position, XVector vec) {
-        if (position < 0 || position>=outputs.length) {
+        if (position < 0 || position>=data.getStepCount()) {
             throw new IllegalArgumentException("Illegal output step position "
                     + position + " for operation #" + operation.getId());
         }
-        outputs[position] = vec;
+        data.getOutput(position).setRow(row, vec);
+    }
+
+    /**
+     * Copy the output vector at the specified position from another row.
+     * @param position Step position
+     * @param other Operation state of the source row, sharing the same data
+     */
+    public void copyOutput(int position, XOperState other) {
+        if (other.data != data)
+            throw new IllegalArgumentException();
+        data.getOutput(position).copyRow(other.row, row);
     }
 
 }
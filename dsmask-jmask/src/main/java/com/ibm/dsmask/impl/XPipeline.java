@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.impl;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pipelined masking process: reading, masking and writing are
+ * performed by three different threads, connected by bounded queues.
+ * A fixed set of bulk states rotates between the stages,
+ * so the link I/O overlaps with the masking computations.
+ *
+ * The reader thread is the only one using the input link,
+ * and the writer thread is the only one using the output link.
+ * Masking is performed in the calling thread.
+ * An empty bulk state travels through the stages as an end marker.
+ * @author zinal
+ */
+public class XPipeline {
+
+    private final XKeeper keeper;
+    private final XLinkInput input;
+    private final XLinkOutput output;
+    private final Map<Integer, XColumnInfo> indexMap;
+    private final int batchSize;
+    private final int bufferCount;
+
+    // bulk states ready to be filled with data
+    private final BlockingQueue<XBulkState> freeQueue;
+    // bulk states filled with data and waiting for masking
+    private final BlockingQueue<XBulkState> maskQueue;
+    // masked bulk states waiting to be written
+    private final BlockingQueue<XBulkState> writeQueue;
+
+    // first failure in any of the stages
+    private volatile Throwable failure = null;
+
+    public XPipeline(XKeeper keeper, XLinkInput input, XLinkOutput output,
+            Map<Integer, XColumnInfo> indexMap,
+            int batchSize, int bufferCount) {
+        this.keeper = keeper;
+        this.input = input;
+        this.output = output;
+        this.indexMap = indexMap;
+        this.batchSize = batchSize;
+        this.bufferCount = (bufferCount < 2) ? 2 : bufferCount;
+        this.freeQueue = new ArrayBlockingQueue<>(this.bufferCount);
+        this.maskQueue = new ArrayBlockingQueue<>(this.bufferCount);
+        this.writeQueue = new ArrayBlockingQueue<>(this.bufferCount);
+    }
+
+    public int getBufferCount() {
+        return bufferCount;
+    }
+
+    /**
+     * Run the pipeline until the input is exhausted.
+     * Masking is performed in the current thread.
+     */
+    public void run() {
+        final AtomicBoolean rejectionFlag = new AtomicBoolean(false);
+        for (int i=0; i<bufferCount; ++i) {
+            final XBulkState bs = new XBulkState(keeper, batchSize);
+            bs.setIndexMap(indexMap);
+            bs.setRejectionFlag(rejectionFlag);
+            freeQueue.add(bs);
+        }
+        final Thread master = Thread.currentThread();
+        final Thread reader = new Thread(() -> runStage(master, this::readLoop));
+        reader.setDaemon(true);
+        reader.setName("dsmask-reader");
+        final Thread writer = new Thread(() -> runStage(master, this::writeLoop));
+        writer.setDaemon(true);
+        writer.setName("dsmask-writer");
+        reader.start();
+        writer.start();
+        try {
+            maskLoop();
+        } catch(InterruptedException ix) {
+            // Interrupted by the failing reader or writer,
+            // the failure itself is already registered.
+            Thread.interrupted();
+        } catch(RuntimeException | Error ex) {
+            registerFailure(ex);
+        }
+        if (failure != null) {
+            reader.interrupt();
+            writer.interrupt();
+        }
+        join(reader);
+        join(writer);
+        final Throwable ex = failure;
+        if (ex != null) {
+            if (ex instanceof RuntimeException)
+                throw (RuntimeException) ex;
+            if (ex instanceof Error)
+                throw (Error) ex;
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private void maskLoop() throws InterruptedException {
+        while (true) {
+            final XBulkState bs = maskQueue.take();
+            // the writer clears the bulk state after writing,
+            //   so the end marker has to be detected before passing
+            final boolean last = bs.isEmpty();
+            if (! last)
+                bs.maskRows();
+            writeQueue.put(bs);
+            if (last)
+                break; // end marker passed to the writer
+        }
+    }
+
+    private void readLoop() throws InterruptedException {
+        while (true) {
+            final XBulkState bs = freeQueue.take();
+            final boolean hasRows = bs.readInputs(input);
+            maskQueue.put(bs);
+            if (! hasRows)
+                break; // empty bulk state is the end marker
+        }
+    }
+
+    private void writeLoop() throws InterruptedException {
+        while (true) {
+            final XBulkState bs = writeQueue.take();
+            if (bs.isEmpty())
+                break; // end marker
+            bs.prepareOutputs(output);
+            bs.writeRows(output);
+            bs.clear();
+            freeQueue.put(bs);
+        }
+    }
+
+    private void runStage(Thread master, Stage stage) {
+        try {
+            stage.run();
+        } catch(InterruptedException ix) {
+            // Pipeline is being stopped due to a failure elsewhere.
+        } catch(Throwable ex) {
+            registerFailure(ex);
+            master.interrupt();
+        }
+    }
+
+    private synchronized void registerFailure(Throwable ex) {
+        if (failure == null)
+            failure = ex;
+    }
+
+    private static void join(Thread t) {
+        while (t.isAlive()) {
+            try {
+                t.join();
+            } catch(InterruptedException ix) {
+                // The stages interrupt the master thread on failure,
+                // which is already registered at this point.
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private static interface Stage {
+        void run() throws InterruptedException;
+    }
+
+}
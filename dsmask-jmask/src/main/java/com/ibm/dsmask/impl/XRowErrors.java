@@ -36,6 +36,10 @@ public class XRowErrors {
         messages.add(cs.toString());
     }
 
+    public void addAll(XRowErrors other) {
+        messages.addAll(other.messages);
+    }
+
     public void addOperText(MskOp op, String info) {
         final StringBuilder sb = new StringBuilder();
         sb.append("Row in table [").append(op.getTable().getTableInfo())
@@ -28,12 +28,26 @@ public class XRowState {
     private final XRowErrors errors;
 
     public XRowState(MskTable table, XBulkState bulkState) {
+        this(table, bulkState, null, 0);
+    }
+
+    /**
+     * Row state keeping its data in the column blocks of the batch.
+     * @param table Masking table
+     * @param bulkState Owning bulk state
+     * @param data Column data for each operation of the table,
+     *      or null to allocate the data for the single row
+     * @param row Row position in the batch
+     */
+    public XRowState(MskTable table, XBulkState bulkState,
+            XOperColumns[] data, int row) {
         this.bulkState = bulkState;
         this.opers = new XOperState[table.getOperations().size()];
         this.errors = new XRowErrors();
         int pos = 0;
         for (MskOp op : table.getOperations()) {
-            this.opers[pos] = new XOperState(op, this);
+            this.opers[pos] = (data==null) ? new XOperState(op, this)
+                    : new XOperState(op, this, data[pos], row);
             ++pos;
         }
     }
@@ -78,7 +92,7 @@ public class XRowState {
      * Extract necessary values from input record for masking operations.
      * Also builds output row, which is stored inside and used as the target.
      * @param input Input record
-     * @param output The corresponding output row
+     * @param output The corresponding output row, or null if it is set later
      */
     public void readRow(XRowInput input, XRowOutput output) {
         this.input = input;
@@ -87,6 +101,14 @@ public class XRowState {
             oper.readRow(input);
     }
 
+    /**
+     * Set the output row, when it was not available at read time.
+     * @param output The output row
+     */
+    public void setOutputRecord(XRowOutput output) {
+        this.output = output;
+    }
+
     /**
      * Put masked values to the output row.
      * @return Masked output row, to be written to the output link.
@@ -29,6 +29,27 @@ public class XServices implements AutoCloseable {
 
     private UniqProviderFactory uniqProviderFactory = null;
     private UniqProvider uniqProvider = null;
+    // max number of confirmed links cached, 0 to disable
+    private int uniqCacheSize = DEFAULT_UNIQ_CACHE;
+    private XUniqCache uniqCache = null;
+    // latency metrics, shared with the instances created by newInstance()
+    private XMetrics metrics = null;
+
+    public static final int DEFAULT_UNIQ_CACHE = 65536;
+
+    /**
+     * Create a new services instance with the same configuration.
+     * The new instance has its own script runners, ODPP instance
+     * and uniq-check provider, so it can be used by another thread.
+     * @return New services instance
+     */
+    public XServices newInstance() {
+        final XServices xs = new XServices();
+        xs.setUniqProviderFactory(uniqProviderFactory);
+        xs.setUniqCacheSize(uniqCacheSize);
+        xs.setMetrics(metrics);
+        return xs;
+    }
 
     public GroovyRunner getGroovyRunner() {
         if (groovyRunner==null)
@@ -53,6 +74,17 @@ public class XServices implements AutoCloseable {
             groovyRunner.setCurrentIteration(0);
     }
 
+    /**
+     * @return Latency metrics, or null if not collected
+     */
+    public XMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(XMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     public UniqProviderFactory getUniqProviderFactory() {
         return uniqProviderFactory;
     }
@@ -76,6 +108,32 @@ public class XServices implements AutoCloseable {
         return uniqProvider;
     }
 
+    public int getUniqCacheSize() {
+        return uniqCacheSize;
+    }
+
+    public void setUniqCacheSize(int uniqCacheSize) {
+        this.uniqCacheSize = uniqCacheSize;
+        this.uniqCache = null;
+    }
+
+    /**
+     * Initialize and return the cache of confirmed uniq-check links.
+     * @return Cache instance, or null if the cache is disabled
+     */
+    public XUniqCache getUniqCache() {
+        if (uniqCache==null && uniqCacheSize > 0)
+            uniqCache = new XUniqCache(uniqCacheSize);
+        return uniqCache;
+    }
+
+    /**
+     * @return Cache instance, or null if it was not used
+     */
+    public XUniqCache peekUniqCache() {
+        return uniqCache;
+    }
+
     @Override
     public void close() {
         if (odpp!=null) {
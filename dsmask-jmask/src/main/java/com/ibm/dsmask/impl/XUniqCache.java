@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.impl;
+
+import com.ibm.dsmask.ops.StatsDumper;
+
+/**
+ * Client-side cache of the source to target links
+ * already confirmed by the uniq-check service.
+ *
+ * The cache is keyed by the digest of the provider name and the source
+ * value, and contains the winning iteration number together with
+ * the digest of the confirmed target value.
+ * The cached link is only used when the target value computed
+ * at the cached iteration has the same digest.
+ *
+ * Bounded 4-way set-associative table with CLOCK replacement
+ * within each set, over primitive arrays.
+ * Not thread safe, each masking thread has its own instance.
+ * @author zinal
+ */
+public class XUniqCache implements StatsDumper {
+
+    public static final int WAYS = 4;
+
+    private final long[] keys;
+    private final long[] targets;
+    private final int[] iterations;
+    private final boolean[] referenced;
+    // CLOCK hand position in each set
+    private final byte[] hands;
+    private final int setMask;
+
+    private long numHits = 0L;
+    private long numMisses = 0L;
+    private long numStores = 0L;
+
+    /**
+     * @param capacity Max number of cached links
+     */
+    public XUniqCache(int capacity) {
+        int sets = 1;
+        while (sets * WAYS < capacity && sets < (1 << 24))
+            sets <<= 1;
+        this.setMask = sets - 1;
+        this.keys = new long[sets * WAYS];
+        this.targets = new long[sets * WAYS];
+        this.iterations = new int[sets * WAYS];
+        this.referenced = new boolean[sets * WAYS];
+        this.hands = new byte[sets];
+    }
+
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    public long getHits() {
+        return numHits;
+    }
+
+    public long getMisses() {
+        return numMisses;
+    }
+
+    /**
+     * Find the cached link.
+     * @param key Link key, see makeKey()
+     * @return Entry position, or -1 if not found
+     */
+    public int lookup(long key) {
+        final int base = (((int) (key ^ (key >>> 32))) & setMask) * WAYS;
+        for (int i = base; i < base + WAYS; ++i) {
+            if (keys[i] == key && key != 0L) {
+                referenced[i] = true;
+                ++numHits;
+                return i;
+            }
+        }
+        ++numMisses;
+        return -1;
+    }
+
+    /**
+     * @param entry Entry position returned by lookup()
+     * @return Confirmed iteration number
+     */
+    public int getIteration(int entry) {
+        return iterations[entry];
+    }
+
+    /**
+     * @param entry Entry position returned by lookup()
+     * @return Digest of the confirmed target value
+     */
+    public long getTarget(int entry) {
+        return targets[entry];
+    }
+
+    /**
+     * Remember the confirmed link.
+     * @param key Link key, see makeKey()
+     * @param iteration Confirmed iteration number
+     * @param target Digest of the confirmed target value
+     */
+    public void store(long key, int iteration, long target) {
+        if (key == 0L)
+            return;
+        final int set = ((int) (key ^ (key >>> 32))) & setMask;
+        final int base = set * WAYS;
+        int pos = -1;
+        for (int i = base; i < base + WAYS; ++i) {
+            if (keys[i] == key || keys[i] == 0L) {
+                pos = i;
+                break;
+            }
+        }
+        if (pos < 0) {
+            // CLOCK: evict the first entry not referenced since the last pass
+            int hand = hands[set];
+            while (referenced[base + hand]) {
+                referenced[base + hand] = false;
+                hand = (hand + 1) % WAYS;
+            }
+            pos = base + hand;
+            hands[set] = (byte) ((hand + 1) % WAYS);
+        }
+        keys[pos] = key;
+        targets[pos] = target;
+        iterations[pos] = iteration;
+        referenced[pos] = true;
+        ++numStores;
+    }
+
+    /**
+     * Compute the key for the link.
+     * @param provider Uniq-check provider (repository) name
+     * @param source Packed source value
+     * @return Link key
+     */
+    public static long makeKey(String provider, String source) {
+        long h = digest(0xcbf29ce484222325L, provider);
+        h = digest(h ^ 0x1fL, source);
+        return mix(h);
+    }
+
+    /**
+     * Compute the digest of the target value.
+     * @param target Packed target value
+     * @return Target digest
+     */
+    public static long makeTarget(String target) {
+        return mix(digest(0x84222325cbf29ce4L, target));
+    }
+
+    private static long digest(long h, String value) {
+        if (value==null)
+            return h;
+        // 64-bit FNV-1a over UTF-16 chars
+        final int len = value.length();
+        for (int i = 0; i < len; ++i) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static long mix(long h) {
+        // final avalanche step from MurmurHash3
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= (h >>> 33);
+        return h;
+    }
+
+    @Override
+    public void dumpStats(StringBuilder sb) {
+        sb.append("Uniq-check cache: capacity ").append(getCapacity())
+                .append(", hits ").append(numHits)
+                .append(", misses ").append(numMisses)
+                .append(", stores ").append(numStores)
+                .append("\n");
+    }
+
+}
@@ -17,6 +17,7 @@ import java.util.Set;
 import com.ibm.dsmask.beans.*;
 import com.ibm.dsmask.ops.AlSimpleVector;
 import com.ibm.dsmask.ops.AlgoExecException;
+import com.ibm.dsmask.uniq.UniqProvider;
 import com.ibm.dsmask.uniq.UniqRequest;
 import com.ibm.dsmask.uniq.UniqResponse;
 
@@ -27,8 +28,13 @@ import com.ibm.dsmask.uniq.UniqResponse;
  */
 public class XWorkspace {
 
+    // response for the links confirmed by the client-side cache
+    private static final UniqResponse CACHED = new UniqResponse(true);
+
     public final XKeeper keeper;
     public final XServices services;
+    // latency metrics, null if not collected
+    public final XMetrics metrics;
 
     public int totalRows = 0;
     public MskOp operation = null;
@@ -40,11 +46,22 @@ public class XWorkspace {
     public final boolean[] predicates;
     public final XRowErrors[] errors;
 
+    // vectors re-used to pass the column data to the executors
+    final XVector[] inputBuffers;
+    final XVector[] outputBuffers;
+
     private final UR[] uniqRequest;
+    // time spent waiting for the uniq-check service, nanoseconds
+    private long remoteNanos = 0L;
+    // row computations with the iteration number in the current step
+    private long stepIterations = 0L;
+    // uniq-check service calls in the current step
+    private long stepRounds = 0L;
 
     public XWorkspace(XKeeper keeper, XRowState[] rows) {
         this.keeper = keeper;
         this.services = keeper.getServices();
+        this.metrics = services.getMetrics();
         this.inputs = new XVector[rows.length];
         this.outputs = new XVector[rows.length];
         this.predicates = new boolean[rows.length];
@@ -53,6 +70,8 @@ public class XWorkspace {
         for (int i=0; i<rows.length; ++i)
             this.errors[i] = rows[i].getErrors();
         this.uniqRequest = new UR[rows.length];
+        this.inputBuffers = new XVector[rows.length];
+        this.outputBuffers = new XVector[rows.length];
     }
 
     /**
@@ -101,6 +120,8 @@ public class XWorkspace {
         Arrays.fill(inputs, null);
         Arrays.fill(outputs, null);
         Arrays.fill(predicates, true);
+        stepIterations = 0L;
+        stepRounds = 0L;
         if (step!=null && step.getUniqCheck()!=null) {
             // prepare for uniq-check
             for (UR ur : uniqRequest) {
@@ -167,8 +188,11 @@ public class XWorkspace {
             return; // We have either the error, or the false predicate value.
         XVector output = outputs[index], input = inputs[index];
         boolean clearOutput = true;
+        ++stepIterations;
         // Grab the request, initialize it if needed.
         UR ur = makeRequest(index);
+        if (ur.getSource()==null)
+            prepareRequest(index, ur, true);
         // Execute the desired operation, passing the current iteration number
         try {
             output = expression.exec(input, output, ur.getIteration());
@@ -198,27 +222,120 @@ public class XWorkspace {
         return ur;
     }
 
+    /**
+     * Set the source value for the new request, and check
+     * the cache for the link confirmed earlier.
+     * On cache hit, the request starts from the confirmed iteration.
+     * @param index Row index
+     * @param ur Request
+     * @param useCache true to check the cache, false otherwise
+     */
+    private void prepareRequest(int index, UR ur, boolean useCache) {
+        ur.setSource(project(inputs, index,
+                step.getUniqCheck().getInputPositions()));
+        final XUniqCache cache = services.getUniqCache();
+        if (cache==null)
+            return;
+        ur.setCacheKey(XUniqCache.makeKey(
+                step.getUniqCheck().getProvider(), ur.getSource()));
+        if (!useCache)
+            return;
+        final int entry = cache.lookup(ur.getCacheKey());
+        if (entry >= 0) {
+            ur.setIteration(cache.getIteration(entry));
+            ur.setCachedTarget(cache.getTarget(entry));
+            ur.setCached(true);
+        }
+    }
+
     /**
      * Invoke the uniq-check service and process the results.
+     * Links confirmed by the client-side cache are not sent.
      * @param rowIndexes Indexes of rows to be processed
      */
     public void runUniqChecks(Set<Integer> rowIndexes) {
-        final int[] inputPos = step.getUniqCheck().getInputPositions();
         final int[] outputPos = step.getUniqCheck().getOutputPositions();
-        final UR[] requests = new UR[rowIndexes.size()];
+        UR[] requests = new UR[rowIndexes.size()];
         int position = 0;
         for (Integer rowNum : rowIndexes) {
             UR ur = makeRequest(rowNum);
             // update source only when needed
             if (ur.getSource()==null)
-                ur.setSource(project(inputs, rowNum, inputPos));
+                prepareRequest(rowNum, ur, false);
             // always update target
             ur.setTarget(project(outputs, rowNum, outputPos));
+            if (ur.isCached()) {
+                ur.setCached(false);
+                if (XUniqCache.makeTarget(ur.getTarget()) == ur.getCachedTarget()) {
+                    // confirmed earlier, no need to ask again
+                    ur.setResponse(CACHED);
+                } else {
+                    // the cached link is not usable, start from scratch
+                    ur.setIteration(0);
+                    ur.setResponse(null);
+                }
+                continue;
+            }
             requests[position++] = ur;
         }
+        if (position==0)
+            return;
+        if (position < requests.length)
+            requests = Arrays.copyOf(requests, position);
         String provider = step.getUniqCheck().getProvider();
         // Invoke the service
-        final UniqResponse[] responses = services.getUniqProvider().store(provider, requests);
+        final UniqProvider service = services.getUniqProvider();
+        ++stepRounds;
+        final long tvStart = System.nanoTime();
+        try {
+            storeRequests(service, provider, requests);
+        } finally {
+            remoteNanos += System.nanoTime() - tvStart;
+        }
+    }
+
+    /**
+     * @return Total time spent waiting for the uniq-check service, nanoseconds
+     */
+    public long getRemoteNanos() {
+        return remoteNanos;
+    }
+
+    /**
+     * @return Row computations with the iteration number in the current step
+     */
+    public long getStepIterations() {
+        return stepIterations;
+    }
+
+    /**
+     * @return Uniq-check service calls in the current step
+     */
+    public long getStepRounds() {
+        return stepRounds;
+    }
+
+    /**
+     * @return Number of rows in the batch having errors
+     */
+    public int countErrors() {
+        int count = 0;
+        for (int i=0; i<totalRows; ++i) {
+            if (errors[i].hasError())
+                ++count;
+        }
+        return count;
+    }
+
+    /**
+     * Send all the requests of the round in a single call.
+     * The requests are not split into concurrent chunks, because the server
+     * would process them in parallel, and the winner of the conflicting
+     * requests would depend on the timing instead of the row order.
+     */
+    private static void storeRequests(UniqProvider service, String provider,
+            UR[] requests) {
+        final UniqResponse[] responses = service.store(provider, requests);
         // Collect the responses
         for (int pos=0; pos<responses.length; ++pos) {
             requests[pos] . setResponse(responses[pos]);
@@ -254,6 +371,11 @@ public class XWorkspace {
         }
         if (response.isLinkedCorrectly()) {
             // uniq-check service has confirmed the operation
+            final XUniqCache cache = services.getUniqCache();
+            if (cache!=null && response!=CACHED && ur.getCacheKey()!=0L) {
+                cache.store(ur.getCacheKey(), ur.getIteration(),
+                        XUniqCache.makeTarget(ur.getTarget()));
+            }
             return  true;
         }
         // update the conflict value, if one was not set
@@ -290,11 +412,44 @@ public class XWorkspace {
     private static class UR extends UniqRequest {
         private UniqResponse response;
         private boolean hintFailed;
+        // client-side cache key, 0 if not computed
+        private long cacheKey;
+        // true, if the cached link should be checked
+        private boolean cached;
+        // target digest of the cached link
+        private long cachedTarget;
 
         public UR() {
             super();
             this.response = null;
             this.hintFailed = false;
+            this.cacheKey = 0L;
+            this.cached = false;
+            this.cachedTarget = 0L;
+        }
+
+        public long getCacheKey() {
+            return cacheKey;
+        }
+
+        public void setCacheKey(long cacheKey) {
+            this.cacheKey = cacheKey;
+        }
+
+        public boolean isCached() {
+            return cached;
+        }
+
+        public void setCached(boolean cached) {
+            this.cached = cached;
+        }
+
+        public long getCachedTarget() {
+            return cachedTarget;
+        }
+
+        public void setCachedTarget(long cachedTarget) {
+            this.cachedTarget = cachedTarget;
         }
 
         public UniqResponse getResponse() {
@@ -327,6 +482,9 @@ public class XWorkspace {
         public void clear() {
             this.response = null;
             this.hintFailed = false;
+            this.cacheKey = 0L;
+            this.cached = false;
+            this.cachedTarget = 0L;
             super.clear();
         }
 
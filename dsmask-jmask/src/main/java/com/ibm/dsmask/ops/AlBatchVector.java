@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.ops;
+
+import com.ibm.dsmask.impl.XWorkspace;
+
+/**
+ * Optional interface of vector algorithms which can process
+ * the whole column of the workspace in a single call.
+ * Used by AlDefaultBatch for normal (non-iterative) execution.
+ * @author zinal
+ */
+public interface AlBatchVector extends AlSimpleVector {
+
+    /**
+     * Compute the output vectors for all rows of the workspace
+     * which need processing, according to the predicates and errors.
+     * @param ws Computational workspace
+     */
+    void execBatch(XWorkspace ws);
+
+}
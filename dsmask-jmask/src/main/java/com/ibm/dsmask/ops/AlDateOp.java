@@ -19,9 +19,10 @@ import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
 import com.ibm.dsmask.impl.*;
 import com.ibm.dsmask.beans.MskFunc;
-import com.ibm.dsmask.algo.PureJavaCrc32;
+import com.ibm.dsmask.algo.HashSupport;
 
 /**
  * Date hash-based consistent masking.
@@ -103,11 +104,12 @@ public class AlDateOp implements AlSimpleValue {
         if (userKeyBytes==null) {
             userKeyBytes = userKey.getBytes(StandardCharsets.UTF_8);
         }
-        final PureJavaCrc32 crc = new PureJavaCrc32();
-        crc.update(dateFormat.format(v).getBytes(StandardCharsets.UTF_8));
+        final HashSupport hs = HashSupport.current();
+        final CRC32 crc = hs.newCrc();
+        hs.update(crc, dateFormat.format(v));
         crc.update(userKeyBytes);
         if (substep > 0) {
-            crc.update(Integer.toHexString(substep).getBytes(StandardCharsets.UTF_8));
+            hs.updateHex(crc, substep);
         }
         long crcval = crc.getValue();
         if (crcval < 0) crcval = -1L * crcval;
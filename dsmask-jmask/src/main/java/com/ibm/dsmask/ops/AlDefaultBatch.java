@@ -44,6 +44,10 @@ public class AlDefaultBatch implements XExecutor, StatsDumper {
      */
     @Override
     public void exec(XWorkspace ws) {
+        if (simple instanceof AlBatchVector) {
+            ((AlBatchVector) simple).execBatch(ws);
+            return;
+        }
         for (int i=0; i<ws.totalRows; ++i) {
             ws.computeNormal(i, simple);
         }
@@ -36,9 +36,11 @@ public class AlFPE implements AlSimpleValue {
         int skipBefore = Utils.getConfigInt(conf, "skip-before", 0);
         int skipAfter = Utils.getConfigInt(conf, "skip-after", 0);
         boolean allowSame = Utils.getConfigBool(conf, "allow-same", false);
+        // compatibility mode keeps the outputs of the older versions
+        boolean compat = Utils.getConfigBool(conf, "compat", true);
 
         this.algo = new MaskFPE(charClassSet, userKey,
-                skipBefore, skipAfter, allowSame);
+                skipBefore, skipAfter, allowSame, compat);
     }
 
     @Override
@@ -12,24 +12,66 @@
  */
 package com.ibm.dsmask.ops;
 
-import groovy.lang.Script;
 import com.ibm.dsmask.impl.*;
 import com.ibm.dsmask.beans.MskFunc;
 
 /**
  * Execute Groovy scripts as data masking transformations.
+ *
+ * Scripts defining invokeBatch(Object[][]) get the inputs
+ * of all rows of the batch in a single call, otherwise invoke()
+ * is called for each row.
  * @author zinal
  */
-public class AlGroovyScript implements AlSimpleVector {
+public class AlGroovyScript implements AlBatchVector {
 
     private final GroovyRunner groovyRunner;
     private final boolean iterable;
-    private final Script script;
+    private final GroovyInvoker invoker;
 
     public AlGroovyScript(GroovyRunner groovyRunner, MskFunc function) {
         this.groovyRunner = groovyRunner;
         this.iterable = function.isIterable();
-        this.script = groovyRunner.compileInput(function.getText());
+        this.invoker = groovyRunner.makeInvoker(function.getText(),
+                function.getCode());
+    }
+
+    public GroovyInvoker getInvoker() {
+        return invoker;
+    }
+
+    @Override
+    public void execBatch(XWorkspace ws) {
+        if (!invoker.hasBatch()) {
+            for (int i=0; i<ws.totalRows; ++i)
+                ws.computeNormal(i, this);
+            return;
+        }
+        final int[] rows = new int[ws.totalRows];
+        int count = 0;
+        for (int i=0; i<ws.totalRows; ++i) {
+            if (ws.needProcessRow(i))
+                rows[count++] = i;
+        }
+        if (count==0)
+            return;
+        final Object[][] input = new Object[count][];
+        for (int i=0; i<count; ++i)
+            input[i] = ws.inputs[rows[i]].values;
+        groovyRunner.setCurrentIteration(0);
+        final Object[] result;
+        try {
+            result = invoker.invokeBatch(input);
+        } catch(AlgoExecException ex) {
+            // per-row calls to attribute the error to the specific rows
+            for (int i=0; i<count; ++i)
+                ws.computeNormal(rows[i], this);
+            return;
+        }
+        for (int i=0; i<count; ++i) {
+            final int pos = rows[i];
+            ws.outputs[pos] = pack(result[i], ws.outputs[pos]);
+        }
     }
 
     @Override
@@ -39,7 +81,11 @@ public class AlGroovyScript implements AlSimpleVector {
         // Invoke script
         final Object retval;
         // invoking the script with the current arguments
-        retval = script.invokeMethod(GroovyRunner.INVOKE_NAME, in.values);
+        retval = invoker.invoke(in.values);
+        return pack(retval, out);
+    }
+
+    private static XVector pack(Object retval, XVector out) {
         // pack the output according to its structure
         if (retval==null) {
             // null is null
@@ -20,10 +20,13 @@ import org.apache.commons.collections.map.LRUMap;
 import com.ibm.dsmask.impl.*;
 import com.ibm.dsmask.beans.MskFunc;
 import com.ibm.dsmask.algo.BasicHasher;
+import com.ibm.dsmask.util.CompiledDict;
 
 /**
  * Find substitution values in a hash table.
  * Hash is computed as a CRC-32 value over inputs (or subset of inputs).
+ * When the compiled dictionary file exists for the dictionary table,
+ * the values are read from the memory-mapped file instead of the database.
  * @author zinal
  */
 public class AlHashLookup implements AlSimpleVector {
@@ -36,7 +39,12 @@ public class AlHashLookup implements AlSimpleVector {
     private final String[] outFields;
     private final String userKey;
     private final int[] indexes;
+    // true, if the compiled dictionary should be used when available
+    private final boolean useCompiled;
 
+    private boolean opened = false;
+    private CompiledDict dict = null;
+    private int[] dictColumns = null;
     private Connection connection = null;
     private PreparedStatement findStmt = null;
     private long maxHash = -1;
@@ -69,6 +77,7 @@ public class AlHashLookup implements AlSimpleVector {
         } else {
             this.indexes = null;
         }
+        this.useCompiled = Utils.getConfigBool(ops, "compiled", true);
     }
 
     @Override
@@ -90,21 +99,24 @@ public class AlHashLookup implements AlSimpleVector {
             return out;
         }
 
-        // We need the SELECT statement
-        if (findStmt==null)
-            try {
-                connection = keeper.openDictionary(dbName, userName);
-                maxHash = queryHashSize();
-                findStmt = connection.prepareStatement(buildSql());
-                keeper.registerStatement(findStmt);
-            } catch(Exception ex) {
-                // Statements and connections are closed by the Keeper
-                throw new AlgoInitException("Failed to open hash dictionary "
-                        + dbName + "." + tableName, ex);
+        // We need either the compiled dictionary, or the SELECT statement
+        if (!opened)
+            open();
+
+        final long hashVal = calcHash(in, iteration);
+        if (dict!=null) {
+            // Read directly from the mapped file, no need for the cache
+            out = XVector.make(out, outFields.length);
+            if (!dict.read(hashVal, dictColumns, out.values)) {
+                throw new AlgoExecException("Missing value for "
+                        + "key=" + String.valueOf(hashVal)
+                        + ", total=" + String.valueOf(maxHash)
+                );
             }
+            return out;
+        }
 
         // Try to grab the value from the cache
-        final long hashVal = calcHash(in, iteration);
         { // Perform cache lookup
             XVector val = (XVector) valueCache.get(hashVal);
             if (val!=null) {
@@ -138,6 +150,40 @@ public class AlHashLookup implements AlSimpleVector {
         return out;
     }
 
+    private void open() {
+        if (useCompiled) {
+            final CompiledDict cd = keeper.openCompiledDict(dbName, tableName);
+            if (cd!=null && idField.equalsIgnoreCase(cd.getIdColumn())) {
+                final int[] positions = new int[outFields.length];
+                boolean complete = true;
+                for (int i=0; i<outFields.length; ++i) {
+                    positions[i] = cd.findColumn(outFields[i]);
+                    if (positions[i] < 0)
+                        complete = false;
+                }
+                if (complete) {
+                    // The dictionary covers all the output fields
+                    dict = cd;
+                    dictColumns = positions;
+                    maxHash = cd.getRowCount();
+                    opened = true;
+                    return;
+                }
+            }
+        }
+        try {
+            connection = keeper.openDictionary(dbName, userName);
+            maxHash = queryHashSize();
+            findStmt = connection.prepareStatement(buildSql());
+            keeper.registerStatement(findStmt);
+        } catch(Exception ex) {
+            // Statements and connections are closed by the Keeper
+            throw new AlgoInitException("Failed to open hash dictionary "
+                    + dbName + "." + tableName, ex);
+        }
+        opened = true;
+    }
+
     /**
      * Get the hash size from the database
      * @return Max id field + 1
@@ -12,18 +12,43 @@
  */
 package com.ibm.dsmask.ops;
 
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import org.apache.commons.collections.map.LRUMap;
 import com.ibm.dsmask.beans.MskFunc;
 import com.ibm.dsmask.impl.*;
 
 /**
+ * Lookup of the output values in the dictionary table by the key columns.
  *
+ * In the batch mode the distinct keys of the whole batch are resolved
+ * with the chunked IN-list queries (OR-ed conditions for multi-column keys),
+ * and the results are distributed back to the rows.
+ * The last chunk of the batch is padded with the repeated key,
+ * so that a single prepared statement serves all the chunks.
+ * The keys not matched in the chunk query are re-checked with the
+ * single-key query, so that the results stay the same as in the row mode
+ * even when the database compares the values differently than Java does
+ * (type conversions, CHAR padding, case-insensitive collations).
+ *
+ * Options: "chunk N" - max number of keys per query (default 100,
+ * 1 disables the batch mode), "cache N" - number of resolved keys
+ * to be kept between the batches (default 0, no cache),
+ * "recheck false" - trust the misses of the chunk query, for the
+ * dictionaries where the database and Java compare the keys
+ * the same way (default true).
  * @author zinal
  */
-public class AlKeyLookup implements AlSimpleVector {
+public class AlKeyLookup implements AlBatchVector {
+
+    public static final int DEFAULT_CHUNK = 100;
 
     private final XKeeper keeper;
     private final String dbName;
@@ -32,9 +57,14 @@ public class AlKeyLookup implements AlSimpleVector {
     private final String[] inFields;
     private final String[] outFields;
     private final int[] indexes;
+    private final int chunkSize;
+    private final boolean recheck;
+    // List of key values -> Object[] of output values, null array for a miss
+    private final LRUMap valueCache;
 
     private Connection connection = null;
     private PreparedStatement findStmt = null;
+    private PreparedStatement chunkStmt = null;
 
     public AlKeyLookup(XKeeper ctx, MskFunc func) {
         this.keeper = ctx;
@@ -59,64 +89,250 @@ public class AlKeyLookup implements AlSimpleVector {
                     + func.getName() + "] has bad indexes: "
                     + indexes.length + " vs " + inFields.length);
         }
+        this.chunkSize = Utils.getConfigInt(ops, "chunk", DEFAULT_CHUNK);
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Function ["
+                    + func.getName() + "] has bad chunk size: " + chunkSize);
+        }
+        this.recheck = Utils.getConfigBool(ops, "recheck", true);
+        final int cacheSize = Utils.getConfigInt(ops, "cache", 0);
+        this.valueCache = (cacheSize > 0) ? new LRUMap(cacheSize) : null;
     }
 
     @Override
     public XVector exec(XVector in, XVector out) {
+        checkInput(in);
+        out = XVector.make(out, outFields.length);
+        final Object[] key = extractKey(in);
+        if (key==null) {
+            for (int i=0; i<outFields.length; ++i)
+                out.values[i] = null;
+            return out;
+        }
+        final List<Object> cacheKey = (valueCache==null) ? null : Arrays.asList(key);
+        if (cacheKey!=null && valueCache.containsKey(cacheKey)) {
+            copyValues((Object[]) valueCache.get(cacheKey), out);
+            return out;
+        }
+        final Object[] values;
+        try {
+            values = findSingle(key);
+        } catch(Exception ex) {
+            throw new AlgoInitException("Error fetching from key dictionary "
+                    + dbName + "." + tableName, ex);
+        }
+        if (cacheKey!=null)
+            valueCache.put(cacheKey, values);
+        copyValues(values, out);
+        return out;
+    }
+
+    @Override
+    public void execBatch(XWorkspace ws) {
+        if (chunkSize < 2) {
+            for (int i=0; i<ws.totalRows; ++i)
+                ws.computeNormal(i, this);
+            return;
+        }
+        // Distinct keys of the batch -> output values
+        final Map<List<Object>, Object[]> found = new HashMap<>();
+        final List<List<Object>> pending = new ArrayList<>();
+        for (int i=0; i<ws.totalRows; ++i) {
+            if (!ws.needProcessRow(i))
+                continue;
+            final XVector in = ws.inputs[i];
+            checkInput(in);
+            final Object[] key = extractKey(in);
+            if (key==null)
+                continue;
+            final List<Object> k = Arrays.asList(key);
+            if (found.containsKey(k))
+                continue;
+            if (valueCache!=null && valueCache.containsKey(k)) {
+                found.put(k, (Object[]) valueCache.get(k));
+            } else {
+                found.put(k, null);
+                pending.add(k);
+            }
+        }
+        try {
+            for (int pos=0; pos<pending.size(); pos+=chunkSize) {
+                findChunk(pending.subList(pos,
+                        Math.min(pos + chunkSize, pending.size())), found);
+            }
+        } catch(Exception ex) {
+            throw new AlgoInitException("Error fetching from key dictionary "
+                    + dbName + "." + tableName, ex);
+        }
+        if (valueCache!=null) {
+            for (List<Object> k : pending)
+                valueCache.put(k, found.get(k));
+        }
+        for (int i=0; i<ws.totalRows; ++i) {
+            if (!ws.needProcessRow(i))
+                continue;
+            final XVector out = XVector.make(ws.outputs[i], outFields.length);
+            final Object[] key = extractKey(ws.inputs[i]);
+            copyValues((key==null) ? null : found.get(Arrays.asList(key)), out);
+            ws.outputs[i] = out;
+        }
+    }
+
+    private void checkInput(XVector in) {
         if (in.values.length < inFields.length) {
             throw new AlgoInitException("Short input: need "
                     + inFields.length + ", have only "
                     + in.values.length + " values");
         }
+    }
+
+    /**
+     * @param in Input values
+     * @return Key values, or null if any of them is null
+     */
+    private Object[] extractKey(XVector in) {
+        final Object[] key = new Object[inFields.length];
+        for (int i=0; i<inFields.length; ++i) {
+            final Object v = (indexes==null) ?
+                    in.values[i] : in.values[indexes[i]-1];
+            if (v==null)
+                return null;
+            key[i] = v;
+        }
+        return key;
+    }
+
+    private void copyValues(Object[] values, XVector out) {
+        for (int i=0; i<outFields.length; ++i)
+            out.values[i] = (values==null) ? null : values[i];
+    }
+
+    private void open() {
+        if (connection!=null)
+            return;
         try {
-            out = XVector.make(out, outFields.length);
-            boolean haveNull = false;
-            for (int i=0; i<inFields.length; ++i) {
-                if (in.values[i] == null)
-                    haveNull = true;
-            }
-            if (haveNull) {
+            connection = keeper.openDictionary(dbName, userName);
+        } catch(Exception ex) {
+            throw new AlgoInitException("Failed to open key dictionary "
+                    + dbName + "." + tableName, ex);
+        }
+    }
+
+    private PreparedStatement prepare(String sql) {
+        open();
+        try {
+            final PreparedStatement ps = connection.prepareStatement(sql);
+            keeper.registerStatement(ps);
+            return ps;
+        } catch(Exception ex) {
+            // Statements and connections are closed by the Keeper
+            throw new AlgoInitException("Failed to open key dictionary "
+                    + dbName + "." + tableName, ex);
+        }
+    }
+
+    /**
+     * Query the dictionary for a single key.
+     * @param key Key values
+     * @return Output values, or null if the key is missing
+     * @throws Exception
+     */
+    private Object[] findSingle(Object[] key) throws Exception {
+        if (findStmt==null)
+            findStmt = prepare(buildSql(1));
+        for (int i=0; i<key.length; ++i)
+            findStmt.setObject(i+1, key[i]);
+        try (ResultSet rs = findStmt.executeQuery()) {
+            if (rs.next()) {
+                final Object[] values = new Object[outFields.length];
                 for (int i=0; i<outFields.length; ++i)
-                    out.values[i] = null;
-            } else {
-                if (findStmt==null) {
-                    try {
-                        connection = keeper.openDictionary(dbName, userName);
-                        findStmt = connection.prepareStatement(buildSql());
-                        keeper.registerStatement(findStmt);
-                    } catch(Exception ex) {
-                        // Statements and connections are closed by the Keeper
-                        throw new AlgoInitException("Failed to open key dictionary "
-                                + dbName + "." + tableName, ex);
-                    }
-                }
-                if (indexes==null) {
-                    for (int i=0; i<inFields.length; ++i) {
-                        findStmt.setObject(i+1, in.values[i]);
-                    }
-                } else {
-                    for (int i=0; i<indexes.length; ++i) {
-                        findStmt.setObject(i+1, in.values[indexes[i]-1]);
-                    }
+                    values[i] = rs.getObject(i+1);
+                return values;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Query the dictionary for the chunk of keys.
+     * @param keys Keys to be resolved
+     * @param found Output values by keys, to be filled
+     * @throws Exception
+     */
+    private void findChunk(List<List<Object>> keys,
+            Map<List<Object>, Object[]> found) throws Exception {
+        if (chunkStmt==null)
+            chunkStmt = prepare(buildSql(chunkSize));
+        // Normalized key -> original keys
+        final Map<List<String>, List<List<Object>>> lookup = new HashMap<>();
+        int param = 0;
+        for (List<Object> k : keys) {
+            for (Object v : k)
+                chunkStmt.setObject(++param, v);
+            List<List<Object>> same = lookup.get(normalize(k));
+            if (same==null) {
+                same = new ArrayList<>(1);
+                lookup.put(normalize(k), same);
+            }
+            same.add(k);
+        }
+        // The short chunk is padded with the last key
+        final List<Object> last = keys.get(keys.size() - 1);
+        for (int pad=keys.size(); pad<chunkSize; ++pad) {
+            for (Object v : last)
+                chunkStmt.setObject(++param, v);
+        }
+        try (ResultSet rs = chunkStmt.executeQuery()) {
+            final List<Object> rowKey = new ArrayList<>(inFields.length);
+            while (rs.next()) {
+                rowKey.clear();
+                for (int i=0; i<inFields.length; ++i)
+                    rowKey.add(rs.getObject(outFields.length + i + 1));
+                final List<List<Object>> same = lookup.get(normalize(rowKey));
+                if (same==null)
+                    continue;
+                for (List<Object> k : same) {
+                    // The first row wins, same as in the single key query
+                    if (found.get(k)!=null)
+                        continue;
+                    final Object[] values = new Object[outFields.length];
+                    for (int i=0; i<outFields.length; ++i)
+                        values[i] = rs.getObject(i+1);
+                    found.put(k, values);
                 }
-                try (ResultSet rs = findStmt.executeQuery()) {
-                    if (rs.next()) {
-                        for (int i=0; i<outFields.length; ++i)
-                            out.values[i] = rs.getObject(i+1);
-                    } else {
-                        for (int i=0; i<outFields.length; ++i)
-                            out.values[i] = null;
-                    }
+            }
+        }
+        if (! recheck)
+            return;
+        // Re-check the keys which could not be matched
+        for (List<Object> k : keys) {
+            if (found.get(k)==null)
+                found.put(k, findSingle(k.toArray()));
+        }
+    }
+
+    private static List<String> normalize(List<Object> key) {
+        final List<String> retval = new ArrayList<>(key.size());
+        for (Object v : key) {
+            if (v instanceof Number) {
+                try {
+                    v = new BigDecimal(v.toString()).stripTrailingZeros()
+                            .toPlainString();
+                } catch(NumberFormatException nfe) {
+                    // NaN and infinity are kept as is
                 }
             }
-        } catch(Exception ex) {
-            throw new AlgoInitException("Error fetching from key dictionary "
-                    + dbName + "." + tableName, ex);
+            retval.add((v==null) ? null : v.toString());
         }
-        return out;
+        return retval;
     }
 
-    private String buildSql() {
+    /**
+     * Build the lookup query.
+     * @param count Number of keys in the query
+     * @return SQL text
+     */
+    private String buildSql(int count) {
         final StringBuilder sql = new StringBuilder();
         sql.append("SELECT ");
         boolean comma = false;
@@ -126,17 +342,40 @@ public class AlKeyLookup implements AlSimpleVector {
             sql.append(field);
             comma = true;
         }
+        if (count > 1) {
+            // Key columns are needed to match the rows to the keys
+            for (String field : inFields)
+                sql.append(", ").append(field);
+        }
         sql.append(" FROM ");
         sql.append(tableName);
         sql.append(" WHERE ");
-        boolean needsep = false;
-        for (String field : inFields) {
-            if (needsep)
-                sql.append(" AND ");
-            else
-                needsep = true;
-            sql.append(field);
-            sql.append("=?");
+        if (count > 1 && inFields.length==1) {
+            sql.append(inFields[0]).append(" IN (");
+            for (int k=0; k<count; ++k) {
+                if (k > 0)
+                    sql.append(",");
+                sql.append("?");
+            }
+            sql.append(")");
+            return sql.toString();
+        }
+        for (int k=0; k<count; ++k) {
+            if (k > 0)
+                sql.append(" OR ");
+            if (count > 1)
+                sql.append("(");
+            boolean needsep = false;
+            for (String field : inFields) {
+                if (needsep)
+                    sql.append(" AND ");
+                else
+                    needsep = true;
+                sql.append(field);
+                sql.append("=?");
+            }
+            if (count > 1)
+                sql.append(")");
         }
         return sql.toString();
     }
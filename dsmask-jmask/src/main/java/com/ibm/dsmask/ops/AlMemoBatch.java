@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.ops;
+
+import com.ibm.dsmask.impl.*;
+
+/**
+ * Memoization layer over a deterministic batch algorithm.
+ * The cached rows are served from the memo, and the rest of the batch
+ * is passed to the underlying batch entry point in a single call.
+ * @author zinal
+ */
+public class AlMemoBatch extends AlMemoVector implements AlBatchVector {
+
+    private final AlBatchVector batch;
+
+    public AlMemoBatch(AlBatchVector batch, String name, int capacity) {
+        super(batch, name, capacity);
+        this.batch = batch;
+    }
+
+    @Override
+    public void execBatch(XWorkspace ws) {
+        // rows served from the memo, hidden from the underlying algorithm
+        final boolean[] served = new boolean[ws.totalRows];
+        int misses = 0;
+        for (int i=0; i<ws.totalRows; ++i) {
+            if (!ws.needProcessRow(i))
+                continue;
+            final XVector in = ws.inputs[i];
+            final XVector val = (in==null) ? null : lookup(in, -1);
+            if (val==null) {
+                ++misses;
+                continue;
+            }
+            ws.outputs[i] = XVector.inPlaceCopy(ws.outputs[i], val);
+            ws.predicates[i] = false;
+            served[i] = true;
+        }
+        if (misses==0) {
+            restore(ws, served);
+            return;
+        }
+        try {
+            batch.execBatch(ws);
+        } finally {
+            restore(ws, served);
+        }
+        for (int i=0; i<ws.totalRows; ++i) {
+            if (!served[i] && ws.needProcessRow(i) && ws.inputs[i]!=null)
+                remember(ws.inputs[i], -1, ws.outputs[i]);
+        }
+    }
+
+    private static void restore(XWorkspace ws, boolean[] served) {
+        for (int i=0; i<served.length; ++i) {
+            if (served[i])
+                ws.predicates[i] = true;
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.ops;
+
+import java.util.Arrays;
+import org.apache.commons.collections.map.LRUMap;
+import com.ibm.dsmask.impl.*;
+
+/**
+ * Memoization layer over a deterministic vector algorithm.
+ * Keeps the recently computed outputs, keyed by the input values
+ * and the iteration number, so that the repeated values are not
+ * computed again for the whole run.
+ * @author zinal
+ */
+public class AlMemoVector implements AlSimpleVector, StatsDumper {
+
+    private final AlSimpleVector simple;
+    private final String name;
+    private final Cache cache;
+
+    private long numHits = 0L;
+    private long numMisses = 0L;
+
+    public AlMemoVector(AlSimpleVector simple, String name, int capacity) {
+        if (simple==null || capacity < 1)
+            throw new IllegalArgumentException();
+        this.simple = simple;
+        this.name = name;
+        this.cache = new Cache(capacity);
+    }
+
+    public AlSimpleVector getSimple() {
+        return simple;
+    }
+
+    public int getCapacity() {
+        return cache.maxSize();
+    }
+
+    public long getHits() {
+        return numHits;
+    }
+
+    public long getMisses() {
+        return numMisses;
+    }
+
+    public long getEvictions() {
+        return cache.numEvictions;
+    }
+
+    @Override
+    public boolean isIterationsSupported() {
+        return simple.isIterationsSupported();
+    }
+
+    @Override
+    public XVector exec(XVector in, XVector out) {
+        if (in==null)
+            return simple.exec(in, out);
+        final XVector val = lookup(in, -1);
+        if (val!=null)
+            return XVector.inPlaceCopy(out, val);
+        out = simple.exec(in, out);
+        remember(in, -1, out);
+        return out;
+    }
+
+    @Override
+    public XVector exec(XVector in, XVector out, int iteration) {
+        if (in==null)
+            return simple.exec(in, out, iteration);
+        final XVector val = lookup(in, iteration);
+        if (val!=null)
+            return XVector.inPlaceCopy(out, val);
+        out = simple.exec(in, out, iteration);
+        remember(in, iteration, out);
+        return out;
+    }
+
+    /**
+     * Grab the cached output, counting the hit or the miss.
+     * @param in Input values
+     * @param iteration Iteration number, -1 for non-iterative calls
+     * @return Cached output, or null on the miss
+     */
+    protected XVector lookup(XVector in, int iteration) {
+        final XVector val = (XVector) cache.get(new Key(in.values, iteration));
+        if (val==null)
+            ++numMisses;
+        else
+            ++numHits;
+        return val;
+    }
+
+    /**
+     * Put the computed output to the cache.
+     * @param in Input values
+     * @param iteration Iteration number, -1 for non-iterative calls
+     * @param out Output values, not cached if null
+     */
+    protected void remember(XVector in, int iteration, XVector out) {
+        if (out!=null)
+            cache.put(new Key(in.values, iteration), new XVector(out));
+    }
+
+    @Override
+    public void dumpStats(StringBuilder sb) {
+        sb.append("Memo cache [").append(name).append("]: capacity ")
+                .append(getCapacity())
+                .append(", hits ").append(numHits)
+                .append(", misses ").append(numMisses)
+                .append(", evictions ").append(cache.numEvictions)
+                .append("\n");
+        if (simple instanceof StatsDumper)
+            ((StatsDumper)simple).dumpStats(sb);
+    }
+
+    /**
+     * Input values plus iteration number (-1 for non-iterative calls).
+     */
+    private static final class Key {
+        private final Object[] values;
+        private final int iteration;
+        private final int hash;
+
+        Key(Object[] values, int iteration) {
+            this.values = values.clone();
+            this.iteration = iteration;
+            this.hash = 31 * Arrays.deepHashCode(this.values) + iteration;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            final Key other = (Key) obj;
+            return hash == other.hash
+                    && iteration == other.iteration
+                    && Arrays.deepEquals(values, other.values);
+        }
+    }
+
+    /**
+     * LRU map counting the evicted entries.
+     */
+    private static final class Cache extends LRUMap {
+        private static final long serialVersionUID = 1L;
+
+        private long numEvictions = 0L;
+
+        Cache(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        protected boolean removeLRU(LinkEntry entry) {
+            ++numEvictions;
+            return true;
+        }
+    }
+
+}
@@ -22,7 +22,7 @@ import com.ibm.dsmask.algo.BasicHasher;
  * Can be used in more complex repeatable hashing algorithms.
  * @author zinal
  */
-public class AlNumberHash implements AlSimpleVector {
+public class AlNumberHash implements AlBatchVector {
 
     private final String userKey;
     private final long minVal;
@@ -30,6 +30,10 @@ public class AlNumberHash implements AlSimpleVector {
     private final long range;
 
     private BasicHasher hasher = null;
+    // reusable buffers for batch execution
+    private Object[][] batchInput = null;
+    private int[] batchRows = null;
+    private long[] batchOutput = null;
 
     public AlNumberHash(XKeeper ctx, MskFunc function) {
         String config = function.getText();
@@ -61,6 +65,39 @@ public class AlNumberHash implements AlSimpleVector {
         return out;
     }
 
+    @Override
+    public void execBatch(XWorkspace ws) {
+        if (hasher==null)
+            hasher = new BasicHasher(userKey);
+        if (batchInput==null || batchInput.length < ws.totalRows) {
+            batchInput = new Object[ws.totalRows][];
+            batchRows = new int[ws.totalRows];
+            batchOutput = new long[ws.totalRows];
+        }
+        int count = 0;
+        for (int i=0; i<ws.totalRows; ++i) {
+            if (!ws.needProcessRow(i))
+                continue;
+            final XVector in = ws.inputs[i];
+            if (in.values.length==0) {
+                // no output, same as in exec()
+                ws.outputs[i] = new XVector(0);
+                continue;
+            }
+            batchInput[count] = in.values;
+            batchRows[count] = i;
+            ++count;
+        }
+        hasher.calcHash(batchInput, count, 0, batchOutput);
+        for (int pos=0; pos<count; ++pos) {
+            final int i = batchRows[pos];
+            final XVector out = XVector.make(ws.outputs[i], 1);
+            out.values[0] = minVal + ( batchOutput[pos] % range );
+            ws.outputs[i] = out;
+            batchInput[pos] = null;
+        }
+    }
+
     @Override
     public XVector exec(XVector in, XVector out) {
         return exec(in, out, 0);
@@ -12,34 +12,44 @@
  */
 package com.ibm.dsmask.ops;
 
-import groovy.lang.Script;
 import com.ibm.dsmask.impl.*;
 import com.ibm.dsmask.beans.*;
 
 /**
  * Execute a Groovy function as a predicate expression.
+ * Predicates defining invokeBatch(Object[][]) are computed
+ * for all rows of the batch in a single call.
  *
  * @author zinal
  */
 public class AlPredicateGroovy implements XExecutor {
 
     private final MskStep step;
-    private final Script script;
+    private final GroovyInvoker invoker;
 
     public AlPredicateGroovy(GroovyRunner groovyRunner, MskStep step) {
         if (!step.hasPredicate()) {
             throw new IllegalArgumentException(step.toString());
         }
         this.step = step;
-        this.script = groovyRunner.compileInput(step.getPredicateText());
+        this.invoker = groovyRunner.makeInvoker(step.getPredicateText(),
+                step.getPredicateCode());
     }
 
     public MskStep getStep() {
         return step;
     }
 
+    public GroovyInvoker getInvoker() {
+        return invoker;
+    }
+
     @Override
     public void exec(XWorkspace ws) {
+        if (invoker.hasBatch()) {
+            execBatch(ws);
+            return;
+        }
         for (int i = 0; i < ws.totalRows; ++i) {
             if (ws.errors[i].hasError()) {
                 ws.predicates[i] = false;
@@ -47,15 +57,35 @@ public class AlPredicateGroovy implements XExecutor {
             }
             final Object[] inputs = ws.inputs[i].values;
             // Invoke script
-            final Object retval = script.invokeMethod(GroovyRunner.INVOKE_NAME, inputs);
-            if (retval == null) {
-                ws.predicates[i] = false;
-            } else if (retval instanceof Boolean) {
-                ws.predicates[i] = (Boolean) retval;
-            } else {
-                ws.predicates[i] = Utils.toBoolean(retval.toString());
-            }
+            ws.predicates[i] = toPredicate(invoker.invoke(inputs));
         }
     }
 
+    private void execBatch(XWorkspace ws) {
+        final int[] rows = new int[ws.totalRows];
+        int count = 0;
+        for (int i = 0; i < ws.totalRows; ++i) {
+            if (ws.errors[i].hasError())
+                ws.predicates[i] = false; // skip rows with errors
+            else
+                rows[count++] = i;
+        }
+        if (count == 0)
+            return;
+        final Object[][] inputs = new Object[count][];
+        for (int i = 0; i < count; ++i)
+            inputs[i] = ws.inputs[rows[i]].values;
+        final Object[] retval = invoker.invokeBatch(inputs);
+        for (int i = 0; i < count; ++i)
+            ws.predicates[rows[i]] = toPredicate(retval[i]);
+    }
+
+    private static boolean toPredicate(Object retval) {
+        if (retval == null)
+            return false;
+        if (retval instanceof Boolean)
+            return (Boolean) retval;
+        return Utils.toBoolean(retval.toString());
+    }
+
 }
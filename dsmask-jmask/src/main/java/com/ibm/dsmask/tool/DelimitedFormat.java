@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.tool;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Delimited text with the header line, CSV-style quoting.
+ * Empty unquoted fields are read as nulls, and all other values
+ * as strings. Quoted values cannot span several lines.
+ * @author zinal
+ */
+public class DelimitedFormat implements RowFormat {
+
+    private static final char QUOTE = '"';
+
+    private final char delimiter;
+
+    public DelimitedFormat(char delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    public char getDelimiter() {
+        return delimiter;
+    }
+
+    @Override
+    public boolean hasHeader() {
+        return true;
+    }
+
+    @Override
+    public List<String> parseColumns(String line) {
+        final List<String> retval = new ArrayList<>();
+        for (String v : split(line))
+            retval.add((v==null) ? "" : v.trim());
+        return retval;
+    }
+
+    @Override
+    public Object[] parse(String line, List<String> columns) {
+        final List<String> values = split(line);
+        final Object[] retval = new Object[columns.size()];
+        for (int i=0; i<retval.length && i<values.size(); ++i)
+            retval[i] = values.get(i);
+        return retval;
+    }
+
+    /**
+     * Split the line into the field values.
+     * @param line Input line
+     * @return Field values, null for the empty unquoted fields
+     */
+    public List<String> split(String line) {
+        final List<String> retval = new ArrayList<>();
+        final StringBuilder sb = new StringBuilder();
+        final int length = line.length();
+        int pos = 0;
+        while (true) {
+            sb.setLength(0);
+            boolean quoted = false;
+            if (pos < length && line.charAt(pos) == QUOTE) {
+                quoted = true;
+                ++pos;
+                while (pos < length) {
+                    final char c = line.charAt(pos++);
+                    if (c == QUOTE) {
+                        if (pos < length && line.charAt(pos) == QUOTE) {
+                            sb.append(QUOTE);
+                            ++pos;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+            // unquoted value, or garbage after the closing quote
+            while (pos < length && line.charAt(pos) != delimiter)
+                sb.append(line.charAt(pos++));
+            retval.add((sb.length()==0 && !quoted) ? null : sb.toString());
+            if (pos >= length)
+                break;
+            ++pos; // skip the delimiter
+        }
+        return retval;
+    }
+
+    @Override
+    public String formatHeader(List<String> columns) {
+        return format(columns.toArray(), columns);
+    }
+
+    @Override
+    public String format(Object[] values, List<String> columns) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i=0; i<values.length; ++i) {
+            if (i > 0)
+                sb.append(delimiter);
+            final Object v = values[i];
+            if (v == null)
+                continue;
+            final String s = (v instanceof BigDecimal) ?
+                    ((BigDecimal) v).toPlainString() : v.toString();
+            if (needQuotes(s)) {
+                sb.append(QUOTE);
+                for (int j=0; j<s.length(); ++j) {
+                    final char c = s.charAt(j);
+                    if (c == QUOTE)
+                        sb.append(QUOTE);
+                    sb.append(c);
+                }
+                sb.append(QUOTE);
+            } else {
+                sb.append(s);
+            }
+        }
+        return sb.toString();
+    }
+
+    private boolean needQuotes(String s) {
+        if (s.isEmpty())
+            return true; // to distinguish from null
+        for (int i=0; i<s.length(); ++i) {
+            final char c = s.charAt(i);
+            if (c == delimiter || c == QUOTE || c == '\n' || c == '\r')
+                return true;
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.tool;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import com.ibm.dsmask.impl.*;
+
+/**
+ * Input link streaming the records from a split of a text file.
+ * @author zinal
+ */
+public class FileInputLink implements XLinkInput, AutoCloseable {
+
+    private final FileSplit split;
+    private final RowFormat format;
+    private final List<String> columnNames;
+    private final List<XColumnInfo> columns;
+    private final SplitLineReader reader;
+    private long lineNumber = 0L;
+
+    /**
+     * Open the split for reading.
+     * @param split File split
+     * @param format Row format
+     * @param charset File character set
+     * @param columnNames Column names of the file
+     * @throws IOException On open error
+     */
+    public FileInputLink(FileSplit split, RowFormat format, Charset charset,
+            List<String> columnNames) throws IOException {
+        this.split = split;
+        this.format = format;
+        this.columnNames = Collections.unmodifiableList(columnNames);
+        final List<XColumnInfo> work = new ArrayList<>(columnNames.size());
+        int index = 0;
+        for (String name : columnNames)
+            work.add(new XColumnInfo(++index, name));
+        this.columns = Collections.unmodifiableList(work);
+        this.reader = new SplitLineReader(split, charset);
+        if (split.getStart() == 0L && format.hasHeader()) {
+            // the header line is not a record
+            String line;
+            while ((line = reader.readLine()) != null) {
+                ++lineNumber;
+                if (line.trim().length() > 0)
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Read the column names from the first line of the file.
+     * @param split Any split of the file
+     * @param format Row format
+     * @param charset File character set
+     * @return Column names, or null for an empty file
+     * @throws IOException On read error
+     */
+    public static List<String> readColumns(FileSplit split, RowFormat format,
+            Charset charset) throws IOException {
+        final FileSplit first = new FileSplit(split.getFile(), 0, 0L,
+                split.getFile().length());
+        try (SplitLineReader r = new SplitLineReader(first, charset)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.trim().length() > 0)
+                    return format.parseColumns(line);
+            }
+        }
+        return null;
+    }
+
+    public FileSplit getSplit() {
+        return split;
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    @Override
+    public List<XColumnInfo> getInputColumns() {
+        return columns;
+    }
+
+    @Override
+    public XRowInput readRecord() {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                ++lineNumber;
+                if (line.trim().length() == 0)
+                    continue;
+                try {
+                    return new DummyInput(format.parse(line, columnNames));
+                } catch(RuntimeException ex) {
+                    throw new RuntimeException("Cannot parse line "
+                            + lineNumber + " of split " + split, ex);
+                }
+            }
+            return null;
+        } catch(IOException ix) {
+            throw new UncheckedIOException("Read failed for split " + split, ix);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+}
@@ -0,0 +1,552 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.tool;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import com.ibm.dsmask.GlobalNames;
+import com.ibm.dsmask.beans.*;
+import com.ibm.dsmask.impl.*;
+import com.ibm.dsmask.uniq.UniqClientFactory;
+
+/**
+ * Standalone file-to-file masking runner.
+ *
+ * Streams delimited text or JSON-lines files through the masking
+ * engine, with the same configuration database and dictionaries
+ * as used by the DataStage stage. Each input file can be divided
+ * into several splits, which are masked in parallel and then merged
+ * into the output file in the original order.
+ * @author zinal
+ */
+public class FileMask {
+
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_JSON = "json";
+
+    public static void main(String[] args) {
+        final FileMask fm;
+        try {
+            fm = parse(args);
+        } catch(IllegalArgumentException iae) {
+            System.err.println("ERROR: " + iae.getMessage());
+            usage();
+            System.exit(1);
+            return;
+        }
+        try {
+            final Summary s = fm.run();
+            System.out.println(s.toString());
+            System.exit(0);
+        } catch(Exception ex) {
+            ex.printStackTrace(System.err);
+            System.exit(1);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("USAGE: " + FileMask.class.getName()
+                + " [options] -p DB.TABLE -o OUTPUT INPUT...\n"
+                + "  -c PATH     configuration directory (or "
+                        + GlobalNames.ENV_CONFIG + ")\n"
+                + "  -n NAME     configuration name, default "
+                        + GlobalNames.DEF_CONFIG + "\n"
+                + "  -d PATH     dictionary directory (or "
+                        + GlobalNames.ENV_DICT + ")\n"
+                + "  -p DB.TABLE masking profile, DB.SCHEMA.TABLE or DB.TABLE\n"
+                + "  -S LIST     comma-separated column name prefixes (scopes)\n"
+                + "  -f FORMAT   " + FORMAT_CSV + " (default) or " + FORMAT_JSON
+                        + " (JSON-lines)\n"
+                + "  -D CHAR     field delimiter for " + FORMAT_CSV
+                        + ", default ',' ('tab' for tabulation)\n"
+                + "  -e CHARSET  file encoding, default UTF-8\n"
+                + "  -t N        number of masking threads\n"
+                + "  -s N        number of splits per input file\n"
+                + "  -b N        batch size, default 100\n"
+                + "  -o PATH     output file, or directory for several inputs\n"
+                + "  -r          write rejected records to OUTPUT.rej\n"
+                + "  -m PATH     directory for the metrics summary files\n"
+                + "  -u HOST:PORT  uniq-check service, -k SECRET  its secret\n"
+                + "Delimited files need the header line, one record per line.");
+    }
+
+    /**
+     * Parse the command line arguments.
+     * @param args Command line arguments
+     * @return Configured runner
+     */
+    public static FileMask parse(String[] args) {
+        final FileMask fm = new FileMask();
+        int pos = 0;
+        while (pos < args.length && args[pos].startsWith("-")
+                && args[pos].length() > 1) {
+            final String opt = args[pos++];
+            if ("-r".equals(opt)) {
+                fm.setRejects(true);
+                continue;
+            }
+            if (pos >= args.length)
+                throw new IllegalArgumentException("Missing value for " + opt);
+            final String val = args[pos++];
+            switch (opt) {
+                case "-c": fm.setConfigPath(val); break;
+                case "-n": fm.setConfigName(val); break;
+                case "-d": fm.setDictPath(val); break;
+                case "-p": fm.setProfile(val); break;
+                case "-S": fm.setScopeList(Arrays.asList(val.split("[,]"))); break;
+                case "-f": fm.setFormat(val); break;
+                case "-D": fm.setDelimiter(val); break;
+                case "-e": fm.setCharset(Charset.forName(val)); break;
+                case "-t": fm.setThreads(parseInt(opt, val)); break;
+                case "-s": fm.setSplits(parseInt(opt, val)); break;
+                case "-b": fm.setBatchSize(parseInt(opt, val)); break;
+                case "-o": fm.setOutput(new File(val)); break;
+                case "-m": fm.setMetricsPath(val); break;
+                case "-u": fm.setUniqService(val); break;
+                case "-k": fm.setUniqSecret(val); break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + opt);
+            }
+        }
+        while (pos < args.length)
+            fm.getInputs().add(new File(args[pos++]));
+        return fm;
+    }
+
+    private static int parseInt(String opt, String val) {
+        try {
+            return Integer.parseInt(val.trim());
+        } catch(NumberFormatException nfe) {
+            throw new IllegalArgumentException("Illegal value for "
+                    + opt + ": " + val);
+        }
+    }
+
+    private String configPath = System.getenv(GlobalNames.ENV_CONFIG);
+    private String configName = GlobalNames.DEF_CONFIG;
+    private String dictPath = System.getenv(GlobalNames.ENV_DICT);
+    private String databaseName = null;
+    private String tableName = null;
+    private List<String> scopeList = null;
+    private String format = FORMAT_CSV;
+    private char delimiter = ',';
+    private Charset charset = StandardCharsets.UTF_8;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int splits = 0;
+    private int batchSize = 100;
+    private File output = null;
+    private boolean rejects = false;
+    private String metricsPath = null;
+    private String uniqHost = null;
+    private int uniqPort = 0;
+    private String uniqSecret = null;
+    private final List<File> inputs = new ArrayList<>();
+
+    public void setConfigPath(String configPath) {
+        this.configPath = configPath;
+    }
+
+    public void setConfigName(String configName) {
+        this.configName = configName;
+    }
+
+    public void setDictPath(String dictPath) {
+        this.dictPath = dictPath;
+    }
+
+    /**
+     * @param profile Profile name, DB.SCHEMA.TABLE or DB.TABLE
+     */
+    public void setProfile(String profile) {
+        final String[] parts = profile.split("[.]");
+        if (parts.length != 2 && parts.length != 3)
+            throw new IllegalArgumentException("Invalid profile " + profile);
+        databaseName = Utils.lower(parts[0]);
+        tableName = Utils.lower(parts[1]);
+        if (parts.length == 3)
+            tableName = tableName + "." + Utils.lower(parts[2]);
+    }
+
+    public void setScopeList(List<String> scopeList) {
+        this.scopeList = scopeList;
+    }
+
+    public void setFormat(String format) {
+        final String v = Utils.lower(format);
+        if (!FORMAT_CSV.equals(v) && !FORMAT_JSON.equals(v))
+            throw new IllegalArgumentException("Unsupported format " + format);
+        this.format = v;
+    }
+
+    public void setDelimiter(String delimiter) {
+        if ("tab".equalsIgnoreCase(delimiter) || "\\t".equals(delimiter))
+            this.delimiter = '\t';
+        else if (delimiter.length() == 1)
+            this.delimiter = delimiter.charAt(0);
+        else
+            throw new IllegalArgumentException("Illegal delimiter " + delimiter);
+    }
+
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = (threads < 1) ? 1 : threads;
+    }
+
+    /**
+     * @param splits Number of splits per input file,
+     *     0 to use the number of threads for a single input
+     */
+    public void setSplits(int splits) {
+        this.splits = (splits < 0) ? 0 : splits;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = (batchSize < 1) ? 1 : batchSize;
+    }
+
+    public void setOutput(File output) {
+        this.output = output;
+    }
+
+    public void setRejects(boolean rejects) {
+        this.rejects = rejects;
+    }
+
+    public void setMetricsPath(String metricsPath) {
+        this.metricsPath = metricsPath;
+    }
+
+    /**
+     * @param service Uniq-check service address, HOST:PORT
+     */
+    public void setUniqService(String service) {
+        final int ix = service.lastIndexOf(':');
+        if (ix <= 0)
+            throw new IllegalArgumentException("Illegal uniq-check service "
+                    + service + ", HOST:PORT expected");
+        uniqHost = service.substring(0, ix);
+        uniqPort = parseInt("-u", service.substring(ix + 1));
+    }
+
+    public void setUniqSecret(String uniqSecret) {
+        this.uniqSecret = uniqSecret;
+    }
+
+    public List<File> getInputs() {
+        return inputs;
+    }
+
+    private RowFormat makeFormat() {
+        if (FORMAT_JSON.equals(format))
+            return new JsonLinesFormat();
+        return new DelimitedFormat(delimiter);
+    }
+
+    private XServices makeServices() {
+        final XServices xs = new XServices();
+        if (uniqHost != null) {
+            xs.setUniqProviderFactory(
+                    new UniqClientFactory(uniqHost, uniqPort, uniqSecret));
+        }
+        return xs;
+    }
+
+    private void validate() {
+        if (databaseName == null)
+            throw new IllegalArgumentException("Profile not specified");
+        if (configPath == null || !new File(configPath).isDirectory())
+            throw new IllegalArgumentException("Configuration directory "
+                    + "not specified or missing");
+        if (dictPath == null || !new File(dictPath).isDirectory())
+            throw new IllegalArgumentException("Dictionary directory "
+                    + "not specified or missing");
+        if (inputs.isEmpty())
+            throw new IllegalArgumentException("No input files");
+        for (File f : inputs) {
+            if (!f.isFile())
+                throw new IllegalArgumentException("Missing input file " + f);
+        }
+        if (output == null)
+            throw new IllegalArgumentException("Output not specified");
+        if (inputs.size() > 1 && !output.isDirectory())
+            throw new IllegalArgumentException("Output must be a directory "
+                    + "for several input files");
+    }
+
+    private File getOutputFile(File input) {
+        if (output.isDirectory())
+            return new File(output, input.getName());
+        return output;
+    }
+
+    private MskContext loadContext() throws Exception {
+        final MskContext context;
+        try (ContextLoader ctxLoader
+                = new ContextLoader(configPath, configName)) {
+            context = ctxLoader.load(databaseName, tableName, scopeList);
+        } catch(Exception ex) {
+            throw new Exception("Failed to load configuration database ["
+                    + configName + "]", ex);
+        }
+        if (context != null)
+            context.setDictPath(dictPath);
+        return context;
+    }
+
+    /**
+     * Mask all the input files.
+     * @return Summary of the run
+     * @throws Exception On failure
+     */
+    public Summary run() throws Exception {
+        validate();
+        final long tvStart = System.currentTimeMillis();
+        final RowFormat rowFormat = makeFormat();
+        final int splitCount = (splits > 0) ? splits
+                : ((inputs.size() == 1) ? threads : 1);
+        final List<Task> tasks = new ArrayList<>();
+        final List<Merge> merges = new ArrayList<>();
+        for (File input : inputs) {
+            final List<FileSplit> parts = FileSplit.split(input, splitCount);
+            final List<String> columns =
+                    FileInputLink.readColumns(parts.get(0), rowFormat, charset);
+            final File out = getOutputFile(input);
+            final File rej = rejects ? new File(out.getPath() + ".rej") : null;
+            if (columns == null) {
+                // empty input file
+                new FileOutputStream(out).close();
+                continue;
+            }
+            // The configuration is loaded per input file, as the
+            // field indexes are kept in the masking context.
+            final MskContext context = loadContext();
+            validateFields(parts.get(0), rowFormat, columns, context);
+            final Merge merge = new Merge(out, rej);
+            for (FileSplit fs : parts) {
+                final Task t = (parts.size() == 1) ?
+                        new Task(fs, columns, context, out, rej) :
+                        new Task(fs, columns, context,
+                                partFile(out, fs), (rej==null) ? null : partFile(rej, fs));
+                tasks.add(t);
+                merge.tasks.add(t);
+            }
+            if (parts.size() > 1)
+                merges.add(merge);
+        }
+        final Summary summary = new Summary();
+        final ExecutorService es = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(threads, tasks.size())));
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (Task t : tasks)
+                futures.add(es.submit(() -> t.run(rowFormat)));
+            try {
+                for (Future<?> f : futures)
+                    f.get();
+            } catch(ExecutionException ee) {
+                for (Future<?> f : futures)
+                    f.cancel(true);
+                if (ee.getCause() instanceof Exception)
+                    throw (Exception) ee.getCause();
+                throw ee;
+            }
+            for (Merge m : merges)
+                m.run();
+        } finally {
+            es.shutdownNow();
+            for (Merge m : merges)
+                m.cleanup();
+        }
+        for (Task t : tasks) {
+            summary.records += t.written + t.rejected;
+            summary.written += t.written;
+            summary.rejected += t.rejected;
+        }
+        summary.files = inputs.size();
+        summary.splits = tasks.size();
+        summary.millis = System.currentTimeMillis() - tvStart;
+        return summary;
+    }
+
+    private static File partFile(File f, FileSplit fs) {
+        return new File(f.getPath() + ".part" + fs.getIndex());
+    }
+
+    private void validateFields(FileSplit split, RowFormat rowFormat,
+            List<String> columns, MskContext context) throws Exception {
+        if (context == null)
+            return;
+        try (FileInputLink input =
+                new FileInputLink(split, rowFormat, charset, columns)) {
+            final XMasker masker = new XMasker(input, new TraceOutputLink(input));
+            masker.setContext(context);
+            if (! masker.buildIndexMap())
+                throw new IllegalArgumentException("Missing columns in "
+                        + split.getFile() + ": " + masker.getMissingColumns());
+            masker.validateFields();
+        }
+    }
+
+    /**
+     * Masking of a single file split.
+     */
+    private final class Task {
+
+        private final FileSplit split;
+        private final List<String> columns;
+        private final MskContext context;
+        private final File out;
+        private final File rej;
+        private volatile long written = 0L;
+        private volatile long rejected = 0L;
+
+        Task(FileSplit split, List<String> columns, MskContext context,
+                File out, File rej) {
+            this.split = split;
+            this.columns = columns;
+            this.context = context;
+            this.out = out;
+            this.rej = rej;
+        }
+
+        Void run(RowFormat rowFormat) throws Exception {
+            try (FileInputLink input = new FileInputLink(split, rowFormat,
+                        charset, columns);
+                    FileOutputLink output = new FileOutputLink(input, rowFormat,
+                        charset, out, rej, split.getIndex() == 0)) {
+                final XMasker masker = new XMasker(input, output, batchSize);
+                masker.setContext(context);
+                masker.setServices(makeServices());
+                masker.setMetricsPath(metricsPath);
+                if (! masker.buildIndexMap())
+                    throw new IllegalStateException("Missing columns in "
+                            + split + ": " + masker.getMissingColumns());
+                masker.run();
+                written = output.getWritten();
+                rejected = (output.hasRejectLink() || masker.getMetrics()==null)
+                        ? output.getRejected()
+                        : masker.getMetrics().getRejectedRows();
+            }
+            return null;
+        }
+
+    }
+
+    /**
+     * Concatenation of the split outputs into the target file.
+     */
+    private static final class Merge {
+
+        private final File out;
+        private final File rej;
+        private final List<Task> tasks = new ArrayList<>();
+
+        Merge(File out, File rej) {
+            this.out = out;
+            this.rej = rej;
+        }
+
+        void run() throws IOException {
+            concat(out, false);
+            if (rej != null)
+                concat(rej, true);
+        }
+
+        private void concat(File target, boolean reject) throws IOException {
+            try (FileChannel dst = new FileOutputStream(target).getChannel()) {
+                for (Task t : tasks) {
+                    final File part = reject ? t.rej : t.out;
+                    try (FileChannel src = new FileInputStream(part).getChannel()) {
+                        long position = 0L;
+                        final long size = src.size();
+                        while (position < size)
+                            position += src.transferTo(position,
+                                    size - position, dst);
+                    }
+                }
+            }
+        }
+
+        void cleanup() {
+            for (Task t : tasks) {
+                t.out.delete();
+                if (t.rej != null)
+                    t.rej.delete();
+            }
+        }
+
+    }
+
+    /**
+     * Totals of the masking run.
+     */
+    public static final class Summary {
+
+        private int files;
+        private int splits;
+        private long records;
+        private long written;
+        private long rejected;
+        private long millis;
+
+        public int getFiles() {
+            return files;
+        }
+
+        public int getSplits() {
+            return splits;
+        }
+
+        public long getRecords() {
+            return records;
+        }
+
+        public long getWritten() {
+            return written;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            final long rate = (millis > 0L) ? (records * 1000L / millis) : records;
+            return "Masked " + records + " records (" + written + " written, "
+                    + rejected + " rejected) from " + files + " file(s) in "
+                    + splits + " split(s), " + millis + " ms, "
+                    + rate + " records/sec";
+        }
+
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.tool;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import com.ibm.dsmask.impl.*;
+
+/**
+ * Output link writing the records to a text file,
+ * with the same columns as the input link.
+ * The rejected records are written to a separate file, if configured,
+ * with the input values and the reject reason in the last column.
+ * @author zinal
+ */
+public class FileOutputLink implements XLinkOutput, AutoCloseable {
+
+    // name of the reject reason column
+    public static final String ERROR_COLUMN = "dsmask_error";
+
+    private final FileInputLink input;
+    private final RowFormat format;
+    private final Writer writer;
+    private final Writer rejectWriter;
+    private final List<String> rejectColumns;
+    private long written = 0L;
+    private long rejected = 0L;
+
+    /**
+     * Create the output files.
+     * @param input Input link, to take the columns from
+     * @param format Row format
+     * @param charset File character set
+     * @param output Output file
+     * @param rejects Reject file, or null to drop the rejected records
+     * @param header true to write the header line, if the format has one
+     * @throws IOException On open error
+     */
+    public FileOutputLink(FileInputLink input, RowFormat format,
+            Charset charset, File output, File rejects, boolean header)
+            throws IOException {
+        this.input = input;
+        this.format = format;
+        this.rejectColumns = new ArrayList<>(input.getColumnNames());
+        this.rejectColumns.add(ERROR_COLUMN);
+        this.writer = open(output, charset);
+        Writer rw = null;
+        try {
+            if (rejects != null)
+                rw = open(rejects, charset);
+            if (header) {
+                writeLine(writer, format.formatHeader(input.getColumnNames()));
+                if (rw != null)
+                    writeLine(rw, format.formatHeader(rejectColumns));
+            }
+        } catch(IOException ix) {
+            writer.close();
+            if (rw != null)
+                rw.close();
+            throw ix;
+        }
+        this.rejectWriter = rw;
+    }
+
+    private static Writer open(File f, Charset charset) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(f), charset), 65536);
+    }
+
+    private static void writeLine(Writer w, String line) throws IOException {
+        if (line == null)
+            return;
+        w.write(line);
+        w.write('\n');
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public List<XColumnInfo> getOutputColumns() {
+        return input.getInputColumns();
+    }
+
+    @Override
+    public XRowOutput getOutputRecord() {
+        return new DummyOutput(input.getInputColumns().size());
+    }
+
+    @Override
+    public void writeRecord(XRowOutput record) {
+        try {
+            writeLine(writer, format.format(((DummyOutput) record).getValues(),
+                    input.getColumnNames()));
+        } catch(IOException ix) {
+            throw new UncheckedIOException(ix);
+        }
+        ++written;
+    }
+
+    @Override
+    public boolean hasRejectLink() {
+        return (rejectWriter != null);
+    }
+
+    @Override
+    public XRowReject getRejectRecord(XRowInput inputRecord) {
+        return new Reject(((DummyInput) inputRecord).getValues());
+    }
+
+    @Override
+    public void writeRecord(XRowReject rejectRecord) {
+        final Reject r = (Reject) rejectRecord;
+        final Object[] values = new Object[rejectColumns.size()];
+        System.arraycopy(r.values, 0, values, 0,
+                Math.min(r.values.length, values.length - 1));
+        values[values.length - 1] = r.text;
+        try {
+            writeLine(rejectWriter, format.format(values, rejectColumns));
+        } catch(IOException ix) {
+            throw new UncheckedIOException(ix);
+        }
+        ++rejected;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.close();
+        } finally {
+            if (rejectWriter != null)
+                rejectWriter.close();
+        }
+    }
+
+    private static final class Reject implements XRowReject {
+
+        private final Object[] values;
+        private String text;
+
+        Reject(Object[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public void setErrorCode(int code) {
+        }
+
+        @Override
+        public void setErrorText(String rejectText) {
+            this.text = rejectText;
+        }
+
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.tool;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Byte range of an input file, processed as a unit.
+ * The split owns the lines starting within its range.
+ * @author zinal
+ */
+public class FileSplit {
+
+    // minimal split length, smaller files are not split
+    public static final long MIN_LENGTH = 64L * 1024L;
+
+    private final File file;
+    private final int index;
+    private final long start;
+    private final long end;
+
+    public FileSplit(File file, int index, long start, long end) {
+        this.file = file;
+        this.index = index;
+        this.start = start;
+        this.end = end;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return Split number within the file, starting from 0
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Divide the file into the splits of roughly equal length.
+     * @param file Input file
+     * @param count Desired number of splits
+     * @return List of splits, at least one
+     */
+    public static List<FileSplit> split(File file, int count) {
+        final long length = file.length();
+        if (count < 1)
+            count = 1;
+        if (length / count < MIN_LENGTH)
+            count = (int) Math.max(1L, length / MIN_LENGTH);
+        final List<FileSplit> retval = new ArrayList<>(count);
+        long position = 0L;
+        for (int i=0; i<count; ++i) {
+            final long next = (i == count - 1) ?
+                    length : (length * (i + 1)) / count;
+            retval.add(new FileSplit(file, i, position, next));
+            position = next;
+        }
+        return retval;
+    }
+
+    @Override
+    public String toString() {
+        return file.getName() + "#" + index + " [" + start + ", " + end + ")";
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.tool;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSON-lines: one JSON object per line.
+ * The column names are taken from the first object in the file.
+ * Strings, numbers (Long or BigDecimal), booleans and nulls are passed
+ * as values, while the nested objects and arrays are passed through
+ * as is, without masking.
+ * @author zinal
+ */
+public class JsonLinesFormat implements RowFormat {
+
+    @Override
+    public boolean hasHeader() {
+        return false;
+    }
+
+    @Override
+    public List<String> parseColumns(String line) {
+        return new ArrayList<>(new Parser(line).parseObject().keySet());
+    }
+
+    @Override
+    public Object[] parse(String line, List<String> columns) {
+        final Map<String, Object> m = new Parser(line).parseObject();
+        final Object[] retval = new Object[columns.size()];
+        for (int i=0; i<retval.length; ++i)
+            retval[i] = m.get(columns.get(i));
+        return retval;
+    }
+
+    @Override
+    public String formatHeader(List<String> columns) {
+        return null;
+    }
+
+    @Override
+    public String format(Object[] values, List<String> columns) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        for (int i=0; i<values.length; ++i) {
+            if (i > 0)
+                sb.append(',');
+            quote(sb, columns.get(i));
+            sb.append(':');
+            final Object v = values[i];
+            if (v == null) {
+                sb.append("null");
+            } else if (v instanceof Raw) {
+                sb.append(((Raw) v).text);
+            } else if (v instanceof BigDecimal) {
+                sb.append(((BigDecimal) v).toPlainString());
+            } else if (v instanceof Number || v instanceof Boolean) {
+                sb.append(v.toString());
+            } else {
+                quote(sb, v.toString());
+            }
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static void quote(StringBuilder sb, String v) {
+        sb.append('"');
+        for (int i=0; i<v.length(); ++i) {
+            final char c = v.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20)
+                        sb.append(String.format("\\u%04x", (int) c));
+                    else
+                        sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Nested JSON value, passed through as text.
+     */
+    public static final class Raw {
+
+        private final String text;
+
+        public Raw(String text) {
+            this.text = text;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+
+    }
+
+    /**
+     * Parser for a single line of JSON.
+     */
+    private static final class Parser {
+
+        private final String text;
+        private int pos = 0;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Map<String, Object> parseObject() {
+            final Map<String, Object> retval = new LinkedHashMap<>();
+            expect('{');
+            if (peek() == '}') {
+                ++pos;
+                return retval;
+            }
+            while (true) {
+                expect('"');
+                final String key = parseString();
+                expect(':');
+                retval.put(key, parseValue());
+                final char c = next();
+                if (c == '}')
+                    break;
+                if (c != ',')
+                    throw error("',' or '}' expected");
+            }
+            return retval;
+        }
+
+        private Object parseValue() {
+            final char c = peek();
+            if (c == '"') {
+                ++pos;
+                return parseString();
+            }
+            if (c == '{' || c == '[') {
+                final int start = pos;
+                skipNested();
+                return new Raw(text.substring(start, pos));
+            }
+            if (text.startsWith("null", pos)) {
+                pos += 4;
+                return null;
+            }
+            if (text.startsWith("true", pos)) {
+                pos += 4;
+                return Boolean.TRUE;
+            }
+            if (text.startsWith("false", pos)) {
+                pos += 5;
+                return Boolean.FALSE;
+            }
+            return parseNumber();
+        }
+
+        private Object parseNumber() {
+            final int start = pos;
+            boolean integer = true;
+            while (pos < text.length()) {
+                final char c = text.charAt(pos);
+                if (c == '.' || c == 'e' || c == 'E')
+                    integer = false;
+                else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9')))
+                    break;
+                ++pos;
+            }
+            final String v = text.substring(start, pos);
+            if (v.isEmpty())
+                throw error("value expected");
+            try {
+                if (integer && v.length() < 19)
+                    return Long.valueOf(v);
+                return new BigDecimal(v);
+            } catch(NumberFormatException nfe) {
+                throw error("illegal number " + v);
+            }
+        }
+
+        private String parseString() {
+            final StringBuilder sb = new StringBuilder();
+            while (true) {
+                if (pos >= text.length())
+                    throw error("unterminated string");
+                final char c = text.charAt(pos++);
+                if (c == '"')
+                    return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= text.length())
+                    throw error("unterminated string");
+                final char e = text.charAt(pos++);
+                switch (e) {
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u':
+                        if (pos + 4 > text.length())
+                            throw error("illegal escape");
+                        try {
+                            sb.append((char) Integer.parseInt(
+                                    text.substring(pos, pos + 4), 16));
+                        } catch(NumberFormatException nfe) {
+                            throw error("illegal escape");
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        sb.append(e);
+                }
+            }
+        }
+
+        private void skipNested() {
+            int depth = 0;
+            boolean inString = false;
+            while (pos < text.length()) {
+                final char c = text.charAt(pos++);
+                if (inString) {
+                    if (c == '\\')
+                        ++pos;
+                    else if (c == '"')
+                        inString = false;
+                } else if (c == '"') {
+                    inString = true;
+                } else if (c == '{' || c == '[') {
+                    ++depth;
+                } else if (c == '}' || c == ']') {
+                    if (--depth == 0)
+                        return;
+                }
+            }
+            throw error("unterminated value");
+        }
+
+        private void skipSpaces() {
+            while (pos < text.length()
+                    && Character.isWhitespace(text.charAt(pos)))
+                ++pos;
+        }
+
+        private char peek() {
+            skipSpaces();
+            if (pos >= text.length())
+                throw error("unexpected end of line");
+            return text.charAt(pos);
+        }
+
+        private char next() {
+            final char c = peek();
+            ++pos;
+            return c;
+        }
+
+        private void expect(char c) {
+            if (next() != c)
+                throw error("'" + c + "' expected");
+        }
+
+        private IllegalArgumentException error(String msg) {
+            return new IllegalArgumentException("Bad JSON at position "
+                    + pos + ": " + msg);
+        }
+
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.tool;
+
+import java.util.List;
+
+/**
+ * Text file format, one record per line.
+ * @author zinal
+ */
+public interface RowFormat {
+
+    /**
+     * @return true, if the first line of the file is the header line
+     */
+    boolean hasHeader();
+
+    /**
+     * Extract the column names from the first line of the file.
+     * @param line The first line
+     * @return Column names
+     */
+    List<String> parseColumns(String line);
+
+    /**
+     * Parse the data line.
+     * @param line Data line
+     * @param columns Column names
+     * @return Values, in the order of columns
+     */
+    Object[] parse(String line, List<String> columns);
+
+    /**
+     * @param columns Column names
+     * @return Header line, or null if the format has no header
+     */
+    String formatHeader(List<String> columns);
+
+    /**
+     * @param values Values, in the order of columns
+     * @param columns Column names
+     * @return Data line
+     */
+    String format(Object[] values, List<String> columns);
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.tool;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Line reader over a file split.
+ *
+ * A split starting in the middle of the file skips the partial
+ * line at its start, which belongs to the previous split, and reads
+ * all the lines starting before its end, including the last one
+ * crossing the split boundary.
+ * @author zinal
+ */
+public class SplitLineReader implements AutoCloseable {
+
+    private final InputStream stream;
+    private final Charset charset;
+    private final long end;
+    // position of the next byte in the file
+    private long position;
+    private byte[] buffer = new byte[256];
+
+    public SplitLineReader(FileSplit split, Charset charset) throws IOException {
+        this.charset = charset;
+        this.end = split.getEnd();
+        final FileInputStream fis = new FileInputStream(split.getFile());
+        try {
+            long skip = Math.max(0L, split.getStart() - 1L);
+            fis.getChannel().position(skip);
+            this.stream = new BufferedInputStream(fis, 65536);
+            this.position = skip;
+            if (split.getStart() > 0L) {
+                // skip the line owned by the previous split
+                skipLine();
+            }
+        } catch(IOException | RuntimeException ex) {
+            fis.close();
+            throw ex;
+        }
+    }
+
+    private void skipLine() throws IOException {
+        int c;
+        while ((c = stream.read()) >= 0) {
+            ++position;
+            if (c == '\n')
+                break;
+        }
+    }
+
+    /**
+     * @return Next line without the line terminator, or null at the end
+     * @throws IOException On read error
+     */
+    public String readLine() throws IOException {
+        if (position >= end)
+            return null;
+        int length = 0;
+        int c;
+        boolean any = false;
+        while ((c = stream.read()) >= 0) {
+            ++position;
+            any = true;
+            if (c == '\n')
+                break;
+            if (length == buffer.length)
+                buffer = Arrays.copyOf(buffer, length * 2);
+            buffer[length++] = (byte) c;
+        }
+        if (!any)
+            return null;
+        if (length > 0 && buffer[length - 1] == '\r')
+            --length;
+        return new String(buffer, 0, length, charset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import com.ibm.dsmask.beans.MskOp;
+import com.ibm.dsmask.impl.*;
+import com.ibm.dsmask.mock.*;
+
+/**
+ * Collapsing of duplicate inputs should not change the masking output.
+ * @author zinal
+ */
+public class DsMaskDedupTest extends TestResources {
+
+    public DsMaskDedupTest() {
+    }
+
+    // distinct rows per batch
+    private static final int CHUNK = 16;
+
+    @Test
+    public void testDedup() throws Exception {
+        final MockData mockData = new MockData(MockData.TAB1);
+        final List<Object[]> rows = new ArrayList<>(mockData.getData());
+        final int count = rows.size();
+        // baseline: each batch has the same distinct rows, without the copies
+        final MemoryLinkMock baseLink = new MemoryLinkMock(mockData);
+        final XMetrics base = runMasker(baseLink, CHUNK, Arrays.asList("*"));
+        assertEquals(0, baseLink.getRejectCount());
+        // each row is repeated three times within the same batch
+        mockData.getData().clear();
+        for (int pos=0; pos<count; pos+=CHUNK) {
+            final List<Object[]> chunk = rows.subList(pos,
+                    Math.min(pos + CHUNK, count));
+            mockData.getData().addAll(chunk);
+            final List<Object[]> reversed = new ArrayList<>(chunk);
+            Collections.reverse(reversed);
+            mockData.getData().addAll(reversed);
+            mockData.getData().addAll(chunk);
+        }
+        final MemoryLinkMock plainLink = new MemoryLinkMock(mockData);
+        final XMetrics plain = runMasker(plainLink, 3 * CHUNK, null);
+        final MemoryLinkMock dedupLink = new MemoryLinkMock(mockData);
+        final XMetrics dedup = runMasker(dedupLink, 3 * CHUNK, Arrays.asList("*"));
+        assertEquals(3 * count, plainLink.getOutput().size());
+        assertEquals(0, dedupLink.getRejectCount());
+        assertEquals(plainLink.getOutput(), dedupLink.getOutput());
+        assertEquals(0L, plain.getCollapsedRows());
+        // two copies of every row are collapsed in each operation
+        int operations = 0;
+        for (MskOp op : loadContext(MockData.TAB1).getTable().getOperations()) {
+            if (! op.getRule().getSteps().isEmpty())
+                ++operations;
+        }
+        assertTrue(operations > 0);
+        assertEquals(base.getCollapsedRows() + 2L * count * operations,
+                dedup.getCollapsedRows());
+    }
+
+    private XMetrics runMasker(MemoryLinkMock link, int batchSize,
+            List<String> dedupRules) throws Exception {
+        final XMasker masker = new XMasker(link, link, batchSize);
+        masker.setDedupRules(dedupRules);
+        return runMasker(masker, MockData.TAB1).getMetrics();
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import com.ibm.dsmask.impl.*;
+import com.ibm.dsmask.mock.*;
+
+/**
+ * Masking metrics should account for all the rows and steps,
+ * and be written to the summary file.
+ * @author zinal
+ */
+public class DsMaskMetricsTest extends TestResources {
+
+    @Test
+    public void testMetrics() throws Exception {
+        final File dir = Files.createTempDirectory("dsmask-metrics").toFile();
+        final MockData mockData = new MockData(MockData.TAB1);
+        final MemoryLinkMock link = new MemoryLinkMock(mockData);
+        final XMasker masker = new XMasker(link, link, 7);
+        masker.setMetricsPath(dir.getAbsolutePath());
+        runMasker(masker, MockData.TAB1);
+
+        final XMetrics metrics = masker.getMetrics();
+        assertNotNull(metrics);
+        final int total = mockData.getData().size();
+        assertEquals(total, metrics.getReadRows());
+        assertEquals(link.getOutput().size(), metrics.getWrittenRows());
+        assertEquals(link.getRejectCount(), metrics.getRejectedRows());
+        assertEquals((total + 6) / 7, metrics.getBatchCount());
+        assertFalse(metrics.getSteps().isEmpty());
+        for (XMetrics.Step s : metrics.getSteps())
+            assertTrue(s.toString(), s.getRows() > 0L);
+        assertEquals(metrics.getSteps().size(), metrics.getStepStats().length);
+
+        final File[] files = dir.listFiles();
+        assertEquals(1, files.length);
+        final String json = new String(Files.readAllBytes(files[0].toPath()),
+                StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"readRows\": " + total));
+        assertTrue(json.contains("\"steps\": ["));
+        files[0].delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testRegister() throws Exception {
+        final XMetrics metrics = new XMetrics("a \"quoted\" name");
+        metrics.addRead(10, 1000L);
+        metrics.register();
+        final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName query = new ObjectName(XMetrics.DOMAIN + ":type=Metrics,*");
+        assertEquals(1, mbs.queryNames(query, null).size());
+        final ObjectName on = mbs.queryNames(query, null).iterator().next();
+        assertEquals(10L, mbs.getAttribute(on, "ReadRows"));
+        metrics.unregister();
+        assertTrue(mbs.queryNames(query, null).isEmpty());
+        assertTrue(metrics.toJson().contains("\"name\": \"a \\\"quoted\\\" name\""));
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import com.ibm.dsmask.impl.*;
+import com.ibm.dsmask.mock.*;
+import com.ibm.dsmask.uniq.*;
+
+/**
+ * Multi-threaded, pipelined and adaptive masking should produce exactly
+ * the same output as the single-threaded one, in the same order.
+ * @author zinal
+ */
+public class DsMaskParallelTest extends TestResources {
+
+    public DsMaskParallelTest() {
+    }
+
+    @Test
+    public void testThreads() throws Exception {
+        final MockData mockData = new MockData(MockData.TAB1);
+        final MemoryLinkMock seqLink = new MemoryLinkMock(mockData);
+        runMasker(seqLink, 1, 0);
+        final MemoryLinkMock parLink = new MemoryLinkMock(mockData);
+        runMasker(parLink, 3, 0);
+        assertEquals(mockData.getData().size(),
+                seqLink.getOutput().size() + seqLink.getRejectCount());
+        assertEquals(seqLink.getRejectCount(), parLink.getRejectCount());
+        assertEquals(seqLink.getOutput(), parLink.getOutput());
+    }
+
+    @Test
+    public void testThreadsUniq() throws Exception {
+        final MockData mockData = new MockData(MockData.TAB2);
+        final MemoryLinkMock seqLink = new MemoryLinkMock(mockData);
+        final SharedUniqGen seqUniq = new SharedUniqGen();
+        runMasker(seqLink, MockData.TAB2, 1, seqUniq);
+        final MemoryLinkMock parLink = new MemoryLinkMock(mockData);
+        final SharedUniqGen parUniq = new SharedUniqGen();
+        runMasker(parLink, MockData.TAB2, 3, parUniq);
+        assertEquals(seqLink.getRejectCount(), parLink.getRejectCount());
+        assertEquals(seqLink.getOutput(), parLink.getOutput());
+        // each worker has its own provider, closed exactly once
+        assertEquals(1, seqUniq.providers.size());
+        assertEquals(3, parUniq.providers.size());
+        for (SharedUniq su : seqUniq.providers)
+            assertEquals(1, su.closeCount);
+        for (SharedUniq su : parUniq.providers)
+            assertEquals(1, su.closeCount);
+    }
+
+    @Test
+    public void testPipeline() throws Exception {
+        final MockData mockData = new MockData(MockData.TAB1);
+        final MemoryLinkMock seqLink = new MemoryLinkMock(mockData);
+        runMasker(seqLink, 1, 0);
+        final MemoryLinkMock pipeLink = new MemoryLinkMock(mockData);
+        runMasker(pipeLink, 1, 3);
+        assertEquals(seqLink.getRejectCount(), pipeLink.getRejectCount());
+        assertEquals(seqLink.getOutput(), pipeLink.getOutput());
+    }
+
+    @Test
+    public void testAdaptive() throws Exception {
+        final MockData mockData = new MockData(MockData.TAB1);
+        final MemoryLinkMock seqLink = new MemoryLinkMock(mockData);
+        runMasker(seqLink, 1, 0);
+        final MemoryLinkMock adaLink = new MemoryLinkMock(mockData);
+        final XMasker masker = runMasker(adaLink, 1, 0, 2, 50);
+        assertEquals(seqLink.getRejectCount(), adaLink.getRejectCount());
+        assertEquals(seqLink.getOutput(), adaLink.getOutput());
+        assertNotNull(masker.getPerfStats());
+        assertTrue(masker.getPerfStats().toString().contains("Adaptive batch"));
+    }
+
+    private XMasker runMasker(MemoryLinkMock link, int threadCount,
+            int pipelineBuffers) throws Exception {
+        return runMasker(link, threadCount, pipelineBuffers, 0, 0);
+    }
+
+    private XMasker runMasker(MemoryLinkMock link, int threadCount,
+            int pipelineBuffers, int batchMin, int batchMax) throws Exception {
+        final XMasker masker = new XMasker(link, link, 7);
+        masker.setThreadCount(threadCount);
+        masker.setPipelineBuffers(pipelineBuffers);
+        masker.setAdaptiveBatch(batchMin, batchMax);
+        return runMasker(masker, MockData.TAB1);
+    }
+
+    private XMasker runMasker(MemoryLinkMock link, String tableName,
+            int threadCount, SharedUniqGen uniq) throws Exception {
+        final XMasker masker = new XMasker(link, link, 7);
+        masker.setThreadCount(threadCount);
+        final XServices services = new XServices();
+        services.setUniqProviderFactory(uniq);
+        try {
+            return runMasker(masker, tableName, services);
+        } finally {
+            uniq.store.close();
+        }
+    }
+
+    /**
+     * Providers sharing the single in-memory store, like the clients
+     * of the same uniq-check server.
+     */
+    private static final class SharedUniqGen implements UniqProviderFactory {
+
+        final UniqStore store = new UniqStore((File) null, 1, 100, 60);
+        final List<SharedUniq> providers = new ArrayList<>();
+
+        @Override
+        public synchronized UniqProvider createProvider() {
+            final SharedUniq su = new SharedUniq(store);
+            providers.add(su);
+            return su;
+        }
+
+    }
+
+    private static final class SharedUniq implements UniqProvider {
+
+        final UniqStore store;
+        volatile int closeCount = 0;
+
+        SharedUniq(UniqStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public UniqResponse[] store(String repository, UniqRequest[] rr) {
+            return store.store(repository, rr);
+        }
+
+        @Override
+        public void close() {
+            ++closeCount;
+        }
+
+    }
+
+}
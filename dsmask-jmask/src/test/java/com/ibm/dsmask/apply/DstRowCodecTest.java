@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.apply;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compact and legacy packed formats should both be unpacked
+ * to the same values.
+ * @author zinal
+ */
+public class DstRowCodecTest {
+
+    private static Map<String, Object> makeData() {
+        final Map<String, Object> m = new HashMap<>();
+        m.put("id", 12345);
+        m.put("neg", -7L);
+        m.put("big", Long.MIN_VALUE);
+        m.put("name", "Иванов Иван 😀");
+        m.put("empty", "");
+        m.put("amount", new BigDecimal("-123456789012345678901234.5678"));
+        m.put("huge", new BigInteger("98765432109876543210"));
+        m.put("dt", java.sql.Date.valueOf("2021-03-15"));
+        m.put("tm", java.sql.Time.valueOf("12:34:56"));
+        final java.sql.Timestamp ts = java.sql.Timestamp.valueOf(
+                "2021-03-15 12:34:56.123456789");
+        m.put("ts", ts);
+        m.put("bin", new byte[] {0, -1, 127, -128});
+        m.put("sh", (short) -300);
+        m.put("by", (byte) -5);
+        m.put("flag", true);
+        m.put("dbl", -1.5e300);
+        m.put("flt", 3.25f);
+        m.put("uuid", UUID.fromString("6f1c1f60-0e7a-4b8e-9f43-3f2c2c8f1a11"));
+        m.put("nothing", null);
+        return m;
+    }
+
+    @Test
+    public void testRoundtrip() {
+        final Map<String, Object> data = makeData();
+        final byte[] compact = DstMergeAlgo.pack(data);
+        final byte[] legacy = DstMergeAlgo.packLegacy(data);
+        assertTrue(DstRowCodec.isCompact(compact));
+        assertFalse(DstRowCodec.isCompact(legacy));
+        assertTrue(compact.length * 3 < legacy.length);
+        checkSame(data, DstMergeAlgo.unpack(compact));
+        checkSame(data, DstMergeAlgo.unpack(legacy));
+    }
+
+    @Test
+    public void testKeysLowerCase() {
+        final Map<String, Object> data = new HashMap<>();
+        data.put("Col_A", "x");
+        final Map<String, Object> out = DstMergeAlgo.unpack(DstMergeAlgo.pack(data));
+        assertEquals("x", out.get("col_a"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testTruncated() {
+        final byte[] compact = DstMergeAlgo.pack(makeData());
+        DstMergeAlgo.unpack(Arrays.copyOf(compact, compact.length - 3));
+    }
+
+    private static void checkSame(Map<String, Object> expected,
+            Map<String, Object> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, Object> me : expected.entrySet()) {
+            final Object v = actual.get(me.getKey());
+            if (me.getValue() instanceof byte[]) {
+                assertArrayEquals((byte[]) me.getValue(), (byte[]) v);
+            } else {
+                assertEquals(me.getKey(), me.getValue(), v);
+                if (v!=null)
+                    assertEquals(me.getValue().getClass(), v.getClass());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.apply;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Batched apply should give the same table contents
+ * as the row-by-row apply.
+ * @author zinal
+ */
+public class DstTableActionTest {
+
+    private static final String TABLE = "dst_test";
+
+    @Test
+    public void testBatchOrder() throws Exception {
+        final List<byte[][]> changes = makeChanges();
+        final List<String> expected = runApply(changes, 1);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, runApply(changes, 3));
+        assertEquals(expected, runApply(changes, 100));
+    }
+
+    /**
+     * Random inserts, updates (including the key changes) and deletes,
+     * often touching the same keys one after another.
+     */
+    private static List<byte[][]> makeChanges() {
+        final Random random = new Random(42L);
+        final Map<Integer, String> current = new HashMap<>();
+        final List<byte[][]> retval = new ArrayList<>();
+        for (int i=0; i<2000; ++i) {
+            final int id = random.nextInt(50);
+            final String oldVal = current.get(id);
+            if (oldVal==null) {
+                final String val = "v" + i;
+                retval.add(new byte[][] {null, pack(id, val)});
+                current.put(id, val);
+            } else if (random.nextInt(3)==0) {
+                retval.add(new byte[][] {pack(id, oldVal), null});
+                current.remove(id);
+            } else {
+                int newId = id;
+                if (random.nextInt(4)==0) {
+                    newId = random.nextInt(50);
+                    if (current.containsKey(newId))
+                        newId = id;
+                }
+                final String val = "u" + i;
+                retval.add(new byte[][] {pack(id, oldVal), pack(newId, val)});
+                current.remove(id);
+                current.put(newId, val);
+            }
+        }
+        return retval;
+    }
+
+    private static byte[] pack(int id, String val) {
+        final Map<String, Object> m = new HashMap<>();
+        m.put("id", id);
+        m.put("val", val);
+        return DstMergeAlgo.pack(m);
+    }
+
+    private static List<String> runApply(List<byte[][]> changes, int batchSize)
+            throws Exception {
+        final DstTableConf conf = new DstTableConf();
+        conf.setCommonName(TABLE);
+        conf.setDestinationName(TABLE);
+        conf.getKeyFields().add("id");
+        conf.getAllFields().add("id");
+        conf.getAllFields().add("val");
+        final List<String> retval = new ArrayList<>();
+        try (Connection con = DriverManager.getConnection(
+                "jdbc:h2:mem:dst-action-" + batchSize)) {
+            con.setAutoCommit(false);
+            try (Statement stmt = con.createStatement()) {
+                stmt.execute("CREATE TABLE " + TABLE + "(id INTEGER NOT NULL "
+                        + "PRIMARY KEY, val VARCHAR(20) NOT NULL)");
+            }
+            final DstRowValue value = new DstRowValue();
+            try (DstTableAction action = new DstTableAction(conf)) {
+                action.setBatchSize(batchSize);
+                int bad = 0;
+                for (byte[][] change : changes) {
+                    value.parse(TABLE, change[0], change[1]);
+                    if (batchSize > 1)
+                        bad += action.add(value, con);
+                    else if (action.apply(value, con) != 1)
+                        ++bad;
+                }
+                bad += action.flush();
+                assertEquals(0, bad);
+                assertEquals(0, action.getPendingCount());
+                assertEquals(changes.size(), action.getInsertCount()
+                        + action.getUpdateCount() + action.getDeleteCount());
+            }
+            con.commit();
+            try (Statement stmt = con.createStatement()) {
+                try (ResultSet rs = stmt.executeQuery("SELECT id, val FROM "
+                        + TABLE + " ORDER BY id")) {
+                    while (rs.next())
+                        retval.add(rs.getInt(1) + "=" + rs.getString(2));
+                }
+            }
+        }
+        return retval;
+    }
+
+}
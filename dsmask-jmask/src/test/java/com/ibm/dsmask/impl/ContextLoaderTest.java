@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.impl;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Arrays;
+import java.util.TreeMap;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import com.ibm.dsmask.beans.*;
+import com.ibm.dsmask.mock.MaskingMockData;
+import com.ibm.dsmask.util.ConfigSnapshot;
+
+/**
+ * Masking context loaded from the snapshot should be the same
+ * as the one loaded from the configuration database.
+ * @author zinal
+ */
+public class ContextLoaderTest {
+
+    private static final String CONFIG = "dsmask-testsuite";
+    private static final String[] TABLES = {
+        MaskingMockData.TAB1, MaskingMockData.TAB2, MaskingMockData.TAB3
+    };
+
+    @Test
+    public void testSnapshot() throws Exception {
+        final File dir = Files.createTempDirectory("dsmask-snapshot").toFile();
+        try {
+            final File source = new File(new File(new File("..", "testsuite"),
+                    "rules"), CONFIG + ".mv.db");
+            final String dbPath = new File(dir, CONFIG).getAbsolutePath();
+            final File dbFile = ConfigSnapshot.databaseFile(dbPath);
+            Files.copy(source.toPath(), dbFile.toPath());
+            final String[] expected = describeAll(dir, false);
+
+            final ConfigSnapshot snapshot;
+            try (Connection con = DriverManager.getConnection("jdbc:h2:"
+                    + dbPath.replaceAll("\\\\", "/") + ";ACCESS_MODE_DATA=R")) {
+                snapshot = ConfigSnapshot.load(con);
+            }
+            final File snapFile = ConfigSnapshot.snapshotFile(dbPath);
+            snapshot.write(snapFile, dbFile);
+            assertArrayEquals(expected, describeAll(dir, true));
+
+            // the database file changed after the snapshot was taken
+            final long modified = dbFile.lastModified();
+            assertTrue(dbFile.setLastModified(modified + 2000L));
+            assertArrayEquals(expected, describeAll(dir, false));
+            assertTrue(dbFile.setLastModified(modified));
+            assertArrayEquals(expected, describeAll(dir, true));
+
+            // the database is not needed when the snapshot exists
+            assertTrue(dbFile.delete());
+            assertArrayEquals(expected, describeAll(dir, true));
+
+            // stale snapshot is ignored
+            Files.copy(source.toPath(), dbFile.toPath());
+            Files.write(snapFile.toPath(), new byte[0]);
+            assertArrayEquals(expected, describeAll(dir, false));
+            final File other = new File(dir, "other.bin");
+            Files.write(other.toPath(), new byte[] {1, 2, 3});
+            snapshot.write(snapFile, other);
+            assertArrayEquals(expected, describeAll(dir, false));
+        } finally {
+            for (File f : dir.listFiles())
+                f.delete();
+            dir.delete();
+        }
+    }
+
+    private static String[] describeAll(File dir, boolean fromSnapshot)
+            throws Exception {
+        final String[] retval = new String[TABLES.length];
+        try (ContextLoader loader = new ContextLoader(
+                dir.getAbsolutePath(), CONFIG)) {
+            assertEquals(fromSnapshot, loader.isSnapshot());
+            for (int i=0; i<TABLES.length; ++i)
+                retval[i] = describe(loader.load("source", TABLES[i], null));
+        }
+        return retval;
+    }
+
+    private static String describe(MskContext ctx) {
+        assertNotNull(ctx);
+        final StringBuilder sb = new StringBuilder();
+        sb.append(ctx.getTableInfo()).append(" #")
+                .append(ctx.getTable().getId()).append('\n');
+        for (MskKey key : new TreeMap<>(ctx.getKeys()).values())
+            sb.append("key ").append(key.getName()).append('=')
+                    .append(key.getValue()).append('\n');
+        for (MskOp op : ctx.getTable().getOperations()) {
+            sb.append("op #").append(op.getId()).append(' ')
+                    .append(op.getRule().getName())
+                    .append(op.getInputFields()).append(" -> ")
+                    .append(op.getOutputFields()).append('\n');
+            for (MskStep step : op.getRule().getSteps()) {
+                sb.append("\tstep #").append(step.getId()).append(' ')
+                        .append(step.getName()).append(' ')
+                        .append(step.getPosition()).append(' ')
+                        .append(step.getPredicateText()).append('\n');
+                final MskFunc func = step.getFunction();
+                sb.append("\t\tfunc ").append(func.getName()).append(' ')
+                        .append(func.getFunctionType()).append(' ')
+                        .append(func.isIterable()).append(' ')
+                        .append(func.getText()).append('\n');
+                for (MskRef ref : step.getRefs())
+                    sb.append("\t\tref ").append(ref.getParentIndex())
+                            .append(':').append(ref.getPosition()).append('\n');
+                final MskUniq uniq = step.getUniqCheck();
+                if (uniq!=null)
+                    sb.append("\t\tuniq ").append(uniq.getProvider())
+                            .append(Arrays.toString(uniq.getInputPositions()))
+                            .append(Arrays.toString(uniq.getOutputPositions()))
+                            .append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+}
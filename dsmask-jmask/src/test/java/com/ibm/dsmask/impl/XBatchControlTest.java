@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.impl;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Batch size should follow the time per row within the bounds,
+ * and drop when the heap is running out.
+ * @author zinal
+ */
+public class XBatchControlTest {
+
+    /**
+     * Feed the controller with the batches having a fixed cost
+     * per batch plus a cost per row.
+     */
+    private static void feed(XBatchControl bc, int batches,
+            long perBatch, long perRow, long remote) {
+        for (int i=0; i<batches; ++i) {
+            final int rows = bc.getSize();
+            final long mask = perBatch + perRow * rows;
+            bc.record(rows, 0L, mask, Math.min(remote, mask), 0L);
+        }
+    }
+
+    @Test
+    public void testGrowth() {
+        final XBatchControl bc = new XBatchControl(100, 10, 5000);
+        bc.setHeapProbe(() -> 0.1);
+        // high per-batch overhead: larger batches are cheaper per row
+        feed(bc, 200, 1000000L, 100L, 0L);
+        assertEquals(5000, bc.getMaxSize());
+        assertTrue("size " + bc.getSize(), bc.getSize() >= 2000);
+        assertTrue(bc.getAdjustments() > 0);
+    }
+
+    @Test
+    public void testRemote() {
+        final XBatchControl bc = new XBatchControl(100, 10, 1000);
+        bc.setHeapProbe(() -> 0.1);
+        // remote calls dominate, even when the cost per row is flat
+        feed(bc, 200, 0L, 1000L, Long.MAX_VALUE);
+        assertTrue("size " + bc.getSize(), bc.getSize() > 500);
+    }
+
+    @Test
+    public void testHeap() {
+        final XBatchControl bc = new XBatchControl(1000, 10, 5000);
+        final double[] heap = new double[] { 0.9 };
+        bc.setHeapProbe(() -> heap[0]);
+        feed(bc, 20, 1000000L, 100L, 0L);
+        assertEquals(10, bc.getSize());
+        // moderate heap usage blocks the growth
+        heap[0] = 0.6;
+        feed(bc, 100, 1000000L, 100L, 0L);
+        assertEquals(10, bc.getSize());
+        final StringBuilder sb = new StringBuilder();
+        bc.dumpStats(sb);
+        assertTrue(sb.toString().startsWith("Adaptive batch: size 10 (10..5000)"));
+    }
+
+    @Test
+    public void testBounds() {
+        final XBatchControl bc = new XBatchControl(100000, 5, 50);
+        assertEquals(50, bc.getSize());
+        try {
+            new XBatchControl(10, 20, 10);
+            fail("Illegal bounds accepted");
+        } catch(IllegalArgumentException iae) {}
+    }
+
+}
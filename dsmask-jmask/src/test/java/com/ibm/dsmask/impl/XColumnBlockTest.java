@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.impl;
+
+import java.math.BigDecimal;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Column storage should return the values exactly as they were stored.
+ * @author zinal
+ */
+public class XColumnBlockTest {
+
+    @Test
+    public void testColumn() {
+        final XColumn col = new XColumn(130);
+        assertNull(col.get(5));
+        col.set(5, null);
+        col.set(70, 12L);
+        col.set(129, -1L);
+        assertTrue(col.isTyped());
+        assertEquals(12L, col.get(70));
+        assertEquals(-1L, col.get(129));
+        assertNull(col.get(5));
+        assertNull(col.get(71));
+        col.set(70, null);
+        assertNull(col.get(70));
+        // Integer is not Long, the column switches to the generic storage
+        col.set(3, 7);
+        assertFalse(col.isTyped());
+        assertEquals(7, col.get(3));
+        assertEquals(-1L, col.get(129));
+        col.clear();
+        assertNull(col.get(129));
+
+        final XColumn str = new XColumn(10);
+        str.set(1, "a");
+        str.set(2, null);
+        assertTrue(str.isTyped());
+        str.set(3, new BigDecimal("1.50"));
+        assertEquals("a", str.get(1));
+        assertEquals(new BigDecimal("1.50"), str.get(3));
+    }
+
+    @Test
+    public void testBlock() {
+        final XColumnBlock block = new XColumnBlock(4);
+        assertNull(block.getRow(0, null));
+        final XVector v = new XVector(3);
+        v.values[0] = "x";
+        v.values[1] = 5L;
+        v.values[2] = null;
+        block.setRow(0, v);
+        final XVector w = new XVector(1);
+        w.values[0] = "y";
+        block.setRow(1, w);
+        assertEquals(3, block.getWidth(0));
+        assertEquals(1, block.getWidth(1));
+        assertEquals("[x, 5, null]", block.getRow(0, null).toString());
+        assertEquals("[y]", block.getRow(1, null).toString());
+        assertNull(block.get(1, 1));
+        // the target vector is re-used when it has the proper size
+        final XVector target = new XVector(3);
+        assertSame(target, block.getRow(0, target));
+        // shrinking the vector drops the extra values
+        block.setRow(0, w);
+        assertEquals("[y]", block.getRow(0, null).toString());
+        assertNull(block.get(0, 1));
+        block.copyRow(0, 2);
+        assertEquals("[y]", block.getRow(2, null).toString());
+        block.clearRow(2);
+        assertEquals("[null]", block.getRow(2, null).toString());
+        block.setRow(2, null);
+        assertNull(block.getRow(2, null));
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.impl;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author zinal
+ */
+public class XUniqCacheTest {
+
+    @Test
+    public void testLookup() {
+        final XUniqCache cache = new XUniqCache(100);
+        final long key = XUniqCache.makeKey("inn", "7701234567");
+        assertNotEquals(key, XUniqCache.makeKey("snils", "7701234567"));
+        assertNotEquals(key, XUniqCache.makeKey("inn", "7701234568"));
+        assertEquals(-1, cache.lookup(key));
+        cache.store(key, 3, XUniqCache.makeTarget("5509876543"));
+        final int entry = cache.lookup(key);
+        assertTrue(entry >= 0);
+        assertEquals(3, cache.getIteration(entry));
+        assertEquals(XUniqCache.makeTarget("5509876543"), cache.getTarget(entry));
+        assertEquals(1L, cache.getHits());
+        assertEquals(1L, cache.getMisses());
+    }
+
+    @Test
+    public void testEviction() {
+        final XUniqCache cache = new XUniqCache(64);
+        final int count = 10000;
+        for (int i=0; i<count; ++i)
+            cache.store(XUniqCache.makeKey("p", "v" + i), i, i);
+        // the table is bounded, and the recent values are there
+        assertEquals(64, cache.getCapacity());
+        int found = 0;
+        for (int i=0; i<count; ++i) {
+            final int entry = cache.lookup(XUniqCache.makeKey("p", "v" + i));
+            if (entry >= 0) {
+                assertEquals(i, cache.getIteration(entry));
+                ++found;
+            }
+        }
+        assertTrue(found > 0 && found <= 64);
+        final int entry = cache.lookup(XUniqCache.makeKey("p", "v" + (count-1)));
+        assertTrue(entry >= 0);
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import com.ibm.dsmask.impl.*;
+
+/**
+ * In-memory input and output links over the mock data,
+ * collecting the output rows for later comparison.
+ * @author zinal
+ */
+public class MemoryLinkMock implements XLinkInput, XLinkOutput {
+
+    private final MockData mockData;
+    private final List<XColumnInfo> columns = new ArrayList<>();
+    private final List<Map<Integer, Object>> output = new ArrayList<>();
+    private int position = 0;
+    private int rejectCount = 0;
+
+    public MemoryLinkMock(MockData mockData) {
+        this.mockData = mockData;
+        for (MaskingMockColumn kmc : mockData.getColumns()) {
+            columns.add(new XColumnInfo(kmc.getNumber(), kmc.getName()));
+        }
+    }
+
+    public List<Map<Integer, Object>> getOutput() {
+        return output;
+    }
+
+    public int getRejectCount() {
+        return rejectCount;
+    }
+
+    @Override
+    public List<XColumnInfo> getInputColumns() {
+        return columns;
+    }
+
+    @Override
+    public XRowInput readRecord() {
+        if (position >= mockData.getData().size())
+            return null;
+        final Object[] data = mockData.getData().get(position++);
+        return (int index) -> data[index-1];
+    }
+
+    @Override
+    public List<XColumnInfo> getOutputColumns() {
+        return columns;
+    }
+
+    @Override
+    public XRowOutput getOutputRecord() {
+        return new Row();
+    }
+
+    @Override
+    public void writeRecord(XRowOutput record) {
+        output.add(((Row)record).values);
+    }
+
+    @Override
+    public boolean hasRejectLink() {
+        return false;
+    }
+
+    @Override
+    public XRowReject getRejectRecord(XRowInput inputRecord) {
+        return null;
+    }
+
+    @Override
+    public void writeRecord(XRowReject rejectRecord) {
+        ++rejectCount;
+    }
+
+    private static final class Row implements XRowOutput {
+
+        private final Map<Integer, Object> values = new TreeMap<>();
+
+        @Override
+        public void setValue(int index, Object value) {
+            values.put(index, value);
+        }
+
+        @Override
+        public void setValueAsString(int index, String value) {
+            values.put(index, value);
+        }
+
+    }
+
+}
@@ -17,7 +17,9 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import com.ibm.dsmask.beans.MskContext;
 import com.ibm.dsmask.beans.MskKey;
+import com.ibm.dsmask.impl.ContextLoader;
 import com.ibm.dsmask.impl.XKeeper;
+import com.ibm.dsmask.impl.XMasker;
 import com.ibm.dsmask.impl.XServices;
 import com.ibm.dsmask.uniq.*;
 
@@ -27,6 +29,9 @@ import com.ibm.dsmask.uniq.*;
  */
 public class TestResources {
 
+    // name of the test suite rules database
+    public static final String RULES_NAME = "dsmask-testsuite";
+
     private MskContext context = null;
     private XKeeper keeper = null;
     private XServices services = null;
@@ -59,6 +64,60 @@ public class TestResources {
         return keeper;
     }
 
+    /**
+     * @return Directory of the test suite rules database
+     */
+    protected static File getRulesPath() {
+        return new File(new File("..", "testsuite"), "rules");
+    }
+
+    /**
+     * Load the masking context from the test suite rules database.
+     * @param tableName Table name, in the "source" database
+     * @return Masking context, with the test dictionaries
+     * @throws Exception
+     */
+    protected MskContext loadContext(String tableName) throws Exception {
+        final MskContext ctx;
+        try (ContextLoader loader = new ContextLoader(
+                getRulesPath().getAbsolutePath(), RULES_NAME)) {
+            ctx = loader.load("source", tableName, null);
+        }
+        ctx.setDictPath(getContext().getDictPath());
+        return ctx;
+    }
+
+    /**
+     * Run the configured masker over the table with the test suite rules.
+     * @param masker Masker with the links and options set
+     * @param tableName Table name, in the "source" database
+     * @return The masker passed
+     * @throws Exception
+     */
+    protected XMasker runMasker(XMasker masker, String tableName)
+            throws Exception {
+        return runMasker(masker, tableName, new XServices());
+    }
+
+    /**
+     * Run the configured masker over the table with the test suite rules.
+     * @param masker Masker with the links and options set
+     * @param tableName Table name, in the "source" database
+     * @param services Services to be used by the masker
+     * @return The masker passed
+     * @throws Exception
+     */
+    protected XMasker runMasker(XMasker masker, String tableName,
+            XServices services) throws Exception {
+        masker.setContext(loadContext(tableName));
+        masker.setServices(services);
+        if (! masker.buildIndexMap())
+            throw new IllegalStateException("No columns to mask in " + tableName);
+        masker.validateFields();
+        masker.run();
+        return masker;
+    }
+
     protected static final class UniqStoreExt extends UniqStore {
 
         public UniqStoreExt() {
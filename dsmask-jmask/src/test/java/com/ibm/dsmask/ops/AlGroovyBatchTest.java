@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.ops;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import groovy.lang.GroovySystem;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.tools.GroovyClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import com.ibm.dsmask.beans.*;
+import com.ibm.dsmask.impl.*;
+import com.ibm.dsmask.util.ScriptClasses;
+
+/**
+ * Statically compiled scripts and the batch entry point
+ * should give the same results as the dynamic per-row calls.
+ * @author zinal
+ */
+public class AlGroovyBatchTest {
+
+    private static final int BATCH = 50;
+
+    private static final String ROW_SCRIPT =
+            "String invoke(String a, Integer b) {\n"
+            + "  if (a==null) return null\n"
+            + "  return a.toUpperCase() + '-' + (b==null ? 0 : b * 3)\n"
+            + "}\n";
+
+    private static final String BATCH_SCRIPT = ROW_SCRIPT
+            + "Object[] invokeBatch(Object[][] input) {\n"
+            + "  Object[] retval = new Object[input.length]\n"
+            + "  for (int i=0; i<input.length; ++i)\n"
+            + "    retval[i] = invoke((String) input[i][0], (Integer) input[i][1])\n"
+            + "  return retval\n"
+            + "}\n";
+
+    @Test
+    public void testCompilation() {
+        final GroovyRunner runner = new GroovyRunner(true);
+        assertTrue(runner.makeInvoker(ROW_SCRIPT).isStaticCompiled());
+        assertFalse(runner.makeInvoker(ROW_SCRIPT).hasBatch());
+        assertTrue(runner.makeInvoker(BATCH_SCRIPT).hasBatch());
+        // untyped code and binding variables need the dynamic compilation
+        final GroovyInvoker dynamic = runner.makeInvoker(
+                "def invoke(x) { dsmask.currentIteration + x.length() }");
+        assertFalse(dynamic.isStaticCompiled());
+        assertEquals(3, dynamic.invoke(new Object[] {"abc"}));
+        final GroovyInvoker wrapped = runner.makeInvoker("return input.length");
+        assertEquals(2, wrapped.invoke(new Object[] {"a", "b"}));
+        assertFalse(new GroovyRunner(false).makeInvoker(ROW_SCRIPT)
+                .isStaticCompiled());
+    }
+
+    @Test
+    public void testPrecompiled() {
+        final GroovyRunner runner = new GroovyRunner(true);
+        // classes compiled from the other text, to see which ones are used
+        final String text = "def invoke(String a) { a + '-source' }";
+        final String other = "def invoke(String a) { a + '-compiled' }";
+        final Object[] in = new Object[] {"x"};
+        assertEquals("x-compiled", runner.makeInvoker(text,
+                precompile(text, other, GroovySystem.getVersion()))
+                .invoke(in));
+        // stale classes are ignored
+        assertEquals("x-source", runner.makeInvoker(text,
+                precompile(text + " ", other, "0.0.1")).invoke(in));
+        assertEquals("x-source", runner.makeInvoker(text,
+                precompile(other, other, GroovySystem.getVersion()))
+                .invoke(in));
+        assertEquals("x-source", runner.makeInvoker(text,
+                new byte[] {1, 2, 3}).invoke(in));
+        assertEquals("x-source", runner.makeInvoker(text, null).invoke(in));
+    }
+
+    @Test
+    public void testMixed() {
+        final GroovyRunner runner = new GroovyRunner(true);
+        final Object[] in = new Object[] {"x"};
+        // compiled at runtime, dynamically, under the same class name
+        final GroovyInvoker dyn = runner.makeInvoker(
+                "def invoke(String a) { a + '-' + zz }");
+        assertFalse(dyn.isStaticCompiled());
+        final String text = "def invoke(String a) { a + '-pre' }";
+        assertEquals("x-pre", runner.makeInvoker(text,
+                precompile(text, text, GroovySystem.getVersion())).invoke(in));
+        final String other = "def invoke(String a) { a + '-other' }";
+        assertEquals("x-other", runner.makeInvoker(other,
+                precompile(other, other, GroovySystem.getVersion())).invoke(in));
+        assertEquals("x-dyn", runner.makeInvoker(
+                "def invoke(String a) { a + '-dyn' }").invoke(in));
+    }
+
+    private static byte[] precompile(String source, String text,
+            String version) {
+        final CompilationUnit cu = new CompilationUnit();
+        cu.addSource("script.groovy", text);
+        cu.compile(Phases.CLASS_GENERATION);
+        final Map<String, byte[]> classes = new LinkedHashMap<>();
+        for (GroovyClass gc : cu.getClasses())
+            classes.put(gc.getName(), gc.getBytes());
+        return new ScriptClasses(version, false, source, "script", classes)
+                .encode();
+    }
+
+    @Test
+    public void testBatch() {
+        final List<String> expected = run(new GroovyRunner(false), ROW_SCRIPT);
+        assertEquals(expected, run(new GroovyRunner(true), ROW_SCRIPT));
+        assertEquals(expected, run(new GroovyRunner(true), BATCH_SCRIPT));
+        assertEquals(expected, run(new GroovyRunner(false), BATCH_SCRIPT));
+    }
+
+    private static List<String> run(GroovyRunner runner, String text) {
+        final List<String> retval = new ArrayList<>();
+        try (XKeeper keeper = new XKeeper(new MskContext(), new XServices())) {
+            final AlGroovyScript algo = new AlGroovyScript(runner,
+                    new MskFunc(1, "groovy-test", FunctionType.GroovyScript, text));
+            final XRowState[] rows = new XRowState[BATCH];
+            for (int i=0; i<BATCH; ++i)
+                rows[i] = new XRowState(new MskTable(), null);
+            final XWorkspace ws = new XWorkspace(keeper, rows);
+            for (int pass=0; pass<3; ++pass) {
+                ws.nextBatch(BATCH);
+                ws.nextStep(null, 0);
+                for (int i=0; i<BATCH; ++i) {
+                    final int n = i + pass * 17;
+                    final XVector in = new XVector(2);
+                    in.values[0] = (n % 11 == 3) ? null : ("val" + n);
+                    in.values[1] = (n % 5 == 0) ? null : n;
+                    ws.inputs[i] = in;
+                    ws.predicates[i] = (i % 7 != 2);
+                }
+                algo.execBatch(ws);
+                for (int i=0; i<BATCH; ++i)
+                    retval.add(String.valueOf(ws.outputs[i]));
+            }
+        }
+        return retval;
+    }
+
+}
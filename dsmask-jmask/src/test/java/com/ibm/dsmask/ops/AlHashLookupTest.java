@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.ops;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import com.ibm.dsmask.beans.*;
+import com.ibm.dsmask.impl.*;
+import com.ibm.dsmask.util.CompiledDict;
+import com.ibm.dsmask.util.CompiledDictWriter;
+import com.ibm.dsmask.util.ConfigSnapshot;
+
+/**
+ * Lookups over the compiled dictionary should give the same results
+ * as the lookups over the dictionary database.
+ * @author zinal
+ */
+public class AlHashLookupTest {
+
+    public static final String OPTIONS =
+            "DB testdict\n"
+            + "TABLE dict_test\n"
+            + "ID id\n"
+            + "OUT sex val\n"
+            + "KEY default\n";
+
+    @Test
+    public void testCompiled() throws Exception {
+        final File dir = Files.createTempDirectory("dsmask-hlookup").toFile();
+        try {
+            final File dbFile = new File(dir, "testdict");
+            final File hdFile = new File(dir, "testdict.dict_test"
+                    + CompiledDict.EXTENSION);
+            try (Connection con = DriverManager.getConnection(
+                    "jdbc:h2:" + dbFile.getAbsolutePath().replaceAll("\\\\", "/"))) {
+                fillDictionary(con);
+                CompiledDictWriter.export(con, "dict_test", "id", hdFile);
+            }
+            final File mvFile = ConfigSnapshot.databaseFile(dbFile.getPath());
+            final List<String> expected = runLookups(dir, OPTIONS + "COMPILED false\n");
+            // the unbound file is not used along with the database
+            assertFalse(hasCompiled(dir));
+            CompiledDict.bind(hdFile, mvFile);
+            assertTrue(hasCompiled(dir));
+            assertEquals(expected, runLookups(dir, OPTIONS));
+            // the database has been changed after the file was compiled
+            assertTrue(mvFile.setLastModified(mvFile.lastModified() + 2000L));
+            assertFalse(hasCompiled(dir));
+            assertEquals(expected, runLookups(dir, OPTIONS));
+            // the database is not needed for the compiled dictionary
+            for (File f : dir.listFiles()) {
+                if (f.getName().startsWith("testdict.mv"))
+                    assertTrue(f.delete());
+            }
+            final List<String> actual = runLookups(dir, OPTIONS);
+            assertEquals(expected, actual);
+        } finally {
+            for (File f : dir.listFiles())
+                f.delete();
+            dir.delete();
+        }
+    }
+
+    private static boolean hasCompiled(File dir) {
+        final MskContext ctx = new MskContext();
+        ctx.setDictPath(dir.getAbsolutePath());
+        try (XKeeper keeper = new XKeeper(ctx, new XServices())) {
+            return keeper.openCompiledDict("testdict", "dict_test") != null;
+        }
+    }
+
+    private static void fillDictionary(Connection con) throws Exception {
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE TABLE dict_test(id INTEGER NOT NULL PRIMARY KEY, "
+                    + "val VARCHAR(40) NOT NULL, sex CHAR(1) NOT NULL)");
+        }
+        try (PreparedStatement ps = con.prepareStatement(
+                "INSERT INTO dict_test(id, val, sex) VALUES(?,?,?)")) {
+            for (int i=0; i<5000; ++i) {
+                ps.setInt(1, i);
+                ps.setString(2, "Значение " + i);
+                ps.setString(3, (i % 2 == 0) ? "M" : "F");
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static List<String> runLookups(File dir, String options) {
+        final MskContext ctx = new MskContext();
+        ctx.setDictPath(dir.getAbsolutePath());
+        ctx.addKey(new MskKey("default", "zztop-key"));
+        final List<String> retval = new ArrayList<>();
+        try (XKeeper keeper = new XKeeper(ctx, new XServices())) {
+            final AlHashLookup algo = new AlHashLookup(keeper,
+                    new MskFunc(1, "hash-test", FunctionType.HashLookup, options));
+            XVector in = new XVector(1);
+            XVector out = null;
+            for (int i=0; i<1000; ++i) {
+                in.values[0] = "Input value " + (i % 700);
+                out = algo.exec(in, out, i % 3);
+                retval.add(out.toString());
+            }
+            in.values[0] = null;
+            out = algo.exec(in, out);
+            retval.add(out.toString());
+        }
+        return retval;
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.ops;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import com.ibm.dsmask.beans.*;
+import com.ibm.dsmask.impl.*;
+
+/**
+ * Batched key lookups should give the same results as the row-by-row ones.
+ * @author zinal
+ */
+public class AlKeyLookupTest {
+
+    public static final String OPTIONS_1 =
+            "DB testdict\n"
+            + "TABLE dict_key\n"
+            + "KEYS code\n"
+            + "OUT val num\n";
+
+    public static final String OPTIONS_2 =
+            "DB testdict\n"
+            + "TABLE dict_key\n"
+            + "KEYS region code\n"
+            + "OUT val\n"
+            + "INDEXES 2,1\n";
+
+    private static final int BATCH = 250;
+
+    @Test
+    public void testBatch() throws Exception {
+        final File dir = makeDictionary();
+        try {
+            for (String options : new String[] {OPTIONS_1, OPTIONS_2}) {
+                final List<String> expected = runLookups(dir, options
+                        + "CHUNK 1\n", false, false);
+                assertEquals(3 * BATCH, expected.size());
+                assertTrue(expected.stream().anyMatch(v -> v.contains("Значение")));
+                assertEquals(expected, runLookups(dir, options, true, false));
+                assertEquals(expected, runLookups(dir, options
+                        + "CHUNK 7\nCACHE 50\n", true, false));
+                assertEquals(expected, runLookups(dir, options
+                        + "CACHE 1000\n", false, false));
+            }
+        } finally {
+            dropDictionary(dir);
+        }
+    }
+
+    @Test
+    public void testRecheck() throws Exception {
+        final File dir = makeDictionary();
+        try {
+            // "05" matches the integer 5 in the database, but not in Java
+            final List<String> expected = runLookups(dir, OPTIONS_2
+                    + "CHUNK 1\n", false, true);
+            assertEquals(expected, runLookups(dir, OPTIONS_2, true, true));
+            assertEquals(expected, runLookups(dir, OPTIONS_2
+                    + "CHUNK 7\n", true, true));
+            // the misses are trusted only when configured so
+            assertNotEquals(expected, runLookups(dir, OPTIONS_2
+                    + "RECHECK false\n", true, true));
+        } finally {
+            dropDictionary(dir);
+        }
+    }
+
+    private static File makeDictionary() throws Exception {
+        final File dir = Files.createTempDirectory("dsmask-klookup").toFile();
+        final File dbFile = new File(dir, "testdict");
+        try (Connection con = DriverManager.getConnection(
+                "jdbc:h2:" + dbFile.getAbsolutePath().replaceAll("\\\\", "/"))) {
+            fillDictionary(con);
+        }
+        return dir;
+    }
+
+    private static void dropDictionary(File dir) {
+        for (File f : dir.listFiles())
+            f.delete();
+        dir.delete();
+    }
+
+    private static void fillDictionary(Connection con) throws Exception {
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE TABLE dict_key(code VARCHAR(20) NOT NULL, "
+                    + "region INTEGER NOT NULL, val VARCHAR(40), num INTEGER)");
+        }
+        try (PreparedStatement ps = con.prepareStatement(
+                "INSERT INTO dict_key(code, region, val, num) VALUES(?,?,?,?)")) {
+            for (int i=0; i<500; ++i) {
+                // codes are unique, regions are not
+                ps.setString(1, "K" + i);
+                ps.setInt(2, i % 10);
+                ps.setString(3, (i % 11 == 0) ? null : "Значение " + i);
+                ps.setInt(4, i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static List<String> runLookups(File dir, String options,
+            boolean batch, boolean zeroes) {
+        final MskContext ctx = new MskContext();
+        ctx.setDictPath(dir.getAbsolutePath());
+        final List<String> retval = new ArrayList<>();
+        try (XKeeper keeper = new XKeeper(ctx, new XServices())) {
+            final AlKeyLookup algo = new AlKeyLookup(keeper,
+                    new MskFunc(1, "key-test", FunctionType.KeyLookup, options));
+            final XRowState[] rows = new XRowState[BATCH];
+            for (int i=0; i<BATCH; ++i)
+                rows[i] = new XRowState(new MskTable(), null);
+            final XWorkspace ws = new XWorkspace(keeper, rows);
+            for (int pass=0; pass<3; ++pass) {
+                ws.nextBatch(BATCH);
+                ws.nextStep(null, 0);
+                for (int i=0; i<BATCH; ++i) {
+                    final int n = (i * 7 + pass * 100) % 600;
+                    final XVector in = new XVector(2);
+                    // some codes are missing, some are null
+                    in.values[0] = (n % 13 == 5) ? null : ("K" + n);
+                    // regions of various types, some not matching
+                    if (n % 3 == 0)
+                        in.values[1] = (zeroes ? "0" : "") + (n % 10);
+                    else if (n % 3 == 1)
+                        in.values[1] = (long) (n % 10);
+                    else
+                        in.values[1] = (n % 17 == 0) ? 99 : n % 10;
+                    ws.inputs[i] = in;
+                    ws.predicates[i] = (i % 9 != 4);
+                }
+                if (batch) {
+                    algo.execBatch(ws);
+                } else {
+                    for (int i=0; i<BATCH; ++i)
+                        ws.computeNormal(i, algo);
+                }
+                for (int i=0; i<BATCH; ++i)
+                    retval.add(String.valueOf(ws.outputs[i]));
+            }
+        }
+        return retval;
+    }
+
+}
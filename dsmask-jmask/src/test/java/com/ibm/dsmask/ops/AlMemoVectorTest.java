@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.ops;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import com.ibm.dsmask.mock.*;
+import com.ibm.dsmask.beans.*;
+import com.ibm.dsmask.impl.*;
+
+/**
+ *
+ * @author zinal
+ */
+public class AlMemoVectorTest extends TestResources {
+
+    public static final String OPTIONS =
+            "KEY default\n"
+            + "FROM 0\n"
+            + "TO 1000000\n"
+            + "MEMO 100\n";
+
+    public AlMemoVectorTest() {
+    }
+
+    @Test
+    public void testMemo() {
+        final MskFunc function = new MskFunc(21, "M1",
+                FunctionType.NumberHash, OPTIONS);
+        getContext().addFunction(function);
+        final AlNumberHash plain = new AlNumberHash(getKeeper(), function);
+        final AlMemoVector memo = new AlMemoVector(plain, "M1", 100);
+        final XVector in = new XVector(1);
+        XVector out = null;
+        for (int pass=0; pass<3; ++pass) {
+            for (int i=0; i<50; ++i) {
+                in.values[0] = i;
+                out = memo.exec(in, out);
+                assertEquals(plain.exec(in, null).values[0], out.values[0]);
+                out = memo.exec(in, out, 1);
+                assertEquals(plain.exec(in, null, 1).values[0], out.values[0]);
+            }
+        }
+        assertEquals(100L, memo.getMisses());
+        assertEquals(200L, memo.getHits());
+        assertEquals(0L, memo.getEvictions());
+        for (int i=50; i<100; ++i) {
+            in.values[0] = i;
+            out = memo.exec(in, out, 2);
+        }
+        assertEquals(50L, memo.getEvictions());
+    }
+
+    @Test
+    public void testBatch() {
+        final MskFunc function = new MskFunc(23, "M3",
+                FunctionType.NumberHash, OPTIONS);
+        getContext().addFunction(function);
+        final AlNumberHash plain = new AlNumberHash(getKeeper(), function);
+        final AlMemoBatch memo = new AlMemoBatch(plain, "M3", 100);
+        final XRowState[] rows = new XRowState[40];
+        for (int i=0; i<rows.length; ++i)
+            rows[i] = new XRowState(new MskTable(), null);
+        final XWorkspace ws = new XWorkspace(getKeeper(), rows);
+        for (int pass=0; pass<2; ++pass) {
+            ws.nextBatch(rows.length);
+            ws.nextStep(null, 0);
+            for (int i=0; i<rows.length; ++i) {
+                final XVector in = new XVector(1);
+                // the second pass repeats half of the values
+                in.values[0] = pass * 20 + i;
+                ws.inputs[i] = in;
+                ws.predicates[i] = (i % 10 != 3);
+            }
+            memo.execBatch(ws);
+            for (int i=0; i<rows.length; ++i) {
+                assertEquals(i % 10 != 3, ws.predicates[i]);
+                if (ws.predicates[i])
+                    assertEquals(plain.exec(ws.inputs[i], null).values[0],
+                            ws.outputs[i].values[0]);
+            }
+        }
+        assertEquals(18L, memo.getHits());
+        assertEquals(54L, memo.getMisses());
+    }
+
+    @Test
+    public void testKeeper() {
+        final MskFunc function = new MskFunc(22, "M2",
+                FunctionType.NumberHash, OPTIONS);
+        getContext().addFunction(function);
+        final XExecutor xe = getKeeper().makeExecutor(function);
+        final StringBuilder sb = new StringBuilder();
+        ((StatsDumper) xe).dumpStats(sb);
+        assertTrue(sb.toString(), sb.toString().startsWith("Memo cache [M2]"));
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.tool;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import com.ibm.dsmask.mock.*;
+
+/**
+ * File masking runner should produce the same output
+ * regardless of the number of splits.
+ * @author zinal
+ */
+public class FileMaskTest extends TestResources {
+
+    @Test
+    public void testFormats() {
+        final DelimitedFormat csv = new DelimitedFormat(',');
+        final List<String> cols = Arrays.asList("a", "b", "c", "d");
+        final String line = "1,\"x, \"\"y\"\"\",,\"\"";
+        final Object[] values = csv.parse(line, cols);
+        assertEquals(Arrays.asList("1", "x, \"y\"", null, ""),
+                Arrays.asList(values));
+        assertEquals(line, csv.format(values, cols));
+        assertEquals(cols, csv.parseColumns("a, b,c ,d"));
+
+        final JsonLinesFormat json = new JsonLinesFormat();
+        final String jline = "{\"a\":1,\"b\":\"q\\\"\\u0041\\n\",\"c\":null,"
+                + "\"d\":[1,{\"e\":\"]\"}],\"f\":1.50,\"g\":true}";
+        final List<String> jcols = json.parseColumns(jline);
+        assertEquals(Arrays.asList("a", "b", "c", "d", "f", "g"), jcols);
+        final Object[] jvals = json.parse(jline, jcols);
+        assertEquals(1L, jvals[0]);
+        assertEquals("q\"A\n", jvals[1]);
+        assertNull(jvals[2]);
+        assertEquals(new BigDecimal("1.50"), jvals[4]);
+        assertEquals(Boolean.TRUE, jvals[5]);
+        assertEquals(jline.replace("\\u0041", "A"), json.format(jvals, jcols));
+    }
+
+    @Test
+    public void testSplits() throws Exception {
+        final File f = File.createTempFile("dsmask-split", ".txt");
+        final List<String> lines = new ArrayList<>();
+        try (PrintWriter pw = new PrintWriter(f, "UTF-8")) {
+            for (int i=0; i<30000; ++i) {
+                final String v = "line " + i + (i % 7 == 0 ? " жж" : "");
+                lines.add(v);
+                pw.print(v);
+                pw.print((i % 3 == 0) ? "\r\n" : "\n");
+            }
+        }
+        final List<FileSplit> splits = FileSplit.split(f, 5);
+        assertEquals(5, splits.size());
+        final List<String> result = new ArrayList<>();
+        for (FileSplit fs : splits) {
+            try (SplitLineReader r = new SplitLineReader(fs, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = r.readLine()) != null)
+                    result.add(line);
+            }
+        }
+        assertEquals(lines, result);
+        f.delete();
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        final File dir = Files.createTempDirectory("dsmask-filemask").toFile();
+        final File input = new File(dir, "input.csv");
+        final MockData mockData = new MockData(MockData.TAB1);
+        final DelimitedFormat csv = new DelimitedFormat(',');
+        final List<String> cols = new ArrayList<>();
+        for (MaskingMockColumn mc : mockData.getColumns())
+            cols.add(mc.getName());
+        int total = 0;
+        try (PrintWriter pw = new PrintWriter(input, "UTF-8")) {
+            pw.println(csv.formatHeader(cols));
+            while (input.length() < 4L * FileSplit.MIN_LENGTH) {
+                for (Object[] row : mockData.getData()) {
+                    pw.println(csv.format(row, cols));
+                    ++total;
+                }
+                pw.flush();
+            }
+        }
+        final File out1 = new File(dir, "out1.csv");
+        final FileMask.Summary s1 = runMask(input, out1, 1);
+        assertEquals(1, s1.getSplits());
+        assertEquals(total, s1.getRecords());
+        final File out3 = new File(dir, "out3.csv");
+        final FileMask.Summary s3 = runMask(input, out3, 3);
+        assertEquals(3, s3.getSplits());
+        assertEquals(total, s3.getRecords());
+        assertEquals(s1.getRejected(), s3.getRejected());
+        final List<String> lines1 = Files.readAllLines(out1.toPath());
+        assertEquals(lines1, Files.readAllLines(out3.toPath()));
+        assertEquals(Files.readAllLines(new File(out1.getPath() + ".rej").toPath()),
+                Files.readAllLines(new File(out3.getPath() + ".rej").toPath()));
+        assertEquals(csv.formatHeader(cols), lines1.get(0));
+        assertNotEquals(Files.readAllLines(input.toPath()).get(1), lines1.get(1));
+        for (File f : dir.listFiles())
+            f.delete();
+        dir.delete();
+    }
+
+    private FileMask.Summary runMask(File input, File output, int splits)
+            throws Exception {
+        final FileMask fm = FileMask.parse(new String[] {
+            "-c", getRulesPath().getAbsolutePath(),
+            "-n", RULES_NAME,
+            "-d", getContext().getDictPath(),
+            "-p", "source." + MockData.TAB1,
+            "-t", String.valueOf(splits),
+            "-s", String.valueOf(splits),
+            "-b", "50",
+            "-r",
+            "-o", output.getAbsolutePath(),
+            input.getAbsolutePath()
+        });
+        return fm.run();
+    }
+
+}
@@ -13,10 +13,14 @@
 package com.ibm.dsmask.uniq;
 
 import java.io.BufferedOutputStream;
+import java.io.DataInput;
 import java.io.DataInputStream;
+import java.io.DataOutput;
 import java.io.DataOutputStream;
+import java.io.IOException;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.util.concurrent.Semaphore;
 
 /**
  *
@@ -28,6 +32,8 @@ public class UniqConnection implements Runnable {
             = org.slf4j.LoggerFactory.getLogger(UniqConnection.class);
 
     public static final int MAX_BATCH = 1000000;
+    // max tagged requests being processed for a single connection
+    public static final int MAX_IN_FLIGHT = 8;
 
     private final UniqSocketServer owner;
     private final Socket socket;
@@ -36,6 +42,8 @@ public class UniqConnection implements Runnable {
 
     private final Object guard = new Object();
     private volatile boolean timeToQuit = false;
+    // tagged requests being processed
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
 
     private int numCalls = 0;
     private int numRequests = 0;
@@ -86,17 +94,163 @@ public class UniqConnection implements Runnable {
     }
 
     private boolean runStore() throws Exception {
+        final int opcode;
         try {
-            int val = socket.getInputStream().read();
-            if (val < 0)
+            opcode = socket.getInputStream().read();
+            if (opcode < 0)
                 return false;
-            if (val != 123)
-                throw new IllegalStateException("Bad operation markup octet");
         } catch(SocketTimeoutException ste) {
             return true;
         }
+        switch (opcode) {
+            case UniqProtocol.OP_STORE:
+                runStoreSync();
+                break;
+            case UniqProtocol.OP_STORE_TAGGED:
+                runStoreTagged();
+                break;
+            case UniqProtocol.OP_STORE_V2:
+                runStoreV2();
+                break;
+            default:
+                throw new IllegalStateException("Bad operation markup octet");
+        }
+        return true;
+    }
+
+    /**
+     * Synchronous store request: the response is sent immediately.
+     */
+    private void runStoreSync() throws Exception {
         // Receive and unpack the arguments
         String repository = dais.readUTF();
+        UniqRequest[] reqs = readRequests();
+        // Make the service call
+        UniqResponse[] resp = owner.getStore().store(repository, reqs);
+        // Pack and send the results
+        synchronized(daos) {
+            writeResponses(resp);
+            daos.flush();
+        }
+    }
+
+    /**
+     * Tagged store request: executed in the worker pool, and the response
+     * is sent as soon as it is ready, possibly out of order.
+     */
+    private void runStoreTagged() throws Exception {
+        // Receive and unpack the arguments
+        final int tag = dais.readInt();
+        final String repository = dais.readUTF();
+        final UniqRequest[] reqs = readRequests();
+        submit(() -> {
+            try {
+                // Make the service call
+                UniqResponse[] resp = owner.getStore().store(repository, reqs);
+                // Pack and send the results
+                synchronized(daos) {
+                    daos.writeInt(tag);
+                    writeResponses(resp);
+                    daos.flush();
+                }
+            } catch(Exception ex) {
+                LOG.error("UniqConnection tagged request failed", ex);
+                // The client cannot recover without the response
+                try {
+                    socket.close();
+                } catch(Exception any) {}
+            }
+        });
+    }
+
+    /**
+     * Tagged store request in the compact binary format.
+     */
+    private void runStoreV2() throws Exception {
+        // Receive and unpack the arguments
+        final int tag = dais.readInt();
+        final UniqCodec.Frame frame = UniqCodec.readFrame(dais);
+        submit(() -> {
+            try {
+                final UniqCodec.Batch batch = UniqCodec.decodeRequests(
+                        frame.payload, MAX_BATCH);
+                // Make the service call
+                final UniqResponse[] resp = owner.getStore()
+                        .store(batch.repository, batch.requests);
+                // Pack and send the results
+                final byte[] payload = UniqCodec.encodeResponses(resp);
+                synchronized(daos) {
+                    daos.writeInt(tag);
+                    UniqCodec.writeFrame(daos, payload, frame.isDeflateReply(), 0);
+                    daos.flush();
+                    countResponses(resp);
+                }
+            } catch(Exception ex) {
+                LOG.error("UniqConnection v2 request failed", ex);
+                // The client cannot recover without the response
+                try {
+                    socket.close();
+                } catch(Exception any) {}
+            }
+        });
+    }
+
+    /**
+     * Pass the tagged request to the worker pool.
+     * Blocks the reading of the next requests while the limit
+     * of requests in flight is reached.
+     * @param task Request processing task
+     * @throws InterruptedException when interrupted while waiting
+     */
+    private void submit(Runnable task) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            owner.getWorkers().submit(() -> {
+                try {
+                    task.run();
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch(RuntimeException ex) {
+            inFlight.release();
+            throw ex;
+        }
+    }
+
+    private UniqRequest[] readRequests() throws Exception {
+        return readRequests(dais);
+    }
+
+    /**
+     * Write the responses and update the statistics.
+     * Should be called while holding the output stream lock.
+     * @param resp Responses to be written
+     */
+    private void writeResponses(UniqResponse[] resp) throws Exception {
+        writeResponses(daos, resp);
+        countResponses(resp);
+    }
+
+    /**
+     * Update the statistics.
+     * Should be called while holding the output stream lock.
+     * @param resp Responses sent
+     */
+    private void countResponses(UniqResponse[] resp) {
+        numCalls += 1;
+        numRequests += resp.length;
+        numHints += countHints(resp);
+        numRejects += countRejects(resp);
+    }
+
+    /**
+     * Read the array of requests, following the repository name.
+     * @param dais Input data
+     * @return Array of requests
+     * @throws IOException on read error
+     */
+    public static UniqRequest[] readRequests(DataInput dais) throws IOException {
         int count = dais.readInt();
         if (count < 0 || count > MAX_BATCH) {
             throw new IllegalStateException("Protocol violation: "
@@ -113,27 +267,40 @@ public class UniqConnection implements Runnable {
                 r.setConflict((String) null);
             reqs[i] = r;
         }
-        // Make the service call
-        UniqResponse[] resp = owner.getStore().store(repository, reqs);
-        // Pack and send the results
-        int hintCount = 0;
-        int rejectCount = 0;
-        daos.writeInt(count);
+        return reqs;
+    }
+
+    /**
+     * Write the array of responses.
+     * @param daos Output data
+     * @param resp Responses to be written
+     * @throws IOException on write error
+     */
+    public static void writeResponses(DataOutput daos, UniqResponse[] resp)
+            throws IOException {
+        daos.writeInt(resp.length);
         for (UniqResponse r : resp) {
             daos.writeBoolean(r.isLinkedCorrectly());
             daos.writeInt(r.getIteration());
-            if (r.isLinkedCorrectly()==false)
-                rejectCount += 1;
+        }
+    }
+
+    public static int countHints(UniqResponse[] resp) {
+        int count = 0;
+        for (UniqResponse r : resp) {
             if (r.getIteration() > 0)
-                hintCount += 1;
+                count += 1;
         }
-        daos.flush();
+        return count;
+    }
 
-        numCalls += 1;
-        numRequests += reqs.length;
-        numHints += hintCount;
-        numRejects += rejectCount;
-        return true;
+    public static int countRejects(UniqResponse[] resp) {
+        int count = 0;
+        for (UniqResponse r : resp) {
+            if (r.isLinkedCorrectly()==false)
+                count += 1;
+        }
+        return count;
     }
 
 }
@@ -34,7 +34,8 @@ public class UniqDemo {
             String mode = "net";
             if (args.length > 0)
                 mode = args[0];
-            new UniqDemo("net".equalsIgnoreCase(mode)) . run();
+            new UniqDemo("net".equalsIgnoreCase(mode) || "nio".equalsIgnoreCase(mode),
+                    "nio".equalsIgnoreCase(mode)) . run();
         } catch(Exception ex) {
             ex.printStackTrace(System.out);
             System.exit(1);
@@ -45,6 +46,7 @@ public class UniqDemo {
     public static final String STORE_SECRET = "abcdefg";
 
     public final boolean networkMode;
+    public final boolean nioMode;
 
     public int numTotal = 0;
     public int numHint = 0;
@@ -52,8 +54,13 @@ public class UniqDemo {
     public int numFail = 0;
     public int numIter = 0;
 
-    public UniqDemo(boolean networkMode) {
+    public UniqDemo(boolean networkMode, boolean nioMode) {
         this.networkMode = networkMode;
+        this.nioMode = nioMode;
+    }
+
+    public UniqDemo(boolean networkMode) {
+        this(networkMode, false);
     }
 
     public void run() throws Exception {
@@ -108,7 +115,9 @@ public class UniqDemo {
         UniqStore store = new UniqStore(workPath, 10, 5, 10);
         store.open();
         if (networkMode) {
-            UniqSocketServer service = new UniqSocketServer(10500, null, STORE_SECRET, store);
+            UniqServer service = nioMode ?
+                    new UniqNioServer(10500, null, STORE_SECRET, store) :
+                    new UniqSocketServer(10500, null, STORE_SECRET, store);
             Thread st = new Thread(service);
             st.setDaemon(true);
             st.setName("uniq-store-network-service");
@@ -128,11 +137,11 @@ public class UniqDemo {
 
     private static class MegaClient implements UniqProvider {
 
-        private final UniqSocketServer service;
+        private final UniqServer service;
         private final Thread serviceThread;
         private final ThreadLocal<UniqClient> client;
 
-        public MegaClient(UniqSocketServer service, Thread serviceThread,
+        public MegaClient(UniqServer service, Thread serviceThread,
                 String secret) throws Exception {
             this.service = service;
             this.serviceThread = serviceThread;
@@ -13,6 +13,7 @@
 package com.ibm.dsmask.uniq;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -75,6 +76,16 @@ public class UniqLazyCommit implements Runnable {
         }
     }
 
+    public void hasChanges(BitSet shards) {
+        synchronized(firstChangeTime) {
+            for (int shard = shards.nextSetBit(0); shard >= 0;
+                    shard = shards.nextSetBit(shard + 1)) {
+                if (firstChangeTime.get(shard) == null)
+                    firstChangeTime.put(shard, currentTime);
+            }
+        }
+    }
+
     @Override
     public void run() {
         resetQuit();
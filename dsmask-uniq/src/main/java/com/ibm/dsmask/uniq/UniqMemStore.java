@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.uniq;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Non-persistent uniqueness validation store, keeping the data
+ * in the off-heap hash tables.
+ *
+ * Values are stored as 128-bit digests: target digest maps to the
+ * source digest, and the resolution key digest maps to the iteration.
+ * Heap usage does not depend on the number of values stored.
+ * The logic is the same as in UniqShard.
+ * @author zinal
+ */
+public class UniqMemStore implements UniqProvider {
+
+    private static final org.slf4j.Logger LOG
+            = org.slf4j.LoggerFactory.getLogger(UniqMemStore.class);
+
+    public static final String DIGEST_NAME = "MD5";
+
+    private static final ThreadLocal<MessageDigest> DIGEST
+            = ThreadLocal.withInitial(() -> {
+                try {
+                    return MessageDigest.getInstance(DIGEST_NAME);
+                } catch(Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+
+    private final Segment[] segments;
+    private final int initialCapacity;
+
+    public UniqMemStore(int segmentCount, int initialCapacity) {
+        if (segmentCount < 1)
+            segmentCount = 1;
+        else if (segmentCount > 1000)
+            segmentCount = 1000;
+        this.initialCapacity = (initialCapacity > 0) ? initialCapacity : 1024;
+        this.segments = new Segment[segmentCount];
+        for (int i=0; i<segmentCount; ++i)
+            this.segments[i] = new Segment();
+    }
+
+    @Override
+    public UniqResponse[] store(String repository, UniqRequest[] rr) {
+        if (rr==null)
+            return null;
+        final UniqResponse[] response = new UniqResponse[rr.length];
+        final long[] target = new long[2];
+        final long[] source = new long[2];
+        final long[] resolution = new long[2];
+        for (int i=0; i<rr.length; ++i) {
+            final UniqRequest r = rr[i];
+            if (r==null)
+                continue;
+            // digests are computed outside of the locks
+            digest(r.getTarget(), target);
+            digest(r.getSource(), source);
+            Segment seg = getSegment(target);
+            final UniqResponse ur;
+            synchronized(seg) {
+                ur = seg.store(repository, r, target, source, resolution);
+            }
+            if (ur.isLinkedCorrectly() && r.getConflict()!=null) {
+                // hints are kept in the segment of the initial value
+                digest(UniqShardReq.getResolutionKey(r), resolution);
+                digest(r.getConflict(), target);
+                seg = getSegment(target);
+                synchronized(seg) {
+                    seg.table(repository, true)
+                            .put(resolution[0], resolution[1], r.getIteration(), 0L);
+                }
+            }
+            response[i] = ur;
+        }
+        return response;
+    }
+
+    /**
+     * @return Number of values stored
+     */
+    public long getSize() {
+        long total = 0L;
+        for (Segment seg : segments) {
+            synchronized(seg) {
+                for (UniqMemTable t : seg.reverse.values())
+                    total += t.size();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return Off-heap memory used, in bytes
+     */
+    public long getMemorySize() {
+        long total = 0L;
+        for (Segment seg : segments) {
+            synchronized(seg) {
+                for (UniqMemTable t : seg.reverse.values())
+                    total += t.getMemorySize();
+                for (UniqMemTable t : seg.conflict.values())
+                    total += t.getMemorySize();
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        LOG.info("Closing the memory store, values {}, memory {} bytes",
+                getSize(), getMemorySize());
+        for (Segment seg : segments) {
+            synchronized(seg) {
+                seg.reverse.values().forEach(UniqMemTable::clear);
+                seg.conflict.values().forEach(UniqMemTable::clear);
+                seg.reverse.clear();
+                seg.conflict.clear();
+            }
+        }
+    }
+
+    private Segment getSegment(long[] digest) {
+        // second half of the digest, the first one is used for slots
+        return segments[(int) ((digest[1] >>> 1) % segments.length)];
+    }
+
+    private static void digest(String value, long[] output) {
+        final MessageDigest md = DIGEST.get();
+        final ByteBuffer bb = ByteBuffer.wrap(
+                md.digest(value.getBytes(StandardCharsets.UTF_8)));
+        output[0] = bb.getLong(0);
+        output[1] = bb.getLong(8);
+        if (output[0]==0L && output[1]==0L)
+            output[1] = 1L; // zero is reserved for empty slots
+    }
+
+    /**
+     * Group of tables protected by a single lock.
+     */
+    private final class Segment {
+        // target digest -> source digest, per repository
+        final Map<String, UniqMemTable> reverse = new HashMap<>();
+        // resolution key digest -> iteration, per repository
+        final Map<String, UniqMemTable> conflict = new HashMap<>();
+
+        UniqMemTable table(String repository, boolean hints) {
+            final Map<String, UniqMemTable> m = hints ? conflict : reverse;
+            UniqMemTable t = m.get(repository);
+            if (t==null) {
+                t = new UniqMemTable(initialCapacity);
+                m.put(repository, t);
+            }
+            return t;
+        }
+
+        UniqResponse store(String repository, UniqRequest r,
+                long[] target, long[] source, long[] resolution) {
+            final UniqMemTable rev = table(repository, false);
+            final int slot = rev.indexOf(target[0], target[1]);
+            if (slot < 0) {
+                rev.put(target[0], target[1], source[0], source[1]);
+                return new UniqResponse(true);
+            }
+            if (rev.getValue1(slot)==source[0] && rev.getValue2(slot)==source[1])
+                return new UniqResponse(true);
+            if (r.getIteration()==0) {
+                // initial conflict, trying to grab the resolution
+                digest(UniqShardReq.getResolutionKey(r), resolution);
+                final UniqMemTable hints = table(repository, true);
+                final int hint = hints.indexOf(resolution[0], resolution[1]);
+                return new UniqResponse(false,
+                        (hint < 0) ? -1 : (int) hints.getValue1(hint));
+            }
+            return new UniqResponse(false);
+        }
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.uniq;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Open-addressing hash table located in the off-heap memory.
+ * Keys and values are 128-bit digests, stored as pairs of longs.
+ * The all-zero key marks the empty slot, so it must not be used.
+ * Not thread safe.
+ * @author zinal
+ */
+public class UniqMemTable {
+
+    // key (2 longs) + value (2 longs)
+    public static final int ENTRY_SIZE = 32;
+    // max slots per table, limited by the direct buffer size:
+    //   the byte offsets must fit into int (2^25 * 32 = 1 GiB)
+    public static final int MAX_CAPACITY = 1 << 25;
+
+    private ByteBuffer data;
+    private int capacity;
+    private final int maxCapacity;
+    private int size = 0;
+
+    public UniqMemTable(int initialCapacity) {
+        this(initialCapacity, MAX_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity Initial number of slots
+     * @param maxCapacity Max number of slots, power of 2 up to MAX_CAPACITY
+     */
+    public UniqMemTable(int initialCapacity, int maxCapacity) {
+        if (maxCapacity < 16 || maxCapacity > MAX_CAPACITY
+                || Integer.bitCount(maxCapacity) != 1)
+            throw new IllegalArgumentException("Illegal max capacity "
+                    + maxCapacity);
+        int cap = 16;
+        while (cap < initialCapacity && cap < maxCapacity)
+            cap <<= 1;
+        this.capacity = cap;
+        this.maxCapacity = maxCapacity;
+        this.data = ByteBuffer.allocateDirect(cap * ENTRY_SIZE);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return Off-heap memory used, in bytes
+     */
+    public long getMemorySize() {
+        return ((long) capacity) * ENTRY_SIZE;
+    }
+
+    /**
+     * Find the slot for the key.
+     * @param k1 Key part 1
+     * @param k2 Key part 2
+     * @return Slot number, or -1 if the key is missing
+     */
+    public int indexOf(long k1, long k2) {
+        final int slot = findSlot(data, capacity, k1, k2);
+        return isEmpty(data, slot) ? -1 : slot;
+    }
+
+    public long getValue1(int slot) {
+        return data.getLong(slot * ENTRY_SIZE + 16);
+    }
+
+    public long getValue2(int slot) {
+        return data.getLong(slot * ENTRY_SIZE + 24);
+    }
+
+    /**
+     * Insert the new entry, or replace the value of the existing one.
+     * @param k1 Key part 1
+     * @param k2 Key part 2
+     * @param v1 Value part 1
+     * @param v2 Value part 2
+     */
+    public void put(long k1, long k2, long v1, long v2) {
+        if (k1==0L && k2==0L)
+            throw new IllegalArgumentException("Zero key is not allowed");
+        int slot = findSlot(data, capacity, k1, k2);
+        if (isEmpty(data, slot)) {
+            // keep the load factor below 0.75
+            if ((size + 1) * 4L > capacity * 3L) {
+                grow();
+                slot = findSlot(data, capacity, k1, k2);
+            }
+            ++size;
+        }
+        final int pos = slot * ENTRY_SIZE;
+        data.putLong(pos, k1);
+        data.putLong(pos + 8, k2);
+        data.putLong(pos + 16, v1);
+        data.putLong(pos + 24, v2);
+    }
+
+    /**
+     * Release the memory. The table cannot be used after that.
+     */
+    public void clear() {
+        data = ByteBuffer.allocateDirect(0);
+        capacity = 0;
+        size = 0;
+    }
+
+    private void grow() {
+        if (capacity >= maxCapacity)
+            throw new IllegalStateException("Uniq memory table is full, "
+                    + "size " + size);
+        final int newCapacity = capacity << 1;
+        final ByteBuffer newData = ByteBuffer.allocateDirect(newCapacity * ENTRY_SIZE);
+        for (int slot = 0; slot < capacity; ++slot) {
+            if (isEmpty(data, slot))
+                continue;
+            final int pos = slot * ENTRY_SIZE;
+            final long k1 = data.getLong(pos);
+            final long k2 = data.getLong(pos + 8);
+            final int newPos = findSlot(newData, newCapacity, k1, k2) * ENTRY_SIZE;
+            newData.putLong(newPos, k1);
+            newData.putLong(newPos + 8, k2);
+            newData.putLong(newPos + 16, data.getLong(pos + 16));
+            newData.putLong(newPos + 24, data.getLong(pos + 24));
+        }
+        data = newData;
+        capacity = newCapacity;
+    }
+
+    /**
+     * Linear probing: the slot with the key, or the first empty slot.
+     */
+    private static int findSlot(ByteBuffer data, int capacity, long k1, long k2) {
+        final int mask = capacity - 1;
+        int slot = (int) mix(k1) & mask;
+        while (true) {
+            final int pos = slot * ENTRY_SIZE;
+            final long c1 = data.getLong(pos);
+            final long c2 = data.getLong(pos + 8);
+            if ((c1 == k1 && c2 == k2) || (c1 == 0L && c2 == 0L))
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Murmur3 finalizer, to spread the keys with the same low bits.
+     */
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static boolean isEmpty(ByteBuffer data, int slot) {
+        final int pos = slot * ENTRY_SIZE;
+        return data.getLong(pos) == 0L && data.getLong(pos + 8) == 0L;
+    }
+
+}
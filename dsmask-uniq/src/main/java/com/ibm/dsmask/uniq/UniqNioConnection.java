@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.uniq;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking connection state for UniqNioServer.
+ * All methods except the completion of requests are called
+ * by the selector thread.
+ * @author zinal
+ */
+public class UniqNioConnection {
+
+    private static final org.slf4j.Logger LOG
+            = org.slf4j.LoggerFactory.getLogger(UniqNioConnection.class);
+
+    // max requests being processed for a single connection
+    public static final int MAX_IN_FLIGHT = 8;
+    // initial input buffer size
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private final UniqNioServer owner;
+    private final SocketChannel channel;
+    private final String remote;
+    private SelectionKey key = null;
+
+    // input data, in "write" mode: position is the end of data
+    private ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+    // data to be sent, filled by the workers
+    private final Queue<ByteBuffer> output = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+
+    // expected handshake response, null after successful handshake
+    private String expected;
+    // true, if the connection has to be closed after output is sent
+    private boolean draining = false;
+    private volatile boolean failed = false;
+    private boolean closed = false;
+
+    // frame scanner state: offset of the next field to be checked
+    private int scanPos = 0;
+    // frame scanner state: requests left to be checked, -1 for header
+    private int scanItems = -1;
+
+    private final AtomicInteger numCalls = new AtomicInteger(0);
+    private final AtomicInteger numRequests = new AtomicInteger(0);
+    private final AtomicInteger numHints = new AtomicInteger(0);
+    private final AtomicInteger numRejects = new AtomicInteger(0);
+
+    public UniqNioConnection(UniqNioServer owner, SocketChannel channel)
+            throws Exception {
+        this.owner = owner;
+        this.channel = channel;
+        this.remote = String.valueOf(channel.getRemoteAddress());
+        final String request = owner.makeRequest();
+        this.expected = owner.makeResponse(request);
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new DataOutputStream(baos).writeUTF(request);
+        output.add(ByteBuffer.wrap(baos.toByteArray()));
+    }
+
+    public void register(Selector selector) throws Exception {
+        key = channel.register(selector, SelectionKey.OP_WRITE, this);
+    }
+
+    /**
+     * Handle the readiness event from the selector.
+     * @param key Selection key of the connection
+     */
+    public void handle(SelectionKey key) {
+        try {
+            if (key.isWritable())
+                writeOutput();
+            if (!closed && key.isReadable())
+                readInput();
+            update();
+        } catch(Exception ex) {
+            LOG.warn("UniqConnection exception, remote {}", remote, ex);
+            close();
+        }
+    }
+
+    /**
+     * Process the buffered input, send the output and re-compute
+     * the interest set of the connection.
+     */
+    public void update() {
+        if (closed)
+            return;
+        try {
+            if (failed) {
+                close();
+                return;
+            }
+            processInput();
+            writeOutput();
+            if (closed)
+                return;
+            if (draining && output.isEmpty()) {
+                close();
+                return;
+            }
+            int ops = 0;
+            if (!draining && expected==null
+                    && inFlight.get() < MAX_IN_FLIGHT)
+                ops |= SelectionKey.OP_READ;
+            if (expected!=null && output.isEmpty())
+                ops |= SelectionKey.OP_READ;
+            if (!output.isEmpty())
+                ops |= SelectionKey.OP_WRITE;
+            key.interestOps(ops);
+        } catch(Exception ex) {
+            LOG.warn("UniqConnection exception, remote {}", remote, ex);
+            close();
+        }
+    }
+
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        if (key!=null)
+            key.cancel();
+        try { channel.close(); } catch(Exception ex) {}
+        owner.sayGoodbye(this);
+        if (expected==null) {
+            LOG.info("UniqServer disconnected remote {}, stats: "
+                    + "C={}, R={}, H={}, J={}", remote,
+                    numCalls.get(), numRequests.get(),
+                    numHints.get(), numRejects.get());
+        }
+    }
+
+    private void readInput() throws Exception {
+        if (!input.hasRemaining()) {
+            final ByteBuffer temp = ByteBuffer.allocate(2 * input.capacity());
+            input.flip();
+            temp.put(input);
+            input = temp;
+        }
+        if (channel.read(input) < 0) {
+            // connection closed by the client
+            draining = true;
+        }
+    }
+
+    private void writeOutput() throws Exception {
+        ByteBuffer bb;
+        while ((bb = output.peek()) != null) {
+            channel.write(bb);
+            if (bb.hasRemaining())
+                return; // socket buffer is full
+            output.poll();
+        }
+    }
+
+    private void processInput() throws Exception {
+        if (expected!=null) {
+            if (!output.isEmpty())
+                return; // handshake request not sent yet
+            final int length = skipUTF(0, input.position());
+            if (length < 0)
+                return;
+            if (checkHandshake(length)) {
+                LOG.info("UniqServer connected remote {}", remote);
+                expected = null;
+            } else {
+                LOG.warn("UniqServer rejected remote {}", remote);
+                draining = true;
+                return;
+            }
+        }
+        while (!draining && inFlight.get() < MAX_IN_FLIGHT) {
+            final int length = scanFrame(input.position());
+            if (length < 0)
+                break;
+            submit(length);
+        }
+    }
+
+    private boolean checkHandshake(int length) throws Exception {
+        final DataInputStream dais = new DataInputStream(
+                new ByteArrayInputStream(input.array(), 0, length));
+        final boolean valid = expected.equals(dais.readUTF());
+        consume(length);
+        output.add(ByteBuffer.wrap(new byte[] { (byte) (valid ? 1 : 2) }));
+        return valid;
+    }
+
+    /**
+     * Decode the complete frame and pass it to the worker pool.
+     * @param length Frame length in the input buffer
+     */
+    private void submit(int length) throws Exception {
+        final DataInputStream dais = new DataInputStream(
+                new ByteArrayInputStream(input.array(), 0, length));
+        final int opcode = dais.read();
+        final boolean v2 = (opcode == UniqProtocol.OP_STORE_V2);
+        final boolean tagged = v2 || (opcode == UniqProtocol.OP_STORE_TAGGED);
+        final int tag = tagged ? dais.readInt() : 0;
+        final String repository;
+        final UniqRequest[] reqs;
+        final UniqCodec.Frame frame;
+        if (v2) {
+            // decoded by the worker
+            frame = UniqCodec.readFrame(dais);
+            repository = null;
+            reqs = null;
+        } else {
+            frame = null;
+            repository = dais.readUTF();
+            reqs = UniqConnection.readRequests(dais);
+        }
+        consume(length);
+        inFlight.incrementAndGet();
+        owner.getWorkers().submit(() -> {
+            try {
+                final ByteArrayOutputStream baos;
+                final UniqResponse[] resp;
+                if (v2) {
+                    final UniqCodec.Batch batch = UniqCodec.decodeRequests(
+                            frame.payload, UniqConnection.MAX_BATCH);
+                    // Make the service call
+                    resp = owner.getStore().store(batch.repository, batch.requests);
+                    // Pack the results
+                    final byte[] payload = UniqCodec.encodeResponses(resp);
+                    baos = new ByteArrayOutputStream(16 + payload.length);
+                    final DataOutputStream daos = new DataOutputStream(baos);
+                    daos.writeInt(tag);
+                    UniqCodec.writeFrame(daos, payload, frame.isDeflateReply(), 0);
+                } else {
+                    // Make the service call
+                    resp = owner.getStore().store(repository, reqs);
+                    // Pack the results
+                    baos = new ByteArrayOutputStream(8 + 5 * resp.length);
+                    final DataOutputStream daos = new DataOutputStream(baos);
+                    if (tagged)
+                        daos.writeInt(tag);
+                    UniqConnection.writeResponses(daos, resp);
+                }
+                output.add(ByteBuffer.wrap(baos.toByteArray()));
+                numCalls.incrementAndGet();
+                numRequests.addAndGet(resp.length);
+                numHints.addAndGet(UniqConnection.countHints(resp));
+                numRejects.addAndGet(UniqConnection.countRejects(resp));
+            } catch(Exception ex) {
+                LOG.error("UniqConnection request failed, remote {}", remote, ex);
+                // The client cannot recover without the response
+                failed = true;
+            } finally {
+                inFlight.decrementAndGet();
+                owner.wakeup(this);
+            }
+        });
+    }
+
+    /**
+     * Remove the processed bytes from the input buffer.
+     * @param length Number of bytes to remove
+     */
+    private void consume(int length) {
+        final int remaining = input.position() - length;
+        System.arraycopy(input.array(), length, input.array(), 0, remaining);
+        input.position(remaining);
+    }
+
+    /**
+     * Check whether the input buffer contains the complete frame.
+     * The scan is resumed from the position reached on the previous call,
+     * so that large frames arriving in pieces are not re-scanned.
+     * @param limit End of the data in the input buffer
+     * @return Frame length, or -1 if more data is needed
+     */
+    private int scanFrame(int limit) {
+        final byte[] data = input.array();
+        if (scanItems < 0) {
+            if (limit < 1)
+                return -1;
+            int pos;
+            switch (data[0] & 0xFF) {
+                case UniqProtocol.OP_STORE:
+                    pos = 1;
+                    break;
+                case UniqProtocol.OP_STORE_TAGGED:
+                    pos = 5;
+                    break;
+                case UniqProtocol.OP_STORE_V2:
+                    // no need to scan the individual requests
+                    return (limit < 5) ? -1 : UniqCodec.scanFrame(data, 5, limit);
+                default:
+                    throw new IllegalStateException("Bad operation markup octet");
+            }
+            pos = skipUTF(pos, limit);
+            if (pos < 0 || pos + 4 > limit)
+                return -1;
+            final int count = getInt(data, pos);
+            if (count < 0 || count > UniqConnection.MAX_BATCH) {
+                throw new IllegalStateException("Protocol violation: "
+                        + "req_count=" + count);
+            }
+            scanPos = pos + 4;
+            scanItems = count;
+        }
+        while (scanItems > 0) {
+            // iteration, source, target, conflict
+            int pos = scanPos + 4;
+            pos = skipUTF(pos, limit);
+            pos = skipUTF(pos, limit);
+            pos = skipUTF(pos, limit);
+            if (pos < 0)
+                return -1;
+            scanPos = pos;
+            --scanItems;
+        }
+        final int length = scanPos;
+        scanPos = 0;
+        scanItems = -1;
+        return length;
+    }
+
+    private int skipUTF(int pos, int limit) {
+        if (pos < 0 || pos + 2 > limit)
+            return -1;
+        final byte[] data = input.array();
+        pos += 2 + (((data[pos] & 0xFF) << 8) | (data[pos+1] & 0xFF));
+        return (pos > limit) ? -1 : pos;
+    }
+
+    private static int getInt(byte[] data, int pos) {
+        return ((data[pos] & 0xFF) << 24) | ((data[pos+1] & 0xFF) << 16)
+                | ((data[pos+2] & 0xFF) << 8) | (data[pos+3] & 0xFF);
+    }
+
+}
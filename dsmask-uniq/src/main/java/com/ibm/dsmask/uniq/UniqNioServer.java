@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.uniq;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import com.ibm.dsmask.util.SimpleDiegester;
+
+/**
+ * Uniq-check service front-end multiplexing all connections
+ * on a single selector thread.
+ * Requests are decoded by the selector thread and processed by
+ * the fixed-size worker pool, so the number of threads does not
+ * depend on the number of connected clients.
+ * Wire protocol and handshake are the same as in UniqSocketServer.
+ * @author zinal
+ */
+public class UniqNioServer implements UniqServer {
+
+    private static final org.slf4j.Logger LOG
+            = org.slf4j.LoggerFactory.getLogger(UniqNioServer.class);
+
+    private final InetAddress address;
+    private final UniqProvider store;
+    private final SimpleDiegester diegester;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService workers;
+    private final List<UniqNioConnection> connections = new ArrayList<>();
+    // connections having new output or completed requests
+    private final Queue<UniqNioConnection> updates = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean timeToQuit = false;
+
+    public UniqNioServer(int portNumber, InetAddress address, String secret,
+            UniqProvider store, int workerCount) throws Exception {
+        this.address = address;
+        this.store = store;
+        this.diegester = new SimpleDiegester(secret);
+        if (workerCount < 1)
+            workerCount = Runtime.getRuntime().availableProcessors();
+        this.workers = Executors.newFixedThreadPool(workerCount,
+                new UniqSocketServer.WorkerFactory());
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            this.serverChannel.socket().setReuseAddress(true);
+            this.serverChannel.bind(new InetSocketAddress(address, portNumber), 50);
+            this.serverChannel.configureBlocking(false);
+            this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch(Exception ex) {
+            try { serverChannel.close(); } catch(Exception any) {}
+            try { selector.close(); } catch(Exception any) {}
+            workers.shutdown();
+            throw ex;
+        }
+    }
+
+    public UniqNioServer(int portNumber, InetAddress address, String secret,
+            UniqProvider store) throws Exception {
+        this(portNumber, address, secret, store, 0);
+    }
+
+    @Override
+    public int getPortNumber() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    @Override
+    public UniqProvider getStore() {
+        return store;
+    }
+
+    public ExecutorService getWorkers() {
+        return workers;
+    }
+
+    public boolean isTimeToQuit() {
+        return timeToQuit;
+    }
+
+    @Override
+    public void tellQuit() {
+        timeToQuit = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Notify the selector thread that the connection has to be updated.
+     * Called by the worker threads.
+     * @param conn Connection with new output or completed requests
+     */
+    public void wakeup(UniqNioConnection conn) {
+        updates.add(conn);
+        selector.wakeup();
+    }
+
+    /**
+     * Generate the handshake request for the new connection.
+     * @return Handshake request text
+     */
+    public String makeRequest() {
+        return UniqSocketServer.makeRequest(diegester);
+    }
+
+    /**
+     * Compute the expected handshake response.
+     * @param request Handshake request sent to the client
+     * @return Response expected from the client
+     */
+    public String makeResponse(String request) {
+        return diegester.makeResponse(request);
+    }
+
+    @Override
+    public void run() {
+        LOG.info("UniqServer (NIO) running on port {}, address {}",
+                getPortNumber(), address);
+        while (isTimeToQuit() == false) {
+            try {
+                selector.select(1000L);
+                final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    final SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        ((UniqNioConnection) key.attachment()).handle(key);
+                    }
+                }
+                UniqNioConnection conn;
+                while ((conn = updates.poll()) != null) {
+                    conn.update();
+                }
+            } catch(Exception ex) {
+                LOG.warn("UniqServer exception", ex);
+            }
+        }
+        LOG.info("UniqServer shutting down...");
+        final List<UniqNioConnection> temp;
+        synchronized(connections) {
+            temp = new ArrayList<>(connections);
+            connections.clear();
+        }
+        for (UniqNioConnection uc : temp) {
+            uc.close();
+        }
+        try { serverChannel.close(); } catch(Exception ex) {}
+        try { selector.close(); } catch(Exception ex) {}
+        workers.shutdown();
+    }
+
+    private void accept() throws Exception {
+        final SocketChannel channel = serverChannel.accept();
+        if (channel==null)
+            return;
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setKeepAlive(true);
+            channel.socket().setTcpNoDelay(true);
+            final UniqNioConnection uc = new UniqNioConnection(this, channel);
+            uc.register(selector);
+            synchronized(connections) {
+                connections.add(uc);
+            }
+        } catch(Exception ex) {
+            try { channel.close(); } catch(Exception any) {}
+            throw ex;
+        }
+    }
+
+    public void sayGoodbye(UniqNioConnection uc) {
+        synchronized(connections) {
+            connections.remove(uc);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        tellQuit();
+    }
+
+}
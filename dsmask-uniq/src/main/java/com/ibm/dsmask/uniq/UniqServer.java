@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.uniq;
+
+/**
+ * Network front-end of the uniq-check service.
+ * @author zinal
+ */
+public interface UniqServer extends Runnable, AutoCloseable {
+
+    /**
+     * @return Port number the server listens on
+     */
+    int getPortNumber();
+
+    /**
+     * @return Store used to process the requests
+     */
+    UniqProvider getStore();
+
+    /**
+     * Ask the server to stop, run() returns shortly after.
+     */
+    void tellQuit();
+
+}
@@ -34,6 +34,16 @@ public class UniqService {
     public static final String PROP_SVC_PORT = "svcPort";
     public static final String PROP_SVC_HOST = "svcHost";
     public static final String PROP_SVC_SECRET = "svcSecret";
+    public static final String PROP_SVC_MODE = "svcMode";
+    public static final String PROP_SVC_WORKERS = "svcWorkers";
+    public static final String PROP_STORE_TYPE = "storeType";
+    public static final String PROP_INITIAL_CAPACITY = "initialCapacity";
+
+    public static final String MODE_THREADS = "threads";
+    public static final String MODE_NIO = "nio";
+
+    public static final String STORE_MVSTORE = "mvstore";
+    public static final String STORE_OFFHEAP = "offheap";
 
     public static void main(String[] args) {
         try {
@@ -58,7 +68,7 @@ public class UniqService {
 
     private final Properties props;
     private final CountDownLatch doneSignal = new CountDownLatch(1);
-    private volatile UniqSocketServer server = null;
+    private volatile UniqServer server = null;
 
     public UniqService(Properties props) {
         this.props = props;
@@ -80,19 +90,26 @@ public class UniqService {
             }
         });
         // Open the store
-        try (UniqStore store = new UniqStore(
-                getWorkDir(),
-                getShardCount(),
-                getCacheSize(),
-                getCommitPeriod()
-        )) {
-            store.open();
+        try (UniqProvider store = openStore()) {
             // Prepare and start the socket server
-            server = new UniqSocketServer(
-                    getPortNumber(),
-                    getAddress(),
-                    getSecret(),
-                    store);
+            final String mode = getMode();
+            if (MODE_NIO.equalsIgnoreCase(mode)) {
+                server = new UniqNioServer(
+                        getPortNumber(),
+                        getAddress(),
+                        getSecret(),
+                        store,
+                        getWorkerCount());
+            } else if (MODE_THREADS.equalsIgnoreCase(mode)) {
+                server = new UniqSocketServer(
+                        getPortNumber(),
+                        getAddress(),
+                        getSecret(),
+                        store);
+            } else {
+                throw new IllegalArgumentException("Unsupported service mode: "
+                        + mode);
+            }
             LOG.info("Started service at port " + server.getPortNumber());
             server.run();
             LOG.info("Service shutting down...");
@@ -102,6 +119,30 @@ public class UniqService {
         doneSignal.countDown();
     }
 
+    private UniqProvider openStore() throws Exception {
+        final String type = props.getProperty(PROP_STORE_TYPE, STORE_MVSTORE);
+        if (STORE_OFFHEAP.equalsIgnoreCase(type)) {
+            LOG.info("Using non-persistent off-heap store");
+            return new UniqMemStore(getShardCount(), getInitialCapacity());
+        }
+        if (! STORE_MVSTORE.equalsIgnoreCase(type)) {
+            throw new IllegalArgumentException("Unsupported store type: "
+                    + type);
+        }
+        final UniqStore store = new UniqStore(
+                getWorkDir(),
+                getShardCount(),
+                getCacheSize(),
+                getCommitPeriod()
+        );
+        store.open();
+        return store;
+    }
+
+    private int getInitialCapacity() throws Exception {
+        return Integer.parseInt(props.getProperty(PROP_INITIAL_CAPACITY, "65536"));
+    }
+
     private int getPortNumber() throws Exception {
         return Integer.parseInt(props.getProperty(PROP_SVC_PORT, "27501"));
     }
@@ -118,6 +159,14 @@ public class UniqService {
         return Integer.parseInt(props.getProperty(PROP_COMMIT_PERIOD, "10"));
     }
 
+    private String getMode() {
+        return props.getProperty(PROP_SVC_MODE, MODE_THREADS);
+    }
+
+    private int getWorkerCount() throws Exception {
+        return Integer.parseInt(props.getProperty(PROP_SVC_WORKERS, "0"));
+    }
+
     private String getWorkDir() {
         return props.getProperty(PROP_WORK_DIR, "shards");
     }
@@ -125,15 +125,57 @@ public class UniqShard implements AutoCloseable {
         }
     }
 
+    /**
+     * Store the group of requests, all having their targets in this shard.
+     * Should be called while holding the shard lock.
+     * @param repository Repository name
+     * @param rr Requests
+     * @param order Indexes of requests in the group
+     * @param from Start position in order, inclusive
+     * @param to End position in order, exclusive
+     * @param response Responses, filled for each request of the group
+     */
+    public void store(String repository, UniqRequest[] rr,
+            int[] order, int from, int to, UniqResponse[] response) {
+        final MVMap<String,String> mapRev = openReverse(repository);
+        for (int pos = from; pos < to; ++pos) {
+            final int index = order[pos];
+            response[index] = store(mapRev, repository, rr[index]);
+        }
+    }
+
+    /**
+     * Write the conflict resolution hints for the group of requests,
+     * all having their conflict values in this shard.
+     * Should be called while holding the shard lock.
+     * @param repository Repository name
+     * @param rr Requests
+     * @param order Indexes of requests in the group
+     * @param from Start position in order, inclusive
+     * @param to End position in order, exclusive
+     */
+    public void writeHints(String repository, UniqRequest[] rr,
+            int[] order, int from, int to) {
+        final MVMap<String,Integer> mapConflict = openConflict(repository);
+        for (int pos = from; pos < to; ++pos) {
+            writeHint(mapConflict, repository, rr[order[pos]]);
+        }
+    }
+
     public UniqResponse store(UniqShardReq sr) {
-        MVMap<String,String> mapRev = openReverse(sr.getRepository());
+        return store(openReverse(sr.getRepository()), sr.getRepository(),
+                sr.getRequest());
+    }
+
+    private UniqResponse store(MVMap<String,String> mapRev,
+            String repository, UniqRequest sr) {
         String storedSource = mapRev.get(sr.getTarget());
         if (storedSource!=null) {
             if (storedSource.equals(sr.getSource())) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Store MATCH at {} shard {}, [{}] -> [{}], "
                             + "base [{}], iteration {}",
-                            sr.getRepository(), number, sr.getSource(), sr.getTarget(),
+                            repository, number, sr.getSource(), sr.getTarget(),
                             sr.getConflict(), sr.getIteration());
                 }
                 return new UniqResponse(true);
@@ -141,11 +183,11 @@ public class UniqShard implements AutoCloseable {
             if (sr.getIteration()==0) {
                 // we have an initial conflict here,
                 // so trying to grab the resolution
-                int iteration = readHint(sr);
+                int iteration = readHint(repository, sr);
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Store CONFLICT at {} shard {}, [{}] -> [{}], "
                             + "base [{}], iteration {}, hint {}",
-                            sr.getRepository(), number, sr.getSource(), sr.getTarget(),
+                            repository, number, sr.getSource(), sr.getTarget(),
                             sr.getConflict(), sr.getIteration(), iteration);
                 }
                 return new UniqResponse(false, iteration);
@@ -154,7 +196,7 @@ public class UniqShard implements AutoCloseable {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Store CONFLICT at {} shard {}, [{}] -> [{}], "
                         + "base [{}], iteration {}",
-                        sr.getRepository(), number, sr.getSource(), sr.getTarget(),
+                        repository, number, sr.getSource(), sr.getTarget(),
                         sr.getConflict(), sr.getIteration());
             }
             return new UniqResponse(false);
@@ -163,28 +205,37 @@ public class UniqShard implements AutoCloseable {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Store INITIAL at {} shard {}, [{}] -> [{}], "
                     + "base [{}], iteration {}",
-                    sr.getRepository(), number, sr.getSource(), sr.getTarget(),
+                    repository, number, sr.getSource(), sr.getTarget(),
                     sr.getConflict(), sr.getIteration());
         }
         return new UniqResponse(true);
     }
 
     public int readHint(UniqShardReq sr) {
-        MVMap<String,Integer> mapConflict = openConflict(sr.getRepository());
-        Integer iteration = mapConflict.get(sr.getResolutionKey());
+        return readHint(sr.getRepository(), sr.getRequest());
+    }
+
+    private int readHint(String repository, UniqRequest sr) {
+        MVMap<String,Integer> mapConflict = openConflict(repository);
+        Integer iteration = mapConflict.get(UniqShardReq.getResolutionKey(sr));
         if (iteration!=null)
             return iteration;
         return -1;
     }
 
     public void writeHint(UniqShardReq sr) {
-        final String resolutionKey = sr.getResolutionKey();
-        MVMap<String,Integer> mapConflict = openConflict(sr.getRepository());
+        writeHint(openConflict(sr.getRepository()), sr.getRepository(),
+                sr.getRequest());
+    }
+
+    private void writeHint(MVMap<String,Integer> mapConflict,
+            String repository, UniqRequest sr) {
+        final String resolutionKey = UniqShardReq.getResolutionKey(sr);
         mapConflict.put(resolutionKey, sr.getIteration());
         if (LOG.isDebugEnabled()) {
             LOG.debug("Hint at {} shard {}, [{}] -> [{}], "
                     + "base [{}], iteration {}, key [{}]",
-                    sr.getRepository(), number, sr.getSource(), sr.getTarget(),
+                    repository, number, sr.getSource(), sr.getTarget(),
                     sr.getConflict(), sr.getIteration(), resolutionKey);
         }
     }
@@ -23,43 +23,45 @@ public class UniqShardReq {
     public static final String SEP = DsMaskUtil.fromCodepoint(3);
 
     private final String repository;
-    private final String source;
-    private final String target;
-    private final String conflict;
-    private final int iteration;
+    private final UniqRequest request;
 
     public UniqShardReq(String repository, UniqRequest r) {
         this.repository = repository;
-        this.source = r.getSource();
-        this.target = r.getTarget();
-        this.conflict = r.getConflict();
-        this.iteration = r.getIteration();
+        this.request = r;
     }
 
     public String getRepository() {
         return repository;
     }
 
+    public UniqRequest getRequest() {
+        return request;
+    }
+
     public String getSource() {
-        return source;
+        return request.getSource();
     }
 
     public String getTarget() {
-        return target;
+        return request.getTarget();
     }
 
     public String getConflict() {
-        return conflict;
+        return request.getConflict();
     }
 
     public int getIteration() {
-        return iteration;
+        return request.getIteration();
     }
 
     public String getResolutionKey() {
-        if (conflict == null)
-            return target + SEP + source;
-        return conflict + SEP + source;
+        return getResolutionKey(request);
+    }
+
+    public static String getResolutionKey(UniqRequest r) {
+        if (r.getConflict() == null)
+            return r.getTarget() + SEP + r.getSource();
+        return r.getConflict() + SEP + r.getSource();
     }
 
 }
@@ -20,6 +20,10 @@ import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import com.ibm.dsmask.util.SimpleDiegester;
 
 /**
@@ -27,50 +31,63 @@ import com.ibm.dsmask.util.SimpleDiegester;
  * to each unique input value
  * @author zinal
  */
-public class UniqSocketServer implements Runnable, AutoCloseable {
+public class UniqSocketServer implements UniqServer {
 
     private static final org.slf4j.Logger LOG
             = org.slf4j.LoggerFactory.getLogger(UniqSocketServer.class);
 
     private final int portNumber;
     private final InetAddress address;
-    private final UniqStore store;
+    private final UniqProvider store;
 
     private final ServerSocket serverSocket;
     private final List<UniqConnection> connections = new ArrayList<>();
     private final SimpleDiegester diegester;
+    // executor for tagged requests, shared by all connections
+    private final ExecutorService workers;
 
     private final Object guard = new Object();
     private volatile boolean timeToQuit = false;
 
     public UniqSocketServer(int portNumber, InetAddress address, String secret,
-            UniqStore store) throws Exception {
+            UniqProvider store) throws Exception {
         this.portNumber = portNumber;
         this.address = address;
         this.store = store;
         this.diegester = new SimpleDiegester(secret);
+        this.workers = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(),
+                new WorkerFactory());
         this.serverSocket = new ServerSocket(portNumber, 50, address);
         this.serverSocket.setSoTimeout(200);
     }
 
+    @Override
     public int getPortNumber() {
-        return portNumber;
+        // the actual port, in case zero was requested
+        return serverSocket.getLocalPort();
     }
 
     public InetAddress getAddress() {
         return address;
     }
 
-    public UniqStore getStore() {
+    @Override
+    public UniqProvider getStore() {
         return store;
     }
 
+    public ExecutorService getWorkers() {
+        return workers;
+    }
+
     public boolean isTimeToQuit() {
         synchronized(guard) {
             return timeToQuit;
         }
     }
 
+    @Override
     public void tellQuit() {
         synchronized(guard) {
             timeToQuit = true;
@@ -124,10 +141,11 @@ public class UniqSocketServer implements Runnable, AutoCloseable {
         for (UniqConnection uc : temp) {
             uc.tellQuit();
         }
+        workers.shutdown();
     }
 
     private boolean diegest(Socket socket) throws Exception {
-        String serverRequest = diegester.makeRequest();
+        String serverRequest = makeRequest(diegester);
         String serverResponse = diegester.makeResponse(serverRequest);
         try {
             DataOutputStream dos = new DataOutputStream(socket.getOutputStream());
@@ -150,9 +168,34 @@ public class UniqSocketServer implements Runnable, AutoCloseable {
         }
     }
 
+    /**
+     * Generate the handshake request, including the supported features.
+     * @param diegester Authentication helper
+     * @return Handshake request text
+     */
+    public static String makeRequest(SimpleDiegester diegester) {
+        return UniqProtocol.appendFeatures(
+                diegester.makeRequest(), UniqProtocol.FEATURE_TAGGED,
+                UniqProtocol.FEATURE_V2);
+    }
+
     @Override
     public void close() throws Exception {
         tellQuit();
     }
 
+    static final class WorkerFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread t = new Thread(r);
+            t.setDaemon(true);
+            t.setName("uniq-service-worker#" + counter.incrementAndGet());
+            return t;
+        }
+
+    }
+
 }
@@ -13,10 +13,15 @@
 package com.ibm.dsmask.uniq;
 
 import java.io.File;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.List;
-import com.ibm.dsmask.algo.PureJavaCrc32;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import com.ibm.dsmask.algo.HashSupport;
 
 /**
  * Uniqueness validation store implementation.
@@ -29,6 +34,11 @@ public class UniqStore implements UniqProvider {
     private final UniqShard[] shards;
     private final UniqLazyCommit lazyCommit;
     private Thread lcThread;
+    // executes the shard groups in parallel
+    private final ForkJoinPool pool;
+
+    // min number of requests for parallel execution
+    public static final int PARALLEL_MIN = 64;
 
     public UniqStore(String directory, int shardCount, int cacheSize, int lazyCommitPeriod) {
         this(directory==null ? (File) null : new File(directory),
@@ -48,41 +58,197 @@ public class UniqStore implements UniqProvider {
         for (int i=0; i<shardCount; ++i)
             this.shards[i] = new UniqShard(directory, i, cacheSize);
         this.lazyCommit = new UniqLazyCommit(this, 1000L * lazyCommitPeriod);
+        this.pool = new ForkJoinPool(Math.min(shardCount,
+                Runtime.getRuntime().availableProcessors()));
     }
 
+    /**
+     * Store the mappings and the conflict resolution hints.
+     * The mappings are stored grouped by the target value shard,
+     * and the hints are written afterwards, so the batches where
+     * a request may read the hint written for an earlier request
+     * are processed row by row, to keep the per-row semantics.
+     * @param repository Repository name
+     * @param rr Requests
+     * @return Responses, in the order of requests
+     */
     @Override
     public UniqResponse[] store(String repository, UniqRequest[] rr) {
         if (rr==null)
             return null;
-        final List<Integer> shardNumbers = new ArrayList<>();
+        if (readsOwnHints(rr))
+            return storeOrdered(repository, rr);
         final UniqResponse[] response = new UniqResponse[rr.length];
+        final BitSet touched = new BitSet(shards.length);
+        // Store the mappings, grouped by the target value shard
+        final String[] keys = new String[rr.length];
         for (int i=0; i<rr.length; ++i) {
-            UniqRequest r = rr[i];
-            if (r==null) {
-                response[i] = null;
+            if (rr[i]!=null)
+                keys[i] = rr[i].getTarget();
+        }
+        final Groups targets = groupBy(keys, touched);
+        runGroups(targets, (shard, from, to) -> {
+            shard.store(repository, rr, targets.order, from, to, response);
+        });
+        // Save the hints for resolved conflicts,
+        // grouped by the initial value shard
+        boolean haveHints = false;
+        for (int i=0; i<rr.length; ++i) {
+            keys[i] = null;
+            if (rr[i]!=null && rr[i].getConflict()!=null
+                    && response[i].isLinkedCorrectly()) {
+                keys[i] = rr[i].getConflict();
+                haveHints = true;
+            }
+        }
+        if (haveHints) {
+            final Groups hints = groupBy(keys, touched);
+            runGroups(hints, (shard, from, to) -> {
+                shard.writeHints(repository, rr, hints.order, from, to);
+            });
+        }
+        lazyCommit.hasChanges(touched);
+        return response;
+    }
+
+    /**
+     * Check whether an initial request of the batch may read the hint
+     * written for an earlier request, having the same source value
+     * and the conflict value equal to the initial target.
+     * @param rr Requests
+     * @return true, if the hints have to be written in the request order
+     */
+    private static boolean readsOwnHints(UniqRequest[] rr) {
+        Set<String> hints = null;
+        for (UniqRequest r : rr) {
+            if (r==null)
                 continue;
+            if (hints!=null && r.getIteration()==0
+                    && hints.contains(UniqShardReq.getResolutionKey(r)))
+                return true;
+            if (r.getConflict()!=null) {
+                if (hints==null)
+                    hints = new HashSet<>();
+                hints.add(UniqShardReq.getResolutionKey(r));
             }
-            UniqShardReq sr = new UniqShardReq(repository, r);
-            UniqShard shard = getShard(sr.getTarget());
-            shardNumbers.add(shard.getNumber());
+        }
+        return false;
+    }
+
+    /**
+     * Store the mappings and write the hints request by request.
+     * @param repository Repository name
+     * @param rr Requests
+     * @return Responses, in the order of requests
+     */
+    private UniqResponse[] storeOrdered(String repository, UniqRequest[] rr) {
+        final UniqResponse[] response = new UniqResponse[rr.length];
+        final BitSet touched = new BitSet(shards.length);
+        for (int i=0; i<rr.length; ++i) {
+            final UniqRequest r = rr[i];
+            if (r==null)
+                continue;
+            final UniqShardReq sr = new UniqShardReq(repository, r);
+            int number = getShardNumber(sr.getTarget());
+            touched.set(number);
+            UniqShard shard = shards[number];
             final UniqResponse ur;
             synchronized(shard) {
                 ur = shard.store(sr);
             }
-            if (ur.isLinkedCorrectly()
-                    && sr.getConflict() != null) {
-                shard = getShard(sr.getConflict());
-                shardNumbers.add(shard.getNumber());
+            if (ur.isLinkedCorrectly() && sr.getConflict()!=null) {
+                number = getShardNumber(sr.getConflict());
+                touched.set(number);
+                shard = shards[number];
                 synchronized(shard) {
                     shard.writeHint(sr);
                 }
             }
             response[i] = ur;
         }
-        lazyCommit.hasChanges(shardNumbers);
+        lazyCommit.hasChanges(touched);
         return response;
     }
 
+    /**
+     * Group the request indexes by shard number, preserving the order
+     * of requests within each group.
+     * @param keys Shard keys for each request, null to skip the request
+     * @param touched Shard numbers used, updated
+     * @return Request groups
+     */
+    private Groups groupBy(String[] keys, BitSet touched) {
+        final int[] shardOf = new int[keys.length];
+        final int[] start = new int[shards.length + 1];
+        for (int i=0; i<keys.length; ++i) {
+            if (keys[i]==null) {
+                shardOf[i] = -1;
+            } else {
+                shardOf[i] = getShardNumber(keys[i]);
+                start[shardOf[i] + 1] += 1;
+            }
+        }
+        for (int i=0; i<shards.length; ++i)
+            start[i+1] += start[i];
+        final int[] order = new int[start[shards.length]];
+        final int[] next = Arrays.copyOf(start, shards.length);
+        for (int i=0; i<keys.length; ++i) {
+            if (shardOf[i] >= 0) {
+                order[next[shardOf[i]]++] = i;
+                touched.set(shardOf[i]);
+            }
+        }
+        return new Groups(order, start);
+    }
+
+    /**
+     * Run the action for each group, holding the shard lock once per group.
+     * Large batches spanning several shards are processed in parallel.
+     * @param groups Request groups
+     * @param action Action to be executed
+     */
+    private void runGroups(Groups groups, GroupAction action) {
+        int groupCount = 0;
+        for (int i=0; i<shards.length; ++i) {
+            if (groups.start[i+1] > groups.start[i])
+                ++groupCount;
+        }
+        if (groupCount < 2 || groups.order.length < PARALLEL_MIN) {
+            for (int i=0; i<shards.length; ++i)
+                runGroup(groups, i, action);
+            return;
+        }
+        final List<RecursiveAction> tasks = new ArrayList<>(groupCount);
+        for (int i=0; i<shards.length; ++i) {
+            if (groups.start[i+1] > groups.start[i]) {
+                final int shardNumber = i;
+                tasks.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        runGroup(groups, shardNumber, action);
+                    }
+                });
+            }
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    private void runGroup(Groups groups, int shardNumber, GroupAction action) {
+        final int from = groups.start[shardNumber];
+        final int to = groups.start[shardNumber + 1];
+        if (from >= to)
+            return;
+        final UniqShard shard = shards[shardNumber];
+        synchronized(shard) {
+            action.apply(shard, from, to);
+        }
+    }
+
     /**
      * Dump all shards into the files in the specified directory.
      * @param directory The directory do dump the data into
@@ -94,16 +260,12 @@ public class UniqStore implements UniqProvider {
         }
     }
 
-    private UniqShard getShard(String v) {
-        long hash = getHash(v);
-        hash = hash % shards.length;
-        return shards[(int) hash];
+    private int getShardNumber(String v) {
+        return (int) (getHash(v) % shards.length);
     }
 
     private static long getHash(String v) {
-        PureJavaCrc32 crc = new PureJavaCrc32();
-        crc.update(v.getBytes(StandardCharsets.UTF_8));
-        return crc.getValue();
+        return HashSupport.crc32(v);
     }
 
     public void open() {
@@ -121,6 +283,7 @@ public class UniqStore implements UniqProvider {
 
     @Override
     public void close() {
+        pool.shutdown();
         synchronized(lazyCommit) {
             if (lcThread != null) {
                 lazyCommit.tellQuit();
@@ -139,4 +302,21 @@ public class UniqStore implements UniqProvider {
         }
     }
 
+    /**
+     * Request indexes ordered by shard, with start positions for each shard.
+     */
+    private static final class Groups {
+        final int[] order;
+        final int[] start;
+
+        Groups(int[] order, int[] start) {
+            this.order = order;
+            this.start = start;
+        }
+    }
+
+    private static interface GroupAction {
+        void apply(UniqShard shard, int from, int to);
+    }
+
 }
@@ -15,7 +15,9 @@ package com.ibm.dsmask.uniq;
 import java.io.File;
 
 /**
- *
+ * Factory for the local uniq-check stores.
+ * Creates either the persistent MVStore-based UniqStore,
+ * or the non-persistent off-heap UniqMemStore.
  * @author zinal
  */
 public class UniqStoreFactory implements UniqProviderFactory {
@@ -24,6 +26,8 @@ public class UniqStoreFactory implements UniqProviderFactory {
     private int shardCount = 1;
     private int cacheSize = 10;
     private int commitPeriod = 10;
+    private boolean offHeap = false;
+    private int initialCapacity = 1024;
 
     public File getFile() {
         return file;
@@ -57,8 +61,26 @@ public class UniqStoreFactory implements UniqProviderFactory {
         this.commitPeriod = commitPeriod;
     }
 
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    public int getInitialCapacity() {
+        return initialCapacity;
+    }
+
+    public void setInitialCapacity(int initialCapacity) {
+        this.initialCapacity = initialCapacity;
+    }
+
     @Override
     public UniqProvider createProvider() {
+        if (offHeap)
+            return new UniqMemStore(shardCount, initialCapacity);
         return new UniqStore(file, shardCount, cacheSize, commitPeriod);
     }
 
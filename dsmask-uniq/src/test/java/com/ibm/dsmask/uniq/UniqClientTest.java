@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.uniq;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Assert;
+import org.junit.Test;
+import com.ibm.dsmask.util.SimpleDiegester;
+
+/**
+ * Uniq-check client and server over the loopback connection.
+ * @author zinal
+ */
+public class UniqClientTest {
+
+    public static final String SECRET = "abcdefg";
+
+    @Test
+    public void testThreads() throws Exception {
+        try (UniqStore store = openStore()) {
+            runServer(new UniqSocketServer(0,
+                    InetAddress.getLoopbackAddress(), SECRET, store));
+        }
+    }
+
+    @Test
+    public void testNio() throws Exception {
+        try (UniqStore store = openStore()) {
+            runServer(new UniqNioServer(0,
+                    InetAddress.getLoopbackAddress(), SECRET, store, 2));
+        }
+    }
+
+    private static UniqStore openStore() throws Exception {
+        final UniqStore store = new UniqStore((java.io.File) null, 4, 20, 60);
+        store.open();
+        return store;
+    }
+
+    private static void runServer(UniqServer server) throws Exception {
+        final Thread st = new Thread(server);
+        st.setDaemon(true);
+        st.start();
+        try {
+            runClient(server.getPortNumber(), false);
+            runClient(server.getPortNumber(), true);
+            runLegacyClient(server.getPortNumber());
+            runBadClient(server.getPortNumber());
+        } finally {
+            server.tellQuit();
+            st.join();
+        }
+    }
+
+    private static void runClient(int port, boolean compression)
+            throws Exception {
+        try (UniqClient client = new UniqClient(
+                InetAddress.getLoopbackAddress(), port, SECRET, compression)) {
+            Assert.assertTrue(client.isTagged());
+            Assert.assertEquals(2, client.getProtocolVersion());
+            Assert.assertEquals(compression, client.isCompression());
+            // many batches in flight at once
+            final List<CompletableFuture<UniqResponse[]>> futures
+                    = new ArrayList<>();
+            for (int batch = 0; batch < 20; ++batch) {
+                // the second client repeats the same values
+                futures.add(client.storeAsync("test", makeBatch(batch, 0)));
+            }
+            for (CompletableFuture<UniqResponse[]> f : futures) {
+                final UniqResponse[] resp = f.join();
+                Assert.assertEquals(50, resp.length);
+                for (UniqResponse r : resp)
+                    Assert.assertTrue(r.isLinkedCorrectly());
+            }
+            // same sources and targets are confirmed again
+            UniqResponse[] resp = client.store("test", makeBatch(7, 0));
+            for (UniqResponse r : resp)
+                Assert.assertTrue(r.isLinkedCorrectly());
+            // same targets for other sources are rejected
+            resp = client.store("test", makeBatch(7, 1));
+            for (UniqResponse r : resp)
+                Assert.assertFalse(r.isLinkedCorrectly());
+        }
+    }
+
+    /**
+     * Client which ignores the features and uses the synchronous requests.
+     */
+    private static void runLegacyClient(int port) throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            final DataInputStream dais = new DataInputStream(socket.getInputStream());
+            final DataOutputStream daos = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+            daos.writeUTF(new SimpleDiegester(SECRET).makeResponse(dais.readUTF()));
+            daos.flush();
+            Assert.assertEquals(1, dais.readByte());
+            for (int step = 0; step < 2; ++step) {
+                daos.write(UniqProtocol.OP_STORE);
+                daos.writeUTF("test");
+                final UniqRequest[] rr = makeBatch(3, step);
+                daos.writeInt(rr.length);
+                for (UniqRequest r : rr) {
+                    daos.writeInt(r.getIteration());
+                    daos.writeUTF(r.getSource());
+                    daos.writeUTF(r.getTarget());
+                    daos.writeUTF("");
+                }
+                daos.flush();
+                Assert.assertEquals(rr.length, dais.readInt());
+                for (int i = 0; i < rr.length; ++i) {
+                    // the first step repeats known pairs, the second conflicts
+                    Assert.assertEquals(step==0, dais.readBoolean());
+                    dais.readInt();
+                }
+            }
+        }
+    }
+
+    private static void runBadClient(int port) throws Exception {
+        try {
+            new UniqClient(InetAddress.getLoopbackAddress(), port, "wrong").close();
+            Assert.fail("Connection with a wrong secret has been accepted");
+        } catch(RuntimeException ex) {
+            // expected
+        }
+    }
+
+    private static UniqRequest[] makeBatch(int batch, int sourceShift) {
+        final UniqRequest[] rr = new UniqRequest[50];
+        for (int i=0; i<rr.length; ++i) {
+            rr[i] = new UniqRequest();
+            rr[i].setSource(new Object[] { "src-" + batch + "-" + i
+                    + "-" + sourceShift });
+            rr[i].setTarget(new Object[] { "dst-" + batch + "-" + i });
+        }
+        return rr;
+    }
+
+}
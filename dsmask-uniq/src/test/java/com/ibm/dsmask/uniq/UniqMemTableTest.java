@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) IBM Corp. 2018, 2021.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *  Maksim Zinal (IBM) - Initial implementation
+ */
+package com.ibm.dsmask.uniq;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author zinal
+ */
+public class UniqMemTableTest {
+
+    @Test
+    public void test() {
+        final UniqMemTable t = new UniqMemTable(1);
+        final int count = 5000;
+        for (long i = 1; i <= count; ++i) {
+            // same low bits for many keys, to check probing
+            t.put(i << 20, i, i * 3, -i);
+        }
+        Assert.assertEquals(count, t.size());
+        Assert.assertTrue(t.capacity() * 3L >= count * 4L);
+        for (long i = 1; i <= count; ++i) {
+            final int slot = t.indexOf(i << 20, i);
+            Assert.assertTrue(slot >= 0);
+            Assert.assertEquals(i * 3, t.getValue1(slot));
+            Assert.assertEquals(-i, t.getValue2(slot));
+        }
+        Assert.assertEquals(-1, t.indexOf(5L << 20, 6L));
+        // replace the value
+        t.put(1L << 20, 1L, 7L, 8L);
+        Assert.assertEquals(count, t.size());
+        Assert.assertEquals(7L, t.getValue1(t.indexOf(1L << 20, 1L)));
+        t.clear();
+        Assert.assertEquals(0, t.size());
+    }
+
+    @Test
+    public void testCapacity() {
+        // byte offsets of the largest table must fit into int
+        Assert.assertTrue(((long) UniqMemTable.MAX_CAPACITY)
+                * UniqMemTable.ENTRY_SIZE <= Integer.MAX_VALUE);
+        final UniqMemTable t = new UniqMemTable(1, 64);
+        // 0.75 load factor limit: 48 entries
+        for (long i = 1; i <= 48; ++i)
+            t.put(i, i, i, i);
+        Assert.assertEquals(64, t.capacity());
+        try {
+            t.put(49L, 49L, 0L, 0L);
+            Assert.fail("Full table accepted the entry");
+        } catch(IllegalStateException ise) {}
+        // replacing the existing value still works
+        t.put(48L, 48L, 1L, 1L);
+        Assert.assertEquals(1L, t.getValue1(t.indexOf(48L, 48L)));
+        try {
+            new UniqMemTable(1, UniqMemTable.MAX_CAPACITY * 2);
+            Assert.fail("Illegal max capacity accepted");
+        } catch(IllegalArgumentException iae) {}
+    }
+
+}
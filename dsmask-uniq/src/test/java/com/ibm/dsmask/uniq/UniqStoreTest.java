@@ -12,6 +12,7 @@
  */
 package com.ibm.dsmask.uniq;
 
+import java.util.Arrays;
 import org.junit.Assert;
 import org.junit.Test;
 import com.ibm.dsmask.algo.CharClassSet;
@@ -35,38 +36,130 @@ public class UniqStoreTest {
     @Test
     public void test() {
         try (UniqStore store = new UniqStore((java.io.File) null, 1, 20, 60)) {
+            runBasic(store);
+        }
+    }
 
-            UniqRequest[] input1 = new UniqRequest[VALUES.length];
-            for (int i=0; i<input1.length; ++i) {
-                input1[i] = new UniqRequest();
-                input1[i].setIteration(0);
-                input1[i].setSource(new Object[] { VALUES[i] });
-                input1[i].setTarget(new Object[] { masker.calculate(VALUES[i]) });
-            }
+    @Test
+    public void testMemory() {
+        try (UniqMemStore store = new UniqMemStore(1, 4)) {
+            runBasic(store);
+        }
+    }
 
-            UniqResponse[] output1 = store.store("test", input1);
-            for (int i=0; i<output1.length; ++i) {
-                if ( i % 2 == 0 ) {
-                    Assert.assertEquals(true, output1[i].isLinkedCorrectly());
-                } else {
-                    Assert.assertEquals(false, output1[i].isLinkedCorrectly());
-                }
-            }
+    private void runBasic(UniqProvider store) {
+        UniqRequest[] input1 = new UniqRequest[VALUES.length];
+        for (int i=0; i<input1.length; ++i) {
+            input1[i] = new UniqRequest();
+            input1[i].setIteration(0);
+            input1[i].setSource(new Object[] { VALUES[i] });
+            input1[i].setTarget(new Object[] { masker.calculate(VALUES[i]) });
+        }
 
-            UniqRequest[] input2 = new UniqRequest[VALUES.length / 2];
-            for (int i=0; i<input2.length; ++i) {
-                int srcIndex = (2*i)+1;
-                input2[i] = new UniqRequest();
-                input2[i].setIteration(1);
-                input2[i].setSource(new Object[] { VALUES[srcIndex] });
-                input2[i].setTarget(new Object[] { masker.calculate(VALUES[srcIndex], 1) });
+        UniqResponse[] output1 = store.store("test", input1);
+        for (int i=0; i<output1.length; ++i) {
+            if ( i % 2 == 0 ) {
+                Assert.assertEquals(true, output1[i].isLinkedCorrectly());
+            } else {
+                Assert.assertEquals(false, output1[i].isLinkedCorrectly());
             }
+        }
 
-            UniqResponse[] output2 = store.store("test", input2);
-            for (int i=0; i<output2.length; ++i) {
-                Assert.assertEquals(true, output2[i].isLinkedCorrectly());
-            }
+        UniqRequest[] input2 = new UniqRequest[VALUES.length / 2];
+        for (int i=0; i<input2.length; ++i) {
+            int srcIndex = (2*i)+1;
+            input2[i] = new UniqRequest();
+            input2[i].setIteration(1);
+            input2[i].setSource(new Object[] { VALUES[srcIndex] });
+            input2[i].setTarget(new Object[] { masker.calculate(VALUES[srcIndex], 1) });
+        }
+
+        UniqResponse[] output2 = store.store("test", input2);
+        for (int i=0; i<output2.length; ++i) {
+            Assert.assertEquals(true, output2[i].isLinkedCorrectly());
+        }
+    }
+
+    @Test
+    public void testBatch() {
+        try (UniqStore store = new UniqStore((java.io.File) null, 8, 20, 60)) {
+            runBatch(store);
+        }
+    }
 
+    @Test
+    public void testMemoryBatch() {
+        try (UniqMemStore store = new UniqMemStore(8, 16)) {
+            runBatch(store);
+            Assert.assertEquals(1000L, store.getSize());
+        }
+    }
+
+    @Test
+    public void testHintOrder() {
+        try (UniqStore store = new UniqStore((java.io.File) null, 8, 20, 60)) {
+            runHintOrder(store);
+        }
+    }
+
+    @Test
+    public void testMemoryHintOrder() {
+        try (UniqMemStore store = new UniqMemStore(8, 16)) {
+            runHintOrder(store);
+        }
+    }
+
+    private static void runHintOrder(UniqProvider store) {
+        final UniqRequest first = new UniqRequest();
+        first.setSource("src-b");
+        first.setTarget("dst-x");
+        Assert.assertTrue(store.store("test", new UniqRequest[] {first})[0]
+                .isLinkedCorrectly());
+        // the hint written for the first request is seen by the second one
+        final UniqRequest resolved = new UniqRequest(2);
+        resolved.setSource("src-a");
+        resolved.setTarget("dst-y");
+        resolved.setConflict("dst-x");
+        final UniqRequest initial = new UniqRequest();
+        initial.setSource("src-a");
+        initial.setTarget("dst-x");
+        final UniqResponse[] output = store.store("test",
+                new UniqRequest[] {resolved, initial});
+        Assert.assertTrue(output[0].isLinkedCorrectly());
+        Assert.assertFalse(output[1].isLinkedCorrectly());
+        Assert.assertEquals(2, output[1].getIteration());
+    }
+
+    private static void runBatch(UniqProvider store) {
+        // large enough for the parallel execution,
+        // every target value is requested twice for different sources
+        final UniqRequest[] input1 = new UniqRequest[1000];
+        for (int i=0; i<input1.length; ++i) {
+            input1[i] = new UniqRequest();
+            input1[i].setSource(new Object[] { "src" + i });
+            input1[i].setTarget(new Object[] { "dst" + (i % 500) });
+        }
+        final UniqResponse[] output1 = store.store("test", input1);
+        for (int i=0; i<output1.length; ++i) {
+            // the first request for each target wins
+            Assert.assertEquals(i < 500, output1[i].isLinkedCorrectly());
+        }
+        // resolve the conflicts at iteration 3
+        final UniqRequest[] input2 = new UniqRequest[500];
+        for (int i=0; i<input2.length; ++i) {
+            input2[i] = new UniqRequest(3);
+            input2[i].setSource(input1[500 + i].getSource());
+            input2[i].setTarget("alt" + i);
+            input2[i].setConflict(input1[500 + i].getTarget());
+        }
+        for (UniqResponse r : store.store("test", input2))
+            Assert.assertTrue(r.isLinkedCorrectly());
+        // repeated conflicts get the hints
+        final UniqResponse[] output3 = store.store("test",
+                Arrays.copyOfRange(input1, 500, 1000));
+        for (UniqResponse r : output3) {
+            Assert.assertFalse(r.isLinkedCorrectly());
+            Assert.assertEquals(3, r.getIteration());
         }
     }
 